@@ -0,0 +1,236 @@
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.ref.Reference;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.function.BiPredicate;
+import java.util.function.Function;
+import java.util.function.IntToLongFunction;
+import java.util.function.ToLongFunction;
+
+/**
+ * Bộ đo hiệu năng cho hai cách tạo collection bất biến trong JEP269_MinhTuan:
+ * - Cách cũ: Collections.unmodifiableList/Set/Map bọc ArrayList, HashSet, HashMap.
+ * - Cách mới (JEP 269): List.of(), Set.of(), Map.ofEntries().
+ *
+ * Với mỗi kích thước (mặc định từ 2 đến 1.000.000 phần tử) đo 4 chỉ số:
+ * - construct: thời gian tạo một collection (ns/op)
+ * - lookup:    contains() với List/Set, get() với Map, khoảng 50% trúng (ns/op)
+ * - iterate:   duyệt toàn bộ collection (ns/phần tử)
+ * - retained:  heap giữ lại của riêng cấu trúc, không tính key/value dùng chung (byte/collection)
+ *
+ * Kết quả được ghi ra file CSV kèm phiên bản JDK, để so sánh giữa các lần chạy khi đổi JDK.
+ *
+ * Repo không có file build nên không dùng JMH được; bộ đo tự làm dựa trên System.nanoTime, với các giới hạn:
+ * - không fork: mọi biến thể chạy chung một JVM, profile của biến thể trước (vd. call site lambda
+ *   trở thành megamorphic) có thể ảnh hưởng biến thể sau; chạy lại với một kích thước để kiểm tra
+ * - không có Blackhole: kết quả được cộng vào trường volatile sink, đủ để JIT không bỏ vòng lặp
+ *   nhưng không chặn được mọi tối ưu (vd. tách bất biến khỏi vòng lặp)
+ * - không có khoảng tin cậy: chỉ lấy trung vị của MEASURE_ROUNDS vòng, sai khác dưới ~5% nên coi là nhiễu
+ * - retained là ước lượng qua System.gc(), không chính xác như JOL hay -prof gc
+ *
+ * Chạy: java -Xms2g -Xmx2g JEP269_Benchmark.java [file.csv] [kích thước...]
+ */
+public class JEP269_Benchmark {
+
+    static final int[] DEFAULT_SIZES = {2, 10, 100, 1_000, 10_000, 100_000, 1_000_000};
+    static final String DEFAULT_OUTPUT = "jep269-bench.csv";
+
+    static final int WARMUP_ROUNDS = 5;
+    static final int MEASURE_ROUNDS = 10;
+    static final long ROUND_NANOS = 50_000_000L; // mỗi vòng đo khoảng 50 ms
+    static final int PROBES = 1024;              // số key tra cứu, phải là lũy thừa của 2
+
+    // "Hố đen" giữ kết quả để JIT không loại bỏ phần code được đo
+    static volatile long sink;
+    static volatile Object sinkObject;
+
+    /** Dữ liệu dùng chung cho mọi cách làm ở cùng một kích thước. */
+    record Fixture(int size, String[] keys, Integer[] values, String[] probes) {
+
+        static Fixture of(int size) {
+            String[] keys = new String[size];
+            Integer[] values = new Integer[size];
+            for (int i = 0; i < size; i++) {
+                keys[i] = "k" + i;
+                values[i] = i;
+            }
+            // Key tra cứu lấy ngẫu nhiên trong [0, 2n): khoảng một nửa có trong collection
+            Random rnd = new Random(42);
+            String[] probes = new String[PROBES];
+            for (int i = 0; i < PROBES; i++) {
+                int k = rnd.nextInt(size * 2);
+                probes[i] = k < size ? keys[k] : "k" + k;
+            }
+            return new Fixture(size, keys, values, probes);
+        }
+    }
+
+    /** Một cách tạo collection cần so sánh: nhóm (List/Set/Map), tên, hàm tạo, hàm tra cứu và hàm duyệt. */
+    record Variant<C>(String kind, String name,
+                      Function<Fixture, C> build,
+                      BiPredicate<C, String> lookup,
+                      ToLongFunction<C> iterate) {}
+
+    static List<Variant<?>> variants() {
+        return List.of(
+                new Variant<List<String>>("List", "unmodifiableList(ArrayList)",
+                        f -> {
+                            List<String> list = new ArrayList<>(f.size());
+                            for (String k : f.keys()) list.add(k);
+                            return Collections.unmodifiableList(list);
+                        },
+                        List::contains, JEP269_Benchmark::sumLengths),
+                new Variant<List<String>>("List", "List.of",
+                        f -> List.of(f.keys()),
+                        List::contains, JEP269_Benchmark::sumLengths),
+
+                new Variant<Set<String>>("Set", "unmodifiableSet(HashSet)",
+                        f -> {
+                            Set<String> set = new HashSet<>();
+                            for (String k : f.keys()) set.add(k);
+                            return Collections.unmodifiableSet(set);
+                        },
+                        Set::contains, JEP269_Benchmark::sumLengths),
+                new Variant<Set<String>>("Set", "Set.of",
+                        f -> Set.of(f.keys()),
+                        Set::contains, JEP269_Benchmark::sumLengths),
+
+                new Variant<Map<String, Integer>>("Map", "unmodifiableMap(HashMap)",
+                        f -> {
+                            Map<String, Integer> map = new HashMap<>();
+                            for (int i = 0; i < f.size(); i++) map.put(f.keys()[i], f.values()[i]);
+                            return Collections.unmodifiableMap(map);
+                        },
+                        (m, k) -> m.get(k) != null, JEP269_Benchmark::sumValues),
+                // Map.of(k1, v1, ..., k10, v10) cho ra cùng lớp cài đặt với Map.ofEntries,
+                // nên một biến thể ofEntries là đủ cho mọi kích thước.
+                new Variant<Map<String, Integer>>("Map", "Map.ofEntries",
+                        f -> {
+                            @SuppressWarnings({"unchecked", "rawtypes"})
+                            Map.Entry<String, Integer>[] entries = new Map.Entry[f.size()];
+                            for (int i = 0; i < f.size(); i++) entries[i] = Map.entry(f.keys()[i], f.values()[i]);
+                            return Map.ofEntries(entries);
+                        },
+                        (m, k) -> m.get(k) != null, JEP269_Benchmark::sumValues));
+    }
+
+    public static void main(String[] args) throws IOException {
+        Path output = Path.of(args.length > 0 ? args[0] : DEFAULT_OUTPUT);
+        int[] sizes = args.length > 1
+                ? Arrays.stream(args, 1, args.length).mapToInt(Integer::parseInt).toArray()
+                : DEFAULT_SIZES;
+        String jdk = System.getProperty("java.version");
+
+        System.out.println("=== JEP 269: Đo hiệu năng collection bất biến (JDK " + jdk + ") ===");
+        try (PrintWriter csv = new PrintWriter(Files.newBufferedWriter(output))) {
+            csv.println("jdk,collection,impl,size,metric,value,unit");
+            for (int size : sizes) {
+                Fixture f = Fixture.of(size);
+                for (Variant<?> v : variants()) {
+                    runVariant(v, f, jdk, csv);
+                }
+            }
+        }
+        System.out.println("* Đã ghi kết quả ra " + output.toAbsolutePath());
+    }
+
+    private static <C> void runVariant(Variant<C> v, Fixture f, String jdk, PrintWriter csv) {
+        C built = v.build().apply(f);
+
+        double construct = measure(ops -> {
+            for (int i = 0; i < ops; i++) sinkObject = v.build().apply(f);
+            return ops;
+        });
+        double lookup = measure(ops -> {
+            long hits = 0;
+            for (int i = 0; i < ops; i++) {
+                if (v.lookup().test(built, f.probes()[i & (PROBES - 1)])) hits++;
+            }
+            return hits;
+        });
+        double iterate = measure(ops -> {
+            long sum = 0;
+            for (int i = 0; i < ops; i++) sum += v.iterate().applyAsLong(built);
+            return sum;
+        }) / f.size();
+        long retained = retainedBytes(v, f);
+
+        report(csv, jdk, v, f.size(), "construct", construct, "ns/op");
+        report(csv, jdk, v, f.size(), "lookup", lookup, "ns/op");
+        report(csv, jdk, v, f.size(), "iterate", iterate, "ns/element");
+        report(csv, jdk, v, f.size(), "retained", retained, "bytes");
+    }
+
+    /**
+     * Đo thời gian trung bình của một thao tác (ns/op).
+     * Trước hết nhân đôi số thao tác mỗi vòng cho đến khi một vòng kéo dài khoảng ROUND_NANOS,
+     * sau đó chạy các vòng khởi động (warmup) và lấy trung vị của các vòng đo.
+     */
+    static double measure(IntToLongFunction body) {
+        int ops = 1;
+        while (ops < (1 << 30) && timeOf(body, ops) < ROUND_NANOS / 4) ops <<= 1;
+
+        for (int i = 0; i < WARMUP_ROUNDS; i++) timeOf(body, ops);
+        double[] samples = new double[MEASURE_ROUNDS];
+        for (int i = 0; i < MEASURE_ROUNDS; i++) samples[i] = (double) timeOf(body, ops) / ops;
+        Arrays.sort(samples);
+        return samples[MEASURE_ROUNDS / 2];
+    }
+
+    private static long timeOf(IntToLongFunction body, int ops) {
+        long start = System.nanoTime();
+        sink += body.applyAsLong(ops);
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * Ước lượng heap giữ lại của một collection: tạo nhiều bản sao, so sánh heap đã dùng trước và sau.
+     * Key/value nằm sẵn trong Fixture nên không bị tính vào.
+     */
+    static <C> long retainedBytes(Variant<C> v, Fixture f) {
+        int copies = (int) Math.max(1, Math.min(1_000, 4_000_000L / f.size()));
+        Object[] hold = new Object[copies];
+        long before = usedHeap();
+        for (int i = 0; i < copies; i++) hold[i] = v.build().apply(f);
+        long after = usedHeap();
+        Reference.reachabilityFence(hold);
+        return Math.max(0, (after - before) / copies);
+    }
+
+    private static long usedHeap() {
+        Runtime rt = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) System.gc();
+        return rt.totalMemory() - rt.freeMemory();
+    }
+
+    private static long sumLengths(Iterable<String> items) {
+        long sum = 0;
+        for (String s : items) sum += s.length();
+        return sum;
+    }
+
+    private static long sumValues(Map<String, Integer> map) {
+        long sum = 0;
+        for (Map.Entry<String, Integer> e : map.entrySet()) sum += e.getValue();
+        return sum;
+    }
+
+    private static void report(PrintWriter csv, String jdk, Variant<?> v, int size,
+                               String metric, double value, String unit) {
+        System.out.printf("%-4s | %-28s | n=%-9d | %-9s = %12.2f %s%n",
+                v.kind(), v.name(), size, metric, value, unit);
+        // Locale.ROOT: với locale vi_VN, %.3f in ra "1,234" và làm hỏng cột CSV
+        csv.printf(Locale.ROOT, "%s,%s,%s,%d,%s,%.3f,%s%n", jdk, v.kind(), v.name(), size, metric, value, unit);
+    }
+}
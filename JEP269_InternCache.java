@@ -0,0 +1,320 @@
+import com.sun.management.ThreadMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntFunction;
+
+/**
+ * Bộ nhớ đệm "intern" cho List/Set bất biến có nội dung lặp lại, đặt cạnh các ví dụ của JEP269_MinhTuan.
+ *
+ * Trong dịch vụ thật, cùng một List.of("Java", "C++", "Python") được tạo hàng triệu lần mỗi giờ.
+ * Vì List.of/Set.of là bất biến nên có thể dùng chung một thể hiện duy nhất cho mỗi nội dung,
+ * giống String.intern(). CollectionInterner:
+ * - An toàn đa luồng: chia thành nhiều segment, mỗi segment một khóa riêng
+ * - Giữ tham chiếu yếu (weak): thể hiện không còn ai dùng sẽ được GC thu hồi và tự xóa khỏi cache
+ * - Có giới hạn kích thước, loại bỏ theo LRU, nên không bao giờ rò rỉ bộ nhớ
+ * - Đếm số lần trúng (hit), trượt (miss), bị loại (eviction) và bị GC thu hồi (collected)
+ * Các ràng buộc của List.of/Set.of vẫn giữ nguyên: không null, Set không trùng lặp.
+ */
+public class JEP269_InternCache {
+
+    // "Hố đen" để JIT không loại bỏ phần cấp phát được đo
+    static volatile Object sink;
+
+    public static void main(String[] args) {
+        System.out.println("--- 1. Dùng chung thể hiện cho cùng nội dung ---");
+        demoInterning();
+
+        System.out.println("\n--- 2. Kiểm tra các ràng buộc giống List.of/Set.of ---");
+        demoRestrictions();
+
+        System.out.println("\n--- 3. So sánh tốc độ cấp phát với List.of/Set.of ---");
+        int ops = args.length > 0 ? Integer.parseInt(args[0]) : 10_000_000;
+        compareAllocation(ops);
+    }
+
+    public static void demoInterning() {
+        CollectionInterner interner = new CollectionInterner(1_000);
+
+        List<String> a = interner.listOf("Java", "C++", "Python");
+        List<String> b = interner.listOf("Java", "C++", "Python");
+        System.out.println("List: a == b ? " + (a == b) + " (List.of: "
+                + (List.of("Java", "C++", "Python") == List.of("Java", "C++", "Python")) + ")");
+
+        Set<String> s1 = interner.setOf("Red", "Green", "Blue");
+        Set<String> s2 = interner.intern(Set.of("Blue", "Red", "Green"));
+        System.out.println("Set: s1 == s2 ? " + (s1 == s2) + " (thứ tự khác nhau vẫn là cùng nội dung)");
+
+        System.out.println("Thống kê: " + interner.stats());
+    }
+
+    public static void demoRestrictions() {
+        CollectionInterner interner = new CollectionInterner(1_000);
+
+        // 1. Thể hiện dùng chung vẫn bất biến (sẽ ném lỗi UnsupportedOperationException)
+        try {
+            interner.listOf("a", "b", "c").add("d");
+        } catch (UnsupportedOperationException e) {
+            System.out.println("Bắt lỗi: Không thể thêm phần tử. List là bất biến.");
+        }
+
+        // 2. Thử thêm phần tử null (sẽ ném lỗi NullPointerException)
+        try {
+            interner.listOf("a", null, "c");
+        } catch (NullPointerException e) {
+            System.out.println("Bắt lỗi: Không thể tạo List chứa phần tử null.");
+        }
+
+        // 3. Set trùng lặp (sẽ ném lỗi IllegalArgumentException), kể cả khi đã có Set cùng kích thước trong cache
+        interner.setOf("A", "B", "C");
+        try {
+            interner.setOf("A", "B", "A");
+        } catch (IllegalArgumentException e) {
+            System.out.println("Bắt lỗi: Không thể tạo Set với phần tử trùng lặp.");
+        }
+    }
+
+    /**
+     * Đo số byte cấp phát và thời gian cho mỗi lần "tạo" collection, với một tập nhỏ nội dung lặp lại.
+     */
+    public static void compareAllocation(int ops) {
+        String[][] contents = {
+                {"Java", "C++", "Python"},
+                {"Red", "Green", "Blue"},
+                {"One", "Two"},
+                {"Go", "Rust", "Kotlin", "Scala"},
+        };
+        CollectionInterner interner = new CollectionInterner(1_000);
+
+        measure("List.of                ", ops, i -> List.of(contents[i & 3]));
+        measure("CollectionInterner.list", ops, i -> interner.listOf(contents[i & 3]));
+        measure("Set.of                 ", ops, i -> Set.of(contents[i & 3]));
+        measure("CollectionInterner.set ", ops, i -> interner.setOf(contents[i & 3]));
+
+        System.out.println("Thống kê: " + interner.stats());
+        System.out.println("* Nhận xét: Khi trúng cache chỉ còn cấp phát key tạm, và mọi nơi giữ lâu dài dùng chung");
+        System.out.println("  một thể hiện. Đổi lại mỗi lần tra cứu chậm hơn List.of/Set.of với collection rất nhỏ.");
+    }
+
+    private static void measure(String name, int ops, IntFunction<Object> body) {
+        ThreadMXBean mx = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long tid = Thread.currentThread().threadId();
+        for (int i = 0; i < ops / 10; i++) sink = body.apply(i); // khởi động JIT
+
+        long bytesBefore = mx.getThreadAllocatedBytes(tid);
+        long start = System.nanoTime();
+        for (int i = 0; i < ops; i++) sink = body.apply(i);
+        long elapsed = System.nanoTime() - start;
+        long bytes = mx.getThreadAllocatedBytes(tid) - bytesBefore;
+        System.out.printf("%s: %6.1f ns/op, %6.1f byte/op%n", name, (double) elapsed / ops, (double) bytes / ops);
+    }
+}
+
+/**
+ * Cache chuẩn hóa (canonicalizing) cho List/Set bất biến: mỗi nội dung chỉ có một thể hiện.
+ *
+ * Mỗi segment là một LinkedHashMap theo thứ tự truy cập (LRU), khóa bằng synchronized.
+ * Key và value đều là cùng một WeakKey (tham chiếu yếu tới collection); khi tra cứu dùng ProbeKey
+ * bọc trực tiếp mảng phần tử của người gọi nên trúng cache không phải tạo collection mới.
+ */
+final class CollectionInterner {
+
+    private static final int SEGMENTS = 16;
+
+    /** Thống kê tại một thời điểm. */
+    record Stats(long hits, long misses, long evictions, long collected, int size) {
+        double hitRate() {
+            long total = hits + misses;
+            return total == 0 ? 0 : (double) hits / total;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("hits=%d, misses=%d, hitRate=%.2f%%, evictions=%d, collected=%d, size=%d",
+                    hits, misses, hitRate() * 100, evictions, collected, size);
+        }
+    }
+
+    private final Segment[] segments = new Segment[SEGMENTS];
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder collected = new LongAdder();
+
+    /**
+     * @param maxSize số collection tối đa được giữ trong cache (chia đều cho các segment)
+     */
+    CollectionInterner(int maxSize) {
+        if (maxSize < SEGMENTS) throw new IllegalArgumentException("maxSize < " + SEGMENTS + ": " + maxSize);
+        for (int i = 0; i < SEGMENTS; i++) segments[i] = new Segment(maxSize / SEGMENTS);
+    }
+
+    // lookup() chỉ đọc mảng elements (rồi chép vào List.of/Set.of), không ghi và không giữ lại,
+    // nên truyền mảng varargs tiếp đi không gây heap pollution
+    @SafeVarargs
+    @SuppressWarnings({"unchecked", "varargs"})
+    public final <E> List<E> listOf(E... elements) {
+        return (List<E>) lookup(false, elements);
+    }
+
+    @SafeVarargs
+    @SuppressWarnings({"unchecked", "varargs"})
+    public final <E> Set<E> setOf(E... elements) {
+        return (Set<E>) lookup(true, elements);
+    }
+
+    @SuppressWarnings("unchecked")
+    public <E> List<E> intern(List<E> list) {
+        return (List<E>) lookup(false, list.toArray());
+    }
+
+    @SuppressWarnings("unchecked")
+    public <E> Set<E> intern(Set<E> set) {
+        return (Set<E>) lookup(true, set.toArray());
+    }
+
+    public Stats stats() {
+        int size = 0;
+        for (Segment s : segments) {
+            synchronized (s) {
+                s.purge();
+                size += s.map.size();
+            }
+        }
+        return new Stats(hits.sum(), misses.sum(), evictions.sum(), collected.sum(), size);
+    }
+
+    private Collection<?> lookup(boolean isSet, Object[] elements) {
+        int hash = contentHash(isSet, elements);
+        Segment segment = segments[(hash ^ (hash >>> 16)) & (SEGMENTS - 1)];
+        ProbeKey probe = new ProbeKey(isSet, elements, hash);
+        synchronized (segment) {
+            segment.purge();
+            WeakKey found = segment.map.get(probe);
+            Collection<?> c = found == null ? null : found.get();
+            if (c != null) {
+                hits.increment();
+                return c;
+            }
+        }
+        // Tạo ngoài khóa: List.of/Set.of kiểm tra null/trùng lặp và có thể ném lỗi
+        misses.increment();
+        Collection<?> created = isSet ? Set.of(elements) : List.of(elements);
+        synchronized (segment) {
+            WeakKey found = segment.map.get(probe);
+            Collection<?> existing = found == null ? null : found.get();
+            if (existing != null) return existing; // luồng khác vừa thêm cùng nội dung
+            WeakKey key = new WeakKey(isSet, created, hash, segment.queue);
+            segment.map.put(key, key);
+        }
+        return created;
+    }
+
+    /** Hash theo nội dung: List phụ thuộc thứ tự, Set thì không (tổng hash như Set.hashCode()). */
+    private static int contentHash(boolean isSet, Object[] elements) {
+        int h = isSet ? 0 : 1;
+        for (Object e : elements) {
+            int eh = Objects.requireNonNull(e).hashCode();
+            h = isSet ? h + eh : 31 * h + eh;
+        }
+        return isSet ? ~h : h;
+    }
+
+    private final class Segment {
+        final ReferenceQueue<Collection<?>> queue = new ReferenceQueue<>();
+        final LinkedHashMap<Object, WeakKey> map;
+
+        Segment(int capacity) {
+            this.map = new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Object, WeakKey> eldest) {
+                    if (size() <= capacity) return false;
+                    evictions.increment();
+                    return true;
+                }
+            };
+        }
+
+        /** Xóa các entry có collection đã bị GC thu hồi. Gọi khi đang giữ khóa segment. */
+        void purge() {
+            Object ref;
+            while ((ref = queue.poll()) != null) {
+                if (map.remove(ref) != null) collected.increment();
+            }
+        }
+    }
+
+    /** Key được lưu trong map: tham chiếu yếu tới collection dùng chung, hash tính sẵn. */
+    private static final class WeakKey extends WeakReference<Collection<?>> {
+        final boolean isSet;
+        final int hash;
+
+        WeakKey(boolean isSet, Collection<?> c, int hash, ReferenceQueue<Collection<?>> queue) {
+            super(c, queue);
+            this.isSet = isSet;
+            this.hash = hash;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (o == this) return true;
+            if (o instanceof ProbeKey p) return p.equals(this);
+            if (!(o instanceof WeakKey other) || other.hash != hash || other.isSet != isSet) return false;
+            Collection<?> c = get();
+            return c != null && c.equals(other.get());
+        }
+    }
+
+    /** Key tạm thời khi tra cứu, bọc mảng phần tử của người gọi (không sao chép). */
+    private static final class ProbeKey {
+        final boolean isSet;
+        final Object[] elements;
+        final int hash;
+
+        ProbeKey(boolean isSet, Object[] elements, int hash) {
+            this.isSet = isSet;
+            this.elements = elements;
+            this.hash = hash;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof WeakKey k) || k.hash != hash || k.isSet != isSet) return false;
+            Collection<?> c = k.get();
+            if (c == null || c.size() != elements.length) return false;
+            if (!isSet) {
+                int i = 0;
+                for (Object e : c) {
+                    if (!e.equals(elements[i++])) return false;
+                }
+                return true;
+            }
+            // Với Set: mọi phần tử phải có mặt, và mảng không được có phần tử trùng
+            // (nếu không {A, B, A} có thể khớp nhầm một Set 3 phần tử khác)
+            for (int i = 0; i < elements.length; i++) {
+                if (!c.contains(elements[i])) return false;
+                for (int j = 0; j < i; j++) {
+                    if (elements[j].equals(elements[i])) return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,486 @@
+import java.io.IOException;
+import java.lang.ref.Reference;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * "Đóng băng" một Map bất biến kiểu Map.of ra file, rồi dùng lại trực tiếp từ file qua memory-mapping.
+ *
+ * Các Map trong JEP269_MinhTuan.demoPostJEP269() được dựng lại trên heap mỗi lần khởi động.
+ * Với bảng tra cứu hàng chục triệu phần tử, việc đó làm khởi động chậm và tăng thời gian dừng của GC.
+ * Ở đây Map được ghi một lần ra file với hàm băm hoàn hảo (minimal perfect hash),
+ * sau đó MappedSnapshotMap.open() chỉ map file vào bộ nhớ (O(1), gần như không tốn heap)
+ * và phục vụ get() bằng cách đọc thẳng từ MappedByteBuffer.
+ *
+ * Các ràng buộc giữ nguyên như Map.of:
+ * 1. Bất biến (put/remove/clear... ném UnsupportedOperationException)
+ * 2. Không chấp nhận null (key/value null khi ghi, get(null) đều ném NullPointerException)
+ * 3. Không chấp nhận key trùng lặp (ném IllegalArgumentException khi ghi)
+ */
+public class JEP269_MappedSnapshot {
+
+    public static void main(String[] args) throws IOException {
+        System.out.println("--- 1. Ghi Map.of ra file và mở lại qua memory-mapping ---");
+        demoRoundTrip();
+
+        System.out.println("\n--- 2. Kiểm tra các ràng buộc giống Map.of ---");
+        demoRestrictions();
+
+        System.out.println("\n--- 3. Thời gian mở và heap sử dụng với bảng lớn ---");
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        demoLargeTable(size);
+    }
+
+    public static void demoRoundTrip() throws IOException {
+        Path file = Files.createTempFile("jep269-", ".snap");
+        try {
+            MappedSnapshotMap.write(Map.of("One", 1, "Two", 2, "Ba", 3), file);
+            Map<String, Integer> map = MappedSnapshotMap.open(file);
+            System.out.println("Map (từ file): " + map);
+            System.out.println("get(\"Two\") = " + map.get("Two") + ", get(\"Bốn\") = " + map.get("Bốn"));
+            System.out.println("equals(Map.of(...)) = " + map.equals(Map.of("One", 1, "Two", 2, "Ba", 3)));
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    public static void demoRestrictions() throws IOException {
+        Path file = Files.createTempFile("jep269-", ".snap");
+        try {
+            MappedSnapshotMap.write(Map.of("Key1", 1), file);
+            Map<String, Integer> map = MappedSnapshotMap.open(file);
+
+            // 1. Thử thay đổi (sẽ ném lỗi UnsupportedOperationException)
+            try {
+                map.put("Key2", 2);
+            } catch (UnsupportedOperationException e) {
+                System.out.println("Bắt lỗi: Không thể thêm phần tử. Map là bất biến.");
+            }
+
+            // 2. Thử tra cứu null (sẽ ném lỗi NullPointerException)
+            try {
+                map.get(null);
+            } catch (NullPointerException e) {
+                System.out.println("Bắt lỗi: Không thể tra cứu key null.");
+            }
+
+            // 3. Thử ghi key trùng lặp (sẽ ném lỗi IllegalArgumentException)
+            try {
+                MappedSnapshotMap.write(List.of(Map.entry("Key1", 1), Map.entry("Key1", 2)), file);
+            } catch (IllegalArgumentException e) {
+                System.out.println("Bắt lỗi: " + e.getMessage());
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    public static void demoLargeTable(int size) throws IOException {
+        String[] keys = new String[size];
+        int[] values = new int[size];
+        for (int i = 0; i < size; i++) {
+            keys[i] = "key-" + i;
+            values[i] = i;
+        }
+
+        Path file = Files.createTempFile("jep269-", ".snap");
+        try {
+            long t0 = System.nanoTime();
+            MappedSnapshotMap.write(keys, values, file);
+            long t1 = System.nanoTime();
+            System.out.printf("Ghi %,d phần tử: %d ms, file %,d byte%n",
+                    size, (t1 - t0) / 1_000_000, Files.size(file));
+
+            long heapBefore = usedHeap();
+            long t2 = System.nanoTime();
+            Map<String, Integer> mapped = MappedSnapshotMap.open(file);
+            long t3 = System.nanoTime();
+            long heapAfter = usedHeap();
+            System.out.printf("Mở file: %.3f ms, heap tăng %,d byte%n",
+                    (t3 - t2) / 1e6, Math.max(0, heapAfter - heapBefore));
+
+            heapBefore = usedHeap();
+            long t4 = System.nanoTime();
+            @SuppressWarnings({"unchecked", "rawtypes"})
+            Map.Entry<String, Integer>[] entries = new Map.Entry[size];
+            for (int i = 0; i < size; i++) entries[i] = Map.entry(keys[i], values[i]);
+            Map<String, Integer> onHeap = Map.ofEntries(entries);
+            long t5 = System.nanoTime();
+            heapAfter = usedHeap();
+            System.out.printf("So sánh Map.ofEntries: dựng %d ms, heap tăng %,d byte (chưa tính key)%n",
+                    (t5 - t4) / 1_000_000, Math.max(0, heapAfter - heapBefore));
+
+            long check = 0;
+            long t6 = System.nanoTime();
+            for (String k : keys) check += mapped.get(k);
+            long t7 = System.nanoTime();
+            System.out.printf("Tra cứu trên file: %.1f ns/op (checksum %d)%n", (double) (t7 - t6) / size, check);
+            Reference.reachabilityFence(onHeap);
+        } finally {
+            Files.deleteIfExists(file);
+        }
+        System.out.println("* Nhận xét: Mở file gần như tức thời và không phụ thuộc số phần tử; dữ liệu nằm ngoài heap.");
+    }
+
+    private static long usedHeap() {
+        Runtime rt = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) System.gc();
+        return rt.totalMemory() - rt.freeMemory();
+    }
+}
+
+/**
+ * Map<String, Integer> bất biến, chỉ đọc, nằm trong một file được memory-map.
+ *
+ * Định dạng file (little-endian):
+ * <pre>
+ *   header   : magic (int) | version (int) | size n (int) | dự phòng (int)
+ *   buckets  : int[n]   tham số của hàm băm hoàn hảo cho từng bucket
+ *   slots    : n x (keyOffset int | keyLength int | value int)
+ *   keys     : các key mã hóa UTF-8 nối liền nhau
+ * </pre>
+ *
+ * Hàm băm hoàn hảo theo kiểu "hash and displace": key thuộc bucket hash(0, key) % n.
+ * Với bucket có nhiều key, buckets[b] = d > 0 là seed sao cho hash(d, key) % n rơi vào các slot trống;
+ * với bucket chỉ có một key, buckets[b] = -(slot + 1) trỏ thẳng tới slot. Mỗi lần get() chỉ đọc
+ * một ô bucket, một slot và so sánh key, không cấp phát gì (trừ key không phải ASCII).
+ *
+ * Dùng MappedByteBuffer nên file bị giới hạn dưới 2 GB.
+ */
+final class MappedSnapshotMap extends AbstractMap<String, Integer> {
+
+    private static final int MAGIC = 0x4A4D4150; // "JMAP"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 16;
+    private static final int SLOT_BYTES = 12;
+
+    private final ByteBuffer buf;
+    private final int size;
+    private final int slotsOffset;
+    private Set<Map.Entry<String, Integer>> entrySet;
+
+    private MappedSnapshotMap(ByteBuffer buf, int size) {
+        this.buf = buf;
+        this.size = size;
+        this.slotsOffset = HEADER_BYTES + size * 4;
+    }
+
+    // ===================== Ghi file =====================
+
+    public static void write(Map<String, Integer> source, Path file) throws IOException {
+        write(source.entrySet(), file);
+    }
+
+    public static void write(Collection<? extends Map.Entry<String, Integer>> entries, Path file) throws IOException {
+        String[] keys = new String[entries.size()];
+        int[] values = new int[keys.length];
+        int i = 0;
+        for (Map.Entry<String, Integer> e : entries) {
+            keys[i] = e.getKey();
+            values[i] = Objects.requireNonNull(e.getValue(), "value");
+            i++;
+        }
+        write(keys, values, file);
+    }
+
+    /**
+     * Ghi keys[i] -> values[i] ra file.
+     * @throws NullPointerException nếu có key null
+     * @throws IllegalArgumentException nếu có key trùng lặp hoặc dữ liệu vượt quá 2 GB
+     */
+    public static void write(String[] keys, int[] values, Path file) throws IOException {
+        int n = keys.length;
+        if (values.length != n) {
+            throw new IllegalArgumentException("keys.length != values.length: " + n + " != " + values.length);
+        }
+        byte[][] encoded = new byte[n][];
+        long keyBytes = 0;
+        for (int i = 0; i < n; i++) {
+            encoded[i] = Objects.requireNonNull(keys[i], "key").getBytes(StandardCharsets.UTF_8);
+            keyBytes += encoded[i].length;
+        }
+        long total = HEADER_BYTES + (long) n * (4 + SLOT_BYTES) + keyBytes;
+        if (total > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("snapshot too large: " + total + " bytes");
+        }
+
+        int[] buckets = new int[n];
+        int[] slotToKey = buildPerfectHash(keys, buckets);
+
+        ByteBuffer out = ByteBuffer.allocate((int) total).order(ByteOrder.LITTLE_ENDIAN);
+        out.putInt(MAGIC).putInt(VERSION).putInt(n).putInt(0);
+        for (int b : buckets) out.putInt(b);
+        int keyOffset = HEADER_BYTES + n * (4 + SLOT_BYTES);
+        for (int slot = 0; slot < n; slot++) {
+            int k = slotToKey[slot];
+            out.putInt(keyOffset).putInt(encoded[k].length).putInt(values[k]);
+            keyOffset += encoded[k].length;
+        }
+        for (int slot = 0; slot < n; slot++) out.put(encoded[slotToKey[slot]]);
+        out.flip();
+
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (out.hasRemaining()) ch.write(out);
+            ch.force(true);
+        }
+    }
+
+    /**
+     * Dựng hàm băm hoàn hảo tối thiểu: ghi tham số vào buckets, trả về mảng slot -> chỉ số key.
+     * Xử lý bucket lớn trước (khó xếp nhất), bucket một key sau cùng lấp vào các slot còn trống.
+     */
+    private static int[] buildPerfectHash(String[] keys, int[] buckets) {
+        int n = keys.length;
+        int[] slotToKey = new int[n];
+        Arrays.fill(slotToKey, -1);
+        if (n == 0) return slotToKey;
+
+        // Gom key theo bucket bằng counting sort
+        int[] bucketOf = new int[n];
+        int[] start = new int[n + 1];
+        for (int i = 0; i < n; i++) {
+            bucketOf[i] = index(hash(0, keys[i]), n);
+            start[bucketOf[i] + 1]++;
+        }
+        for (int b = 0; b < n; b++) start[b + 1] += start[b];
+        int[] members = new int[n];
+        int[] fill = Arrays.copyOf(start, n);
+        for (int i = 0; i < n; i++) members[fill[bucketOf[i]]++] = i;
+
+        // Sắp xếp bucket theo số key giảm dần (counting sort, bỏ qua bucket rỗng)
+        int maxBucket = 0;
+        for (int b = 0; b < n; b++) maxBucket = Math.max(maxBucket, start[b + 1] - start[b]);
+        int[] bySize = new int[maxBucket + 2];
+        for (int b = 0; b < n; b++) bySize[maxBucket - (start[b + 1] - start[b]) + 1]++;
+        for (int s = 0; s <= maxBucket; s++) bySize[s + 1] += bySize[s];
+        int[] order = new int[n];
+        for (int b = 0; b < n; b++) order[bySize[maxBucket - (start[b + 1] - start[b])]++] = b;
+
+        int[] tried = new int[n];
+        int next = 0;
+        for (int b : order) {
+            int from = start[b], to = start[b + 1];
+            if (to - from <= 1) break;
+            for (int i = from; i < to; i++) {
+                for (int j = from; j < i; j++) {
+                    if (keys[members[i]].equals(keys[members[j]])) {
+                        throw new IllegalArgumentException("duplicate key: " + keys[members[i]]);
+                    }
+                }
+            }
+            for (int d = 1; ; d++) {
+                int i = from;
+                for (; i < to; i++) {
+                    int slot = index(hash(d, keys[members[i]]), n);
+                    if (slotToKey[slot] >= 0 || tried[slot] == d) break;
+                    tried[slot] = d;
+                }
+                if (i == to) {
+                    for (i = from; i < to; i++) slotToKey[index(hash(d, keys[members[i]]), n)] = members[i];
+                    buckets[b] = d;
+                    break;
+                }
+                // Xóa dấu của lần thử này (d tăng dần nên chỉ cần đặt lại các slot đã đánh dấu)
+                for (int j = from; j < i; j++) tried[index(hash(d, keys[members[j]]), n)] = 0;
+            }
+        }
+
+        // Bucket một key: đặt thẳng vào slot trống tiếp theo
+        for (int b : order) {
+            if (start[b + 1] - start[b] != 1) continue;
+            while (slotToKey[next] >= 0) next++;
+            slotToKey[next] = members[start[b]];
+            buckets[b] = -(next + 1);
+        }
+        return slotToKey;
+    }
+
+    /** FNV-1a trên các ký tự UTF-16 của key, với seed, rồi trộn bit cho đều. */
+    static int hash(int seed, String key) {
+        int h = 0x811C9DC5 ^ (seed * 0x9E3779B9);
+        for (int i = 0; i < key.length(); i++) {
+            h ^= key.charAt(i);
+            h *= 0x01000193;
+        }
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        return h ^ (h >>> 16);
+    }
+
+    private static int index(int hash, int n) {
+        return (hash & 0x7fffffff) % n;
+    }
+
+    // ===================== Đọc file =====================
+
+    /**
+     * Map file vào bộ nhớ. Chỉ kiểm tra header nên thời gian không phụ thuộc số phần tử.
+     * @throws IOException nếu file không đúng định dạng
+     */
+    public static Map<String, Integer> open(Path file) throws IOException {
+        MappedByteBuffer mapped;
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (ch.size() > Integer.MAX_VALUE) throw new IOException("snapshot too large: " + file);
+            mapped = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+        }
+        ByteBuffer buf = mapped.order(ByteOrder.LITTLE_ENDIAN);
+        if (buf.capacity() < HEADER_BYTES || buf.getInt(0) != MAGIC) {
+            throw new IOException("not a snapshot file: " + file);
+        }
+        if (buf.getInt(4) != VERSION) {
+            throw new IOException("unsupported snapshot version " + buf.getInt(4) + ": " + file);
+        }
+        int n = buf.getInt(8);
+        if (n < 0 || HEADER_BYTES + (long) n * (4 + SLOT_BYTES) > buf.capacity()) {
+            throw new IOException("corrupt snapshot header: " + file);
+        }
+        return new MappedSnapshotMap(buf, n);
+    }
+
+    /** Trả về slot chứa key, hoặc -1 nếu không có. */
+    private int find(Object key) {
+        String k = (String) Objects.requireNonNull(key);
+        if (size == 0) return -1;
+        int b = buf.getInt(HEADER_BYTES + index(hash(0, k), size) * 4);
+        int slot;
+        if (b < 0) {
+            slot = -b - 1;
+        } else if (b > 0) {
+            slot = index(hash(b, k), size);
+        } else {
+            return -1; // bucket rỗng
+        }
+        return keyEquals(slot, k) ? slot : -1;
+    }
+
+    private boolean keyEquals(int slot, String key) {
+        int pos = buf.getInt(slotsOffset + slot * SLOT_BYTES);
+        int end = pos + buf.getInt(slotsOffset + slot * SLOT_BYTES + 4);
+        for (int i = 0; i < key.length(); i++) {
+            char c = key.charAt(i);
+            if (c >= 0x80) {
+                // Ký tự ngoài ASCII: mã hóa phần còn lại rồi so sánh một lần
+                byte[] rest = key.substring(i).getBytes(StandardCharsets.UTF_8);
+                if (rest.length != end - pos) return false;
+                for (byte r : rest) {
+                    if (buf.get(pos++) != r) return false;
+                }
+                return true;
+            }
+            if (pos >= end || buf.get(pos++) != (byte) c) return false;
+        }
+        return pos == end;
+    }
+
+    private String keyAt(int slot) {
+        byte[] bytes = new byte[buf.getInt(slotsOffset + slot * SLOT_BYTES + 4)];
+        buf.get(buf.getInt(slotsOffset + slot * SLOT_BYTES), bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private int valueAt(int slot) {
+        return buf.getInt(slotsOffset + slot * SLOT_BYTES + 8);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        if (key != null && !(key instanceof String)) return false;
+        return find(key) >= 0;
+    }
+
+    @Override
+    public boolean containsValue(Object value) {
+        Objects.requireNonNull(value);
+        if (!(value instanceof Integer v)) return false;
+        for (int slot = 0; slot < size; slot++) {
+            if (valueAt(slot) == v) return true;
+        }
+        return false;
+    }
+
+    @Override
+    public Integer get(Object key) {
+        if (key != null && !(key instanceof String)) return null;
+        int slot = find(key);
+        return slot >= 0 ? valueAt(slot) : null;
+    }
+
+    @Override
+    public Set<Map.Entry<String, Integer>> entrySet() {
+        Set<Map.Entry<String, Integer>> es = entrySet;
+        if (es == null) {
+            entrySet = es = new AbstractSet<>() {
+                @Override
+                public Iterator<Map.Entry<String, Integer>> iterator() {
+                    return new Iterator<>() {
+                        private int slot;
+
+                        @Override
+                        public boolean hasNext() {
+                            return slot < size;
+                        }
+
+                        @Override
+                        public Map.Entry<String, Integer> next() {
+                            if (slot >= size) throw new NoSuchElementException();
+                            Map.Entry<String, Integer> e = Map.entry(keyAt(slot), valueAt(slot));
+                            slot++;
+                            return e;
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return size;
+                }
+            };
+        }
+        return es;
+    }
+
+    // Mọi phương thức thay đổi đều bị chặn, giống ImmutableCollections của JDK
+    private static UnsupportedOperationException uoe() {
+        return new UnsupportedOperationException();
+    }
+
+    @Override public Integer put(String key, Integer value) { throw uoe(); }
+    @Override public Integer remove(Object key) { throw uoe(); }
+    @Override public void putAll(Map<? extends String, ? extends Integer> m) { throw uoe(); }
+    @Override public void clear() { throw uoe(); }
+    @Override public void replaceAll(BiFunction<? super String, ? super Integer, ? extends Integer> f) { throw uoe(); }
+    @Override public Integer putIfAbsent(String key, Integer value) { throw uoe(); }
+    @Override public boolean remove(Object key, Object value) { throw uoe(); }
+    @Override public boolean replace(String key, Integer oldValue, Integer newValue) { throw uoe(); }
+    @Override public Integer replace(String key, Integer value) { throw uoe(); }
+    @Override public Integer computeIfAbsent(String key, Function<? super String, ? extends Integer> f) { throw uoe(); }
+    @Override public Integer computeIfPresent(String key, BiFunction<? super String, ? super Integer, ? extends Integer> f) { throw uoe(); }
+    @Override public Integer compute(String key, BiFunction<? super String, ? super Integer, ? extends Integer> f) { throw uoe(); }
+    @Override public Integer merge(String key, Integer value, BiFunction<? super Integer, ? super Integer, ? extends Integer> f) { throw uoe(); }
+}
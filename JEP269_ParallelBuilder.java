@@ -0,0 +1,497 @@
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.IntConsumer;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.stream.Collector;
+import java.util.stream.IntStream;
+
+/**
+ * Dựng Set/Map bất biến rất lớn song song trên ForkJoinPool, bổ sung cho các ví dụ trong JEP269_MinhTuan.
+ *
+ * Set.of/Set.copyOf/Map.ofEntries chạy trên một luồng: băm, kiểm tra trùng lặp
+ * (nhánh IllegalArgumentException trong demoImmutabilityAndRestrictions()) và chèn đều tuần tự.
+ * ParallelImmutableBuilder chia việc thành 3 pha, pha nào cũng chạy song song:
+ * 1. Băm từng phần tử và đếm số phần tử rơi vào mỗi phân vùng (theo các bit cao của hash)
+ * 2. Phân phối chỉ số phần tử về đúng phân vùng của nó
+ * 3. Mỗi phân vùng tự chèn vào vùng riêng của một bảng Object[] chung và tự kiểm tra trùng lặp
+ * Kết quả là một Set/Map bất biến gọn (một mảng Object[], không có node hay entry).
+ * Khi gặp phần tử trùng lặp, mọi phân vùng khác dừng ngay và ném DuplicateElementException
+ * (là IllegalArgumentException) kèm phần tử và hai vị trí của nó trong dữ liệu đầu vào.
+ */
+public class JEP269_ParallelBuilder {
+
+    public static void main(String[] args) {
+        System.out.println("--- 1. Collector dựng Set/Map bất biến song song ---");
+        demoCollectors();
+
+        System.out.println("\n--- 2. Kiểm tra các ràng buộc giống Set.of/Map.of ---");
+        demoRestrictions();
+
+        System.out.println("\n--- 3. So sánh tốc độ với Set.copyOf(list) trên 1, 4, 16 luồng ---");
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 4_000_000;
+        benchmark(size, new int[] {1, 4, 16});
+    }
+
+    public static void demoCollectors() {
+        Set<String> set = IntStream.range(0, 10).mapToObj(i -> "item-" + i)
+                .collect(ParallelImmutableBuilder.toImmutableSet());
+        System.out.println("Set: " + set.size() + " phần tử, chứa item-3? " + set.contains("item-3"));
+
+        Map<String, Integer> map = List.of("Java", "C++", "Python").stream()
+                .collect(ParallelImmutableBuilder.toImmutableMap(s -> s, String::length));
+        System.out.println("Map: " + map);
+    }
+
+    public static void demoRestrictions() {
+        // 1. Thử thay đổi (sẽ ném lỗi UnsupportedOperationException)
+        try {
+            ParallelImmutableBuilder.setOf(List.of("a", "b"), ForkJoinPool.commonPool()).add("c");
+        } catch (UnsupportedOperationException e) {
+            System.out.println("Bắt lỗi: Không thể thêm phần tử. Set là bất biến.");
+        }
+
+        // 2. Thử thêm phần tử null (sẽ ném lỗi NullPointerException)
+        try {
+            ParallelImmutableBuilder.setOf(Arrays.asList("a", null), ForkJoinPool.commonPool());
+        } catch (NullPointerException e) {
+            System.out.println("Bắt lỗi: Không thể tạo Set chứa phần tử null.");
+        }
+
+        // 3. Phần tử trùng lặp giữa một triệu phần tử: dừng sớm và báo vị trí
+        List<String> big = new ArrayList<>(IntStream.range(0, 1_000_000).mapToObj(i -> "x" + i).toList());
+        big.set(765_432, "x12345");
+        try {
+            ParallelImmutableBuilder.setOf(big, ForkJoinPool.commonPool());
+        } catch (DuplicateElementException e) {
+            System.out.println("Bắt lỗi: " + e.getMessage());
+        }
+    }
+
+    public static void benchmark(int size, int[] parallelisms) {
+        List<String> input = IntStream.range(0, size).mapToObj(i -> "element-" + i).toList();
+        input.forEach(String::hashCode); // tính sẵn hash của String cho công bằng giữa hai cách
+        System.out.println("Số lõi CPU của máy: " + Runtime.getRuntime().availableProcessors()
+                + ", kích thước: " + size);
+
+        long baseline = bestOf(5, () -> Set.copyOf(input));
+        System.out.printf("Set.copyOf(list)           : %6d ms%n", baseline / 1_000_000);
+
+        for (int p : parallelisms) {
+            ForkJoinPool pool = new ForkJoinPool(p);
+            try {
+                long t = bestOf(5, () -> ParallelImmutableBuilder.setOf(input, pool));
+                System.out.printf("ParallelImmutableBuilder p=%-2d: %6d ms (nhanh gấp %.2f lần)%n",
+                        p, t / 1_000_000, (double) baseline / t);
+            } finally {
+                pool.shutdown();
+            }
+        }
+        System.out.println("* Nhận xét: Hệ số tăng tốc bị giới hạn bởi số lõi thật và băng thông bộ nhớ.");
+    }
+
+    private static long bestOf(int rounds, Supplier<?> task) {
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < rounds; i++) {
+            long start = System.nanoTime();
+            Object result = task.get();
+            best = Math.min(best, System.nanoTime() - start);
+            Objects.requireNonNull(result);
+        }
+        return best;
+    }
+}
+
+/**
+ * Ngoại lệ khi dựng Set/Map gặp phần tử (hoặc key) trùng lặp.
+ * Là IllegalArgumentException để giữ cùng hợp đồng với Set.of/Map.of.
+ */
+class DuplicateElementException extends IllegalArgumentException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final transient Object element;
+    private final int firstIndex;
+    private final int secondIndex;
+
+    DuplicateElementException(Object element, int firstIndex, int secondIndex) {
+        super("duplicate element: " + element + " (vị trí " + firstIndex + " và " + secondIndex + ")");
+        this.element = element;
+        this.firstIndex = firstIndex;
+        this.secondIndex = secondIndex;
+    }
+
+    public Object element() {
+        return element;
+    }
+
+    public int firstIndex() {
+        return firstIndex;
+    }
+
+    public int secondIndex() {
+        return secondIndex;
+    }
+}
+
+/**
+ * Bộ dựng Set/Map bất biến song song. Xem mô tả các pha ở JEP269_ParallelBuilder.
+ */
+final class ParallelImmutableBuilder {
+
+    /** Dưới ngưỡng này dựng trên một phân vùng, vì chi phí chia việc lớn hơn lợi ích. */
+    private static final int MIN_PARALLEL_SIZE = 8_192;
+    /** Số phần tử chèn giữa hai lần kiểm tra xem phân vùng khác đã gặp lỗi chưa. */
+    private static final int CANCEL_CHECK_INTERVAL = 1_024;
+
+    private ParallelImmutableBuilder() {
+    }
+
+    public static <T> Collector<T, ?, Set<T>> toImmutableSet() {
+        return toImmutableSet(ForkJoinPool.commonPool());
+    }
+
+    public static <T> Collector<T, ?, Set<T>> toImmutableSet(ForkJoinPool pool) {
+        return Collector.<T, List<T>, Set<T>>of(ArrayList::new, List::add,
+                (a, b) -> { a.addAll(b); return a; },
+                list -> setOf(list, pool));
+    }
+
+    public static <T, K, V> Collector<T, ?, Map<K, V>> toImmutableMap(
+            Function<? super T, ? extends K> keyMapper, Function<? super T, ? extends V> valueMapper) {
+        return toImmutableMap(keyMapper, valueMapper, ForkJoinPool.commonPool());
+    }
+
+    public static <T, K, V> Collector<T, ?, Map<K, V>> toImmutableMap(
+            Function<? super T, ? extends K> keyMapper, Function<? super T, ? extends V> valueMapper,
+            ForkJoinPool pool) {
+        return Collector.<T, List<T>, Map<K, V>>of(ArrayList::new, List::add,
+                (a, b) -> { a.addAll(b); return a; },
+                list -> {
+                    Object[] keys = new Object[list.size()];
+                    Object[] values = new Object[list.size()];
+                    for (int i = 0; i < keys.length; i++) {
+                        T t = list.get(i);
+                        keys[i] = keyMapper.apply(t);
+                        values[i] = Objects.requireNonNull(valueMapper.apply(t));
+                    }
+                    return new CompactHashMap<>(build(keys, values, pool));
+                });
+    }
+
+    /**
+     * @throws NullPointerException nếu có phần tử null
+     * @throws DuplicateElementException nếu có phần tử trùng lặp
+     */
+    public static <E> Set<E> setOf(Collection<? extends E> elements, ForkJoinPool pool) {
+        return new CompactHashSet<>(build(elements.toArray(), null, pool));
+    }
+
+    /**
+     * @throws NullPointerException nếu có key hoặc value null
+     * @throws DuplicateElementException nếu có key trùng lặp
+     */
+    public static <K, V> Map<K, V> mapOf(Collection<? extends Map.Entry<? extends K, ? extends V>> entries,
+                                         ForkJoinPool pool) {
+        Object[] keys = new Object[entries.size()];
+        Object[] values = new Object[keys.length];
+        int i = 0;
+        for (Map.Entry<? extends K, ? extends V> e : entries) {
+            keys[i] = e.getKey();
+            values[i] = Objects.requireNonNull(e.getValue());
+            i++;
+        }
+        return new CompactHashMap<>(build(keys, values, pool));
+    }
+
+    private static PartitionedTable build(Object[] keys, Object[] values, ForkJoinPool pool) {
+        int n = keys.length;
+        int parallelism = n < MIN_PARALLEL_SIZE ? 1 : pool.getParallelism();
+        int bits = parallelism == 1 ? 0 : Integer.numberOfTrailingZeros(Integer.highestOneBit(parallelism * 8));
+        int partitions = 1 << bits;
+        int chunks = parallelism == 1 ? 1 : parallelism * 4;
+        int chunkLen = (n + chunks - 1) / Math.max(1, chunks);
+
+        // Pha 1: băm và đếm số phần tử mỗi phân vùng trong từng đoạn đầu vào
+        int[] hashes = new int[n];
+        int[][] counts = new int[chunks][partitions];
+        runAll(pool, chunks, c -> {
+            int[] count = counts[c];
+            for (int i = c * chunkLen, end = Math.min(n, i + chunkLen); i < end; i++) {
+                int h = PartitionedTable.spread(Objects.requireNonNull(keys[i]).hashCode());
+                hashes[i] = h;
+                count[PartitionedTable.partition(h, bits)]++;
+            }
+        });
+
+        // Tính vị trí ghi của từng (đoạn, phân vùng) và vùng bảng băm của từng phân vùng
+        int[] partStart = new int[partitions + 1];
+        int[] offsets = new int[partitions + 1];
+        int[][] cursor = new int[chunks][partitions];
+        for (int p = 0, pos = 0; p < partitions; p++) {
+            partStart[p] = pos;
+            for (int c = 0; c < chunks; c++) {
+                cursor[c][p] = pos;
+                pos += counts[c][p];
+            }
+            offsets[p + 1] = offsets[p] + PartitionedTable.regionSize(pos - partStart[p]);
+        }
+        partStart[partitions] = n;
+
+        // Pha 2: phân phối chỉ số phần tử về phân vùng (mỗi đoạn ghi vào vùng đã dành riêng)
+        int[] order = new int[n];
+        runAll(pool, chunks, c -> {
+            int[] cur = cursor[c];
+            for (int i = c * chunkLen, end = Math.min(n, i + chunkLen); i < end; i++) {
+                order[cur[PartitionedTable.partition(hashes[i], bits)]++] = i;
+            }
+        });
+
+        // Pha 3: mỗi phân vùng chèn vào vùng riêng của bảng và kiểm tra trùng lặp
+        Object[] tableKeys = new Object[offsets[partitions]];
+        Object[] tableValues = values == null ? null : new Object[tableKeys.length];
+        int[] sourceIndex = new int[tableKeys.length];
+        AtomicReference<DuplicateElementException> failure = new AtomicReference<>();
+        runAll(pool, partitions, p -> {
+            int base = offsets[p];
+            int mask = offsets[p + 1] - base - 1;
+            for (int j = partStart[p], end = partStart[p + 1]; j < end; j++) {
+                if ((j & (CANCEL_CHECK_INTERVAL - 1)) == 0 && failure.get() != null) return;
+                int i = order[j];
+                int slot = base + (hashes[i] & mask);
+                Object existing;
+                while ((existing = tableKeys[slot]) != null) {
+                    if (existing.equals(keys[i])) {
+                        int first = Math.min(sourceIndex[slot], i);
+                        int second = Math.max(sourceIndex[slot], i);
+                        failure.compareAndSet(null, new DuplicateElementException(keys[i], first, second));
+                        return;
+                    }
+                    slot = base + ((slot - base + 1) & mask);
+                }
+                tableKeys[slot] = keys[i];
+                sourceIndex[slot] = i;
+                if (tableValues != null) tableValues[slot] = values[i];
+            }
+        });
+        if (failure.get() != null) throw failure.get();
+        return new PartitionedTable(tableKeys, tableValues, offsets, bits, n);
+    }
+
+    /** Chạy body(0..tasks-1) song song trên pool và chờ tất cả kết thúc. */
+    private static void runAll(ForkJoinPool pool, int tasks, IntConsumer body) {
+        if (tasks == 1) {
+            body.accept(0);
+            return;
+        }
+        pool.invoke(ForkJoinTask.adapt(() -> {
+            List<ForkJoinTask<?>> list = new ArrayList<>(tasks);
+            for (int t = 0; t < tasks; t++) {
+                int id = t;
+                list.add(ForkJoinTask.adapt(() -> body.accept(id)));
+            }
+            ForkJoinTask.invokeAll(list);
+        }));
+    }
+}
+
+/**
+ * Bảng băm open addressing được chia thành các vùng liên tiếp, mỗi phân vùng một vùng
+ * có kích thước lũy thừa của 2. Phân vùng được chọn bằng các bit cao của hash,
+ * vị trí trong vùng bằng các bit thấp.
+ */
+final class PartitionedTable {
+
+    final Object[] keys;
+    final Object[] values; // null với Set
+    final int[] offsets;
+    final int bits;
+    final int size;
+
+    PartitionedTable(Object[] keys, Object[] values, int[] offsets, int bits, int size) {
+        this.keys = keys;
+        this.values = values;
+        this.offsets = offsets;
+        this.bits = bits;
+        this.size = size;
+    }
+
+    static int spread(int h) {
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        return h ^ (h >>> 16);
+    }
+
+    static int partition(int hash, int bits) {
+        return bits == 0 ? 0 : hash >>> (32 - bits);
+    }
+
+    /** Lũy thừa của 2, ít nhất gấp đôi số phần tử. */
+    static int regionSize(int count) {
+        return Math.max(2, Integer.highestOneBit(Math.max(1, count) * 2 - 1) << 1);
+    }
+
+    int indexOf(Object key) {
+        int h = spread(key.hashCode());
+        int p = partition(h, bits);
+        int base = offsets[p];
+        int mask = offsets[p + 1] - base - 1;
+        int slot = base + (h & mask);
+        Object k;
+        while ((k = keys[slot]) != null) {
+            if (k.equals(key)) return slot;
+            slot = base + ((slot - base + 1) & mask);
+        }
+        return -1;
+    }
+
+    /** Vị trí phần tử tiếp theo từ slot (kể cả slot), hoặc keys.length nếu hết. */
+    int nextSlot(int slot) {
+        while (slot < keys.length && keys[slot] == null) slot++;
+        return slot;
+    }
+
+    static UnsupportedOperationException uoe() {
+        return new UnsupportedOperationException();
+    }
+}
+
+final class CompactHashSet<E> extends AbstractSet<E> {
+
+    private final PartitionedTable table;
+
+    CompactHashSet(PartitionedTable table) {
+        this.table = table;
+    }
+
+    @Override
+    public int size() {
+        return table.size;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return table.indexOf(Objects.requireNonNull(o)) >= 0;
+    }
+
+    @Override
+    public Iterator<E> iterator() {
+        return new Iterator<>() {
+            private int slot = table.nextSlot(0);
+
+            @Override
+            public boolean hasNext() {
+                return slot < table.keys.length;
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public E next() {
+                if (!hasNext()) throw new NoSuchElementException();
+                E e = (E) table.keys[slot];
+                slot = table.nextSlot(slot + 1);
+                return e;
+            }
+        };
+    }
+
+    @Override public boolean add(E e) { throw PartitionedTable.uoe(); }
+    @Override public boolean remove(Object o) { throw PartitionedTable.uoe(); }
+    @Override public boolean addAll(Collection<? extends E> c) { throw PartitionedTable.uoe(); }
+    @Override public boolean removeAll(Collection<?> c) { throw PartitionedTable.uoe(); }
+    @Override public boolean retainAll(Collection<?> c) { throw PartitionedTable.uoe(); }
+    @Override public boolean removeIf(Predicate<? super E> filter) { throw PartitionedTable.uoe(); }
+    @Override public void clear() { throw PartitionedTable.uoe(); }
+}
+
+final class CompactHashMap<K, V> extends AbstractMap<K, V> {
+
+    private final PartitionedTable table;
+    private Set<Map.Entry<K, V>> entrySet;
+
+    CompactHashMap(PartitionedTable table) {
+        this.table = table;
+    }
+
+    @Override
+    public int size() {
+        return table.size;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return table.indexOf(Objects.requireNonNull(key)) >= 0;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V get(Object key) {
+        int slot = table.indexOf(Objects.requireNonNull(key));
+        return slot >= 0 ? (V) table.values[slot] : null;
+    }
+
+    @Override
+    public Set<Map.Entry<K, V>> entrySet() {
+        Set<Map.Entry<K, V>> es = entrySet;
+        if (es == null) {
+            entrySet = es = new AbstractSet<>() {
+                @Override
+                public Iterator<Map.Entry<K, V>> iterator() {
+                    return new Iterator<>() {
+                        private int slot = table.nextSlot(0);
+
+                        @Override
+                        public boolean hasNext() {
+                            return slot < table.keys.length;
+                        }
+
+                        @Override
+                        @SuppressWarnings("unchecked")
+                        public Map.Entry<K, V> next() {
+                            if (!hasNext()) throw new NoSuchElementException();
+                            Map.Entry<K, V> e = Map.entry((K) table.keys[slot], (V) table.values[slot]);
+                            slot = table.nextSlot(slot + 1);
+                            return e;
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return table.size;
+                }
+            };
+        }
+        return es;
+    }
+
+    @Override public V put(K key, V value) { throw PartitionedTable.uoe(); }
+    @Override public V remove(Object key) { throw PartitionedTable.uoe(); }
+    @Override public void putAll(Map<? extends K, ? extends V> m) { throw PartitionedTable.uoe(); }
+    @Override public void clear() { throw PartitionedTable.uoe(); }
+    @Override public void replaceAll(BiFunction<? super K, ? super V, ? extends V> f) { throw PartitionedTable.uoe(); }
+    @Override public V putIfAbsent(K key, V value) { throw PartitionedTable.uoe(); }
+    @Override public boolean remove(Object key, Object value) { throw PartitionedTable.uoe(); }
+    @Override public boolean replace(K key, V oldValue, V newValue) { throw PartitionedTable.uoe(); }
+    @Override public V replace(K key, V value) { throw PartitionedTable.uoe(); }
+    @Override public V computeIfAbsent(K key, Function<? super K, ? extends V> f) { throw PartitionedTable.uoe(); }
+    @Override public V computeIfPresent(K key, BiFunction<? super K, ? super V, ? extends V> f) { throw PartitionedTable.uoe(); }
+    @Override public V compute(K key, BiFunction<? super K, ? super V, ? extends V> f) { throw PartitionedTable.uoe(); }
+    @Override public V merge(K key, V value, BiFunction<? super V, ? super V, ? extends V> f) { throw PartitionedTable.uoe(); }
+}
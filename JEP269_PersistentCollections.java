@@ -0,0 +1,840 @@
+import java.lang.ref.Reference;
+import java.util.AbstractList;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Random;
+import java.util.RandomAccess;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Collection bất biến "cập nhật được" nhờ chia sẻ cấu trúc (persistent / structurally shared).
+ *
+ * Trong JEP269_MinhTuan, List.of/Map.of chỉ có thể "thay đổi" bằng cách sao chép toàn bộ,
+ * còn add() thì ném UnsupportedOperationException. Với một Map cấu hình 100.000 phần tử được cập nhật
+ * từng key nhiều lần mỗi giây, mỗi lần cập nhật phải chép lại cả 100.000 phần tử.
+ *
+ * PersistentVector (cây 32 nhánh + đuôi) và PersistentMap (HAMT - Hash Array Mapped Trie) cho phép
+ * with()/without() trả về một phiên bản mới trong O(log32 n): chỉ chép các nút trên đường đi từ gốc
+ * (tối đa 7 nút), phần còn lại dùng chung với phiên bản cũ. Phiên bản cũ không bị thay đổi.
+ *
+ * Các ràng buộc giữ nguyên như List.of/Map.of:
+ * 1. Bất biến (add/put/remove... ném UnsupportedOperationException)
+ * 2. Không chấp nhận null (phần tử, key, value null đều ném NullPointerException)
+ * 3. copyOf() từ List.of/Map.of và toList()/toMap() ngược lại
+ */
+public class JEP269_PersistentCollections {
+
+    public static void main(String[] args) {
+        System.out.println("--- 1. with()/without() trả về phiên bản mới, phiên bản cũ giữ nguyên ---");
+        demoVersions();
+
+        System.out.println("\n--- 2. Kiểm tra các ràng buộc giống List.of/Map.of ---");
+        demoRestrictions();
+
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        System.out.println("\n--- 3. Cập nhật một key trên Map " + size + " phần tử: chép lại (Map.copyOf) và chia sẻ cấu trúc ---");
+        compareMapUpdates(size);
+
+        System.out.println("\n--- 4. Cập nhật một phần tử trên List " + size + " phần tử: chép lại (List.of) và PersistentVector ---");
+        compareListUpdates(size);
+    }
+
+    public static void demoVersions() {
+        PersistentMap<String, Integer> v1 = PersistentMap.copyOf(Map.of("One", 1, "Two", 2));
+        PersistentMap<String, Integer> v2 = v1.with("Three", 3);
+        PersistentMap<String, Integer> v3 = v2.without("One").with("Two", 22);
+        System.out.println("Map v1: " + v1 + ", v2: " + v2 + ", v3: " + v3);
+        System.out.println("v2.toMap().equals(Map.of(...)) = " + v2.toMap().equals(Map.of("One", 1, "Two", 2, "Three", 3)));
+
+        PersistentVector<String> list = PersistentVector.copyOf(List.of("Java", "C++", "Python"));
+        PersistentVector<String> added = list.append("Kotlin");
+        PersistentVector<String> changed = added.with(1, "Rust").withoutLast();
+        System.out.println("List: " + list + ", append: " + added + ", with(1)+withoutLast: " + changed);
+        System.out.println("changed.toList() là List.of: " + changed.toList().getClass().getSimpleName());
+    }
+
+    public static void demoRestrictions() {
+        PersistentVector<String> list = PersistentVector.of("a", "b", "c");
+
+        // 1. Các phương thức thay đổi của List/Map vẫn ném lỗi UnsupportedOperationException
+        try {
+            list.add("d");
+        } catch (UnsupportedOperationException e) {
+            System.out.println("Bắt lỗi: Không thể add(). Dùng append() để có phiên bản mới.");
+        }
+        try {
+            PersistentMap.<String, Integer>of().put("Key1", 1);
+        } catch (UnsupportedOperationException e) {
+            System.out.println("Bắt lỗi: Không thể put(). Dùng with() để có phiên bản mới.");
+        }
+
+        // 2. null (ném lỗi NullPointerException)
+        try {
+            list.append(null);
+        } catch (NullPointerException e) {
+            System.out.println("Bắt lỗi: Không thể thêm phần tử null.");
+        }
+        try {
+            PersistentMap.<String, Integer>of().with("Key1", null);
+        } catch (NullPointerException e) {
+            System.out.println("Bắt lỗi: Không thể thêm value null.");
+        }
+
+        // 3. Chỉ số ngoài phạm vi (ném lỗi IndexOutOfBoundsException)
+        try {
+            list.with(3, "d");
+        } catch (IndexOutOfBoundsException e) {
+            System.out.println("Bắt lỗi: " + e.getMessage());
+        }
+
+        // 4. withoutLast() trên List rỗng (ném lỗi NoSuchElementException, như removeLast())
+        try {
+            PersistentVector.of().withoutLast();
+        } catch (NoSuchElementException e) {
+            System.out.println("Bắt lỗi: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Snapshot cấu hình size phần tử, cập nhật lặp lại một key:
+     *  - chép lại: new HashMap(snapshot) + put + Map.copyOf, như cách duy nhất với Map.of
+     *  - PersistentMap.with()
+     * Đo thông lượng cập nhật, thời gian get(), heap của một snapshot và của 100 phiên bản liên tiếp còn được giữ.
+     * Key/value được tạo sẵn và dùng chung nên không tính vào bộ nhớ.
+     */
+    public static void compareMapUpdates(int size) {
+        String[] keys = new String[size];
+        Integer[] values = new Integer[size];
+        Map<String, Integer> source = new HashMap<>();
+        for (int i = 0; i < size; i++) {
+            keys[i] = "config.key." + i;
+            values[i] = i;
+            source.put(keys[i], values[i]);
+        }
+        Map<String, Integer> cow = Map.copyOf(source);
+        PersistentMap<String, Integer> persistent = PersistentMap.copyOf(source);
+        System.out.println("Cùng nội dung: " + persistent.equals(cow) + ", toMap().equals(Map.copyOf) = " + persistent.toMap().equals(cow));
+
+        Random rnd = new Random(42);
+        int[] probes = new int[1 << 16];
+        for (int i = 0; i < probes.length; i++) probes[i] = rnd.nextInt(size);
+
+        // Chạy vài lần để JIT biên dịch xong, lấy kết quả lần cuối
+        int cowUpdates = 50, persistentUpdates = 200_000;
+        double cowNs = 0, persistentNs = 0, cowGet = 0, persistentGet = 0;
+        long check = 0;
+        for (int round = 0; round < 3; round++) {
+            long t0 = System.nanoTime();
+            for (int i = 0; i < cowUpdates; i++) {
+                Map<String, Integer> copy = new HashMap<>(cow);
+                copy.put(keys[probes[i]], values[i]);
+                cow = Map.copyOf(copy);
+            }
+            long t1 = System.nanoTime();
+            for (int i = 0; i < persistentUpdates; i++) {
+                persistent = persistent.with(keys[probes[i & (probes.length - 1)]], values[i % size]);
+            }
+            long t2 = System.nanoTime();
+            for (int p : probes) check += cow.get(keys[p]);
+            long t3 = System.nanoTime();
+            for (int p : probes) check += persistent.get(keys[p]);
+            long t4 = System.nanoTime();
+            cowNs = (double) (t1 - t0) / cowUpdates;
+            persistentNs = (double) (t2 - t1) / persistentUpdates;
+            cowGet = (double) (t3 - t2) / probes.length;
+            persistentGet = (double) (t4 - t3) / probes.length;
+        }
+        System.out.printf("Cập nhật 1 key: Map.copyOf = %,12.0f ns/op (%,9.0f op/s), PersistentMap.with = %,8.0f ns/op (%,11.0f op/s)%n",
+                cowNs, 1e9 / cowNs, persistentNs, 1e9 / persistentNs);
+        System.out.printf("get():          Map.copyOf = %,12.1f ns/op, PersistentMap = %,8.1f ns/op%n", cowGet, persistentGet);
+
+        Map<String, Integer> cowBase = cow;
+        PersistentMap<String, Integer> persistentBase = persistent;
+        System.out.printf("Heap 1 snapshot:        Map.copyOf = %,12d byte, PersistentMap = %,12d byte%n",
+                retainedBytes(() -> Map.copyOf(source)), retainedBytes(() -> PersistentMap.copyOf(source)));
+        System.out.printf("Heap 100 phiên bản sau: Map.copyOf = %,12d byte, PersistentMap = %,12d byte%n",
+                retainedBytes(() -> {
+                    List<Map<String, Integer>> history = new ArrayList<>();
+                    Map<String, Integer> m = cowBase;
+                    for (int i = 0; i < 100; i++) {
+                        Map<String, Integer> copy = new HashMap<>(m);
+                        copy.put(keys[probes[i]], values[i]);
+                        history.add(m = Map.copyOf(copy));
+                    }
+                    return history;
+                }),
+                retainedBytes(() -> {
+                    List<PersistentMap<String, Integer>> history = new ArrayList<>();
+                    PersistentMap<String, Integer> m = persistentBase;
+                    for (int i = 0; i < 100; i++) history.add(m = m.with(keys[probes[i]], values[i]));
+                    return history;
+                }));
+        System.out.println("(checksum " + check + ")");
+        System.out.println("* Nhận xét: with() chỉ chép đường đi từ gốc nên nhanh hơn chép lại hàng nghìn lần, và mỗi phiên bản");
+        System.out.println("  giữ lại chỉ tốn cỡ vài trăm byte thay vì cả bảng. Đổi lại một snapshot đơn lẻ lớn hơn Map.copyOf,");
+        System.out.println("  và get() đi qua 3-4 tầng nút: ngang ngửa khi dữ liệu không nằm trong cache, chậm hơn khi bảng nhỏ.");
+    }
+
+    public static void compareListUpdates(int size) {
+        Integer[] values = new Integer[size];
+        for (int i = 0; i < size; i++) values[i] = i;
+        List<Integer> cow = List.of(values);
+        PersistentVector<Integer> persistent = PersistentVector.copyOf(cow);
+
+        Random rnd = new Random(7);
+        int[] probes = new int[1 << 16];
+        for (int i = 0; i < probes.length; i++) probes[i] = rnd.nextInt(size);
+
+        int cowUpdates = 200, persistentUpdates = 500_000;
+        double cowNs = 0, persistentNs = 0, cowGet = 0, persistentGet = 0, appendNs = 0;
+        long check = 0;
+        for (int round = 0; round < 3; round++) {
+            long t0 = System.nanoTime();
+            for (int i = 0; i < cowUpdates; i++) {
+                Integer[] copy = cow.toArray(new Integer[0]);
+                copy[probes[i]] = values[i];
+                cow = List.of(copy);
+            }
+            long t1 = System.nanoTime();
+            for (int i = 0; i < persistentUpdates; i++) {
+                persistent = persistent.with(probes[i & (probes.length - 1)], values[i % size]);
+            }
+            long t2 = System.nanoTime();
+            for (int p : probes) check += cow.get(p);
+            long t3 = System.nanoTime();
+            for (int p : probes) check += persistent.get(p);
+            long t4 = System.nanoTime();
+            PersistentVector<Integer> grown = PersistentVector.of();
+            for (int i = 0; i < size; i++) grown = grown.append(values[i]);
+            long t5 = System.nanoTime();
+            check += grown.size();
+            cowNs = (double) (t1 - t0) / cowUpdates;
+            persistentNs = (double) (t2 - t1) / persistentUpdates;
+            cowGet = (double) (t3 - t2) / probes.length;
+            persistentGet = (double) (t4 - t3) / probes.length;
+            appendNs = (double) (t5 - t4) / size;
+        }
+        System.out.printf("Đổi 1 phần tử: List.of(copy) = %,10.0f ns/op, PersistentVector.with = %,6.0f ns/op%n", cowNs, persistentNs);
+        System.out.printf("get(i):        List.of       = %,10.1f ns/op, PersistentVector      = %,6.1f ns/op%n", cowGet, persistentGet);
+        System.out.printf("append():      PersistentVector = %,.1f ns/op (đuôi 32 phần tử, chỉ đưa vào cây khi đầy)%n", appendNs);
+        System.out.println("(checksum " + check + ")");
+    }
+
+    private static long retainedBytes(Supplier<?> factory) {
+        long before = usedHeap();
+        Object built = factory.get();
+        long after = usedHeap();
+        Reference.reachabilityFence(built);
+        return Math.max(0, after - before);
+    }
+
+    private static long usedHeap() {
+        Runtime rt = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) System.gc();
+        return rt.totalMemory() - rt.freeMemory();
+    }
+}
+
+/**
+ * List bất biến dạng cây 32 nhánh với một mảng đuôi (tail) tối đa 32 phần tử, như vector của Clojure/Scala.
+ * get/with trong O(log32 n) (tối đa 7 tầng với int index); append/withoutLast phần lớn chỉ chép mảng đuôi.
+ * Các phương thức thay đổi của List ném UnsupportedOperationException như List.of().
+ */
+final class PersistentVector<E> extends AbstractList<E> implements RandomAccess {
+
+    private static final int BITS = 5;
+    private static final int WIDTH = 1 << BITS;
+    private static final int MASK = WIDTH - 1;
+    private static final Object[] EMPTY_NODE = new Object[WIDTH];
+    private static final PersistentVector<?> EMPTY = new PersistentVector<>(0, BITS, EMPTY_NODE, new Object[0]);
+
+    private final int size;
+    private final int shift;
+    private final Object[] root;
+    private final Object[] tail;
+
+    private PersistentVector(int size, int shift, Object[] root, Object[] tail) {
+        this.size = size;
+        this.shift = shift;
+        this.root = root;
+        this.tail = tail;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <E> PersistentVector<E> of() {
+        return (PersistentVector<E>) EMPTY;
+    }
+
+    @SafeVarargs
+    public static <E> PersistentVector<E> of(E... elements) {
+        PersistentVector<E> result = of();
+        for (E e : elements) result = result.append(e);
+        return result;
+    }
+
+    /**
+     * @throws NullPointerException nếu có phần tử null
+     */
+    @SuppressWarnings("unchecked")
+    public static <E> PersistentVector<E> copyOf(Collection<? extends E> elements) {
+        if (elements instanceof PersistentVector<?> v) return (PersistentVector<E>) v;
+        PersistentVector<E> result = of();
+        for (E e : elements) result = result.append(e);
+        return result;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E get(int index) {
+        Objects.checkIndex(index, size);
+        return (E) leafFor(index)[index & MASK];
+    }
+
+    /** Phiên bản mới có thêm e ở cuối. */
+    public PersistentVector<E> append(E e) {
+        Objects.requireNonNull(e);
+        if (size - tailOffset() < WIDTH) {
+            Object[] newTail = Arrays.copyOf(tail, tail.length + 1);
+            newTail[tail.length] = e;
+            return new PersistentVector<>(size + 1, shift, root, newTail);
+        }
+        // Đuôi đầy: đưa vào cây, nếu gốc đã đầy thì cây cao thêm một tầng
+        Object[] newRoot;
+        int newShift = shift;
+        if ((size >>> BITS) > (1 << shift)) {
+            newRoot = new Object[WIDTH];
+            newRoot[0] = root;
+            newRoot[1] = newPath(shift, tail);
+            newShift += BITS;
+        } else {
+            newRoot = pushTail(shift, root, tail);
+        }
+        return new PersistentVector<>(size + 1, newShift, newRoot, new Object[] {e});
+    }
+
+    /** Phiên bản mới với phần tử tại index thay bằng e. */
+    public PersistentVector<E> with(int index, E e) {
+        Objects.checkIndex(index, size);
+        Objects.requireNonNull(e);
+        if (index >= tailOffset()) {
+            Object[] newTail = tail.clone();
+            newTail[index & MASK] = e;
+            return new PersistentVector<>(size, shift, root, newTail);
+        }
+        return new PersistentVector<>(size, shift, assoc(shift, root, index, e), tail);
+    }
+
+    /** Phiên bản mới bỏ phần tử cuối. @throws NoSuchElementException nếu rỗng */
+    public PersistentVector<E> withoutLast() {
+        if (size == 0) throw new NoSuchElementException("vector is empty");
+        if (size == 1) return of();
+        if (size - tailOffset() > 1) {
+            return new PersistentVector<>(size - 1, shift, root, Arrays.copyOf(tail, tail.length - 1));
+        }
+        // Đuôi chỉ còn 1 phần tử: lá cuối cùng của cây thành đuôi mới
+        Object[] newTail = leafFor(size - 2);
+        Object[] newRoot = popTail(shift, root);
+        int newShift = shift;
+        if (newRoot == null) newRoot = EMPTY_NODE;
+        if (shift > BITS && newRoot[1] == null) {
+            newRoot = (Object[]) newRoot[0];
+            newShift -= BITS;
+        }
+        return new PersistentVector<>(size - 1, newShift, newRoot, newTail);
+    }
+
+    /** Chuyển sang List.of() (sao chép một lần). */
+    public List<E> toList() {
+        return List.copyOf(this);
+    }
+
+    @Override
+    public Iterator<E> iterator() {
+        return new Iterator<>() {
+            private int index;
+            private Object[] leaf;
+
+            @Override
+            public boolean hasNext() {
+                return index < size;
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public E next() {
+                if (index >= size) throw new NoSuchElementException();
+                if ((index & MASK) == 0 || leaf == null) leaf = leafFor(index); // mỗi lá tra một lần
+                return (E) leaf[index++ & MASK];
+            }
+        };
+    }
+
+    @Override
+    public void forEach(Consumer<? super E> action) {
+        for (E e : this) action.accept(e);
+    }
+
+    private int tailOffset() {
+        return size < WIDTH ? 0 : ((size - 1) >>> BITS) << BITS;
+    }
+
+    private Object[] leafFor(int index) {
+        if (index >= tailOffset()) return tail;
+        Object[] node = root;
+        for (int level = shift; level > 0; level -= BITS) node = (Object[]) node[(index >>> level) & MASK];
+        return node;
+    }
+
+    private Object[] pushTail(int level, Object[] parent, Object[] tailNode) {
+        int sub = ((size - 1) >>> level) & MASK;
+        Object[] result = parent.clone();
+        Object[] insert;
+        if (level == BITS) {
+            insert = tailNode;
+        } else {
+            Object[] child = (Object[]) parent[sub];
+            insert = child != null ? pushTail(level - BITS, child, tailNode) : newPath(level - BITS, tailNode);
+        }
+        result[sub] = insert;
+        return result;
+    }
+
+    private static Object[] newPath(int level, Object[] node) {
+        if (level == 0) return node;
+        Object[] path = new Object[WIDTH];
+        path[0] = newPath(level - BITS, node);
+        return path;
+    }
+
+    private static Object[] assoc(int level, Object[] node, int index, Object e) {
+        Object[] result = node.clone();
+        if (level == 0) {
+            result[index & MASK] = e;
+        } else {
+            int sub = (index >>> level) & MASK;
+            result[sub] = assoc(level - BITS, (Object[]) node[sub], index, e);
+        }
+        return result;
+    }
+
+    private Object[] popTail(int level, Object[] node) {
+        int sub = ((size - 2) >>> level) & MASK;
+        if (level > BITS) {
+            Object[] child = popTail(level - BITS, (Object[]) node[sub]);
+            if (child == null && sub == 0) return null;
+            Object[] result = node.clone();
+            result[sub] = child;
+            return result;
+        }
+        if (sub == 0) return null;
+        Object[] result = node.clone();
+        result[sub] = null;
+        return result;
+    }
+}
+
+/**
+ * Map bất biến dạng HAMT (Hash Array Mapped Trie), bố cục nút kiểu CHAMP:
+ * mỗi nút dùng 5 bit của hash làm chỉ số, hai bitmap đánh dấu ô chứa cặp key/value và ô chứa nút con,
+ * mảng nội dung chỉ có các ô đang dùng. with/without chép tối đa 7 nút trên đường đi.
+ * Khi xóa, nút con chỉ còn một cặp được kéo ngược lên cha, nên cùng nội dung luôn cho cùng một cây.
+ * Các phương thức thay đổi của Map ném UnsupportedOperationException như Map.of().
+ */
+final class PersistentMap<K, V> extends AbstractMap<K, V> {
+
+    private static final PersistentMap<?, ?> EMPTY = new PersistentMap<>(BitmapNode.EMPTY, 0);
+
+    private final Node root;
+    private final int size;
+
+    private PersistentMap(Node root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <K, V> PersistentMap<K, V> of() {
+        return (PersistentMap<K, V>) EMPTY;
+    }
+
+    /**
+     * @throws NullPointerException nếu có key hoặc value null
+     */
+    @SuppressWarnings("unchecked")
+    public static <K, V> PersistentMap<K, V> copyOf(Map<? extends K, ? extends V> map) {
+        if (map instanceof PersistentMap<?, ?> m) return (PersistentMap<K, V>) m;
+        PersistentMap<K, V> result = of();
+        for (Entry<? extends K, ? extends V> e : map.entrySet()) result = result.with(e.getKey(), e.getValue());
+        return result;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V get(Object key) {
+        return (V) root.find(Objects.requireNonNull(key), hash(key), 0);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return get(key) != null;
+    }
+
+    /** Phiên bản mới với key -> value (thêm hoặc thay). Trả về chính nó nếu value không đổi. */
+    public PersistentMap<K, V> with(K key, V value) {
+        Objects.requireNonNull(key);
+        Objects.requireNonNull(value);
+        Change change = new Change();
+        Node newRoot = root.put(key, value, hash(key), 0, change);
+        if (newRoot == root) return this;
+        return new PersistentMap<>(newRoot, change.added ? size + 1 : size);
+    }
+
+    /** Phiên bản mới không có key. Trả về chính nó nếu key không có. */
+    public PersistentMap<K, V> without(Object key) {
+        Objects.requireNonNull(key);
+        Node newRoot = root.remove(key, hash(key), 0);
+        return newRoot == root ? this : new PersistentMap<>(newRoot, size - 1);
+    }
+
+    /** Chuyển sang Map.of() (sao chép một lần). */
+    public Map<K, V> toMap() {
+        return Map.copyOf(this);
+    }
+
+    @Override
+    public Set<Entry<K, V>> entrySet() {
+        return new AbstractSet<>() {
+            @Override
+            public Iterator<Entry<K, V>> iterator() {
+                return new EntryIterator<>(root);
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    /** Trộn bit cao xuống thấp (như HashMap) vì HAMT dùng các bit thấp trước. */
+    private static int hash(Object key) {
+        int h = key.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    private static final class Change {
+        boolean added;
+    }
+
+    private abstract static sealed class Node permits BitmapNode, CollisionNode {
+        abstract Object find(Object key, int hash, int shift);
+
+        abstract Node put(Object key, Object value, int hash, int shift, Change change);
+
+        abstract Node remove(Object key, int hash, int shift);
+
+        abstract int payloadArity();
+
+        abstract int nodeArity();
+
+        abstract Object key(int i);
+
+        abstract Object value(int i);
+
+        abstract Node node(int i);
+    }
+
+    /** Nút thường: content = [k0, v0, k1, v1, ..., nút con 0, nút con 1, ...] theo thứ tự bit. */
+    private static final class BitmapNode extends Node {
+        static final BitmapNode EMPTY = new BitmapNode(0, 0, new Object[0]);
+
+        final int dataMap;
+        final int nodeMap;
+        final Object[] content;
+
+        BitmapNode(int dataMap, int nodeMap, Object[] content) {
+            this.dataMap = dataMap;
+            this.nodeMap = nodeMap;
+            this.content = content;
+        }
+
+        static int bit(int hash, int shift) {
+            return 1 << ((hash >>> shift) & 31);
+        }
+
+        @Override
+        Object find(Object key, int hash, int shift) {
+            BitmapNode n = this;
+            while (true) {
+                int bit = bit(hash, shift);
+                if ((n.dataMap & bit) != 0) {
+                    int i = Integer.bitCount(n.dataMap & (bit - 1));
+                    return key.equals(n.content[2 * i]) ? n.content[2 * i + 1] : null;
+                }
+                if ((n.nodeMap & bit) == 0) return null;
+                Node child = n.node(Integer.bitCount(n.nodeMap & (bit - 1)));
+                if (child instanceof BitmapNode b) {
+                    n = b;
+                    shift += 5;
+                } else {
+                    return child.find(key, hash, shift + 5);
+                }
+            }
+        }
+
+        @Override
+        Node put(Object key, Object value, int hash, int shift, Change change) {
+            int bit = bit(hash, shift);
+            if ((dataMap & bit) != 0) {
+                int i = Integer.bitCount(dataMap & (bit - 1));
+                Object k = content[2 * i];
+                if (key.equals(k)) {
+                    if (value.equals(content[2 * i + 1])) return this;
+                    Object[] c = content.clone();
+                    c[2 * i + 1] = value;
+                    return new BitmapNode(dataMap, nodeMap, c);
+                }
+                // Hai key cùng 5 bit ở tầng này: đẩy cả hai xuống một nút con
+                Node child = merge(k, content[2 * i + 1], hash(k), key, value, hash, shift + 5);
+                change.added = true;
+                return migrateToNode(bit, i, child);
+            }
+            if ((nodeMap & bit) != 0) {
+                int j = Integer.bitCount(nodeMap & (bit - 1));
+                Node child = node(j);
+                Node updated = child.put(key, value, hash, shift + 5, change);
+                return updated == child ? this : withNode(j, updated);
+            }
+            change.added = true;
+            int i = Integer.bitCount(dataMap & (bit - 1));
+            Object[] c = new Object[content.length + 2];
+            System.arraycopy(content, 0, c, 0, 2 * i);
+            c[2 * i] = key;
+            c[2 * i + 1] = value;
+            System.arraycopy(content, 2 * i, c, 2 * i + 2, content.length - 2 * i);
+            return new BitmapNode(dataMap | bit, nodeMap, c);
+        }
+
+        @Override
+        Node remove(Object key, int hash, int shift) {
+            int bit = bit(hash, shift);
+            if ((dataMap & bit) != 0) {
+                int i = Integer.bitCount(dataMap & (bit - 1));
+                if (!key.equals(content[2 * i])) return this;
+                Object[] c = new Object[content.length - 2];
+                System.arraycopy(content, 0, c, 0, 2 * i);
+                System.arraycopy(content, 2 * i + 2, c, 2 * i, content.length - 2 * i - 2);
+                return new BitmapNode(dataMap & ~bit, nodeMap, c);
+            }
+            if ((nodeMap & bit) != 0) {
+                int j = Integer.bitCount(nodeMap & (bit - 1));
+                Node child = node(j);
+                Node updated = child.remove(key, hash, shift + 5);
+                if (updated == child) return this;
+                if (updated.nodeArity() == 0 && updated.payloadArity() == 1) {
+                    // Nút con chỉ còn một cặp: nếu nút này cũng chỉ còn nút con đó thì để cha kéo lên tiếp
+                    if (shift > 0 && payloadArity() == 0 && nodeArity() == 1) return updated;
+                    return migrateToInline(bit, j, updated.key(0), updated.value(0));
+                }
+                return withNode(j, updated);
+            }
+            return this;
+        }
+
+        private Node withNode(int j, Node child) {
+            Object[] c = content.clone();
+            c[2 * payloadArity() + j] = child;
+            return new BitmapNode(dataMap, nodeMap, c);
+        }
+
+        /** Ô bit đang là cặp thứ i, thành nút con. */
+        private Node migrateToNode(int bit, int i, Node child) {
+            int payload = payloadArity();
+            int j = Integer.bitCount(nodeMap & (bit - 1));
+            Object[] c = new Object[content.length - 1];
+            System.arraycopy(content, 0, c, 0, 2 * i);
+            System.arraycopy(content, 2 * i + 2, c, 2 * i, 2 * (payload - i - 1) + j);
+            c[2 * (payload - 1) + j] = child;
+            System.arraycopy(content, 2 * payload + j, c, 2 * (payload - 1) + j + 1, nodeArity() - j);
+            return new BitmapNode(dataMap & ~bit, nodeMap | bit, c);
+        }
+
+        /** Ô bit đang là nút con thứ j, thành cặp key/value. */
+        private Node migrateToInline(int bit, int j, Object key, Object value) {
+            int payload = payloadArity();
+            int i = Integer.bitCount(dataMap & (bit - 1));
+            Object[] c = new Object[content.length + 1];
+            System.arraycopy(content, 0, c, 0, 2 * i);
+            c[2 * i] = key;
+            c[2 * i + 1] = value;
+            System.arraycopy(content, 2 * i, c, 2 * i + 2, 2 * (payload - i) + j);
+            System.arraycopy(content, 2 * payload + j + 1, c, 2 * payload + 2 + j, nodeArity() - j - 1);
+            return new BitmapNode(dataMap | bit, nodeMap & ~bit, c);
+        }
+
+        static Node merge(Object k1, Object v1, int h1, Object k2, Object v2, int h2, int shift) {
+            if (shift >= 32) return new CollisionNode(h1, new Object[] {k1, v1, k2, v2}); // đã dùng hết 32 bit: h1 == h2
+            int f1 = (h1 >>> shift) & 31, f2 = (h2 >>> shift) & 31;
+            if (f1 != f2) {
+                Object[] c = f1 < f2 ? new Object[] {k1, v1, k2, v2} : new Object[] {k2, v2, k1, v1};
+                return new BitmapNode((1 << f1) | (1 << f2), 0, c);
+            }
+            return new BitmapNode(0, 1 << f1, new Object[] {merge(k1, v1, h1, k2, v2, h2, shift + 5)});
+        }
+
+        @Override
+        int payloadArity() {
+            return Integer.bitCount(dataMap);
+        }
+
+        @Override
+        int nodeArity() {
+            return Integer.bitCount(nodeMap);
+        }
+
+        @Override
+        Object key(int i) {
+            return content[2 * i];
+        }
+
+        @Override
+        Object value(int i) {
+            return content[2 * i + 1];
+        }
+
+        @Override
+        Node node(int j) {
+            return (Node) content[2 * payloadArity() + j];
+        }
+    }
+
+    /** Các key trùng toàn bộ 32 bit hash: danh sách phẳng, tìm tuần tự. */
+    private static final class CollisionNode extends Node {
+        final int hash;
+        final Object[] content;
+
+        CollisionNode(int hash, Object[] content) {
+            this.hash = hash;
+            this.content = content;
+        }
+
+        private int indexOf(Object key) {
+            for (int i = 0; i < content.length; i += 2) {
+                if (key.equals(content[i])) return i;
+            }
+            return -1;
+        }
+
+        @Override
+        Object find(Object key, int hash, int shift) {
+            int i = indexOf(key);
+            return i < 0 ? null : content[i + 1];
+        }
+
+        @Override
+        Node put(Object key, Object value, int hash, int shift, Change change) {
+            int i = indexOf(key);
+            if (i >= 0) {
+                if (value.equals(content[i + 1])) return this;
+                Object[] c = content.clone();
+                c[i + 1] = value;
+                return new CollisionNode(this.hash, c);
+            }
+            change.added = true;
+            Object[] c = Arrays.copyOf(content, content.length + 2);
+            c[content.length] = key;
+            c[content.length + 1] = value;
+            return new CollisionNode(this.hash, c);
+        }
+
+        @Override
+        Node remove(Object key, int hash, int shift) {
+            int i = indexOf(key);
+            if (i < 0) return this;
+            Object[] c = new Object[content.length - 2];
+            System.arraycopy(content, 0, c, 0, i);
+            System.arraycopy(content, i + 2, c, i, content.length - i - 2);
+            return new CollisionNode(this.hash, c); // còn một cặp thì cha sẽ kéo lên
+        }
+
+        @Override
+        int payloadArity() {
+            return content.length / 2;
+        }
+
+        @Override
+        int nodeArity() {
+            return 0;
+        }
+
+        @Override
+        Object key(int i) {
+            return content[2 * i];
+        }
+
+        @Override
+        Object value(int i) {
+            return content[2 * i + 1];
+        }
+
+        @Override
+        Node node(int i) {
+            throw new IndexOutOfBoundsException(i);
+        }
+    }
+
+    /** Duyệt theo chiều sâu: các cặp của một nút, rồi tới các nút con. */
+    private static final class EntryIterator<K, V> implements Iterator<Entry<K, V>> {
+        private final ArrayDeque<Node> pending = new ArrayDeque<>();
+        private Node current;
+        private int index;
+
+        EntryIterator(Node root) {
+            advanceTo(root);
+        }
+
+        private void advanceTo(Node node) {
+            current = node;
+            index = 0;
+            if (node != null) {
+                for (int j = node.nodeArity() - 1; j >= 0; j--) pending.push(node.node(j));
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (current != null && index >= current.payloadArity()) advanceTo(pending.poll());
+            return current != null;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public Entry<K, V> next() {
+            if (!hasNext()) throw new NoSuchElementException();
+            int i = index++;
+            return Map.entry((K) current.key(i), (V) current.value(i));
+        }
+    }
+}
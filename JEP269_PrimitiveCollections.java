@@ -0,0 +1,490 @@
+import java.lang.ref.Reference;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Random;
+import java.util.Set;
+import java.util.function.IntConsumer;
+import java.util.function.ObjIntConsumer;
+import java.util.function.Supplier;
+
+/**
+ * Các collection bất biến chuyên cho kiểu nguyên thủy int, đặt cạnh các ví dụ của JEP269_MinhTuan.
+ *
+ * List.of/Set.of/Map.of luôn phải boxing: Map<String, Integer> giữ một đối tượng Integer cho mỗi giá trị
+ * (ngoài vùng cache -128..127). Với dữ liệu lớn, phần lớn heap là các Integer này.
+ * IntList, IntSet và ObjIntMap lưu trực tiếp trong mảng int[] (Set/Map dùng open addressing),
+ * nhưng vẫn giữ các ràng buộc giống JEP 269 đã minh họa trong demoImmutabilityAndRestrictions():
+ * 1. Bất biến: không có phương thức thay đổi nào
+ * 2. Không chấp nhận null (với key của ObjIntMap)
+ * 3. Không chấp nhận phần tử/key trùng lặp (ném IllegalArgumentException)
+ */
+public class JEP269_PrimitiveCollections {
+
+    public static void main(String[] args) {
+        System.out.println("--- 1. Tạo collection nguyên thủy bất biến ---");
+        demoFactories();
+
+        System.out.println("\n--- 2. Kiểm tra các ràng buộc giống JEP 269 ---");
+        demoRestrictions();
+
+        System.out.println("\n--- 3. So sánh bộ nhớ và tốc độ với Map.of/Set.of (boxing) ---");
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        compareWithBoxed(size);
+    }
+
+    public static void demoFactories() {
+        IntList list = IntList.of(3, 1, 4, 1, 5);
+        System.out.println("IntList: " + list + ", phần tử thứ 2 = " + list.get(2));
+
+        IntSet set = IntSet.of(2, 3, 5, 7);
+        System.out.println("IntSet: " + set + ", chứa 5? " + set.contains(5) + ", chứa 4? " + set.contains(4));
+
+        ObjIntMap<String> map = ObjIntMap.of("One", 1, "Two", 2);
+        System.out.println("ObjIntMap: " + map + ", get(\"Two\") = " + map.getInt("Two"));
+    }
+
+    public static void demoRestrictions() {
+        // 1. Không có add()/put(): tính bất biến được đảm bảo ngay từ kiểu dữ liệu
+        System.out.println("IntList/IntSet/ObjIntMap không có phương thức thay đổi nào.");
+
+        // 2. Key null (sẽ ném lỗi NullPointerException)
+        try {
+            ObjIntMap.of("a", 1, null, 2);
+        } catch (NullPointerException e) {
+            System.out.println("Bắt lỗi: Không thể tạo ObjIntMap với key null.");
+        }
+
+        // 3. Phần tử trùng lặp trong Set (sẽ ném lỗi IllegalArgumentException)
+        try {
+            IntSet.of(1, 2, 1);
+        } catch (IllegalArgumentException e) {
+            System.out.println("Bắt lỗi: " + e.getMessage());
+        }
+
+        // 4. Key trùng lặp trong Map (sẽ ném lỗi IllegalArgumentException)
+        try {
+            ObjIntMap.of("Key1", 1, "Key1", 2);
+        } catch (IllegalArgumentException e) {
+            System.out.println("Bắt lỗi: " + e.getMessage());
+        }
+
+        // 5. Key không tồn tại: getInt() ném lỗi, getOrDefault() trả về giá trị mặc định
+        try {
+            ObjIntMap.of("a", 1).getInt("b");
+        } catch (NoSuchElementException e) {
+            System.out.println("Bắt lỗi: " + e.getMessage());
+        }
+    }
+
+    /**
+     * So sánh heap giữ lại và thời gian tra cứu giữa bản boxing (Map.ofEntries, Set.of)
+     * và bản nguyên thủy (ObjIntMap, IntSet) với cùng dữ liệu.
+     * Key String được tạo sẵn và dùng chung nên không tính vào bộ nhớ; Integer thì có tính,
+     * vì đó chính là chi phí của boxing.
+     */
+    public static void compareWithBoxed(int size) {
+        String[] keys = new String[size];
+        int[] values = new int[size];
+        for (int i = 0; i < size; i++) {
+            keys[i] = "k" + i;
+            values[i] = i * 7 + 1_000;
+        }
+
+        Supplier<Map<String, Integer>> boxedMap = () -> {
+            @SuppressWarnings({"unchecked", "rawtypes"})
+            Map.Entry<String, Integer>[] entries = new Map.Entry[size];
+            for (int i = 0; i < size; i++) entries[i] = Map.entry(keys[i], values[i]);
+            return Map.ofEntries(entries);
+        };
+        Supplier<ObjIntMap<String>> primitiveMap = () -> ObjIntMap.copyOf(keys, values);
+        Supplier<Set<Integer>> boxedSet = () -> Set.of(Arrays.stream(values).boxed().toArray(Integer[]::new));
+        Supplier<IntSet> primitiveSet = () -> IntSet.copyOf(values);
+
+        System.out.printf("Map %d phần tử: Map.ofEntries = %,d byte, ObjIntMap = %,d byte%n",
+                size, retainedBytes(boxedMap), retainedBytes(primitiveMap));
+        System.out.printf("Set %d phần tử: Set.of        = %,d byte, IntSet    = %,d byte%n",
+                size, retainedBytes(boxedSet), retainedBytes(primitiveSet));
+
+        Map<String, Integer> bm = boxedMap.get();
+        ObjIntMap<String> pm = primitiveMap.get();
+        Set<Integer> bs = boxedSet.get();
+        IntSet ps = primitiveSet.get();
+
+        // Tra cứu theo thứ tự ngẫu nhiên, tránh việc duyệt tuần tự vô tình thân thiện với cache
+        String[] probeKeys = keys.clone();
+        int[] probeValues = values.clone();
+        Random rnd = new Random(42);
+        for (int i = size - 1; i > 0; i--) {
+            int j = rnd.nextInt(i + 1);
+            String k = probeKeys[i]; probeKeys[i] = probeKeys[j]; probeKeys[j] = k;
+            int v = probeValues[i]; probeValues[i] = probeValues[j]; probeValues[j] = v;
+        }
+
+        // Chạy vài lần để JIT biên dịch xong, lấy kết quả lần cuối
+        long tBoxedMap = 0, tPrimMap = 0, tBoxedSet = 0, tPrimSet = 0, check = 0;
+        for (int round = 0; round < 5; round++) {
+            long t0 = System.nanoTime();
+            for (String k : probeKeys) check += bm.get(k);
+            long t1 = System.nanoTime();
+            for (String k : probeKeys) check += pm.getInt(k);
+            long t2 = System.nanoTime();
+            for (int v : probeValues) if (bs.contains(v)) check++;
+            long t3 = System.nanoTime();
+            for (int v : probeValues) if (ps.contains(v)) check++;
+            long t4 = System.nanoTime();
+            tBoxedMap = t1 - t0;
+            tPrimMap = t2 - t1;
+            tBoxedSet = t3 - t2;
+            tPrimSet = t4 - t3;
+        }
+        System.out.printf("Tra cứu Map: Map.ofEntries = %.1f ns/op, ObjIntMap = %.1f ns/op%n",
+                (double) tBoxedMap / size, (double) tPrimMap / size);
+        System.out.printf("Tra cứu Set: Set.of        = %.1f ns/op, IntSet    = %.1f ns/op%n",
+                (double) tBoxedSet / size, (double) tPrimSet / size);
+        System.out.println("(checksum " + check + ")");
+        System.out.println("* Nhận xét: Bản nguyên thủy bỏ được Integer và các đối tượng entry, heap giảm đáng kể.");
+    }
+
+    private static long retainedBytes(Supplier<?> factory) {
+        long before = usedHeap();
+        Object built = factory.get();
+        long after = usedHeap();
+        Reference.reachabilityFence(built);
+        return Math.max(0, after - before);
+    }
+
+    private static long usedHeap() {
+        Runtime rt = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) System.gc();
+        return rt.totalMemory() - rt.freeMemory();
+    }
+
+    /** Hàm trộn bit (finalizer của MurmurHash3) để phân tán giá trị trong bảng băm. */
+    static int mix(int h) {
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        return h ^ (h >>> 16);
+    }
+
+    /** Kích thước bảng băm: lũy thừa của 2, ít nhất gấp đôi số phần tử (giống SetN/MapN của JDK). */
+    static int tableSize(int n) {
+        return Math.max(2, Integer.highestOneBit(Math.max(1, n) * 2 - 1) << 1);
+    }
+}
+
+/**
+ * List bất biến chứa int, lưu trong một mảng int[] có thứ tự như List.of().
+ */
+final class IntList {
+
+    private static final IntList EMPTY = new IntList(new int[0]);
+
+    private final int[] elements;
+
+    private IntList(int[] elements) {
+        this.elements = elements;
+    }
+
+    public static IntList of(int... elements) {
+        return copyOf(elements);
+    }
+
+    public static IntList copyOf(int[] elements) {
+        return elements.length == 0 ? EMPTY : new IntList(elements.clone());
+    }
+
+    public int size() {
+        return elements.length;
+    }
+
+    public boolean isEmpty() {
+        return elements.length == 0;
+    }
+
+    public int get(int index) {
+        Objects.checkIndex(index, elements.length);
+        return elements[index];
+    }
+
+    public int indexOf(int value) {
+        for (int i = 0; i < elements.length; i++) {
+            if (elements[i] == value) return i;
+        }
+        return -1;
+    }
+
+    public boolean contains(int value) {
+        return indexOf(value) >= 0;
+    }
+
+    public void forEach(IntConsumer action) {
+        for (int e : elements) action.accept(e);
+    }
+
+    public int[] toArray() {
+        return elements.clone();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof IntList other && Arrays.equals(elements, other.elements);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(elements);
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(elements);
+    }
+}
+
+/**
+ * Set bất biến chứa int, dùng open addressing (linear probing) trên một mảng int[].
+ * Ô trống được đánh dấu bằng 0, còn bản thân giá trị 0 được lưu riêng bằng cờ containsZero.
+ */
+final class IntSet {
+
+    private static final IntSet EMPTY = new IntSet(new int[2], false, 0);
+
+    private final int[] table;
+    private final boolean containsZero;
+    private final int size;
+
+    private IntSet(int[] table, boolean containsZero, int size) {
+        this.table = table;
+        this.containsZero = containsZero;
+        this.size = size;
+    }
+
+    public static IntSet of(int... elements) {
+        return copyOf(elements);
+    }
+
+    /**
+     * @throws IllegalArgumentException nếu có phần tử trùng lặp
+     */
+    public static IntSet copyOf(int[] elements) {
+        if (elements.length == 0) return EMPTY;
+        int[] table = new int[JEP269_PrimitiveCollections.tableSize(elements.length)];
+        boolean zero = false;
+        for (int e : elements) {
+            if (e == 0) {
+                if (zero) throw new IllegalArgumentException("duplicate element: 0");
+                zero = true;
+                continue;
+            }
+            int mask = table.length - 1;
+            int i = JEP269_PrimitiveCollections.mix(e) & mask;
+            while (table[i] != 0) {
+                if (table[i] == e) throw new IllegalArgumentException("duplicate element: " + e);
+                i = (i + 1) & mask;
+            }
+            table[i] = e;
+        }
+        return new IntSet(table, zero, elements.length);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public boolean contains(int value) {
+        if (value == 0) return containsZero;
+        int mask = table.length - 1;
+        int i = JEP269_PrimitiveCollections.mix(value) & mask;
+        int e;
+        while ((e = table[i]) != 0) {
+            if (e == value) return true;
+            i = (i + 1) & mask;
+        }
+        return false;
+    }
+
+    public void forEach(IntConsumer action) {
+        if (containsZero) action.accept(0);
+        for (int e : table) {
+            if (e != 0) action.accept(e);
+        }
+    }
+
+    public int[] toArray() {
+        int[] result = new int[size];
+        int[] n = {0};
+        forEach(e -> result[n[0]++] = e);
+        return result;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (o == this) return true;
+        if (!(o instanceof IntSet other) || other.size != size || other.containsZero != containsZero) return false;
+        for (int e : table) {
+            if (e != 0 && !other.contains(e)) return false;
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        int h = 0;
+        for (int e : table) h += e; // Integer.hashCode(e) == e, giống Set<Integer>; ô trống và 0 đều cộng 0
+        return h;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("[");
+        forEach(e -> sb.append(sb.length() > 1 ? ", " : "").append(e));
+        return sb.append(']').toString();
+    }
+}
+
+/**
+ * Map bất biến từ đối tượng sang int. Key nằm trong mảng Object[] (open addressing),
+ * giá trị nằm ở cùng vị trí trong mảng int[] song song, không có đối tượng entry hay Integer nào.
+ */
+final class ObjIntMap<K> {
+
+    private static final ObjIntMap<?> EMPTY = new ObjIntMap<>(new Object[2], new int[2], 0);
+
+    private final Object[] keys;
+    private final int[] values;
+    private final int size;
+
+    private ObjIntMap(Object[] keys, int[] values, int size) {
+        this.keys = keys;
+        this.values = values;
+        this.size = size;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <K> ObjIntMap<K> of() {
+        return (ObjIntMap<K>) EMPTY;
+    }
+
+    public static <K> ObjIntMap<K> of(K k1, int v1) {
+        return build(new Object[] {k1}, new int[] {v1});
+    }
+
+    public static <K> ObjIntMap<K> of(K k1, int v1, K k2, int v2) {
+        return build(new Object[] {k1, k2}, new int[] {v1, v2});
+    }
+
+    public static <K> ObjIntMap<K> of(K k1, int v1, K k2, int v2, K k3, int v3) {
+        return build(new Object[] {k1, k2, k3}, new int[] {v1, v2, v3});
+    }
+
+    /**
+     * Tạo map từ hai mảng song song: keys[i] ánh xạ tới values[i].
+     * @throws NullPointerException nếu có key null
+     * @throws IllegalArgumentException nếu hai mảng khác độ dài hoặc có key trùng lặp
+     */
+    public static <K> ObjIntMap<K> copyOf(K[] keys, int[] values) {
+        if (keys.length != values.length) {
+            throw new IllegalArgumentException("keys.length != values.length: " + keys.length + " != " + values.length);
+        }
+        return build(keys, values);
+    }
+
+    private static <K> ObjIntMap<K> build(Object[] ks, int[] vs) {
+        if (ks.length == 0) return of();
+        int len = JEP269_PrimitiveCollections.tableSize(ks.length);
+        Object[] table = new Object[len];
+        int[] vals = new int[len];
+        for (int j = 0; j < ks.length; j++) {
+            Object k = Objects.requireNonNull(ks[j]);
+            int i = probe(table, k);
+            if (i >= 0) throw new IllegalArgumentException("duplicate key: " + k);
+            i = -(i + 1);
+            table[i] = k;
+            vals[i] = vs[j];
+        }
+        return new ObjIntMap<>(table, vals, ks.length);
+    }
+
+    /** Trả về vị trí của key nếu có, ngược lại trả về -(vị trí trống + 1). */
+    private static int probe(Object[] table, Object key) {
+        int mask = table.length - 1;
+        int i = JEP269_PrimitiveCollections.mix(key.hashCode()) & mask;
+        Object k;
+        while ((k = table[i]) != null) {
+            if (k.equals(key)) return i;
+            i = (i + 1) & mask;
+        }
+        return -(i + 1);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public boolean containsKey(Object key) {
+        return probe(keys, Objects.requireNonNull(key)) >= 0;
+    }
+
+    /**
+     * @throws NoSuchElementException nếu không có key này
+     */
+    public int getInt(Object key) {
+        int i = probe(keys, Objects.requireNonNull(key));
+        if (i < 0) throw new NoSuchElementException("key not found: " + key);
+        return values[i];
+    }
+
+    public int getOrDefault(Object key, int defaultValue) {
+        int i = probe(keys, Objects.requireNonNull(key));
+        return i >= 0 ? values[i] : defaultValue;
+    }
+
+    @SuppressWarnings("unchecked")
+    public void forEach(ObjIntConsumer<? super K> action) {
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != null) action.accept((K) keys[i], values[i]);
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (o == this) return true;
+        if (!(o instanceof ObjIntMap<?> other) || other.size != size) return false;
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != null) {
+                int j = probe(other.keys, keys[i]);
+                if (j < 0 || other.values[j] != values[i]) return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        // Cùng công thức với Map<K, Integer>: tổng (key.hashCode() ^ value) của các entry
+        int h = 0;
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != null) h += keys[i].hashCode() ^ values[i];
+        }
+        return h;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("{");
+        forEach((k, v) -> sb.append(sb.length() > 1 ? ", " : "").append(k).append('=').append(v));
+        return sb.append('}').toString();
+    }
+}
@@ -0,0 +1,218 @@
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/*
+==========================================================
+JEP 358 - Thu thập và gom nhóm NullPointerException
+Mục tiêu: Thay cho e.printStackTrace() trong JEP358_Example.beforeJEP358()/afterJEP358().
+         Khi tải cao, hàng loạt NPE cùng in ra stderr làm mọi luồng phải xếp hàng chờ khóa
+         của System.err và làm ngập log. NpeAggregator gom các NPE theo thông báo hữu ích
+         của JEP 358 (ví dụ: Cannot read field "city" because "p.address" is null)
+         cộng với vài frame đầu của stack, chỉ đếm và giữ một stack mẫu cho mỗi nhóm.
+Phiên bản áp dụng: Java 14 trở lên
+==========================================================
+*/
+
+public class JEP358_NpeDiagnostics {
+
+    // Lớp dữ liệu mẫu giống JEP358_Example
+    static class Person {
+        String name;
+        Address address;
+    }
+
+    static class Address {
+        String city;
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        System.out.println("=== Gom nhóm NPE thay cho printStackTrace() ===");
+        demoAggregation();
+
+        System.out.println("\n=== So sánh chi phí khi NPE lặp lại nhiều lần ===");
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int perThread = args.length > 1 ? Integer.parseInt(args[1]) : 20_000;
+        compareWithPrintStackTrace(threads, perThread);
+    }
+
+    // ===================== Gom nhóm =====================
+    static void demoAggregation() {
+        NpeAggregator aggregator = new NpeAggregator();
+
+        for (int i = 0; i < 1_000; i++) {
+            try {
+                Person p = new Person();
+                if (i % 10 == 0) p.address = new Address(); // 1/10 số lần lỗi ở ".city" thay vì ".address"
+                System.out.print(p.address.city.toUpperCase());
+            } catch (NullPointerException e) {
+                aggregator.record(e);
+            }
+        }
+
+        for (NpeAggregator.GroupSnapshot g : aggregator.snapshot()) {
+            System.out.println(g.count() + " lần: " + g.message());
+            for (StackTraceElement frame : g.topFrames()) {
+                System.out.println("    tại " + frame);
+            }
+        }
+    }
+
+    // ===================== So sánh chi phí =====================
+    static void compareWithPrintStackTrace(int threads, int perThread) throws InterruptedException {
+        // In ra luồng rỗng để chỉ đo chi phí định dạng và khóa, không tính tốc độ của console
+        PrintStream devNull = new PrintStream(OutputStream.nullOutputStream());
+        long t1 = runConcurrently(threads, perThread, e -> e.printStackTrace(devNull));
+
+        NpeAggregator aggregator = new NpeAggregator();
+        long t2 = runConcurrently(threads, perThread, aggregator::record);
+
+        long total = (long) threads * perThread;
+        System.out.printf("printStackTrace(): %,d NPE trong %d ms (%.0f ns/NPE)%n", total, t1 / 1_000_000, (double) t1 / total);
+        System.out.printf("NpeAggregator    : %,d NPE trong %d ms (%.0f ns/NPE), %d nhóm%n",
+                total, t2 / 1_000_000, (double) t2 / total, aggregator.snapshot().size());
+        System.out.println("* Nhận xét: Không còn khóa chung của stderr; chi phí còn lại chủ yếu là JVM dựng");
+        System.out.println("  thông báo và stack trace cho từng NPE mới.");
+    }
+
+    private static long runConcurrently(int threads, int perThread, Consumer<NullPointerException> handler)
+            throws InterruptedException {
+        Thread[] workers = new Thread[threads];
+        long start = System.nanoTime();
+        for (int t = 0; t < threads; t++) {
+            workers[t] = new Thread(() -> {
+                for (int i = 0; i < perThread; i++) {
+                    try {
+                        Person p = new Person();
+                        p.address.city.length();
+                    } catch (NullPointerException e) {
+                        handler.accept(e);
+                    }
+                }
+            });
+            workers[t].start();
+        }
+        for (Thread w : workers) w.join();
+        return System.nanoTime() - start;
+    }
+}
+
+/**
+ * Thu thập NullPointerException theo nhóm: (thông báo hữu ích + TOP_FRAMES frame đầu của stack).
+ *
+ * Đường nóng không có khóa và không có I/O:
+ * - Cùng một đối tượng NPE được ghi lại nhiều lần (ví dụ NPE dựng sẵn mà JIT ném ra khi
+ *   OmitStackTraceInFastThrow bật, hoặc một NPE được ném lại) chỉ tốn một lần tra bảng theo identity
+ *   và một lần tăng LongAdder.
+ * - NPE mới tra nhóm trong ConcurrentHashMap (đọc không khóa); chỉ lần đầu gặp nhóm mới phải chèn.
+ * - Stack mẫu của nhóm chỉ được thay ngẫu nhiên khoảng 1/SAMPLE_RATE số lần, nên hầu như không ghi chung.
+ * Snapshot được tạo theo yêu cầu, không ảnh hưởng tới luồng đang ghi.
+ *
+ * Lưu ý: với -XX:+OmitStackTraceInFastThrow (mặc định), code đã được JIT biên dịch có thể ném NPE
+ * không có thông báo và stack; khi đó chúng rơi vào cùng một nhóm. Chạy với
+ * -XX:-OmitStackTraceInFastThrow để giữ đủ thông tin phân nhóm.
+ */
+final class NpeAggregator {
+
+    static final int TOP_FRAMES = 3;
+    static final int DEFAULT_MAX_GROUPS = 1_000;
+    static final int SAMPLE_RATE = 64;
+    private static final int IDENTITY_CACHE_SIZE = 256; // lũy thừa của 2
+    private static final String OVERFLOW_MESSAGE = "(quá nhiều nhóm, các NPE còn lại được gom vào đây)";
+
+    /** Ảnh chụp một nhóm tại thời điểm gọi snapshot(). */
+    record GroupSnapshot(String message, List<StackTraceElement> topFrames, long count,
+                         Instant firstSeen, Instant lastSeen, List<StackTraceElement> sampleStack) {
+    }
+
+    private record Fingerprint(String message, List<StackTraceElement> topFrames) {
+    }
+
+    private static final class Group {
+        final Fingerprint fingerprint;
+        final LongAdder count = new LongAdder();
+        final long firstSeen = System.currentTimeMillis();
+        volatile long lastSeen = firstSeen;
+        volatile StackTraceElement[] sample;
+
+        Group(Fingerprint fingerprint) {
+            this.fingerprint = fingerprint;
+        }
+
+        void hit(StackTraceElement[] stack) {
+            count.increment();
+            long now = System.currentTimeMillis();
+            if (now != lastSeen) lastSeen = now; // tránh ghi chung mỗi lần khi NPE dồn dập
+            // Giữ stack đầu tiên, sau đó thay ngẫu nhiên khoảng 1/SAMPLE_RATE số lần
+            if (stack != null && (sample == null || ThreadLocalRandom.current().nextInt(SAMPLE_RATE) == 0)) {
+                sample = stack;
+            }
+        }
+    }
+
+    /** Ô của bảng identity: NPE đã gặp và nhóm của nó. */
+    private record Seen(NullPointerException exception, Group group) {
+    }
+
+    private final ConcurrentHashMap<Fingerprint, Group> groups = new ConcurrentHashMap<>();
+    private final AtomicReferenceArray<Seen> identityCache = new AtomicReferenceArray<>(IDENTITY_CACHE_SIZE);
+    private final int maxGroups;
+    private final Group overflow = new Group(new Fingerprint(OVERFLOW_MESSAGE, List.of()));
+
+    NpeAggregator() {
+        this(DEFAULT_MAX_GROUPS);
+    }
+
+    NpeAggregator(int maxGroups) {
+        this.maxGroups = maxGroups;
+    }
+
+    /** Ghi nhận một NPE. An toàn khi gọi đồng thời từ nhiều luồng. */
+    public void record(NullPointerException e) {
+        Objects.requireNonNull(e);
+        int slot = System.identityHashCode(e) & (IDENTITY_CACHE_SIZE - 1);
+        Seen seen = identityCache.get(slot);
+        if (seen != null && seen.exception() == e) {
+            seen.group().hit(null);
+            return;
+        }
+
+        StackTraceElement[] stack = e.getStackTrace();
+        List<StackTraceElement> top = List.of(Arrays.copyOf(stack, Math.min(TOP_FRAMES, stack.length)));
+        String message = e.getMessage() != null ? e.getMessage() : "(không có thông báo)";
+        Fingerprint key = new Fingerprint(message, top);
+
+        Group group = groups.get(key);
+        if (group == null) {
+            group = groups.size() >= maxGroups ? overflow : groups.computeIfAbsent(key, Group::new);
+        }
+        group.hit(stack);
+        identityCache.set(slot, new Seen(e, group));
+    }
+
+    /** Các nhóm hiện có, nhiều lần nhất trước. */
+    public List<GroupSnapshot> snapshot() {
+        List<GroupSnapshot> result = new ArrayList<>();
+        for (Group g : groups.values()) result.add(toSnapshot(g));
+        if (overflow.count.sum() > 0) result.add(toSnapshot(overflow));
+        result.sort(Comparator.comparingLong(GroupSnapshot::count).reversed());
+        return result;
+    }
+
+    private static GroupSnapshot toSnapshot(Group g) {
+        StackTraceElement[] sample = g.sample;
+        return new GroupSnapshot(g.fingerprint.message(), g.fingerprint.topFrames(), g.count.sum(),
+                Instant.ofEpochMilli(g.firstSeen), Instant.ofEpochMilli(g.lastSeen),
+                sample == null ? List.of() : List.of(sample));
+    }
+}
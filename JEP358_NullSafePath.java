@@ -0,0 +1,262 @@
+import java.io.Serializable;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandleInfo;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.invoke.SerializedLambda;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.Random;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+
+/*
+==========================================================
+JEP 358 - Truy cập an toàn với null theo đường dẫn đã biên dịch
+Mục tiêu: Chuỗi p.address.city.toUpperCase() trong JEP358_Example xử lý mắt xích null bằng cách
+         ném NullPointerException; dựng thông báo hữu ích và stack trace tốn vài micro giây mỗi lần.
+         NullSafePath.of(Person::address, Address::city) được biên dịch một lần thành chuỗi
+         MethodHandle, trả về giá trị cuối hoặc mắt xích null đầu tiên (kèm tên), không tạo ngoại lệ.
+Phiên bản áp dụng: Java 16 trở lên (record)
+==========================================================
+*/
+
+public class JEP358_NullSafePath {
+
+    // Lớp dữ liệu mẫu giống JEP358_Example, viết dạng record để có Person::address, Address::city
+    record Person(String name, Address address) {
+    }
+
+    record Address(String city) {
+    }
+
+    static final NullSafePath<Person, String> CITY = NullSafePath.of(Person::address, Address::city);
+    static final NullSafePath<Person, String> CITY_UPPER =
+            NullSafePath.of(Person::address, Address::city, String::toUpperCase);
+
+    public static void main(String[] args) {
+        System.out.println("=== Truy cập an toàn với null ===");
+        demoPath();
+
+        System.out.println("\n=== So sánh với cách ném và bắt NPE ===");
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        for (double nullRate : new double[] {0.0, 0.01, 0.1, 0.5}) {
+            compare(size, nullRate);
+        }
+        System.out.println("* Lưu ý: Với -XX:+OmitStackTraceInFastThrow (mặc định), JIT có thể thay NPE bằng một");
+        System.out.println("  đối tượng dựng sẵn không có thông báo; chạy với -XX:-OmitStackTraceInFastThrow");
+        System.out.println("  để thấy chi phí thật của thông báo hữu ích.");
+    }
+
+    static void demoPath() {
+        Person ok = new Person("An", new Address("Hà Nội"));
+        Person noAddress = new Person("Bình", null);
+        Person noCity = new Person("Chi", new Address(null));
+
+        for (Person p : new Person[] {ok, noAddress, noCity, null}) {
+            Object r = CITY_UPPER.resolve(p);
+            if (r instanceof NullSafePath.NullHop hop) {
+                System.out.println("Mắt xích null: \"" + hop.path() + "\" (thay cho NPE)");
+            } else {
+                System.out.println("Giá trị: " + r);
+            }
+        }
+        System.out.println("orElse: " + CITY.orElse(noAddress, "(chưa có thành phố)"));
+    }
+
+    static void compare(int size, double nullRate) {
+        Random rnd = new Random(42);
+        Person[] people = new Person[size];
+        for (int i = 0; i < size; i++) {
+            people[i] = rnd.nextDouble() < nullRate
+                    ? new Person("p" + i, null)
+                    : new Person("p" + i, new Address("city" + (i & 1023)));
+        }
+
+        ToIntFunction<Person> throwAndCatch = p -> {
+            try {
+                return p.address().city().toUpperCase().length();
+            } catch (NullPointerException e) {
+                // Giống thực tế: thông báo được đọc để ghi log (có thể null nếu JIT ném NPE dựng sẵn)
+                String message = e.getMessage();
+                return message == null ? 0 : message.length();
+            }
+        };
+        ToIntFunction<Person> manualChecks = p -> {
+            Address a = p.address();
+            if (a == null) return "address".length();
+            String c = a.city();
+            return c == null ? "city".length() : c.toUpperCase().length();
+        };
+        ToIntFunction<Person> compiledPath = p -> {
+            Object r = CITY_UPPER.resolve(p);
+            return r instanceof NullSafePath.NullHop hop ? hop.name().length() : ((String) r).length();
+        };
+
+        System.out.printf("Tỉ lệ null %4.1f%%: ném/bắt NPE = %6.1f ns/op, kiểm tra tay = %5.1f ns/op, NullSafePath = %5.1f ns/op%n",
+                nullRate * 100, measure(people, throwAndCatch), measure(people, manualChecks), measure(people, compiledPath));
+    }
+
+    // "Hố đen" giữ kết quả để JIT không loại bỏ vòng lặp được đo
+    static volatile long sink;
+
+    /** Trung vị của 5 vòng đo sau 3 vòng khởi động, tính theo ns cho mỗi phần tử. */
+    private static double measure(Person[] people, ToIntFunction<Person> body) {
+        double[] samples = new double[5];
+        long check = 0;
+        for (int round = -3; round < samples.length; round++) {
+            long start = System.nanoTime();
+            for (Person p : people) check += body.applyAsInt(p);
+            if (round >= 0) samples[round] = (double) (System.nanoTime() - start) / people.length;
+        }
+        Arrays.sort(samples);
+        sink = check;
+        return samples[samples.length / 2];
+    }
+}
+
+/**
+ * Đường dẫn truy cập T -> ... -> R, mỗi mắt xích là một method reference.
+ *
+ * Khi tạo, mỗi mắt xích được phân giải (qua SerializedLambda) thành MethodHandle gọi thẳng phương thức
+ * đích và lấy tên của nó; cả chuỗi được ghép thành một MethodHandle duy nhất bằng guardWithTest.
+ * Nên khai báo path là static final: NullSafePath là record nên JIT coi MethodHandle bên trong là hằng số
+ * và có thể inline toàn bộ chuỗi.
+ *
+ * resolve() trả về giá trị cuối, hoặc một NullHop dựng sẵn (không cấp phát) mô tả mắt xích null đầu tiên.
+ */
+record NullSafePath<T, R>(MethodHandle chain, List<NullHop> hops) {
+
+    /** hops được chép thành List bất biến: accessor không để lộ mảng nội bộ cho bên ngoài sửa. */
+    NullSafePath {
+        Objects.requireNonNull(chain, "chain");
+        hops = List.copyOf(hops);
+    }
+
+    /** Một mắt xích có thể lấy tên, phải là method reference (ví dụ Person::address). */
+    @FunctionalInterface
+    interface Hop<A, B> extends Function<A, B>, Serializable {
+    }
+
+    /**
+     * Mắt xích null đầu tiên: index = -1 nghĩa là chính đối tượng gốc null.
+     * path là đường dẫn tới mắt xích đó, ví dụ "address.city".
+     */
+    record NullHop(int index, String name, String path) {
+    }
+
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+    private static final MethodHandle IS_NULL;
+    private static final MethodHandle APPLY;
+
+    static {
+        try {
+            IS_NULL = LOOKUP.findStatic(Objects.class, "isNull", MethodType.methodType(boolean.class, Object.class));
+            APPLY = LOOKUP.findVirtual(Function.class, "apply", MethodType.methodType(Object.class, Object.class));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    public static <T, A, R> NullSafePath<T, R> of(Hop<T, A> h1, Hop<A, R> h2) {
+        return compile(h1, h2);
+    }
+
+    public static <T, A, B, R> NullSafePath<T, R> of(Hop<T, A> h1, Hop<A, B> h2, Hop<B, R> h3) {
+        return compile(h1, h2, h3);
+    }
+
+    public static <T, A, B, C, R> NullSafePath<T, R> of(Hop<T, A> h1, Hop<A, B> h2, Hop<B, C> h3, Hop<C, R> h4) {
+        return compile(h1, h2, h3, h4);
+    }
+
+    private static <T, R> NullSafePath<T, R> compile(Hop<?, ?>... fns) {
+        int n = fns.length;
+        NullHop[] hops = new NullHop[n + 1];
+        MethodHandle[] steps = new MethodHandle[n];
+        hops[0] = new NullHop(-1, "<root>", "<root>");
+        String path = "";
+        for (int i = 0; i < n; i++) {
+            Resolved r = resolve(fns[i], i);
+            steps[i] = r.handle();
+            path = path.isEmpty() ? r.name() : path + "." + r.name();
+            hops[i + 1] = new NullHop(i, r.name(), path);
+        }
+
+        // Ghép từ cuối lên: step_i(o) = v = hop_i(o); v == null ? NullHop(i) : step_{i+1}(v)
+        MethodHandle next = MethodHandles.identity(Object.class);
+        for (int i = n - 1; i >= 0; i--) {
+            MethodHandle onNull = MethodHandles.dropArguments(
+                    MethodHandles.constant(Object.class, hops[i + 1]), 0, Object.class);
+            MethodHandle guarded = MethodHandles.guardWithTest(IS_NULL, onNull, next);
+            next = MethodHandles.filterArguments(guarded, 0, steps[i]);
+        }
+        MethodHandle rootNull = MethodHandles.dropArguments(MethodHandles.constant(Object.class, hops[0]), 0, Object.class);
+        MethodHandle chain = MethodHandles.guardWithTest(IS_NULL, rootNull, next);
+        return new NullSafePath<>(chain, Arrays.asList(hops));
+    }
+
+    private record Resolved(MethodHandle handle, String name) {
+    }
+
+    /**
+     * Lấy tên và MethodHandle gọi thẳng phương thức đích của method reference.
+     * Nếu không phân giải được (ví dụ lambda thường), dùng Function.apply và tên "hop" + i.
+     */
+    private static Resolved resolve(Hop<?, ?> fn, int i) {
+        MethodHandle viaApply = APPLY.bindTo(fn);
+        try {
+            Method writeReplace = fn.getClass().getDeclaredMethod("writeReplace");
+            writeReplace.setAccessible(true);
+            SerializedLambda sl = (SerializedLambda) writeReplace.invoke(fn);
+            boolean isMethodRef = !sl.getImplMethodName().startsWith("lambda$") && sl.getCapturedArgCount() == 0;
+            if (!isMethodRef) return new Resolved(viaApply, "hop" + i);
+
+            ClassLoader loader = fn.getClass().getClassLoader();
+            Class<?> owner = Class.forName(sl.getImplClass().replace('/', '.'), false, loader);
+            MethodType type = MethodType.fromMethodDescriptorString(sl.getImplMethodSignature(), loader);
+            MethodHandle direct = switch (sl.getImplMethodKind()) {
+                case MethodHandleInfo.REF_invokeVirtual, MethodHandleInfo.REF_invokeInterface ->
+                        LOOKUP.findVirtual(owner, sl.getImplMethodName(), type);
+                case MethodHandleInfo.REF_invokeStatic ->
+                        LOOKUP.findStatic(owner, sl.getImplMethodName(), type);
+                default -> null;
+            };
+            if (direct == null || direct.type().parameterCount() != 1) return new Resolved(viaApply, sl.getImplMethodName());
+            return new Resolved(direct.asType(MethodType.methodType(Object.class, Object.class)), sl.getImplMethodName());
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return new Resolved(viaApply, "hop" + i);
+        }
+    }
+
+    /** Giá trị cuối của đường dẫn, hoặc NullHop của mắt xích null đầu tiên. */
+    public Object resolve(T root) {
+        try {
+            return (Object) chain.invokeExact((Object) root);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+    }
+
+    /** Giá trị cuối, hoặc null nếu có mắt xích null. */
+    @SuppressWarnings("unchecked")
+    public R get(T root) {
+        Object r = resolve(root);
+        return r instanceof NullHop ? null : (R) r;
+    }
+
+    @SuppressWarnings("unchecked")
+    public R orElse(T root, R defaultValue) {
+        Object r = resolve(root);
+        return r instanceof NullHop ? defaultValue : (R) r;
+    }
+
+    @Override
+    public String toString() {
+        return "NullSafePath[" + hops.get(hops.size() - 1).path() + "]";
+    }
+}
@@ -0,0 +1,450 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ Giới hạn đồng thời thích ứng cho Virtual Threads.
+ Executors.newVirtualThreadPerTaskExecutor() trong VirtualThreadComparison.demoVirtualThreads() không có giới hạn:
+ gửi 100.000 tác vụ tới một dịch vụ chỉ chịu được 200 lời gọi đồng thời thì mọi lời gọi cùng chậm đi
+ và độ trễ sụp đổ (quá thời gian chờ hàng loạt).
+
+ LimitingExecutor bọc executor Virtual Threads, chỉ cho tối đa limit tác vụ chạy cùng lúc.
+ limit tự điều chỉnh sau mỗi tác vụ theo thời gian phản hồi (RTT) và lỗi:
+ - AIMD: tăng 1 khi thành công, nhân 0,9 khi lỗi hoặc RTT vượt ngưỡng
+ - Gradient: limit * (minRtt / rtt) + sqrt(limit), tức giảm khi RTT tăng so với lúc không tải
+ Khi đã đủ limit, tác vụ mới được xử lý theo chính sách: QUEUE (xếp hàng), REJECT (từ chối),
+ CALLER_WAITS (luồng gọi chờ). limit hiện tại và số tác vụ đang chạy có thể đọc bất kỳ lúc nào.
+
+ Chạy: java JEP425_ConcurrencyLimiter.java [số tác vụ] [sức chứa dịch vụ]
+ Phiên bản áp dụng: Java 21 trở lên.
+ */
+public class JEP425_ConcurrencyLimiter {
+
+    public static void main(String[] args) throws InterruptedException {
+        int tasks = args.length > 0 ? Integer.parseInt(args[0]) : 20_000;
+        int capacity = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        SlowDownstream downstream = new SlowDownstream(capacity, 20, 1_000);
+
+        System.out.printf("--- %,d tác vụ tới dịch vụ chịu %d lời gọi đồng thời (20 ms/lời gọi, hết giờ sau 1 s) ---%n",
+                tasks, capacity);
+        run("Không giới hạn", Executors.newVirtualThreadPerTaskExecutor(), tasks, downstream);
+        run("AIMD + QUEUE", new LimitingExecutor(Executors.newVirtualThreadPerTaskExecutor(),
+                new AimdLimit(10, 1, 10_000, 40), LimitingExecutor.Policy.QUEUE, Integer.MAX_VALUE), tasks, downstream);
+        run("Gradient + QUEUE", new LimitingExecutor(Executors.newVirtualThreadPerTaskExecutor(),
+                new GradientLimit(10, 1, 10_000), LimitingExecutor.Policy.QUEUE, Integer.MAX_VALUE), tasks, downstream);
+        run("AIMD + REJECT", new LimitingExecutor(Executors.newVirtualThreadPerTaskExecutor(),
+                new AimdLimit(10, 1, 10_000, 40), LimitingExecutor.Policy.REJECT, 0), tasks, downstream);
+        System.out.println("* Nhận xét: Có giới hạn, thời gian gọi dịch vụ giữ gần 20 ms và không còn lỗi hết giờ;");
+        System.out.println("  thời gian chờ chuyển sang hàng đợi phía mình (QUEUE) hoặc bị từ chối sớm (REJECT).");
+    }
+
+    static void run(String name, ExecutorService executor, int tasks, SlowDownstream downstream)
+            throws InterruptedException {
+        long[] callLatency = new long[tasks];
+        long[] endToEnd = new long[tasks];
+        AtomicInteger done = new AtomicInteger();
+        LongAdder failed = new LongAdder();
+        int rejected = 0;
+
+        long start = System.nanoTime();
+        try (executor) {
+            for (int i = 0; i < tasks; i++) {
+                long submitted = System.nanoTime();
+                try {
+                    executor.submit(() -> {
+                        long t0 = System.nanoTime();
+                        boolean ok = downstream.call();
+                        long t1 = System.nanoTime();
+                        int slot = done.getAndIncrement();
+                        callLatency[slot] = t1 - t0;
+                        endToEnd[slot] = t1 - submitted;
+                        if (!ok) {
+                            failed.increment();
+                            throw new IllegalStateException("downstream timeout");
+                        }
+                        return null;
+                    });
+                } catch (RejectedExecutionException e) {
+                    rejected++;
+                }
+            }
+            if (executor instanceof LimitingExecutor limiter) {
+                System.out.printf("%-17s sau khi nộp: limit=%d, đang chạy=%d, xếp hàng=%d%n",
+                        name, limiter.limit(), limiter.inFlight(), limiter.queued());
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+
+        int n = done.get();
+        long[] call = Arrays.copyOf(callLatency, n);
+        long[] e2e = Arrays.copyOf(endToEnd, n);
+        Arrays.sort(call);
+        Arrays.sort(e2e);
+        System.out.printf("%-17s %6d ms | gọi dịch vụ p50 %6.1f p99 %7.1f max %7.1f ms"
+                        + " | đầu-cuối p99 %7.1f ms | lỗi %,d | từ chối %,d%n",
+                name, elapsed / 1_000_000, pct(call, 50), pct(call, 99), pct(call, 100), pct(e2e, 99),
+                failed.sum(), rejected);
+    }
+
+    private static double pct(long[] sorted, double p) {
+        if (sorted.length == 0) return 0;
+        int index = (int) Math.ceil(p / 100 * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))] / 1e6;
+    }
+}
+
+/**
+ Dịch vụ chậm mô phỏng: mỗi lời gọi mất baseMillis khi số lời gọi đồng thời không quá capacity;
+ vượt quá thì thời gian tăng tỉ lệ với mức quá tải (tranh chấp tài nguyên phía dịch vụ).
+ Lời gọi lâu hơn timeoutMillis bị bỏ cuộc sau timeoutMillis và trả về false.
+ */
+final class SlowDownstream {
+
+    private final int capacity;
+    private final long baseMillis;
+    private final long timeoutMillis;
+    private final AtomicInteger active = new AtomicInteger();
+
+    SlowDownstream(int capacity, long baseMillis, long timeoutMillis) {
+        this.capacity = capacity;
+        this.baseMillis = baseMillis;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    boolean call() {
+        int concurrent = active.incrementAndGet();
+        try {
+            long millis = (long) (baseMillis * Math.max(1.0, (double) concurrent / capacity));
+            Thread.sleep(Math.min(millis, timeoutMillis));
+            return millis <= timeoutMillis;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            active.decrementAndGet();
+        }
+    }
+}
+
+/** Thuật toán điều chỉnh limit. update() được gọi trong khóa của LimitingExecutor, không cần tự đồng bộ. */
+interface LimitAlgorithm {
+
+    int initialLimit();
+
+    /**
+     @param limit    limit hiện tại
+     @param rttNanos thời gian chạy của tác vụ vừa xong
+     @param inFlight số tác vụ đang chạy, tính cả tác vụ vừa xong
+     @param dropped  tác vụ thất bại (ném ngoại lệ), thường do dịch vụ quá tải hoặc hết giờ
+     @return limit mới; LimitingExecutor tự giới hạn trong [minLimit, maxLimit] của thuật toán
+     */
+    int update(int limit, long rttNanos, int inFlight, boolean dropped);
+
+    int minLimit();
+
+    int maxLimit();
+}
+
+/**
+ Additive increase / multiplicative decrease: thành công thì +1 (chỉ khi đang dùng ít nhất nửa limit,
+ để limit không phình ra lúc tải thấp), lỗi hoặc RTT vượt slowMillis thì nhân BACKOFF.
+ */
+record AimdLimit(int initialLimit, int minLimit, int maxLimit, long slowMillis) implements LimitAlgorithm {
+
+    private static final double BACKOFF = 0.9;
+
+    @Override
+    public int update(int limit, long rttNanos, int inFlight, boolean dropped) {
+        if (dropped || rttNanos > slowMillis * 1_000_000) return (int) (limit * BACKOFF);
+        return inFlight * 2 >= limit ? limit + 1 : limit;
+    }
+}
+
+/**
+ Gradient theo RTT: minRtt là RTT nhỏ nhất từng thấy (ước lượng lúc không tải),
+ gradient = minRtt / rtt trong [0,5; 1]; limit mới = limit * gradient + sqrt(limit), làm mượt với hệ số SMOOTHING.
+ Khi RTT bằng minRtt, limit tăng khoảng sqrt(limit); khi dịch vụ bắt đầu xếp hàng, RTT tăng và limit giảm.
+ */
+final class GradientLimit implements LimitAlgorithm {
+
+    private static final double SMOOTHING = 0.2;
+
+    private final int initialLimit;
+    private final int minLimit;
+    private final int maxLimit;
+    private long minRtt = Long.MAX_VALUE;
+    private double estimate;
+
+    GradientLimit(int initialLimit, int minLimit, int maxLimit) {
+        this.initialLimit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.estimate = initialLimit;
+    }
+
+    @Override
+    public int initialLimit() {
+        return initialLimit;
+    }
+
+    @Override
+    public int minLimit() {
+        return minLimit;
+    }
+
+    @Override
+    public int maxLimit() {
+        return maxLimit;
+    }
+
+    @Override
+    public int update(int limit, long rttNanos, int inFlight, boolean dropped) {
+        if (dropped) {
+            estimate = Math.max(minLimit, estimate * 0.5);
+            return (int) estimate;
+        }
+        if (rttNanos > 0 && rttNanos < minRtt) minRtt = rttNanos;
+        // Chỉ tăng khi limit đang thực sự được dùng
+        if (inFlight * 2 < limit) return limit;
+        double gradient = Math.max(0.5, Math.min(1.0, (double) minRtt / rttNanos));
+        double target = limit * gradient + Math.sqrt(limit);
+        estimate = estimate * (1 - SMOOTHING) + target * SMOOTHING;
+        estimate = Math.max(minLimit, Math.min(maxLimit, estimate));
+        return (int) estimate;
+    }
+}
+
+/**
+ Executor giới hạn số tác vụ chạy đồng thời của executor bên dưới, với limit thích ứng.
+ Tác vụ được coi là lỗi (dropped) khi ném ngoại lệ; với submit(), tác vụ là Future và được kiểm tra qua state().
+ */
+final class LimitingExecutor extends AbstractExecutorService {
+
+    enum Policy {
+        /** Xếp hàng tối đa maxQueue tác vụ, vượt quá thì từ chối. */
+        QUEUE,
+        /** Từ chối ngay bằng RejectedExecutionException. */
+        REJECT,
+        /** Luồng gọi execute() chờ tới khi có chỗ. */
+        CALLER_WAITS
+    }
+
+    private final ExecutorService delegate;
+    private final LimitAlgorithm algorithm;
+    private final Policy policy;
+    private final int maxQueue;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition permitFreed = lock.newCondition();
+    private final Condition drained = lock.newCondition();
+    private final ArrayDeque<Runnable> queue = new ArrayDeque<>();
+    private final LongAdder rejected = new LongAdder();
+    private int limit;
+    private int inFlight;
+    private boolean shutdown;
+
+    LimitingExecutor(ExecutorService delegate, LimitAlgorithm algorithm, Policy policy, int maxQueue) {
+        if (maxQueue < 0) throw new IllegalArgumentException("maxQueue must be >= 0: " + maxQueue);
+        this.delegate = delegate;
+        this.algorithm = algorithm;
+        this.policy = policy;
+        this.maxQueue = maxQueue;
+        this.limit = clamp(algorithm.initialLimit());
+    }
+
+    int limit() {
+        lock.lock();
+        try {
+            return limit;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    int inFlight() {
+        lock.lock();
+        try {
+            return inFlight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    int queued() {
+        lock.lock();
+        try {
+            return queue.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    long rejectedCount() {
+        return rejected.sum();
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        lock.lock();
+        try {
+            if (shutdown) throw reject("executor is shut down");
+            if (inFlight >= limit) {
+                switch (policy) {
+                    case REJECT -> throw reject("concurrency limit " + limit + " reached");
+                    case QUEUE -> {
+                        if (queue.size() >= maxQueue) throw reject("queue full (" + maxQueue + ")");
+                        queue.addLast(command);
+                        return;
+                    }
+                    case CALLER_WAITS -> {
+                        while (inFlight >= limit && !shutdown) permitFreed.awaitUninterruptibly();
+                        if (shutdown) throw reject("executor is shut down");
+                    }
+                }
+            }
+            inFlight++;
+        } finally {
+            lock.unlock();
+        }
+        try {
+            dispatch(command);
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            release(1, -1, true);
+            throw e;
+        }
+    }
+
+    private RejectedExecutionException reject(String message) {
+        rejected.increment();
+        return new RejectedExecutionException(message);
+    }
+
+    private void dispatch(Runnable command) {
+        delegate.execute(() -> {
+            long start = System.nanoTime();
+            boolean dropped = true;
+            try {
+                command.run();
+                dropped = command instanceof Future<?> f && f.state() == Future.State.FAILED;
+            } finally {
+                release(1, System.nanoTime() - start, dropped);
+            }
+        });
+    }
+
+    /**
+     * Trả permits chỗ, cập nhật limit (nếu rttNanos >= 0) rồi chuyển các tác vụ đang xếp hàng sang executor bên dưới.
+     * Tác vụ bị executor bên dưới từ chối (ví dụ sau shutdownNow()) được trả chỗ ở vòng lặp kế tiếp
+     * thay vì ném ra giữa chừng, nên inFlight của các tác vụ còn lại không bị treo.
+     */
+    private void release(int permits, long rttNanos, boolean dropped) {
+        while (permits > 0) {
+            List<Runnable> ready = null;
+            lock.lock();
+            try {
+                if (rttNanos >= 0) limit = clamp(algorithm.update(limit, rttNanos, inFlight, dropped));
+                inFlight -= permits;
+                while (inFlight < limit && !queue.isEmpty()) {
+                    if (ready == null) ready = new ArrayList<>();
+                    ready.add(queue.pollFirst());
+                    inFlight++;
+                }
+                permitFreed.signalAll();
+                if (inFlight == 0 && queue.isEmpty()) {
+                    drained.signalAll();
+                    if (shutdown) delegate.shutdown();
+                }
+            } finally {
+                lock.unlock();
+            }
+            permits = 0;
+            rttNanos = -1;
+            if (ready == null) break;
+            for (Runnable r : ready) {
+                try {
+                    dispatch(r);
+                } catch (RejectedExecutionException e) {
+                    // Hủy Future (nếu là tác vụ từ submit()) để người gọi get() không chờ mãi
+                    rejected.increment();
+                    if (r instanceof Future<?> f) f.cancel(false);
+                    permits++;
+                }
+            }
+        }
+    }
+
+    private int clamp(int value) {
+        return Math.max(algorithm.minLimit(), Math.min(algorithm.maxLimit(), value));
+    }
+
+    @Override
+    public void shutdown() {
+        lock.lock();
+        try {
+            shutdown = true;
+            permitFreed.signalAll();
+            // Nếu còn tác vụ, release() của tác vụ cuối sẽ tắt executor bên dưới
+            if (inFlight == 0 && queue.isEmpty()) delegate.shutdown();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        List<Runnable> pending;
+        lock.lock();
+        try {
+            shutdown = true;
+            pending = new ArrayList<>(queue);
+            queue.clear();
+            permitFreed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        pending.addAll(delegate.shutdownNow());
+        return pending;
+    }
+
+    @Override
+    public boolean isShutdown() {
+        lock.lock();
+        try {
+            return shutdown;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return isShutdown() && delegate.isTerminated();
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        lock.lock();
+        try {
+            while (inFlight > 0 || !queue.isEmpty()) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) return false;
+                drained.awaitNanos(remaining);
+            }
+        } finally {
+            lock.unlock();
+        }
+        return delegate.awaitTermination(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+    }
+}
@@ -0,0 +1,293 @@
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ Bộ sinh tải có cấu hình, thay cho các demo viết cứng trong VirtualThreadComparison (JEP425_ThanhXuan.java).
+ Các demo cũ cố định 100 tác vụ, pool 10 luồng, Thread.sleep(500), đo bằng System.currentTimeMillis()
+ và in một dòng cho mỗi tác vụ, nên thời gian chủ yếu là I/O của console.
+ Ở đây có thể chọn:
+ - số tác vụ, số tác vụ chạy đồng thời tối đa, kích thước pool
+ - tỉ lệ tác vụ I/O chặn (sleep) và tác vụ tính toán CPU, thời gian của mỗi loại
+ - loại pool: fixed, cached, forkjoin, virtual (mỗi tác vụ một Virtual Thread)
+ Kết quả: thông lượng, độ trễ p50/p99/p999/max (histogram kiểu HDR), số luồng nền tảng cao nhất
+ và bộ nhớ RSS cao nhất của tiến trình (chỉ có trên Linux).
+
+ Chạy: java JEP425_LoadGenerator.java                      (so sánh mọi loại pool với cùng tải)
+       java JEP425_LoadGenerator.java --pool=virtual --tasks=100000 --io-ratio=0.8 --io-ms=20 --cpu-us=200
+ */
+public class JEP425_LoadGenerator {
+
+    public static void main(String[] args) throws InterruptedException {
+        LoadConfig config = LoadConfig.parse(args);
+        if (config.pool() != null) {
+            System.out.println(LoadGenerator.run(config));
+            return;
+        }
+        System.out.println("--- So sánh các loại pool với cùng một tải ---");
+        System.out.println(config.describe());
+        for (PoolType type : PoolType.values()) {
+            System.out.println(LoadGenerator.run(config.withPool(type)));
+        }
+        System.out.println("* Nhận xét: Với tải I/O chặn, Virtual Threads không bị giới hạn bởi kích thước pool;");
+        System.out.println("  với tải CPU, mọi loại pool đều bị giới hạn bởi số lõi.");
+    }
+}
+
+enum PoolType {
+    FIXED, CACHED, FORK_JOIN, VIRTUAL;
+
+    ExecutorService create(int poolSize) {
+        return switch (this) {
+            case FIXED -> Executors.newFixedThreadPool(poolSize);
+            case CACHED -> Executors.newCachedThreadPool();
+            case FORK_JOIN -> new ForkJoinPool(poolSize);
+            case VIRTUAL -> Executors.newVirtualThreadPerTaskExecutor();
+        };
+    }
+
+    static PoolType parse(String s) {
+        return switch (s.toLowerCase(Locale.ROOT)) {
+            case "fixed" -> FIXED;
+            case "cached" -> CACHED;
+            case "forkjoin", "fork_join", "fj" -> FORK_JOIN;
+            case "virtual", "vt" -> VIRTUAL;
+            default -> throw new IllegalArgumentException("unknown pool type: " + s);
+        };
+    }
+}
+
+/**
+ Cấu hình một lần chạy.
+ maxInFlight = 0 nghĩa là không giới hạn số tác vụ đang chạy (nộp hết ngay).
+ pool = null nghĩa là chạy so sánh mọi loại pool.
+ */
+record LoadConfig(PoolType pool, int tasks, int maxInFlight, int poolSize,
+                  double ioRatio, long ioMillis, long cpuMicros) {
+
+    LoadConfig {
+        if (tasks <= 0) throw new IllegalArgumentException("tasks must be positive: " + tasks);
+        if (maxInFlight < 0) throw new IllegalArgumentException("max-in-flight must be >= 0: " + maxInFlight);
+        if (poolSize <= 0) throw new IllegalArgumentException("pool-size must be positive: " + poolSize);
+        if (ioRatio < 0 || ioRatio > 1) throw new IllegalArgumentException("io-ratio must be in [0, 1]: " + ioRatio);
+    }
+
+    /** Mặc định gần với demo cũ, nhưng đủ lớn để đo: 2.000 tác vụ I/O 50 ms, pool 10 luồng. */
+    static LoadConfig parse(String[] args) {
+        PoolType pool = null;
+        int tasks = 2_000, maxInFlight = 0, poolSize = 10;
+        double ioRatio = 1.0;
+        long ioMillis = 50, cpuMicros = 100;
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (!arg.startsWith("--") || eq < 0) throw new IllegalArgumentException("expected --key=value: " + arg);
+            String key = arg.substring(2, eq), value = arg.substring(eq + 1);
+            switch (key) {
+                case "pool" -> pool = PoolType.parse(value);
+                case "tasks" -> tasks = Integer.parseInt(value);
+                case "max-in-flight" -> maxInFlight = Integer.parseInt(value);
+                case "pool-size" -> poolSize = Integer.parseInt(value);
+                case "io-ratio" -> ioRatio = Double.parseDouble(value);
+                case "io-ms" -> ioMillis = Long.parseLong(value);
+                case "cpu-us" -> cpuMicros = Long.parseLong(value);
+                default -> throw new IllegalArgumentException("unknown option: --" + key);
+            }
+        }
+        return new LoadConfig(pool, tasks, maxInFlight, poolSize, ioRatio, ioMillis, cpuMicros);
+    }
+
+    LoadConfig withPool(PoolType type) {
+        return new LoadConfig(type, tasks, maxInFlight, poolSize, ioRatio, ioMillis, cpuMicros);
+    }
+
+    String describe() {
+        return String.format("tasks=%d, max-in-flight=%s, pool-size=%d, io-ratio=%.2f, io-ms=%d, cpu-us=%d",
+                tasks, maxInFlight == 0 ? "không giới hạn" : maxInFlight, poolSize, ioRatio, ioMillis, cpuMicros);
+    }
+}
+
+/** Kết quả một lần chạy. Độ trễ tính từ lúc nộp tác vụ tới lúc tác vụ xong (gồm cả thời gian chờ trong hàng đợi). */
+record LoadResult(LoadConfig config, long elapsedNanos, double throughput,
+                  long p50, long p99, long p999, long max,
+                  int peakPlatformThreads, int peakInFlight, long peakRssKb) {
+
+    @Override
+    public String toString() {
+        return String.format("%-9s | %8.0f task/s | p50 %8.2f ms | p99 %8.2f ms | p999 %8.2f ms | max %8.2f ms"
+                        + " | luồng nền tảng %5d | đồng thời %6d | RSS %s",
+                config.pool(), throughput, p50 / 1e6, p99 / 1e6, p999 / 1e6, max / 1e6,
+                peakPlatformThreads, peakInFlight, peakRssKb < 0 ? "n/a" : (peakRssKb / 1024) + " MB");
+    }
+}
+
+final class LoadGenerator {
+
+    private LoadGenerator() {
+    }
+
+    static LoadResult run(LoadConfig config) throws InterruptedException {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        LatencyHistogram histogram = new LatencyHistogram();
+        Semaphore permits = config.maxInFlight() > 0 ? new Semaphore(config.maxInFlight()) : null;
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger peakInFlight = new AtomicInteger();
+
+        System.gc();
+        Rss.resetPeak();
+        threads.resetPeakThreadCount();
+
+        long start = System.nanoTime();
+        ExecutorService executor = config.pool().create(config.poolSize());
+        try {
+            for (int i = 0; i < config.tasks(); i++) {
+                if (permits != null) permits.acquire(); // người gọi chờ khi đã đủ số tác vụ đồng thời
+                long submitted = System.nanoTime();
+                executor.execute(() -> {
+                    int now = inFlight.incrementAndGet();
+                    peakInFlight.accumulateAndGet(now, Math::max);
+                    try {
+                        doWork(config);
+                    } finally {
+                        inFlight.decrementAndGet();
+                        histogram.record(System.nanoTime() - submitted);
+                        if (permits != null) permits.release();
+                    }
+                });
+            }
+        } finally {
+            executor.shutdown();
+            executor.awaitTermination(1, TimeUnit.HOURS);
+        }
+        long elapsed = System.nanoTime() - start;
+
+        return new LoadResult(config, elapsed, config.tasks() * 1e9 / elapsed,
+                histogram.valueAtPercentile(50), histogram.valueAtPercentile(99),
+                histogram.valueAtPercentile(99.9), histogram.max(),
+                threads.getPeakThreadCount(), peakInFlight.get(), Rss.peakKb());
+    }
+
+    private static void doWork(LoadConfig config) {
+        if (ThreadLocalRandom.current().nextDouble() < config.ioRatio()) {
+            try {
+                Thread.sleep(config.ioMillis()); // mô phỏng I/O chặn
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        } else {
+            burnCpu(config.cpuMicros());
+        }
+    }
+
+    static volatile long sink;
+
+    /** Tính toán vô nghĩa trong khoảng micros micro giây, mô phỏng tác vụ CPU. */
+    private static void burnCpu(long micros) {
+        long deadline = System.nanoTime() + micros * 1_000;
+        long x = ThreadLocalRandom.current().nextLong();
+        while (System.nanoTime() < deadline) {
+            for (int i = 0; i < 100; i++) x = x * 6364136223846793005L + 1442695040888963407L;
+        }
+        sink = x;
+    }
+}
+
+/**
+ Histogram độ trễ kiểu HDR (log-linear): giá trị nhỏ hơn 128 ns được đếm chính xác,
+ giá trị lớn hơn được chia theo lũy thừa của 2, mỗi khoảng 64 ô con, nên sai số tương đối dưới 1,6%.
+ Ghi đồng thời từ nhiều luồng (AtomicLongArray), không cần khóa.
+ */
+final class LatencyHistogram {
+
+    private static final int SUB_BITS = 7;
+    private static final int SUB = 1 << SUB_BITS;  // 128
+    private static final int HALF = SUB >> 1;      // 64
+    private static final int SIZE = SUB + (63 - SUB_BITS + 1) * HALF;
+
+    private final AtomicLongArray counts = new AtomicLongArray(SIZE);
+    private final AtomicInteger maxIndex = new AtomicInteger();
+    private final AtomicLong max = new AtomicLong();
+
+    void record(long value) {
+        if (value < 0) value = 0;
+        int index = indexOf(value);
+        counts.incrementAndGet(index);
+        if (value > max.get()) max.accumulateAndGet(value, Math::max);
+        if (index > maxIndex.get()) maxIndex.accumulateAndGet(index, Math::max);
+    }
+
+    long max() {
+        return max.get();
+    }
+
+    long totalCount() {
+        long total = 0;
+        for (int i = 0, end = maxIndex.get(); i <= end; i++) total += counts.get(i);
+        return total;
+    }
+
+    /** Giá trị tại phân vị p (0..100), lấy điểm giữa của ô chứa nó. */
+    long valueAtPercentile(double p) {
+        long total = totalCount();
+        if (total == 0) return 0;
+        long rank = Math.max(1, (long) Math.ceil(p / 100.0 * total));
+        long seen = 0;
+        for (int i = 0, end = maxIndex.get(); i <= end; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) return Math.min(valueAt(i), max.get());
+        }
+        return max.get();
+    }
+
+    static int indexOf(long value) {
+        if (value < SUB) return (int) value;
+        int shift = 63 - Long.numberOfLeadingZeros(value) - (SUB_BITS - 1); // >= 1, value >>> shift trong [64, 128)
+        return SUB + (shift - 1) * HALF + (int) ((value >>> shift) - HALF);
+    }
+
+    static long valueAt(int index) {
+        if (index < SUB) return index;
+        int k = index - SUB;
+        int shift = k / HALF + 1;
+        long sub = k % HALF + HALF;
+        return (sub << shift) + (1L << (shift - 1));
+    }
+}
+
+/** Đọc RSS của tiến trình từ /proc/self/status (Linux); trả về -1 nếu không hỗ trợ. */
+final class Rss {
+
+    private Rss() {
+    }
+
+    /** Đặt lại VmHWM (đỉnh RSS) bằng cách ghi "5" vào /proc/self/clear_refs; bỏ qua nếu không được phép. */
+    static void resetPeak() {
+        try {
+            Files.writeString(Path.of("/proc/self/clear_refs"), "5");
+        } catch (IOException | UnsupportedOperationException | SecurityException ignored) {
+        }
+    }
+
+    static long peakKb() {
+        try {
+            for (String line : Files.readAllLines(Path.of("/proc/self/status"))) {
+                if (line.startsWith("VmHWM:")) {
+                    return Long.parseLong(line.replaceAll("\\D", ""));
+                }
+            }
+        } catch (IOException | NumberFormatException ignored) {
+        }
+        return -1;
+    }
+}
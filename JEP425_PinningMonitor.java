@@ -0,0 +1,318 @@
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordedStackTrace;
+import jdk.jfr.consumer.RecordingStream;
+
+/**
+ Phát hiện hiện tượng "ghim" (pinning) và bão hòa carrier thread cho tải Virtual Threads.
+ VirtualThreadComparison.demoVirtualThreads() giả định Virtual Threads luôn mở rộng tốt. Thực tế, khi một
+ Virtual Thread chặn (sleep, I/O) bên trong khối synchronized hoặc lời gọi native, nó không rời được
+ carrier thread: carrier bị "ghim" và thông lượng bị giới hạn âm thầm bởi số carrier (mặc định = số lõi).
+
+ PinningMonitor bọc executor Virtual Threads và thu thập:
+ - sự kiện jdk.VirtualThreadPinned qua JFR streaming: số lần, tổng thời gian, vị trí gây ghim
+ - mức sử dụng carrier thread: lấy mẫu stack của carrier mỗi SAMPLE_INTERVAL_MS, carrier đang mang một
+   Virtual Thread (kể cả khi bị ghim và đang ngủ, không tốn CPU) được tính là bận
+ - tốc độ bắt đầu (mount lần đầu) và kết thúc tác vụ, số tác vụ đang chờ và đang chạy
+ Có thể xem số liệu trực tiếp theo chu kỳ và làm thất bại một lần benchmark khi ghim vượt ngưỡng.
+
+ Lưu ý: JDK 21 không có sự kiện cho từng lần mount/unmount sau khi Virtual Thread bị park,
+ nên "mount" ở đây chỉ tính lần chạy đầu tiên của mỗi tác vụ.
+ Phiên bản áp dụng: Java 21 trở lên.
+ */
+public class JEP425_PinningMonitor {
+
+    private static final Object LOCK = new Object();
+    private static final ReentrantLock REENTRANT_LOCK = new ReentrantLock();
+
+    public static void main(String[] args) throws InterruptedException {
+        int tasks = args.length > 0 ? Integer.parseInt(args[0]) : 2_000;
+
+        System.out.println("--- 1. Chặn trong synchronized (bị ghim) ---");
+        runScenario(tasks, () -> {
+            synchronized (LOCK) {
+                sleep(1);
+            }
+        });
+
+        System.out.println("\n--- 2. Chặn trong ReentrantLock (không bị ghim) ---");
+        runScenario(tasks, () -> {
+            REENTRANT_LOCK.lock();
+            try {
+                sleep(1);
+            } finally {
+                REENTRANT_LOCK.unlock();
+            }
+        });
+    }
+
+    static void runScenario(int tasks, Runnable work) throws InterruptedException {
+        try (PinningMonitor monitor = PinningMonitor.wrap(Executors.newVirtualThreadPerTaskExecutor(), Duration.ZERO)) {
+            monitor.startReporting(Duration.ofSeconds(1), m -> System.out.println("  [trực tiếp] " + m));
+            long start = System.nanoTime();
+            for (int i = 0; i < tasks; i++) monitor.executor().execute(work);
+            monitor.executor().shutdown();
+            monitor.executor().awaitTermination(1, TimeUnit.MINUTES);
+            System.out.printf("Hoàn thành %d tác vụ trong %d ms%n", tasks, (System.nanoTime() - start) / 1_000_000);
+
+            PinningMonitor.Metrics m = monitor.finish();
+            System.out.println("Kết quả: " + m);
+            m.topPinnedFrames().forEach(f -> System.out.println("  ghim tại: " + f));
+            try {
+                m.failIfPinnedAbove(0.01);
+                System.out.println("=> Đạt: tỉ lệ tác vụ bị ghim dưới 1%.");
+            } catch (IllegalStateException e) {
+                System.out.println("=> Benchmark thất bại: " + e.getMessage());
+            }
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
+
+/**
+ Bọc một ExecutorService (thường là newVirtualThreadPerTaskExecutor()) và thu thập số liệu ghim.
+ Dùng với try-with-resources: close() dừng luồng JFR và bộ báo cáo định kỳ.
+ */
+final class PinningMonitor implements AutoCloseable {
+
+    private static final String PINNED_EVENT = "jdk.VirtualThreadPinned";
+    private static final int TOP_FRAMES = 5;
+    private static final long SAMPLE_INTERVAL_MS = 10;
+    private static final String CONTINUATION_RUN = "jdk.internal.vm.Continuation";
+
+    /** Ảnh chụp số liệu. Tốc độ và mức sử dụng carrier tính trong khoảng từ lần chụp trước. */
+    record Metrics(long submitted, long started, long completed,
+                   long pinnedEvents, Duration pinnedTotal,
+                   double startRate, double completeRate,
+                   int carriers, double carrierUtilization,
+                   List<String> topPinnedFrames) {
+
+        long queued() {
+            return submitted - started;
+        }
+
+        long running() {
+            return started - completed;
+        }
+
+        /** Số sự kiện ghim trên mỗi tác vụ đã hoàn thành. */
+        double pinnedRatio() {
+            return completed == 0 ? 0 : (double) pinnedEvents / completed;
+        }
+
+        /**
+         Làm thất bại lần chạy khi tỉ lệ ghim vượt ngưỡng.
+         @throws IllegalStateException nếu pinnedRatio() > maxRatio
+         */
+        void failIfPinnedAbove(double maxRatio) {
+            if (pinnedRatio() > maxRatio) {
+                throw new IllegalStateException(String.format(
+                        "pinning %.2f%% of tasks exceeds threshold %.2f%% (%d events, %d ms pinned)",
+                        pinnedRatio() * 100, maxRatio * 100, pinnedEvents, pinnedTotal.toMillis()));
+            }
+        }
+
+        @Override
+        public String toString() {
+            return String.format("nộp=%d chờ=%d chạy=%d xong=%d | bắt đầu %.0f/s, xong %.0f/s"
+                            + " | ghim=%d (%d ms) | carrier %d, sử dụng %.0f%%",
+                    submitted, queued(), running(), completed, startRate, completeRate,
+                    pinnedEvents, pinnedTotal.toMillis(), carriers, carrierUtilization * 100);
+        }
+    }
+
+    private final ExecutorService executor;
+    private final RecordingStream jfr;
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder started = new LongAdder();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder pinnedEvents = new LongAdder();
+    private final LongAdder pinnedNanos = new LongAdder();
+    private final Map<String, LongAdder> pinnedFrames = new ConcurrentHashMap<>();
+    private final LongAdder carrierSamples = new LongAdder();
+    private final LongAdder busySamples = new LongAdder();
+    private final ScheduledExecutorService scheduler;
+    private volatile List<Thread> carriers = List.of();
+    private int sampleTick; // chỉ luồng lấy mẫu đọc/ghi
+    private boolean reporting;
+
+    // Mốc của lần chụp trước, để tính tốc độ và mức sử dụng carrier
+    private long lastTime = System.nanoTime();
+    private long lastStarted;
+    private long lastCompleted;
+    private long lastCarrierSamples;
+    private long lastBusySamples;
+
+    private PinningMonitor(ExecutorService delegate, Duration pinThreshold) {
+        this.executor = new MonitoredExecutor(delegate);
+        this.jfr = new RecordingStream();
+        jfr.enable(PINNED_EVENT).withThreshold(pinThreshold).withStackTrace();
+        jfr.onEvent(PINNED_EVENT, event -> {
+            pinnedEvents.increment();
+            pinnedNanos.add(event.getDuration().toNanos());
+            RecordedStackTrace stack = event.getStackTrace();
+            if (stack != null) {
+                for (RecordedFrame frame : stack.getFrames()) {
+                    // Bỏ qua frame của JDK, lấy frame đầu tiên trong code ứng dụng
+                    String type = frame.getMethod().getType().getName();
+                    if (type.startsWith("java.") || type.startsWith("jdk.")) continue;
+                    String where = type + "." + frame.getMethod().getName() + ":" + frame.getLineNumber();
+                    pinnedFrames.computeIfAbsent(where, k -> new LongAdder()).increment();
+                    break;
+                }
+            }
+        });
+        jfr.startAsync();
+
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "pinning-monitor");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.scheduleAtFixedRate(this::sampleCarriers, 0, SAMPLE_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     @param pinThreshold chỉ ghi nhận lần ghim dài hơn ngưỡng này (JFR mặc định 20 ms; Duration.ZERO để thấy tất cả)
+     */
+    static PinningMonitor wrap(ExecutorService delegate, Duration pinThreshold) {
+        return new PinningMonitor(delegate, pinThreshold);
+    }
+
+    /** Executor đã được đo; nộp tác vụ qua đây thay vì executor gốc. */
+    ExecutorService executor() {
+        return executor;
+    }
+
+    /** In (hoặc xử lý) số liệu trực tiếp theo chu kỳ trên một luồng nền. */
+    synchronized void startReporting(Duration period, Consumer<Metrics> sink) {
+        if (reporting) throw new IllegalStateException("already reporting");
+        reporting = true;
+        scheduler.scheduleAtFixedRate(() -> sink.accept(snapshot()),
+                period.toMillis(), period.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /** Chụp số liệu hiện tại. */
+    synchronized Metrics snapshot() {
+        long now = System.nanoTime();
+        double seconds = Math.max(1e-9, (now - lastTime) / 1e9);
+        long s = started.sum(), c = completed.sum();
+        long samples = carrierSamples.sum(), busy = busySamples.sum();
+        double utilization = samples == lastCarrierSamples
+                ? 0 : (double) (busy - lastBusySamples) / (samples - lastCarrierSamples);
+
+        Metrics m = new Metrics(submitted.sum(), s, c, pinnedEvents.sum(), Duration.ofNanos(pinnedNanos.sum()),
+                (s - lastStarted) / seconds, (c - lastCompleted) / seconds,
+                carriers.size(), utilization, topPinnedFrames());
+        lastTime = now;
+        lastStarted = s;
+        lastCompleted = c;
+        lastCarrierSamples = samples;
+        lastBusySamples = busy;
+        return m;
+    }
+
+    /**
+     Dừng luồng JFR (xử lý hết các sự kiện còn lại) rồi chụp số liệu cuối.
+     Gọi sau khi executor đã kết thúc.
+     */
+    Metrics finish() {
+        jfr.stop();
+        return snapshot();
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+        jfr.close();
+        executor.close();
+    }
+
+    private List<String> topPinnedFrames() {
+        List<Map.Entry<String, LongAdder>> entries = new ArrayList<>(pinnedFrames.entrySet());
+        entries.sort(Comparator.comparingLong((Map.Entry<String, LongAdder> e) -> e.getValue().sum()).reversed());
+        List<String> top = new ArrayList<>();
+        for (int i = 0; i < Math.min(TOP_FRAMES, entries.size()); i++) {
+            top.add(entries.get(i).getKey() + " (" + entries.get(i).getValue().sum() + " lần)");
+        }
+        return top;
+    }
+
+    /**
+     Một lần lấy mẫu: carrier đang mang Virtual Thread có Continuation.run trong stack.
+     Danh sách carrier được làm mới mỗi 100 lần lấy mẫu vì scheduler có thể thêm carrier để bù khi bị ghim.
+     */
+    private void sampleCarriers() {
+        if (carriers.isEmpty() || ++sampleTick % 100 == 0) carriers = findCarriers();
+        for (Thread carrier : carriers) {
+            carrierSamples.increment();
+            for (StackTraceElement frame : carrier.getStackTrace()) {
+                if (frame.getClassName().equals(CONTINUATION_RUN)) {
+                    busySamples.increment();
+                    break;
+                }
+            }
+        }
+    }
+
+    /** Carrier thread của scheduler mặc định là luồng nền tảng lớp jdk.internal.misc.CarrierThread. */
+    private static List<Thread> findCarriers() {
+        List<Thread> found = new ArrayList<>();
+        for (Thread t : Thread.getAllStackTraces().keySet()) {
+            if (t.getClass().getName().equals("jdk.internal.misc.CarrierThread") && t.isAlive()) found.add(t);
+        }
+        return found;
+    }
+
+    /** Executor trung gian: đếm tác vụ nộp vào, bắt đầu và kết thúc. */
+    private final class MonitoredExecutor extends AbstractExecutorService {
+        private final ExecutorService delegate;
+
+        MonitoredExecutor(ExecutorService delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void execute(Runnable command) {
+            submitted.increment();
+            delegate.execute(() -> {
+                started.increment();
+                try {
+                    command.run();
+                } finally {
+                    completed.increment();
+                }
+            });
+        }
+
+        @Override public void shutdown() { delegate.shutdown(); }
+        @Override public List<Runnable> shutdownNow() { return delegate.shutdownNow(); }
+        @Override public boolean isShutdown() { return delegate.isShutdown(); }
+        @Override public boolean isTerminated() { return delegate.isTerminated(); }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+            return delegate.awaitTermination(timeout, unit);
+        }
+    }
+}
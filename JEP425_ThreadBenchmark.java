@@ -0,0 +1,253 @@
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ Bộ đo chi phí tạo luồng và bộ nhớ cho Platform Threads và Virtual Threads,
+ thay cho VirtualThreadComparison.demoPerformanceComparison() (JEP425_ThanhXuan.java): demo cũ tạo 1.000 luồng
+ đúng một lần, đo bằng System.currentTimeMillis(), không khởi động JIT và không đo bộ nhớ.
+
+ Với mỗi số luồng (mặc định 1.000 đến 1.000.000) đo:
+ - create / start / join: thời gian cho mỗi luồng ở từng giai đoạn (ns/luồng), trung vị của MEASURE_ROUNDS vòng.
+   start() của Virtual Thread chỉ đưa vào hàng đợi của scheduler, nên phần chạy thật thường rơi vào join;
+   so sánh tổng ba giai đoạn khi đối chiếu hai loại luồng
+ - heap / rss: bộ nhớ tăng thêm cho mỗi luồng đang chờ ở độ sâu STACK_DEPTH frame (byte/luồng).
+   Stack của Virtual Thread nằm trong heap; stack của Platform Thread nằm ngoài heap nên chỉ thấy qua RSS (Linux)
+ - pingpong: độ trễ một lần chuyển lượt giữa hai luồng cùng loại (park/unpark), ns/lần
+ Platform Threads chỉ đo tới MAX_PLATFORM luồng (mặc định 10.000, đổi bằng -DmaxPlatform=...).
+
+ Kết quả ghi ra CSV kèm phiên bản JDK. Chạy trên nhiều JDK rồi vẽ biểu đồ (dạng thanh trên console) từ các file:
+   java -Xmx4g JEP425_ThreadBenchmark.java [file.csv] [số luồng...]
+   java JEP425_ThreadBenchmark.java --chart jdk21.csv jdk25.csv
+
+ Ghi chú: không dùng JMH vì repo không có hệ thống build; khởi động JIT và lấy trung vị được làm tay như JEP269_Benchmark.
+ Phiên bản áp dụng: Java 21 trở lên.
+ */
+public class JEP425_ThreadBenchmark {
+
+    static final int[] DEFAULT_SIZES = {1_000, 10_000, 100_000, 1_000_000};
+    static final String DEFAULT_OUTPUT = "jep425-threads.csv";
+    static final int MAX_PLATFORM = Integer.getInteger("maxPlatform", 10_000);
+
+    static final int WARMUP_ROUNDS = 3;
+    static final int MEASURE_ROUNDS = 5;
+    static final int STACK_DEPTH = 8;
+    static final int PING_PONG_ROUNDS = 100_000;
+    static final int CHART_WIDTH = 40;
+
+    // "Hố đen" giữ kết quả để JIT không loại bỏ phần code được đo
+    static volatile long sink;
+
+    enum Kind {
+        PLATFORM, VIRTUAL;
+
+        Thread.Builder builder() {
+            return this == PLATFORM ? Thread.ofPlatform() : Thread.ofVirtual();
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0 && args[0].equals("--chart")) {
+            chart(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        Path output = Path.of(args.length > 0 ? args[0] : DEFAULT_OUTPUT);
+        int[] sizes = args.length > 1
+                ? Arrays.stream(args, 1, args.length).mapToInt(Integer::parseInt).toArray()
+                : DEFAULT_SIZES;
+        String jdk = System.getProperty("java.version");
+
+        System.out.println("=== JEP 425: Đo chi phí tạo luồng và bộ nhớ (JDK " + jdk + ") ===");
+        try (PrintWriter csv = new PrintWriter(Files.newBufferedWriter(output))) {
+            csv.println("jdk,kind,threads,metric,value,unit");
+            for (Kind kind : Kind.values()) {
+                for (int round = 0; round < WARMUP_ROUNDS; round++) lifecycle(kind, 1_000);
+                for (int size : sizes) {
+                    if (kind == Kind.PLATFORM && size > MAX_PLATFORM) {
+                        System.out.printf("%-8s | n=%-9d | bỏ qua (lớn hơn maxPlatform=%d)%n", kind, size, MAX_PLATFORM);
+                        continue;
+                    }
+                    runSize(kind, size, jdk, csv);
+                }
+                double pingPong = median(MEASURE_ROUNDS, () -> pingPong(kind, PING_PONG_ROUNDS));
+                report(csv, jdk, kind, 2, "pingpong", pingPong, "ns/handoff");
+            }
+        }
+        System.out.println("Đã ghi " + output.toAbsolutePath());
+    }
+
+    private static void runSize(Kind kind, int size, String jdk, PrintWriter csv) throws InterruptedException {
+        double[][] rounds = new double[MEASURE_ROUNDS][];
+        for (int i = 0; i < MEASURE_ROUNDS; i++) rounds[i] = lifecycle(kind, size);
+        String[] phases = {"create", "start", "join"};
+        for (int p = 0; p < phases.length; p++) {
+            double[] samples = new double[MEASURE_ROUNDS];
+            for (int i = 0; i < MEASURE_ROUNDS; i++) samples[i] = rounds[i][p];
+            Arrays.sort(samples);
+            report(csv, jdk, kind, size, phases[p], samples[samples.length / 2], "ns/thread");
+        }
+        try {
+            long[] memory = footprint(kind, size);
+            report(csv, jdk, kind, size, "heap", memory[0], "bytes/thread");
+            if (memory[1] >= 0) report(csv, jdk, kind, size, "rss", memory[1], "bytes/thread");
+        } catch (OutOfMemoryError e) {
+            System.out.printf("%-8s | n=%-9d | không đủ bộ nhớ để giữ %d luồng: %s%n", kind, size, size, e.getMessage());
+        }
+    }
+
+    /** Một vòng tạo, chạy và chờ size luồng với tác vụ rỗng; trả về ns/luồng của từng giai đoạn. */
+    static double[] lifecycle(Kind kind, int size) throws InterruptedException {
+        Thread.Builder builder = kind.builder();
+        Runnable task = () -> sink++;
+        Thread[] threads = new Thread[size];
+
+        long t0 = System.nanoTime();
+        for (int i = 0; i < size; i++) threads[i] = builder.unstarted(task);
+        long t1 = System.nanoTime();
+        for (Thread t : threads) t.start();
+        long t2 = System.nanoTime();
+        for (Thread t : threads) t.join();
+        long t3 = System.nanoTime();
+        return new double[] {(double) (t1 - t0) / size, (double) (t2 - t1) / size, (double) (t3 - t2) / size};
+    }
+
+    /**
+     Giữ size luồng cùng chờ ở độ sâu STACK_DEPTH rồi đo heap và RSS tăng thêm.
+     @return {heap byte/luồng, rss byte/luồng hoặc -1 nếu không đọc được RSS}
+     */
+    static long[] footprint(Kind kind, int size) throws InterruptedException {
+        Thread.Builder builder = kind.builder();
+        CountDownLatch parked = new CountDownLatch(size);
+        CountDownLatch release = new CountDownLatch(1);
+        Thread[] threads = new Thread[size];
+
+        long heapBefore = usedHeap();
+        long rssBefore = rssBytes();
+        int started = 0;
+        try {
+            for (; started < size; started++) {
+                threads[started] = builder.start(() -> descendAndWait(STACK_DEPTH, parked, release));
+            }
+            parked.await();
+            long heapAfter = usedHeap();
+            long rssAfter = rssBytes();
+            return new long[] {
+                    Math.max(0, (heapAfter - heapBefore) / size),
+                    rssBefore < 0 ? -1 : Math.max(0, (rssAfter - rssBefore) / size)};
+        } finally {
+            release.countDown();
+            for (int i = 0; i < started; i++) threads[i].join();
+        }
+    }
+
+    private static void descendAndWait(int depth, CountDownLatch parked, CountDownLatch release) {
+        if (depth > 0) {
+            descendAndWait(depth - 1, parked, release);
+            return;
+        }
+        parked.countDown();
+        try {
+            release.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /** Hai luồng lần lượt chuyển lượt cho nhau bằng park/unpark; trả về ns cho mỗi lần chuyển. */
+    static double pingPong(Kind kind, int rounds) {
+        AtomicInteger turn = new AtomicInteger();
+        Thread[] pair = new Thread[2];
+        for (int side = 0; side < 2; side++) {
+            int me = side;
+            pair[side] = kind.builder().unstarted(() -> {
+                for (int r = 0; r < rounds; r++) {
+                    while (turn.get() != me) LockSupport.park();
+                    turn.set(1 - me);
+                    LockSupport.unpark(pair[1 - me]);
+                }
+            });
+        }
+        long start = System.nanoTime();
+        pair[0].start();
+        pair[1].start();
+        try {
+            pair[0].join();
+            pair[1].join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return (double) (System.nanoTime() - start) / (2L * rounds);
+    }
+
+    interface Sample {
+        double run() throws InterruptedException;
+    }
+
+    private static double median(int rounds, Sample sample) throws InterruptedException {
+        sample.run(); // khởi động
+        double[] samples = new double[rounds];
+        for (int i = 0; i < rounds; i++) samples[i] = sample.run();
+        Arrays.sort(samples);
+        return samples[rounds / 2];
+    }
+
+    private static long usedHeap() {
+        Runtime rt = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) System.gc();
+        return rt.totalMemory() - rt.freeMemory();
+    }
+
+    /** VmRSS từ /proc/self/status (Linux), -1 nếu không có. */
+    private static long rssBytes() {
+        try {
+            for (String line : Files.readAllLines(Path.of("/proc/self/status"))) {
+                if (line.startsWith("VmRSS:")) return Long.parseLong(line.replaceAll("\\D", "")) * 1024;
+            }
+        } catch (IOException | NumberFormatException ignored) {
+        }
+        return -1;
+    }
+
+    private static void report(PrintWriter csv, String jdk, Kind kind, int size,
+                               String metric, double value, String unit) {
+        System.out.printf("%-8s | n=%-9d | %-8s = %12.1f %s%n", kind, size, metric, value, unit);
+        // Locale.ROOT: với locale vi_VN, %.3f in ra "1,234", chart() tách theo dấu phẩy sẽ đọc sai cột
+        csv.printf(Locale.ROOT, "%s,%s,%d,%s,%.3f,%s%n", jdk, kind, size, metric, value, unit);
+    }
+
+    // ===================== Biểu đồ =====================
+
+    /** Gộp các file CSV (mỗi file một JDK) và vẽ biểu đồ thanh cho từng chỉ số và số luồng. */
+    static void chart(String[] files) throws IOException {
+        if (files.length == 0) throw new IllegalArgumentException("usage: --chart file.csv...");
+        // (metric, threads, unit) -> danh sách (jdk kind, value)
+        Map<String, List<Map.Entry<String, Double>>> groups = new LinkedHashMap<>();
+        for (String file : files) {
+            List<String> lines = Files.readAllLines(Path.of(file));
+            for (String line : lines.subList(1, lines.size())) {
+                String[] f = line.split(",");
+                String key = f[3] + " | n=" + f[2] + " | " + f[5];
+                groups.computeIfAbsent(key, k -> new ArrayList<>())
+                        .add(Map.entry("JDK " + f[0] + " " + f[1], Double.parseDouble(f[4])));
+            }
+        }
+        for (Map.Entry<String, List<Map.Entry<String, Double>>> group : groups.entrySet()) {
+            System.out.println("\n" + group.getKey());
+            double max = group.getValue().stream().mapToDouble(Map.Entry::getValue).max().orElse(1);
+            for (Map.Entry<String, Double> bar : group.getValue()) {
+                int width = max == 0 ? 0 : (int) Math.round(bar.getValue() / max * CHART_WIDTH);
+                System.out.printf("  %-24s %-" + CHART_WIDTH + "s %12.1f%n", bar.getKey(), "#".repeat(width), bar.getValue());
+            }
+        }
+    }
+}
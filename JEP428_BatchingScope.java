@@ -0,0 +1,346 @@
+/*
+==========================================================
+JEP 428 - Gom nhóm tác vụ con nhỏ trong scope có cấu trúc
+Mục tiêu: Khi fork hàng nghìn tác vụ con rất nhỏ theo kiểu scope.fork(...) trong JEP428_QuangTuan,
+         mỗi tác vụ có một Virtual Thread riêng và chi phí lập lịch lớn hơn cả công việc thật.
+         BatchingScope gom các tác vụ nhỏ thành từng khối (chunk), mỗi khối chạy tuần tự trên một
+         Virtual Thread của StructuredTaskScope bên trong. Kích thước khối tự điều chỉnh để mỗi khối
+         chạy khoảng TARGET_CHUNK_NANOS. Ngữ nghĩa có cấu trúc được giữ nguyên:
+         - lỗi đầu tiên làm dừng cả scope, các khối khác dừng trước phần tử kế tiếp
+         - hủy (shutdown/close) lan tới mọi phần tử, phần tử chưa chạy được tính là bị hủy
+         - close() chỉ trả về khi mọi khối đã kết thúc
+Phiên bản áp dụng: Java 21 (preview)
+==========================================================
+*/
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.StructuredTaskScope;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+public class JEP428_BatchingScope {
+
+    public static void main(String[] args) throws Exception {
+        System.out.println("=== Ví dụ: lỗi đầu tiên dừng cả lô ===");
+        demoFailure();
+
+        System.out.println("\n=== So sánh thông lượng: mỗi phần tử một fork và gom nhóm ===");
+        for (int items : new int[] {10, 1_000, 100_000}) {
+            compare(items);
+        }
+        System.out.println("* Nhận xét: Với phần tử rất nhỏ, một Virtual Thread cho mỗi phần tử tốn nhiều hơn công việc;");
+        System.out.println("  gom nhóm chỉ tạo vài luồng cho mỗi scope mà vẫn giữ lỗi và hủy có cấu trúc.");
+    }
+
+    // ===================== Ví dụ =====================
+    static void demoFailure() throws InterruptedException {
+        var batch = new BatchingScope<Integer>();
+        try (batch) {
+            for (int i = 0; i < 10_000; i++) {
+                int x = i;
+                batch.submit(() -> {
+                    if (x == 1_234) throw new IllegalArgumentException("phần tử lỗi: " + x);
+                    return work(x);
+                });
+            }
+            batch.join().throwIfFailed();
+        } catch (ExecutionException e) {
+            System.out.println("Bắt lỗi: " + e.getCause().getMessage());
+        }
+        System.out.println("Thống kê lô: " + batch.stats());
+
+        // Owner hủy lô giữa chừng: results() ném lỗi thay vì trả về null cho các phần tử chưa chạy
+        try (var cancelled = new BatchingScope<Integer>()) {
+            for (int i = 0; i < 1_000; i++) {
+                int x = i;
+                cancelled.submit(() -> work(x));
+            }
+            cancelled.shutdown();
+            cancelled.join().throwIfFailed().results();
+        } catch (ExecutionException | CancellationException e) {
+            System.out.println("Bắt lỗi: " + e.getMessage());
+        }
+    }
+
+    // ===================== So sánh =====================
+    static volatile long sink;
+
+    /** Công việc nhỏ, khoảng vài chục ns. */
+    static int work(int x) {
+        int h = x;
+        for (int i = 0; i < 16; i++) h = h * 31 + i;
+        return h;
+    }
+
+    static void compare(int items) throws Exception {
+        int rounds = 5;
+        // Số lượt mỗi vòng để mỗi vòng có khoảng 200.000 phần tử
+        int repeats = Math.max(1, 200_000 / items);
+        double[] forkEach = new double[rounds];
+        double[] batched = new double[rounds];
+        // Các lô cùng loại công việc dùng chung một ChunkSizer để lô sau dùng được kích thước khối đã học
+        ChunkSizer sizer = BatchingScope.defaultSizer();
+        for (int round = -3; round < rounds; round++) { // 3 vòng đầu để khởi động JIT
+            long a = 0, b = 0;
+            for (int r = 0; r < repeats; r++) {
+                a += forkPerItem(items);
+                b += batching(items, sizer);
+            }
+            if (round >= 0) {
+                forkEach[round] = items * (double) repeats * 1e9 / a;
+                batched[round] = items * (double) repeats * 1e9 / b;
+            }
+        }
+        Arrays.sort(forkEach);
+        Arrays.sort(batched);
+        System.out.printf("%,7d phần tử/scope: mỗi phần tử một fork %,12.0f phần tử/s | BatchingScope %,12.0f phần tử/s (x%.1f), khối ~%d%n",
+                items, forkEach[rounds / 2], batched[rounds / 2], batched[rounds / 2] / forkEach[rounds / 2],
+                sizer.chunkSize());
+    }
+
+    private static long forkPerItem(int items) throws Exception {
+        long start = System.nanoTime();
+        try (var scope = new StructuredTaskScope.ShutdownOnFailure()) {
+            List<StructuredTaskScope.Subtask<Integer>> subtasks = new ArrayList<>(items);
+            for (int i = 0; i < items; i++) {
+                int x = i;
+                subtasks.add(scope.fork(() -> work(x)));
+            }
+            scope.join().throwIfFailed();
+            long sum = 0;
+            for (StructuredTaskScope.Subtask<Integer> s : subtasks) sum += s.get();
+            sink = sum;
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static long batching(int items, ChunkSizer sizer) throws Exception {
+        long start = System.nanoTime();
+        try (var batch = new BatchingScope<Integer>(sizer)) {
+            for (int i = 0; i < items; i++) {
+                int x = i;
+                batch.submit(() -> work(x));
+            }
+            long sum = 0;
+            for (int v : batch.join().throwIfFailed().results()) sum += v;
+            sink = sum;
+        }
+        return System.nanoTime() - start;
+    }
+}
+
+/**
+ Ước lượng kích thước khối: giữ trung bình trượt (EWMA) của thời gian mỗi phần tử, đo trên các khối đã chạy,
+ và chọn kích thước sao cho một khối chạy khoảng targetNanos. Mặc định mỗi BatchingScope có ChunkSizer riêng;
+ truyền cùng một ChunkSizer cho các scope chạy cùng loại công việc để chúng học chung.
+ */
+final class ChunkSizer {
+
+    private static final double ALPHA = 0.2;
+
+    private final long targetNanos;
+    private final int minChunk;
+    private final int maxChunk;
+    private volatile double nanosPerItem;
+
+    ChunkSizer(long targetNanos, int minChunk, int maxChunk, double initialNanosPerItem) {
+        this.targetNanos = targetNanos;
+        this.minChunk = minChunk;
+        this.maxChunk = maxChunk;
+        this.nanosPerItem = initialNanosPerItem;
+    }
+
+    int chunkSize() {
+        long size = Math.round(targetNanos / Math.max(1.0, nanosPerItem));
+        return (int) Math.max(minChunk, Math.min(maxChunk, size));
+    }
+
+    /**
+     Ghi nhận một khối đã chạy. Thời gian đo là thời gian thực, nên một khối bị hệ điều hành tạm dừng giữa chừng
+     cho ra mẫu rất lớn; mỗi mẫu chỉ được làm ước lượng tăng tối đa gấp đôi, còn giảm thì không giới hạn,
+     để vài mẫu nhiễu không kéo kích thước khối về 1.
+     */
+    void record(int items, long nanos) {
+        if (items == 0) return;
+        double current = nanosPerItem;
+        double sample = Math.min((double) nanos / items, current * 2);
+        nanosPerItem = current * (1 - ALPHA) + sample * ALPHA; // ghi đè đua giữa các luồng chỉ làm mất một mẫu
+    }
+}
+
+/**
+ Scope gom nhóm: submit() đưa phần tử vào bộ đệm, đủ một khối thì fork một Virtual Thread chạy cả khối.
+ Cách dùng giống ShutdownOnFailure: submit..., join(), throwIfFailed(), results(), và dùng trong try-with-resources.
+ Chỉ luồng owner (luồng tạo scope) được gọi submit/join/results.
+ */
+final class BatchingScope<T> implements AutoCloseable {
+
+    static final long TARGET_CHUNK_NANOS = 50_000;
+
+    /** Thống kê một lô: số khối, phần tử chạy xong, lỗi và bị hủy. */
+    record Stats(int chunks, long completed, long failed, long cancelled) {
+    }
+
+    private final Inner scope = new Inner();
+    private final ChunkSizer sizer;
+    private final List<Chunk> chunks = new ArrayList<>();
+    private final LongAdder completed = new LongAdder();
+    private Callable<?>[] buffer;
+    private int buffered;
+    private int submitted;
+    private boolean joined;
+    private volatile Stats stats;
+
+    BatchingScope() {
+        this(defaultSizer());
+    }
+
+    BatchingScope(ChunkSizer sizer) {
+        this.sizer = sizer;
+        this.buffer = new Callable<?>[sizer.chunkSize()];
+    }
+
+    /** ChunkSizer mới với các thông số mặc định (khối khoảng TARGET_CHUNK_NANOS, từ 1 tới 4.096 phần tử). */
+    static ChunkSizer defaultSizer() {
+        return new ChunkSizer(TARGET_CHUNK_NANOS, 1, 4_096, 1_000);
+    }
+
+    /** Thống kê của lô này, có sau close(); null nếu chưa đóng. */
+    Stats stats() {
+        return stats;
+    }
+
+    /** Một khối: các phần tử [start, start + items.length) và kết quả của chúng. */
+    private final class Chunk implements Callable<Object> {
+        final int start;
+        final Callable<?>[] items;
+        final Object[] results;
+
+        Chunk(int start, Callable<?>[] items) {
+            this.start = start;
+            this.items = items;
+            this.results = new Object[items.length];
+        }
+
+        @Override
+        public Object call() throws Exception {
+            long begin = System.nanoTime();
+            int done = 0;
+            try {
+                for (; done < items.length; done++) {
+                    // Điểm hủy hợp tác giữa các phần tử: scope đã dừng (lỗi ở khối khác hoặc owner hủy)
+                    if (scope.isShutdown() || Thread.currentThread().isInterrupted()) break;
+                    results[done] = items[done].call();
+                }
+            } finally {
+                completed.add(done);
+                sizer.record(done, System.nanoTime() - begin);
+            }
+            return null;
+        }
+    }
+
+    private static final class Inner extends StructuredTaskScope<Object> {
+        private final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        @Override
+        protected void handleComplete(Subtask<?> subtask) {
+            if (subtask.state() == Subtask.State.FAILED && failure.compareAndSet(null, subtask.exception())) {
+                shutdown();
+            }
+        }
+    }
+
+    /** Thêm một phần tử; phần tử chỉ chạy khi khối của nó đầy hoặc khi join(). */
+    void submit(Callable<? extends T> item) {
+        if (joined) throw new IllegalStateException("already joined");
+        if (scope.isShutdown()) return; // lô đã dừng: phần tử mới được tính là bị hủy
+        buffer[buffered++] = item;
+        submitted++;
+        if (buffered == buffer.length) flush();
+    }
+
+    private void flush() {
+        if (buffered == 0) return;
+        Chunk chunk = new Chunk(submitted - buffered, buffered == buffer.length ? buffer : Arrays.copyOf(buffer, buffered));
+        chunks.add(chunk);
+        scope.fork(chunk);
+        buffer = new Callable<?>[sizer.chunkSize()];
+        buffered = 0;
+    }
+
+    /** Chạy nốt bộ đệm rồi chờ mọi khối. */
+    BatchingScope<T> join() throws InterruptedException {
+        if (!scope.isShutdown()) flush();
+        joined = true;
+        scope.join();
+        return this;
+    }
+
+    BatchingScope<T> throwIfFailed() throws ExecutionException {
+        if (!joined) throw new IllegalStateException("not joined");
+        Throwable t = scope.failure.get();
+        if (t != null) throw new ExecutionException(t);
+        return this;
+    }
+
+    /**
+     Kết quả theo thứ tự submit, là một view trên mảng kết quả của các khối (không sao chép).
+     Ném CancellationException nếu lô đã dừng (shutdown(), lỗi, hoặc owner bị ngắt) hoặc còn phần tử chưa chạy,
+     thay vì trả về null ở vị trí của chúng.
+     */
+    List<T> results() {
+        if (!joined) throw new IllegalStateException("not joined");
+        long done = completed.sum();
+        if (scope.isShutdown() || done != submitted) {
+            throw new CancellationException("batch did not complete: " + done + "/" + submitted + " items ran");
+        }
+        int total = submitted;
+        int[] starts = new int[chunks.size()];
+        for (int i = 0; i < starts.length; i++) starts[i] = chunks.get(i).start;
+        return new AbstractList<>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public T get(int index) {
+                if (index < 0 || index >= total) throw new IndexOutOfBoundsException(index);
+                int c = Arrays.binarySearch(starts, index);
+                if (c < 0) c = -c - 2;
+                Chunk chunk = chunks.get(c);
+                return (T) chunk.results[index - chunk.start];
+            }
+
+            @Override
+            public int size() {
+                return total;
+            }
+        };
+    }
+
+    /** Dừng lô: các khối đang chạy dừng trước phần tử kế tiếp, khối chưa chạy bị bỏ. */
+    void shutdown() {
+        scope.shutdown();
+    }
+
+    @Override
+    public void close() {
+        try {
+            scope.close();
+        } finally {
+            long done = completed.sum();
+            int failed = scope.failure.get() == null ? 0 : 1; // chỉ lỗi đầu tiên được chạy tới cùng
+            stats = new Stats(chunks.size(), done, failed, submitted - done - failed);
+        }
+    }
+}
+
+/*
+Lưu ý khi chạy:
+StructuredTaskScope là API preview trong Java 21, cần bật cờ preview:
+Chạy: java --source 21 --enable-preview JEP428_BatchingScope.java
+*/
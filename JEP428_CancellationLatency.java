@@ -0,0 +1,238 @@
+/*
+==========================================================
+JEP 428 - Hủy hợp tác và đo độ trễ hủy trong ShutdownOnFailure
+Mục tiêu: Trong runStructuredTasksWithError() của JEP428_QuangTuan, một tác vụ con lỗi phải hủy ngay các
+         tác vụ anh em. shutdown() chỉ ngắt (interrupt) các luồng: tác vụ đang chặn (sleep, I/O) dừng ngay,
+         nhưng vòng lặp CPU không kiểm tra cờ ngắt sẽ chạy tới hết và tốn CPU vô ích.
+         - Checkpoint: điểm kiểm tra hủy rẻ cho vòng lặp CPU. Phần lớn lần gọi chỉ giảm một bộ đếm;
+           cứ khoảng TARGET_NANOS mới đọc cờ ngắt (và nhường carrier cho Virtual Thread khác),
+           bước kiểm tra tự điều chỉnh theo tốc độ của vòng lặp.
+         - Bộ đo: thời gian từ lỗi đầu tiên tới khi mọi tác vụ anh em kết thúc, với tác vụ anh em
+           chặn, quay CPU không kiểm tra, quay CPU có Checkpoint, và trộn lẫn; in p50/p99/max.
+         Giới hạn được ghi lại (kiểm tra bằng bộ đo này): với tác vụ chặn hoặc dùng Checkpoint,
+         p99 thời gian từ lỗi tới khi mọi anh em kết thúc không quá BOUND_MILLIS = 5 ms; vòng lặp không kiểm tra
+         thì không có giới hạn (bằng phần việc còn lại của nó).
+         Cột "lỗi bị trễ" đo một hiện tượng khác: Virtual Thread không bị tạm dừng giữa chừng, nên khi số vòng lặp
+         CPU không nhường carrier nhiều hơn số carrier, chính tác vụ sắp lỗi cũng phải chờ chúng chạy xong.
+         Trên máy ít lõi, Thread.yield() của JDK 21 cũng không bảo đảm tác vụ vừa thức dậy được chạy ngay.
+         Cột "việc thừa" tính từ hạn lỗi (2 ms sau khi fork) nên gồm cả hai phần trên.
+Phiên bản áp dụng: Java 21 (preview)
+==========================================================
+*/
+
+import java.util.Arrays;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.StructuredTaskScope;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class JEP428_CancellationLatency {
+
+    static final long BOUND_MILLIS = 5;
+
+    /** Loại tác vụ anh em của tác vụ lỗi. */
+    enum Sibling {
+        BLOCKING, SPIN_UNCHECKED, SPIN_CHECKPOINT, MIXED
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        int trials = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+        int siblings = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+
+        System.out.println("=== Ví dụ: vòng lặp CPU có Checkpoint dừng ngay khi scope bị hủy ===");
+        demoCheckpoint();
+
+        System.out.printf("%n=== Độ trễ hủy: %d lần thử, %d tác vụ anh em, lỗi sau 2 ms, mỗi tác vụ cần 30 ms ===%n",
+                trials, siblings);
+        for (Sibling kind : Sibling.values()) {
+            measure(kind, trials, siblings);
+        }
+        System.out.println("* Nhận xét: shutdown() chỉ ngắt luồng; tác vụ không kiểm tra cờ ngắt vẫn chạy hết phần việc.");
+    }
+
+    // ===================== Ví dụ =====================
+    static void demoCheckpoint() throws InterruptedException {
+        try (var scope = new StructuredTaskScope.ShutdownOnFailure()) {
+            var sum = scope.fork(() -> {
+                Checkpoint checkpoint = new Checkpoint();
+                long s = 0;
+                for (long i = 0; i < 50_000_000_000L; i++) { // rất lâu nếu không bị hủy
+                    checkpoint.poll();
+                    s += i;
+                }
+                return s;
+            });
+            scope.fork(() -> {
+                Thread.sleep(20);
+                throw new IllegalStateException("lỗi ở tác vụ khác");
+            });
+            long start = System.nanoTime();
+            scope.join().throwIfFailed();
+            System.out.println(sum.get());
+            System.out.println("Không bị hủy sau " + (System.nanoTime() - start) / 1_000_000 + " ms");
+        } catch (ExecutionException e) {
+            System.out.println("Bắt lỗi: " + e.getCause().getMessage() + "; vòng lặp dài đã dừng theo scope");
+        }
+    }
+
+    // ===================== Bộ đo =====================
+    static void measure(Sibling kind, int trials, int siblings) throws InterruptedException {
+        long[] latency = new long[trials];
+        long[] wasted = new long[trials];
+        long[] delay = new long[trials];
+        for (int t = -5; t < trials; t++) { // 5 lần đầu để khởi động JIT
+            long[] result = trial(kind, siblings);
+            if (t >= 0) {
+                latency[t] = result[0];
+                wasted[t] = result[1];
+                delay[t] = result[2];
+            }
+        }
+        Arrays.sort(latency);
+        Arrays.sort(wasted);
+        Arrays.sort(delay);
+        double p99Latency = pct(latency, 99) / 1e6;
+        System.out.printf("%-16s lỗi -> mọi anh em xong: p50 %6.2f p99 %6.2f max %6.2f ms %-20s"
+                        + " | lỗi bị trễ p99 %6.2f ms | việc thừa/anh em p99 %6.2f ms%n",
+                kind, pct(latency, 50) / 1e6, p99Latency, latency[trials - 1] / 1e6,
+                kind == Sibling.SPIN_UNCHECKED ? "(không có giới hạn)"
+                        : p99Latency <= BOUND_MILLIS ? "<= " + BOUND_MILLIS + " ms: đạt" : "> " + BOUND_MILLIS + " ms: CHƯA ĐẠT",
+                pct(delay, 99) / 1e6, pct(wasted, 99) / 1e6 / siblings);
+    }
+
+    /**
+     Một lần thử: siblings tác vụ anh em cần 30 ms và một tác vụ lỗi sau 2 ms.
+     @return {ns từ lỗi tới khi anh em cuối cùng kết thúc, tổng ns anh em còn chạy sau hạn lỗi,
+              ns tác vụ lỗi bị trễ so với hạn 2 ms}
+     */
+    static long[] trial(Sibling kind, int siblings) throws InterruptedException {
+        AtomicLong failedAt = new AtomicLong();
+        long[] endedAt = new long[siblings];
+        long due;
+        try (var scope = new StructuredTaskScope.ShutdownOnFailure()) {
+            for (int i = 0; i < siblings; i++) {
+                int slot = i;
+                Sibling type = kind == Sibling.MIXED
+                        ? (i % 2 == 0 ? Sibling.BLOCKING : Sibling.SPIN_CHECKPOINT) : kind;
+                scope.fork(() -> {
+                    try {
+                        runSibling(type, 30);
+                    } finally {
+                        endedAt[slot] = System.nanoTime();
+                    }
+                    return null;
+                });
+            }
+            due = System.nanoTime() + 2_000_000;
+            scope.fork(() -> {
+                Thread.sleep(2);
+                failedAt.set(System.nanoTime());
+                throw new IllegalStateException("lỗi");
+            });
+            scope.join();
+        }
+        // Sau close() mọi tác vụ đã kết thúc và endedAt đã được ghi
+        long failure = failedAt.get(), last = failure, total = 0;
+        for (long end : endedAt) {
+            last = Math.max(last, end);
+            total += Math.max(0, end - due); // việc thừa tính từ hạn lỗi, gồm cả phần làm tác vụ lỗi bị trễ
+        }
+        return new long[] {last - failure, total, Math.max(0, failure - due)};
+    }
+
+    static volatile long sink;
+
+    private static void runSibling(Sibling type, long millis) throws InterruptedException {
+        long deadline = System.nanoTime() + millis * 1_000_000;
+        switch (type) {
+            case BLOCKING -> Thread.sleep(millis);
+            case SPIN_UNCHECKED -> {
+                long x = 0;
+                while (System.nanoTime() < deadline) x += spin(x);
+                sink = x;
+            }
+            case SPIN_CHECKPOINT -> {
+                Checkpoint checkpoint = new Checkpoint();
+                long x = 0;
+                try {
+                    while (System.nanoTime() < deadline) {
+                        checkpoint.poll();
+                        x += spin(x);
+                    }
+                } catch (CancellationException e) {
+                    // bị hủy: dừng sớm, không cần kết quả
+                }
+                sink = x;
+            }
+            default -> throw new IllegalArgumentException(type.toString());
+        }
+    }
+
+    private static long spin(long x) {
+        for (int i = 0; i < 20; i++) x = x * 6364136223846793005L + 1442695040888963407L;
+        return x;
+    }
+
+    private static double pct(long[] sorted, double p) {
+        int index = (int) Math.ceil(p / 100 * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+    }
+}
+
+/**
+ Điểm kiểm tra hủy cho vòng lặp CPU trên Virtual Thread (hoặc luồng thường).
+ poll() thường chỉ giảm một bộ đếm; khi bộ đếm về 0 thì:
+ - đọc cờ ngắt của luồng (StructuredTaskScope.shutdown() ngắt mọi tác vụ con), nếu bị ngắt thì ném
+   CancellationException và giữ lại cờ ngắt
+ - nhường carrier (Thread.yield()) để Virtual Thread khác, như tác vụ sắp lỗi, được chạy; Virtual Thread
+   không bị hệ thống tạm dừng giữa chừng nên vòng lặp dài không nhường sẽ chiếm carrier tới hết
+ - điều chỉnh số lần gọi tới lần kiểm tra sau để khoảng cách giữa hai lần kiểm tra gần TARGET_NANOS
+ Không an toàn khi dùng chung giữa nhiều luồng: mỗi vòng lặp tạo Checkpoint riêng.
+ */
+final class Checkpoint {
+
+    static final long TARGET_NANOS = 100_000;
+    private static final int MAX_STRIDE = 1 << 20;
+
+    private final boolean yield;
+    private int stride = 16;
+    private int countdown = stride;
+    private long lastCheck = System.nanoTime();
+
+    Checkpoint() {
+        this(true);
+    }
+
+    /** @param yield có nhường carrier ở mỗi lần kiểm tra hay không */
+    Checkpoint(boolean yield) {
+        this.yield = yield;
+    }
+
+    void poll() {
+        if (--countdown > 0) return;
+        check();
+    }
+
+    private void check() {
+        if (Thread.currentThread().isInterrupted()) {
+            throw new CancellationException("cancelled at checkpoint");
+        }
+        if (yield) Thread.yield();
+        long now = System.nanoTime();
+        long elapsed = Math.max(1, now - lastCheck);
+        lastCheck = now;
+        // Nhân/chia tối đa 2 mỗi lần để bước kiểm tra không dao động mạnh khi một lần đo bị nhiễu
+        if (elapsed < TARGET_NANOS / 2) {
+            stride = Math.min(MAX_STRIDE, stride * 2);
+        } else if (elapsed > TARGET_NANOS * 2) {
+            stride = Math.max(1, stride / 2);
+        }
+        countdown = stride;
+    }
+}
+
+/*
+Lưu ý khi chạy:
+StructuredTaskScope là API preview trong Java 21, cần bật cờ preview:
+Chạy: java --source 21 --enable-preview JEP428_CancellationLatency.java [số lần thử] [số tác vụ anh em]
+*/
@@ -0,0 +1,371 @@
+/*
+==========================================================
+JEP 428 - Fan-out / fan-in có cấu trúc: hạn chót, thắng-đầu-tiên và gửi dự phòng (hedging)
+Mục tiêu: runStructuredTasks() trong JEP428_QuangTuan fork hai tác vụ dưới ShutdownOnFailure rồi join().
+         Đó chính là mẫu scatter-gather thật, nhưng còn thiếu:
+         - hạn chót cho cả scope (quá hạn thì hủy mọi tác vụ con)
+         - chính sách "thành công đầu tiên thắng" khi gọi nhiều bản sao
+         - gửi dự phòng: khi lời gọi chính chậm hơn p95 của chính nó, fork thêm một lời gọi dự phòng,
+           lấy kết quả nào về trước
+         FanOut cung cấp ba chính sách trên StructuredTaskScope; kết quả được ghi thẳng vào mảng
+         theo thứ tự fork, không sao chép thêm.
+Phiên bản áp dụng: Java 21 (preview)
+==========================================================
+*/
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.StructuredTaskScope;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+public class JEP428_FanOut {
+
+    public static void main(String[] args) throws InterruptedException {
+        int requests = args.length > 0 ? Integer.parseInt(args[0]) : 1_000;
+
+        System.out.println("=== Ví dụ: ba chính sách của FanOut ===");
+        demoPolicies();
+
+        System.out.println("\n=== Đo độ trễ đuôi khi tác vụ con chậm hoặc lỗi ===");
+        System.out.println("Dịch vụ giả lập: 90% 10 ms, 9% 40 ms, 1% 400 ms, 2% lỗi sau 5 ms");
+        benchmark(requests);
+    }
+
+    // ===================== Ví dụ =====================
+    static void demoPolicies() throws InterruptedException {
+        try {
+            List<String> all = FanOut.all(List.of(
+                    () -> call("hồ sơ", 50),
+                    () -> call("đơn hàng", 30)), Instant.now().plusMillis(200));
+            System.out.println("all(): " + all);
+        } catch (ExecutionException | TimeoutException e) {
+            System.out.println("Bắt lỗi: " + e);
+        }
+
+        try {
+            FanOut.all(List.of(() -> call("nhanh", 10), () -> call("rất chậm", 1_000)), Instant.now().plusMillis(100));
+        } catch (ExecutionException | TimeoutException e) {
+            System.out.println("all() quá hạn 100 ms: " + e);
+        }
+
+        try {
+            String first = FanOut.firstSuccess(List.of(
+                    () -> { throw new IllegalStateException("bản sao A lỗi"); },
+                    () -> call("bản sao B", 40),
+                    () -> call("bản sao C", 80)), Instant.now().plusMillis(200));
+            System.out.println("firstSuccess(): " + first);
+        } catch (ExecutionException | TimeoutException e) {
+            System.out.println("Bắt lỗi: " + e);
+        }
+
+        Hedger hedger = new Hedger(Duration.ofMillis(20));
+        AtomicInteger attempt = new AtomicInteger();
+        try {
+            // Lần gọi đầu rất chậm, lần dự phòng nhanh
+            String hedged = FanOut.hedged(() -> call("lần " + attempt.incrementAndGet(),
+                    attempt.get() == 1 ? 500 : 10), hedger, Instant.now().plusMillis(300));
+            System.out.println("hedged(): " + hedged + " (dự phòng sau " + hedger.delay().toMillis() + " ms)");
+        } catch (ExecutionException | TimeoutException e) {
+            System.out.println("Bắt lỗi: " + e);
+        }
+    }
+
+    private static String call(String name, long millis) throws InterruptedException {
+        Thread.sleep(millis);
+        return name;
+    }
+
+    // ===================== Đo độ trễ =====================
+    static void benchmark(int requests) throws InterruptedException {
+        // Fan-out 5 lời gọi: ShutdownOnFailure như JEP428_QuangTuan so với FanOut.all có hạn chót 100 ms
+        report("ShutdownOnFailure x5", requests, () -> {
+            try (var scope = new StructuredTaskScope.ShutdownOnFailure()) {
+                for (int i = 0; i < 5; i++) scope.fork(JEP428_FanOut::backend);
+                scope.join().throwIfFailed();
+            }
+            return null;
+        });
+        report("FanOut.all x5, hạn 100ms", requests, () -> FanOut.all(
+                Collections.nCopies(5, JEP428_FanOut::backend), Instant.now().plusMillis(100)));
+
+        // Một lời gọi: gọi thẳng, hai bản sao thắng-đầu-tiên, gửi dự phòng tại p95
+        Tail direct = report("Gọi thẳng", requests, JEP428_FanOut::backend);
+        report("firstSuccess x2", requests, () -> FanOut.firstSuccess(
+                List.of(JEP428_FanOut::backend, JEP428_FanOut::backend), Instant.now().plusSeconds(1)));
+        Hedger hedger = new Hedger(Duration.ofMillis(50));
+        Tail hedged = report("hedged tại p95", requests, () -> FanOut.hedged(JEP428_FanOut::backend, hedger, Instant.now().plusSeconds(1)));
+        System.out.printf("  -> hedged: %.1f%% lời gọi phải gửi dự phòng, ngưỡng p95 hiện tại %d ms%n",
+                100.0 * hedger.hedges() / requests, hedger.delay().toMillis());
+        // Nhận xét lấy từ chính số đo của lần chạy này, không viết cứng
+        System.out.printf("* Nhận xét: Gửi dự phòng tốn thêm %.1f%% lời gọi; p99.9 từ %.0f ms còn %.0f ms, lỗi từ %.1f%% còn %.1f%%.%n",
+                100.0 * hedger.hedges() / requests, direct.p999(), hedged.p999(), direct.errorPercent(), hedged.errorPercent());
+        System.out.printf("  p99 từ %.0f ms thành %.0f ms: lời gọi lỗi sau 5 ms được gọi lại thay vì trả lỗi ngay,%n",
+                direct.p99(), hedged.p99());
+        System.out.println("  và lời gọi 40 ms nằm đúng ngưỡng p95 nên đôi khi chờ thêm lần dự phòng.");
+        System.out.println("  Với " + requests + " yêu cầu, p99.9 chỉ là vài mẫu chậm nhất; chạy với đối số 10000 để số ổn định hơn.");
+        System.out.println("  Hạn chót biến lời gọi treo thành lỗi nhanh thay vì kéo p99 của cả yêu cầu.");
+    }
+
+    static String backend() throws InterruptedException {
+        ThreadLocalRandom rnd = ThreadLocalRandom.current();
+        if (rnd.nextInt(100) < 2) {
+            Thread.sleep(5);
+            throw new IllegalStateException("backend error");
+        }
+        int roll = rnd.nextInt(100);
+        Thread.sleep(roll < 90 ? 10 : roll < 99 ? 40 : 400);
+        return "ok";
+    }
+
+    interface Request {
+        Object run() throws Exception;
+    }
+
+    record Tail(double p99, double p999, double errorPercent) {
+    }
+
+    /** Chạy requests yêu cầu đồng thời, mỗi yêu cầu trên một Virtual Thread; in p50/p99/p99.9 và số lỗi. */
+    static Tail report(String name, int requests, Request request) throws InterruptedException {
+        long[] latencies = new long[requests];
+        LongAdder failed = new LongAdder();
+        Thread[] threads = new Thread[requests];
+        for (int i = 0; i < requests; i++) {
+            int slot = i;
+            threads[i] = Thread.ofVirtual().start(() -> {
+                long start = System.nanoTime();
+                try {
+                    request.run();
+                } catch (Exception e) {
+                    failed.increment();
+                }
+                latencies[slot] = System.nanoTime() - start;
+            });
+            Thread.sleep(2); // khoảng 500 yêu cầu/s, để đo độ trễ của dịch vụ chứ không phải của CPU quá tải
+        }
+        for (Thread t : threads) t.join();
+        Arrays.sort(latencies);
+        Tail tail = new Tail(latencies[(int) (requests * 0.99)] / 1e6,
+                latencies[Math.min(requests - 1, (int) (requests * 0.999))] / 1e6, 100.0 * failed.sum() / requests);
+        System.out.printf("%-26s p50 %6.1f ms | p99 %6.1f ms | p99.9 %6.1f ms | lỗi %5.1f%%%n", name,
+                latencies[requests / 2] / 1e6, tail.p99(), tail.p999(), tail.errorPercent());
+        return tail;
+    }
+}
+
+/**
+ Các chính sách fan-out trên StructuredTaskScope. Mọi tác vụ con chạy trên Virtual Thread của scope
+ và đều kết thúc trước khi phương thức trả về (kể cả khi quá hạn hoặc lỗi).
+ */
+final class FanOut {
+
+    private FanOut() {
+    }
+
+    /**
+     Chạy mọi tác vụ, trả về kết quả theo đúng thứ tự. Tác vụ đầu tiên lỗi làm hủy các tác vụ còn lại.
+     @throws ExecutionException bọc lỗi đầu tiên
+     @throws TimeoutException   khi quá hạn; các tác vụ chưa xong bị hủy
+     */
+    static <T> List<T> all(List<? extends Callable<? extends T>> tasks, Instant deadline)
+            throws InterruptedException, ExecutionException, TimeoutException {
+        @SuppressWarnings("unchecked")
+        T[] results = (T[]) new Object[tasks.size()];
+        try (var scope = new AllScope()) {
+            for (int i = 0; i < results.length; i++) {
+                int slot = i;
+                Callable<? extends T> task = tasks.get(i);
+                // Ghi thẳng vào ô của mình; join() bảo đảm owner thấy các lần ghi này
+                scope.fork(() -> results[slot] = task.call());
+            }
+            joinUntil(scope, deadline);
+            scope.throwIfFailed();
+        }
+        return Collections.unmodifiableList(Arrays.asList(results));
+    }
+
+    /**
+     Trả về kết quả thành công đầu tiên và hủy các tác vụ còn lại.
+     @throws ExecutionException khi mọi tác vụ đều lỗi; lỗi đầu tiên là cause, các lỗi sau là suppressed
+     */
+    static <T> T firstSuccess(List<? extends Callable<? extends T>> tasks, Instant deadline)
+            throws InterruptedException, ExecutionException, TimeoutException {
+        try (var scope = new FirstSuccessScope<T>(null)) {
+            for (Callable<? extends T> task : tasks) scope.fork(task);
+            joinUntil(scope, deadline);
+            return scope.result();
+        }
+    }
+
+    /**
+     Gọi call một lần; nếu sau hedger.delay() (p95 gần đây) chưa có kết quả, hoặc lần gọi chính lỗi,
+     gọi thêm một lần dự phòng (trừ khi đã quá hạn). Lấy kết quả thành công đầu tiên, hủy lần còn lại.
+     */
+    static <T> T hedged(Callable<? extends T> call, Hedger hedger, Instant deadline)
+            throws InterruptedException, ExecutionException, TimeoutException {
+        CountDownLatch primaryDone = new CountDownLatch(1);
+        try (var scope = new FirstSuccessScope<T>(primaryDone)) {
+            scope.fork(timed(call, hedger, true));
+            long waitNanos = Math.min(hedger.delay().toNanos(), Duration.between(Instant.now(), deadline).toNanos());
+            boolean done = primaryDone.await(Math.max(0, waitNanos), TimeUnit.NANOSECONDS);
+            if ((!done || !scope.succeeded()) && Instant.now().isBefore(deadline)) {
+                hedger.hedged();
+                scope.fork(timed(call, hedger, false));
+            }
+            joinUntil(scope, deadline);
+            return scope.result();
+        }
+    }
+
+    /**
+     Mỗi lần gọi tự ghi độ trễ của mình, để p95 phản ánh lời gọi chứ không phải cả hedged().
+     Lần gọi chính bị hủy vì dự phòng thắng vẫn ghi thời gian đã chạy: độ trễ thật ít nhất bằng chừng đó,
+     và chính những lần chậm này nằm trên ngưỡng. Bỏ chúng đi thì p95 ước lượng thấp hơn thật và
+     tỷ lệ gửi dự phòng vượt 5%. Lần dự phòng bị hủy thì không ghi (nó bắt đầu muộn nên thời gian chạy quá ngắn).
+     */
+    private static <T> Callable<T> timed(Callable<? extends T> call, Hedger hedger, boolean primary) {
+        return () -> {
+            long start = System.nanoTime();
+            try {
+                T value = call.call();
+                hedger.record(System.nanoTime() - start);
+                return value;
+            } catch (InterruptedException e) {
+                if (primary) hedger.record(System.nanoTime() - start);
+                throw e;
+            }
+        };
+    }
+
+    private static void joinUntil(StructuredTaskScope<?> scope, Instant deadline)
+            throws InterruptedException, TimeoutException {
+        try {
+            scope.joinUntil(deadline);
+        } catch (TimeoutException e) {
+            scope.shutdown(); // hủy các tác vụ con chưa xong; close() chờ chúng kết thúc
+            throw e;
+        }
+    }
+
+    /** Dừng khi có lỗi đầu tiên, giữ lại lỗi đó. Kết quả không đi qua scope (tác vụ tự ghi vào mảng). */
+    private static final class AllScope extends StructuredTaskScope<Object> {
+        private final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        @Override
+        protected void handleComplete(Subtask<?> subtask) {
+            if (subtask.state() == Subtask.State.FAILED && failure.compareAndSet(null, subtask.exception())) {
+                shutdown();
+            }
+        }
+
+        void throwIfFailed() throws ExecutionException {
+            ensureOwnerAndJoined();
+            Throwable t = failure.get();
+            if (t != null) throw new ExecutionException(t);
+        }
+    }
+
+    /** Dừng khi có kết quả thành công đầu tiên; đếm xuống latch (nếu có) khi bất kỳ tác vụ nào xong. */
+    private static final class FirstSuccessScope<T> extends StructuredTaskScope<T> {
+        private final CountDownLatch anyDone;
+        private final AtomicBoolean won = new AtomicBoolean();
+        private final AtomicReference<ExecutionException> failure = new AtomicReference<>();
+        private volatile T result;
+
+        FirstSuccessScope(CountDownLatch anyDone) {
+            this.anyDone = anyDone;
+        }
+
+        @Override
+        protected void handleComplete(Subtask<? extends T> subtask) {
+            if (subtask.state() == Subtask.State.SUCCESS) {
+                if (won.compareAndSet(false, true)) {
+                    result = subtask.get();
+                    shutdown();
+                }
+            } else if (subtask.state() == Subtask.State.FAILED) {
+                // Lỗi đầu tiên là cause, các lỗi sau là suppressed
+                if (!failure.compareAndSet(null, new ExecutionException(subtask.exception()))) {
+                    failure.get().addSuppressed(subtask.exception());
+                }
+            }
+            if (anyDone != null) anyDone.countDown();
+        }
+
+        boolean succeeded() {
+            return won.get();
+        }
+
+        T result() throws ExecutionException {
+            ensureOwnerAndJoined();
+            if (won.get()) return result;
+            ExecutionException e = failure.get();
+            throw e != null ? e : new ExecutionException(new IllegalStateException("no subtask completed"));
+        }
+    }
+}
+
+/**
+ Theo dõi độ trễ gần đây của một lời gọi để quyết định khi nào gửi dự phòng.
+ Giữ WINDOW mẫu gần nhất trong vòng tròn; p95 được tính lại sau mỗi RECOMPUTE mẫu,
+ trước khi có đủ mẫu thì dùng initialDelay.
+ */
+final class Hedger {
+
+    private static final int WINDOW = 1024;
+    private static final int RECOMPUTE = 128;
+    private static final double PERCENTILE = 0.95;
+
+    private final AtomicLongArray samples = new AtomicLongArray(WINDOW);
+    private final AtomicInteger count = new AtomicInteger();
+    private final LongAdder hedges = new LongAdder();
+    private volatile long delayNanos;
+
+    Hedger(Duration initialDelay) {
+        this.delayNanos = initialDelay.toNanos();
+    }
+
+    Duration delay() {
+        return Duration.ofNanos(delayNanos);
+    }
+
+    long hedges() {
+        return hedges.sum();
+    }
+
+    void hedged() {
+        hedges.increment();
+    }
+
+    void record(long nanos) {
+        int n = count.getAndIncrement();
+        samples.set(n & (WINDOW - 1), nanos);
+        if (n + 1 >= RECOMPUTE && (n + 1) % RECOMPUTE == 0) {
+            int filled = Math.min(n + 1, WINDOW);
+            long[] copy = new long[filled];
+            for (int i = 0; i < filled; i++) copy[i] = samples.get(i);
+            Arrays.sort(copy);
+            delayNanos = copy[(int) (filled * PERCENTILE)];
+        }
+    }
+}
+
+/*
+Lưu ý khi chạy:
+StructuredTaskScope là API preview trong Java 21, cần bật cờ preview:
+Biên dịch: javac --release 21 --enable-preview JEP428_FanOut.java
+Chạy:      java --enable-preview JEP428_FanOut
+Hoặc chạy thẳng: java --source 21 --enable-preview JEP428_FanOut.java
+*/
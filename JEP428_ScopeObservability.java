@@ -0,0 +1,483 @@
+/*
+==========================================================
+JEP 428 - Quan sát cây StructuredTaskScope: cây tác vụ con trực tiếp và số liệu theo scope
+Mục tiêu: runStructuredTasks() và runStructuredTasksWithError() trong JEP428_QuangTuan chỉ thấy lỗi qua
+         printStackTrace()/getCause().getMessage(). Khi một scope bị treo ở join(), không biết tác vụ con
+         nào đang giữ nó lại.
+         ObservedScope thay cho ShutdownOnFailure và ghi lại:
+         - độ trễ từ fork() tới khi tác vụ con xong (histogram log2, lấy mẫu 1/64 tác vụ không tên)
+         - số tác vụ thành công, lỗi, bị hủy; độ sâu lồng nhau của scope
+         - cây cha/con của các scope đang sống cùng các tác vụ con chưa xong, xuất dạng JSON
+           (ScopeRegistry.dumpJson()), và sự kiện JFR "jep428.Scope" khi scope đóng
+         Tên scope được truyền cho StructuredTaskScope nên cũng xuất hiện trong thread dump JSON của JDK
+         (jcmd <pid> Thread.dump_to_file -format=json, hoặc ScopeRegistry.dumpJdkThreads()).
+Phiên bản áp dụng: Java 21 (preview)
+==========================================================
+*/
+
+import com.sun.management.HotSpotDiagnosticMXBean;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.StructuredTaskScope;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+public class JEP428_ScopeObservability {
+
+    public static void main(String[] args) throws Exception {
+        System.out.println("=== Ví dụ 1: Scope bị treo, tìm tác vụ con đang giữ join() ===");
+        demoHangingScope();
+
+        System.out.println("\n=== Ví dụ 2: Lỗi và hủy trong scope lồng nhau ===");
+        demoNestedFailure();
+
+        System.out.println("\n=== Đo chi phí quan sát ===");
+        int subtasks = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        measureOverhead(subtasks);
+    }
+
+    // ===================== Ví dụ 1 =====================
+    static void demoHangingScope() throws InterruptedException {
+        // Luồng canh: sau 300 ms in cây scope đang sống, giống một lệnh chẩn đoán chạy lúc sự cố
+        Thread watchdog = Thread.ofPlatform().daemon().start(() -> {
+            try {
+                Thread.sleep(300);
+                System.out.println("Cây scope sau 300 ms:");
+                System.out.println(ScopeRegistry.dumpJson());
+                Path file = Path.of(System.getProperty("java.io.tmpdir"), "jep428-threads.json");
+                ScopeRegistry.dumpJdkThreads(file);
+                System.out.println("Thread dump JSON của JDK: " + file + " (" + Files.size(file) + " byte)");
+            } catch (InterruptedException | IOException ignored) {
+            }
+        });
+
+        try (var scope = new ObservedScope<String>("xu-ly-don-hang")) {
+            scope.fork("lay-khach-hang", () -> sleep(50, "khách hàng"));
+            scope.fork("lay-ton-kho", () -> {
+                // Scope con: một lời gọi bị treo lâu bên trong
+                try (var inner = new ObservedScope<String>("kiem-tra-kho")) {
+                    inner.fork("kho-ha-noi", () -> sleep(60, "HN"));
+                    inner.fork("kho-sai-gon", () -> sleep(600, "SG")); // tác vụ giữ join()
+                    inner.join().throwIfFailed();
+                }
+                return "tồn kho";
+            });
+            scope.join().throwIfFailed();
+            System.out.println("Xong: " + scope.stats());
+        } catch (ExecutionException e) {
+            System.out.println("Bắt lỗi: " + e.getCause());
+        }
+        watchdog.join();
+    }
+
+    // ===================== Ví dụ 2 =====================
+    static void demoNestedFailure() throws InterruptedException {
+        try (var scope = new ObservedScope<String>("thanh-toan")) {
+            scope.fork("tinh-tien", () -> sleep(500, "tiền"));
+            scope.fork("xac-thuc", () -> {
+                sleep(20, "");
+                throw new IllegalStateException("thẻ bị từ chối");
+            });
+            scope.join().throwIfFailed();
+        } catch (ExecutionException e) {
+            System.out.println("Bắt lỗi: " + e.getCause().getMessage());
+        }
+        for (ScopeStats s : ScopeRegistry.recentlyClosed()) System.out.println("  " + s);
+    }
+
+    private static String sleep(long millis, String value) throws InterruptedException {
+        Thread.sleep(millis);
+        return value;
+    }
+
+    // ===================== Đo chi phí =====================
+    static void measureOverhead(int subtasks) throws Exception {
+        int rounds = 7;
+        double[] plain = new double[rounds];
+        double[] observed = new double[rounds];
+        for (int round = -3; round < rounds; round++) { // 3 vòng đầu để khởi động JIT
+            long p = runPlain(subtasks);
+            long o = runObserved(subtasks);
+            if (round >= 0) {
+                plain[round] = (double) p / subtasks;
+                observed[round] = (double) o / subtasks;
+            }
+        }
+        Arrays.sort(plain);
+        Arrays.sort(observed);
+        double p = plain[rounds / 2], o = observed[rounds / 2];
+        double overhead = (o - p) / p * 100;
+        System.out.printf("ShutdownOnFailure: %7.1f ns/tác vụ con | ObservedScope: %7.1f ns/tác vụ con | chi phí thêm %.2f%%%n",
+                p, o, overhead);
+        System.out.println(overhead < 1.0
+                ? "=> Đạt: chi phí quan sát dưới 1%."
+                : "=> Chưa đạt 1% trên máy này (dao động giữa các vòng có thể lớn hơn chi phí thật).");
+        System.out.println("Độ trễ fork->xong (toàn cục): " + ScopeRegistry.latencySummary());
+    }
+
+    static volatile long sink;
+
+    private static long runPlain(int subtasks) throws Exception {
+        long start = System.nanoTime();
+        try (var scope = new StructuredTaskScope.ShutdownOnFailure()) {
+            for (int i = 0; i < subtasks; i++) {
+                int x = i;
+                scope.fork(() -> x * 31);
+            }
+            scope.join().throwIfFailed();
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static long runObserved(int subtasks) throws Exception {
+        long start = System.nanoTime();
+        try (var scope = new ObservedScope<Integer>("microbenchmark")) {
+            for (int i = 0; i < subtasks; i++) {
+                int x = i;
+                scope.fork(() -> x * 31);
+            }
+            scope.join().throwIfFailed();
+        }
+        return System.nanoTime() - start;
+    }
+}
+
+/** Số liệu một scope. pending = đã fork nhưng chưa xong (và chưa bị hủy). */
+record ScopeStats(String name, long id, int depth, long forked, long succeeded, long failed,
+                  long cancelled, long pending, long ageMillis) {
+
+    @Override
+    public String toString() {
+        return String.format("%s#%d (độ sâu %d): fork %d, thành công %d, lỗi %d, hủy %d, chưa xong %d, %d ms",
+                name, id, depth, forked, succeeded, failed, cancelled, pending, ageMillis);
+    }
+}
+
+/**
+ StructuredTaskScope có chính sách như ShutdownOnFailure (lỗi đầu tiên làm dừng scope) và tự ghi số liệu.
+
+ Đường nóng (mỗi lần fork) được giữ rẻ: với tác vụ con không tên chỉ tăng một AtomicLong và một
+ LongAdder khi xong. Tác vụ con có tên, và cứ SAMPLE_EVERY tác vụ không tên thì một, được theo dõi chi tiết
+ bằng một Node (tên, thời điểm fork, luồng đang chạy, độ trễ) để hiện trong dump.
+ Luồng của tác vụ con được đặt tên "observed-scope#<id>": scope tạo bên trong một tác vụ con đọc tên luồng
+ hiện tại để tìm scope cha, không cần ThreadLocal cho mỗi tác vụ; tên này cũng hiện trong thread dump của JDK.
+ */
+class ObservedScope<T> extends StructuredTaskScope<T> {
+
+    static final int SAMPLE_EVERY = 64;
+    static final String THREAD_PREFIX = "observed-scope#";
+    private static final AtomicLong IDS = new AtomicLong();
+
+    final long id;
+    final String name;
+    final ObservedScope<?> parent;
+    final int depth;
+    final Thread owner = Thread.currentThread();
+    final long createdNanos = System.nanoTime();
+
+    private final LongAdder succeeded = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final AtomicReference<Throwable> firstFailure = new AtomicReference<>();
+    // fork() được gọi từ owner hoặc từ tác vụ con của chính scope, nên bộ đếm và danh sách Node phải an toàn đa luồng
+    private final AtomicLong forked = new AtomicLong();
+    private final ConcurrentLinkedQueue<Node<?>> nodes = new ConcurrentLinkedQueue<>();
+    private volatile long cancelled;
+
+    ObservedScope(String name) {
+        this(name, IDS.incrementAndGet());
+    }
+
+    private ObservedScope(String name, long id) {
+        super(name, Thread.ofVirtual().name(THREAD_PREFIX + id).factory());
+        this.id = id;
+        this.name = name;
+        this.parent = ScopeRegistry.scopeOf(Thread.currentThread());
+        this.depth = parent == null ? 0 : parent.depth + 1;
+        ScopeRegistry.opened(this);
+    }
+
+    /** Một tác vụ con được theo dõi: giữ tên, thời điểm fork và luồng đang chạy nó. */
+    static final class Node<U> implements Callable<U> {
+        final String name;
+        final Callable<? extends U> task;
+        final long forkNanos = System.nanoTime();
+        volatile Thread thread;
+        volatile boolean done;
+
+        Node(String name, Callable<? extends U> task) {
+            this.name = name;
+            this.task = task;
+        }
+
+        @Override
+        public U call() throws Exception {
+            thread = Thread.currentThread();
+            try {
+                return task.call();
+            } finally {
+                done = true;
+                ScopeRegistry.recordLatency(System.nanoTime() - forkNanos);
+            }
+        }
+    }
+
+    @Override
+    public <U extends T> Subtask<U> fork(Callable<? extends U> task) {
+        return fork(null, task);
+    }
+
+    /** Như fork(task), kèm tên hiện trong dump. Tác vụ có tên luôn được theo dõi chi tiết. */
+    public <U extends T> Subtask<U> fork(String subtaskName, Callable<? extends U> task) {
+        long n = forked.getAndIncrement();
+        if (subtaskName == null && n % SAMPLE_EVERY != 0) return super.fork(task);
+
+        Node<U> node = new Node<>(subtaskName != null ? subtaskName : "subtask-" + n, task);
+        nodes.add(node);
+        return super.fork(node);
+    }
+
+    @Override
+    protected void handleComplete(Subtask<? extends T> subtask) {
+        if (subtask.state() == Subtask.State.SUCCESS) {
+            succeeded.increment();
+        } else if (subtask.state() == Subtask.State.FAILED) {
+            failed.increment();
+            if (firstFailure.compareAndSet(null, subtask.exception())) shutdown();
+        }
+    }
+
+    @Override
+    public ObservedScope<T> join() throws InterruptedException {
+        super.join();
+        return this;
+    }
+
+    void throwIfFailed() throws ExecutionException {
+        ensureOwnerAndJoined();
+        Throwable t = firstFailure.get();
+        if (t != null) throw new ExecutionException(t);
+    }
+
+    @Override
+    public void close() {
+        try {
+            super.close();
+        } finally {
+            // Sau close() mọi luồng đã kết thúc: tác vụ không thành công cũng không lỗi là bị hủy
+            cancelled = forked.get() - succeeded.sum() - failed.sum();
+            ScopeRegistry.closed(this);
+        }
+    }
+
+    ScopeStats stats() {
+        long f = forked.get(), ok = succeeded.sum(), bad = failed.sum();
+        long pending = isShutdown() ? 0 : Math.max(0, f - ok - bad);
+        return new ScopeStats(name, id, depth, f, ok, bad, cancelled, pending,
+                (System.nanoTime() - createdNanos) / 1_000_000);
+    }
+
+    /** JSON của scope này, các tác vụ con chưa xong và các scope con đang sống. */
+    void appendJson(StringBuilder out, Map<ObservedScope<?>, List<ObservedScope<?>>> children, String indent) {
+        ScopeStats s = stats();
+        long now = System.nanoTime();
+        out.append(indent).append("{\"name\": \"").append(json(name)).append("\", \"id\": ").append(id)
+                .append(", \"depth\": ").append(depth).append(", \"owner\": \"").append(json(owner.toString()))
+                .append("\", \"ageMs\": ").append(s.ageMillis()).append(", \"forked\": ").append(s.forked())
+                .append(", \"succeeded\": ").append(s.succeeded()).append(", \"failed\": ").append(s.failed())
+                .append(", \"pending\": ").append(s.pending())
+                .append(", \"shutdown\": ").append(isShutdown()).append(",\n");
+        // Chỉ các tác vụ được theo dõi (có tên hoặc được lấy mẫu); danh sách đủ có trong thread dump của JDK
+        out.append(indent).append(" \"pendingTracked\": [");
+        String sep = "";
+        for (Node<?> node : nodes) {
+            if (node.done) continue;
+            Thread t = node.thread;
+            out.append(sep).append("\n").append(indent).append("   {\"name\": \"")
+                    .append(json(node.name))
+                    .append("\", \"ageMs\": ").append((now - node.forkNanos) / 1_000_000)
+                    .append(", \"thread\": \"").append(t == null ? "chưa chạy" : json(t.toString()));
+            if (t != null) {
+                out.append("\", \"at\": \"").append(json(firstAppFrame(t.getStackTrace())));
+            }
+            out.append("\"}");
+            sep = ",";
+        }
+        out.append("],\n").append(indent).append(" \"children\": [");
+        sep = "";
+        for (ObservedScope<?> child : children.getOrDefault(this, List.of())) {
+            out.append(sep).append("\n");
+            child.appendJson(out, children, indent + "   ");
+            sep = ",";
+        }
+        out.append("]}");
+    }
+
+    /** Frame đầu tiên ngoài JDK, để thấy tác vụ con đang chờ ở dòng nào của ứng dụng. */
+    private static String firstAppFrame(StackTraceElement[] stack) {
+        for (StackTraceElement frame : stack) {
+            String cls = frame.getClassName();
+            if (!cls.startsWith("java.") && !cls.startsWith("jdk.")) return frame.toString();
+        }
+        return stack.length > 0 ? stack[0].toString() : "";
+    }
+
+    private static String json(String s) {
+        return s.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+}
+
+/** Sự kiện JFR ghi lại mỗi scope khi đóng; chỉ tốn chi phí khi JFR đang bật sự kiện này. */
+@Name("jep428.Scope")
+@Label("Structured Task Scope")
+@Category("JEP 428")
+final class ScopeEvent extends Event {
+    @Label("Name")
+    String name;
+    @Label("Depth")
+    int depth;
+    @Label("Forked")
+    long forked;
+    @Label("Succeeded")
+    long succeeded;
+    @Label("Failed")
+    long failed;
+    @Label("Cancelled")
+    long cancelled;
+}
+
+/** Danh sách các ObservedScope đang sống và số liệu toàn cục. */
+final class ScopeRegistry {
+
+    private static final int RECENT = 16;
+
+    private static final Map<Long, ObservedScope<?>> LIVE = new ConcurrentHashMap<>();
+    private static final List<ScopeStats> RECENTLY_CLOSED = new ArrayList<>();
+    // Histogram log2 của độ trễ fork->xong: ô i đếm các giá trị trong [2^i, 2^(i+1)) ns
+    private static final AtomicLongArray LATENCY = new AtomicLongArray(64);
+
+    private ScopeRegistry() {
+    }
+
+    /** Scope mà luồng thread là tác vụ con của nó (theo tên luồng), hoặc null. */
+    static ObservedScope<?> scopeOf(Thread thread) {
+        String name = thread.getName();
+        if (!name.startsWith(ObservedScope.THREAD_PREFIX)) return null;
+        try {
+            return LIVE.get(Long.parseLong(name.substring(ObservedScope.THREAD_PREFIX.length())));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    static void opened(ObservedScope<?> scope) {
+        LIVE.put(scope.id, scope);
+    }
+
+    static void closed(ObservedScope<?> scope) {
+        LIVE.remove(scope.id);
+        ScopeStats stats = scope.stats();
+        synchronized (RECENTLY_CLOSED) {
+            if (RECENTLY_CLOSED.size() == RECENT) RECENTLY_CLOSED.remove(0);
+            RECENTLY_CLOSED.add(stats);
+        }
+        ScopeEvent event = new ScopeEvent();
+        if (event.shouldCommit()) {
+            event.name = scope.name;
+            event.depth = scope.depth;
+            event.forked = stats.forked();
+            event.succeeded = stats.succeeded();
+            event.failed = stats.failed();
+            event.cancelled = stats.cancelled();
+            event.commit();
+        }
+    }
+
+    static List<ScopeStats> recentlyClosed() {
+        synchronized (RECENTLY_CLOSED) {
+            return List.copyOf(RECENTLY_CLOSED);
+        }
+    }
+
+    static void recordLatency(long nanos) {
+        LATENCY.getAndIncrement(63 - Long.numberOfLeadingZeros(Math.max(1, nanos)));
+    }
+
+    /** p50/p99/max (theo cận trên của ô log2) của độ trễ fork->xong trên các tác vụ được theo dõi. */
+    static String latencySummary() {
+        long[] counts = new long[64];
+        long total = 0;
+        int maxBucket = 0;
+        for (int i = 0; i < 64; i++) {
+            counts[i] = LATENCY.get(i);
+            total += counts[i];
+            if (counts[i] > 0) maxBucket = i;
+        }
+        return String.format("%,d tác vụ con được lấy mẫu, p50 < %s, p99 < %s, max < %s", total,
+                micros(bucketAt(counts, total, 0.50)), micros(bucketAt(counts, total, 0.99)), micros(maxBucket));
+    }
+
+    private static int bucketAt(long[] counts, long total, double p) {
+        long rank = (long) Math.ceil(p * total), seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) return i;
+        }
+        return counts.length - 1;
+    }
+
+    private static String micros(int bucket) {
+        return String.format("%.1f µs", (1L << (bucket + 1)) / 1e3);
+    }
+
+    /** Cây JSON của mọi scope đang sống, gốc là các scope không có cha (hoặc cha đã đóng). */
+    static String dumpJson() {
+        Map<ObservedScope<?>, List<ObservedScope<?>>> children = new ConcurrentHashMap<>();
+        List<ObservedScope<?>> roots = new ArrayList<>();
+        for (ObservedScope<?> scope : LIVE.values()) {
+            if (scope.parent != null && LIVE.containsKey(scope.parent.id)) {
+                children.computeIfAbsent(scope.parent, k -> new ArrayList<>()).add(scope);
+            } else {
+                roots.add(scope);
+            }
+        }
+        StringBuilder out = new StringBuilder("{\"scopes\": [");
+        String sep = "";
+        for (ObservedScope<?> root : roots) {
+            out.append(sep).append("\n");
+            root.appendJson(out, children, "  ");
+            sep = ",";
+        }
+        return out.append("]}").toString();
+    }
+
+    /** Thread dump JSON của JDK (gồm cây thread container của mọi StructuredTaskScope) ra file. */
+    static void dumpJdkThreads(Path file) throws IOException {
+        Files.deleteIfExists(file);
+        ManagementFactory.getPlatformMXBean(HotSpotDiagnosticMXBean.class)
+                .dumpThreads(file.toAbsolutePath().toString(), HotSpotDiagnosticMXBean.ThreadDumpFormat.JSON);
+    }
+}
+
+/*
+Lưu ý khi chạy:
+StructuredTaskScope là API preview trong Java 21, cần bật cờ preview:
+Chạy: java --source 21 --enable-preview JEP428_ScopeObservability.java
+Xem sự kiện JFR: java --source 21 --enable-preview -XX:StartFlightRecording:filename=scopes.jfr JEP428_ScopeObservability.java
+                 jfr print --events jep428.Scope scopes.jfr
+*/
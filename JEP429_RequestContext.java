@@ -0,0 +1,375 @@
+import java.lang.ref.Reference;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.StructuredTaskScope;
+import java.util.function.UnaryOperator;
+
+/**
+ Ngữ cảnh yêu cầu có kiểu, dựa trên ScopedValue.
+ ScopedValueComparison (JEP429_NguyenThuy.java) chỉ gắn một chuỗi USER và so với ThreadLocal OLD_USER.
+ Dịch vụ thật mang cả một ngữ cảnh: tenant, trace id, người dùng đã xác thực và hạn chót.
+
+ - RequestContext gom các giá trị đó trong một record bất biến, gắn vào một ScopedValue duy nhất
+   (một lần where(...) thay vì bốn ThreadLocal).
+ - Tác vụ con của StructuredTaskScope tự động thấy ngữ cảnh của scope cha. Virtual Thread tạo bằng
+   Thread.ofVirtual() thì không kế thừa ScopedValue, nên Request.wrap()/startVirtualThread() chụp ngữ cảnh
+   hiện tại và gắn lại trong luồng mới.
+ - Bộ đo so sánh với ThreadLocal và InheritableThreadLocal: chi phí đọc, chi phí gắn lại (rebind) và
+   bộ nhớ mỗi luồng khi có 10.000+ Virtual Threads cùng mang ngữ cảnh.
+   Không dùng JMH vì repo không có hệ thống build; khởi động JIT và lấy trung vị được làm tay.
+
+ Chạy: java --source 21 --enable-preview JEP429_RequestContext.java [số luồng]
+ Phiên bản áp dụng: Java 21 (preview).
+ */
+public class JEP429_RequestContext {
+
+    private static final ThreadLocal<RequestContext> TL = new ThreadLocal<>();
+    private static final InheritableThreadLocal<RequestContext> ITL = new InheritableThreadLocal<>();
+
+    public static void main(String[] args) throws Exception {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+
+        System.out.println("--- 1. Ngữ cảnh đi theo tác vụ con và Virtual Thread ---");
+        demoPropagation();
+
+        System.out.println("\n--- 2. Chi phí đọc và gắn lại (ns/lần) ---");
+        benchmarkLookupAndRebind();
+
+        System.out.printf("%n--- 3. Bộ nhớ mỗi luồng với %,d Virtual Threads ---%n", threads);
+        benchmarkMemory(threads);
+    }
+
+    static RequestContext sampleContext(int i) {
+        return new RequestContext("tenant-" + (i % 8), "trace-" + i,
+                new AuthPrincipal("user" + i, Set.of("reader")), Instant.now().plusSeconds(5));
+    }
+
+    // ===================== 1. Lan truyền =====================
+    static void demoPropagation() throws Exception {
+        RequestContext ctx = new RequestContext("acme", "trace-42",
+                new AuthPrincipal("alice", Set.of("admin")), Instant.now().plusMillis(500));
+
+        Request.run(ctx, () -> {
+            System.out.println("Trong yêu cầu: " + Request.context());
+            try (var scope = new StructuredTaskScope.ShutdownOnFailure()) {
+                var a = scope.fork(() -> "tác vụ con thấy tenant = " + Request.context().tenant());
+                var b = scope.fork(() -> Request.call(c -> c.withTraceId(c.traceId() + "/b"),
+                        () -> "tác vụ con gắn lại trace = " + Request.context().traceId()));
+                scope.join().throwIfFailed();
+                System.out.println(a.get());
+                System.out.println(b.get());
+            } catch (Exception e) {
+                System.out.println("Bắt lỗi: " + e);
+            }
+
+            Thread plain = Thread.ofVirtual().start(() ->
+                    System.out.println("Virtual Thread thường: có ngữ cảnh? " + Request.isBound()));
+            Thread wrapped = Request.startVirtualThread(() ->
+                    System.out.println("Request.startVirtualThread: người dùng = " + Request.context().principal().name()
+                            + ", còn " + Request.remaining().toMillis() + " ms"));
+            try {
+                plain.join();
+                wrapped.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+
+        try {
+            Request.context();
+        } catch (IllegalStateException e) {
+            System.out.println("Bắt lỗi: " + e.getMessage());
+        }
+    }
+
+    // ===================== 2. Đọc và gắn lại =====================
+    static volatile Object sink;
+
+    interface Body {
+        long run(int ops) throws Exception;
+    }
+
+    static void benchmarkLookupAndRebind() throws Exception {
+        RequestContext outer = sampleContext(1);
+        RequestContext inner = sampleContext(2);
+        int ops = 1_000_000;
+
+        // Đọc: giá trị đã gắn sẵn, đo riêng get()
+        double svGet = Request.call(c -> outer, () -> median(ops, n -> {
+            long h = 0;
+            for (int i = 0; i < n; i++) h += Request.context().traceId().length();
+            return h;
+        }));
+        TL.set(outer);
+        double tlGet = median(ops, n -> {
+            long h = 0;
+            for (int i = 0; i < n; i++) h += TL.get().traceId().length();
+            return h;
+        });
+        TL.remove();
+        ITL.set(outer);
+        double itlGet = median(ops, n -> {
+            long h = 0;
+            for (int i = 0; i < n; i++) h += ITL.get().traceId().length();
+            return h;
+        });
+        ITL.remove();
+
+        // Gắn lại: gắn giá trị mới cho một đoạn code rồi khôi phục giá trị cũ
+        double svRebind = median(ops / 10, n -> {
+            long h = 0;
+            for (int i = 0; i < n; i++) h += Request.call(c -> inner, () -> Request.context().traceId().length());
+            return h;
+        });
+        double tlRebind = median(ops / 10, n -> {
+            long h = 0;
+            for (int i = 0; i < n; i++) {
+                RequestContext saved = TL.get();
+                TL.set(inner);
+                try {
+                    h += TL.get().traceId().length();
+                } finally {
+                    if (saved == null) TL.remove(); else TL.set(saved);
+                }
+            }
+            return h;
+        });
+
+        System.out.printf("ScopedValue           : đọc %6.2f | gắn lại %7.2f%n", svGet, svRebind);
+        System.out.printf("ThreadLocal           : đọc %6.2f | gắn lại %7.2f (set + khôi phục)%n", tlGet, tlRebind);
+        System.out.printf("InheritableThreadLocal: đọc %6.2f%n", itlGet);
+        System.out.println("* Nhận xét: ScopedValue đọc nhanh nhờ bộ đệm theo luồng; gắn lại tự khôi phục khi ra khỏi phạm vi,");
+        System.out.println("  không thể quên remove() như ThreadLocal.");
+    }
+
+    /** Trung vị ns/lần của 7 vòng đo sau 5 vòng khởi động. */
+    private static double median(int ops, Body body) throws Exception {
+        double[] samples = new double[7];
+        for (int round = -5; round < samples.length; round++) {
+            long start = System.nanoTime();
+            sink = body.run(ops);
+            if (round >= 0) samples[round] = (double) (System.nanoTime() - start) / ops;
+        }
+        Arrays.sort(samples);
+        return samples[samples.length / 2];
+    }
+
+    // ===================== 3. Bộ nhớ =====================
+    /** Cách luồng con nhận ngữ cảnh trong phép đo bộ nhớ. */
+    enum Carrier {
+        NONE("Không ngữ cảnh (mốc)"),
+        SCOPED_VALUE("ScopedValue, Request.startVirtualThread"),
+        THREAD_LOCAL("ThreadLocal, mỗi luồng tự set"),
+        INHERITABLE("InheritableThreadLocal, kế thừa");
+
+        final String label;
+
+        Carrier(String label) {
+            this.label = label;
+        }
+    }
+
+    static void benchmarkMemory(int threads) throws Exception {
+        // Cùng một đối tượng ngữ cảnh cho mọi luồng: chỉ đo chi phí mang ngữ cảnh, không đo bản thân ngữ cảnh
+        RequestContext shared = sampleContext(0);
+        System.out.println("Virtual Thread tạo bằng Thread.ofVirtual():");
+        long baseline = 0;
+        // Lượt NONE đầu tiên chỉ để nạp lớp và khởi động JIT, không in
+        List<Carrier> order = new ArrayList<>(List.of(Carrier.NONE));
+        order.addAll(List.of(Carrier.values()));
+        for (int run = 0; run < order.size(); run++) {
+            Carrier carrier = order.get(run);
+            long perThread = footprint(threads, (parked, release) -> {
+                Runnable body = () -> {
+                    if (carrier == Carrier.THREAD_LOCAL) TL.set(shared);
+                    Reference.reachabilityFence(switch (carrier) {
+                        case NONE -> null;
+                        case SCOPED_VALUE -> Request.context();
+                        case THREAD_LOCAL -> TL.get();
+                        case INHERITABLE -> ITL.get();
+                    });
+                    parked.countDown();
+                    awaitQuietly(release);
+                };
+                if (carrier == Carrier.INHERITABLE) ITL.set(shared);
+                try {
+                    Thread[] all = new Thread[threads];
+                    for (int i = 0; i < threads; i++) {
+                        all[i] = carrier == Carrier.SCOPED_VALUE
+                                ? Request.call(c -> shared, () -> Request.startVirtualThread(body))
+                                : Thread.ofVirtual().start(body);
+                    }
+                    for (Thread t : all) t.join();
+                } finally {
+                    ITL.remove();
+                }
+            });
+            if (run == 0) continue;
+            if (carrier == Carrier.NONE) baseline = perThread;
+            report(carrier.label, perThread, baseline);
+        }
+
+        // Tác vụ con của StructuredTaskScope dùng chung bản ghi gắn kết của scope cha, không sao chép gì
+        System.out.println("Tác vụ con của StructuredTaskScope:");
+        long scopeBaseline = 0;
+        for (boolean bound : new boolean[] {false, true}) {
+            long perThread = footprint(threads, (parked, release) -> {
+                Callable<Object> forkAll = () -> {
+                    try (var scope = new StructuredTaskScope<Object>()) {
+                        for (int i = 0; i < threads; i++) {
+                            scope.fork(() -> {
+                                Reference.reachabilityFence(bound ? Request.context() : null);
+                                parked.countDown();
+                                release.await();
+                                return null;
+                            });
+                        }
+                        scope.join();
+                    }
+                    return null;
+                };
+                if (bound) Request.call(c -> shared, forkAll); else forkAll.call();
+            });
+            if (!bound) scopeBaseline = perThread;
+            report(bound ? "ScopedValue, fork kế thừa" : "Không ngữ cảnh (mốc)", perThread, scopeBaseline);
+        }
+        System.out.println("* Nhận xét: ThreadLocal cần một ThreadLocalMap cho mỗi luồng; InheritableThreadLocal sao chép bảng lúc tạo luồng.");
+        System.out.println("  Tác vụ con fork từ scope dùng chung bản ghi gắn kết của cha nên gần như không tốn thêm; gắn lại trong");
+        System.out.println("  luồng mới (Request.startVirtualThread) tốn bản ghi gắn kết riêng và các frame run() trên stack đã park.");
+    }
+
+    private static void report(String label, long perThread, long baseline) {
+        System.out.printf("  %-42s %,6d byte/luồng (%+,d so với mốc)%n", label, perThread, perThread - baseline);
+    }
+
+    interface Workload {
+        void start(CountDownLatch parked, CountDownLatch release) throws Exception;
+    }
+
+    /**
+     Chạy workload trên một luồng nền, chờ mọi luồng con đang giữ ngữ cảnh rồi đo heap tăng thêm mỗi luồng
+     (gồm cả Virtual Thread và stack của nó). Lấy trung vị của 3 lần vì heap sau System.gc() còn nhiễu.
+     */
+    private static long footprint(int threads, Workload workload) throws Exception {
+        long[] samples = new long[3];
+        for (int i = 0; i < samples.length; i++) {
+            CountDownLatch parked = new CountDownLatch(threads);
+            CountDownLatch release = new CountDownLatch(1);
+            long before = usedHeap();
+            Thread driver = Thread.ofPlatform().start(() -> {
+                try {
+                    workload.start(parked, release);
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+            parked.await();
+            samples[i] = Math.max(0, (usedHeap() - before) / threads);
+            release.countDown();
+            driver.join();
+        }
+        Arrays.sort(samples);
+        return samples[1];
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static long usedHeap() {
+        Runtime rt = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) System.gc();
+        return rt.totalMemory() - rt.freeMemory();
+    }
+}
+
+/** Người dùng đã xác thực. */
+record AuthPrincipal(String name, Set<String> roles) {
+
+    AuthPrincipal {
+        roles = Set.copyOf(roles);
+    }
+}
+
+/** Ngữ cảnh một yêu cầu. Bất biến; dùng with...() để tạo bản sửa đổi rồi gắn lại bằng Request.run/call. */
+record RequestContext(String tenant, String traceId, AuthPrincipal principal, Instant deadline) {
+
+    RequestContext withTenant(String tenant) {
+        return new RequestContext(tenant, traceId, principal, deadline);
+    }
+
+    RequestContext withTraceId(String traceId) {
+        return new RequestContext(tenant, traceId, principal, deadline);
+    }
+
+    RequestContext withPrincipal(AuthPrincipal principal) {
+        return new RequestContext(tenant, traceId, principal, deadline);
+    }
+
+    /** Hạn chót mới không được muộn hơn hạn chót hiện có. */
+    RequestContext withDeadline(Instant deadline) {
+        return new RequestContext(tenant, traceId, principal, deadline.isBefore(this.deadline) ? deadline : this.deadline);
+    }
+}
+
+/** Truy cập ngữ cảnh của yêu cầu hiện tại. Ngữ cảnh chỉ tồn tại trong phạm vi run/call. */
+final class Request {
+
+    private static final ScopedValue<RequestContext> CURRENT = ScopedValue.newInstance();
+
+    private Request() {
+    }
+
+    /** @throws IllegalStateException nếu không ở trong phạm vi của một yêu cầu */
+    static RequestContext context() {
+        if (!CURRENT.isBound()) throw new IllegalStateException("no request context bound");
+        return CURRENT.get();
+    }
+
+    static boolean isBound() {
+        return CURRENT.isBound();
+    }
+
+    /** Thời gian còn lại tới hạn chót (có thể âm nếu đã quá hạn). */
+    static Duration remaining() {
+        return Duration.between(Instant.now(), context().deadline());
+    }
+
+    static void run(RequestContext ctx, Runnable op) {
+        ScopedValue.where(CURRENT, ctx).run(op);
+    }
+
+    /** Gắn lại ngữ cảnh đã sửa đổi (ví dụ trace id con) cho op, ngữ cảnh cũ được khôi phục sau đó. */
+    static <R> R call(UnaryOperator<RequestContext> change, Callable<R> op) throws Exception {
+        RequestContext current = CURRENT.isBound() ? CURRENT.get() : null;
+        return ScopedValue.where(CURRENT, change.apply(current)).call(op);
+    }
+
+    /** Chụp ngữ cảnh hiện tại (nếu có) để chạy op trên luồng khác với cùng ngữ cảnh. */
+    static Runnable wrap(Runnable op) {
+        if (!CURRENT.isBound()) return op;
+        RequestContext captured = CURRENT.get();
+        return () -> ScopedValue.where(CURRENT, captured).run(op);
+    }
+
+    static <R> Callable<R> wrap(Callable<R> op) {
+        if (!CURRENT.isBound()) return op;
+        RequestContext captured = CURRENT.get();
+        return () -> ScopedValue.where(CURRENT, captured).call(op);
+    }
+
+    /** Như Thread.startVirtualThread(op), nhưng luồng mới mang ngữ cảnh hiện tại. */
+    static Thread startVirtualThread(Runnable op) {
+        return Thread.ofVirtual().start(wrap(op));
+    }
+}
@@ -0,0 +1,379 @@
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.StructuredTaskScope;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ Bộ nhớ đệm theo phạm vi cho dữ liệu suy ra từ ScopedValue.
+ Trong ScopedValue.where(USER, ...).run(...) của ScopedValueComparison.demoPostJEP429() (JEP429_NguyenThuy.java),
+ code thật tính lại dữ liệu suy ra (tập quyền của USER, cấu hình tenant đã parse) ở mỗi lần gọi.
+
+ - ScopeCache.where(...) gắn các ScopedValue như ScopedValue.where(...), kèm một khung đệm (frame) mới.
+ - Derived khai báo giá trị suy ra và các ScopedValue nguồn của nó; get() tính nhiều nhất một lần cho mỗi lần gắn
+   nguồn. Giá trị được lưu ở khung gần nhất có gắn lại một trong các nguồn: khi lồng USER = "Bob" bên trong "Alice",
+   tập quyền được tính lại cho Bob, còn cấu hình tenant (không phụ thuộc USER) dùng lại của khung ngoài.
+ - Nguồn bị gắn lại bằng ScopedValue.where(...) trực tiếp (không qua ScopeCache) thì khung không biết: get() so giá trị
+   hiện tại của nguồn với giá trị khung đã ghi, khác nhau thì tính lại và không đệm, không bao giờ trả giá trị của lần gắn khác.
+ - Tác vụ con của StructuredTaskScope kế thừa khung nên dùng chung giá trị; nhiều tác vụ hỏi cùng lúc thì chỉ một
+   tác vụ tính, các tác vụ khác chờ kết quả.
+ - Khung chỉ được tham chiếu từ bản ghi gắn kết của ScopedValue, nên bị thu gom khi ra khỏi phạm vi,
+   không rò rỉ như ThreadLocal.
+
+ Chạy: java --source 21 --enable-preview JEP429_ScopeCache.java [số yêu cầu]
+ Phiên bản áp dụng: Java 21 (preview).
+ */
+public class JEP429_ScopeCache {
+
+    private static final ScopedValue<String> USER = ScopedValue.newInstance();
+    private static final ScopedValue<String> TENANT = ScopedValue.newInstance();
+
+    // Giả lập: tải và duyệt tập quyền, parse cấu hình tenant (vài µs mỗi lần)
+    private static final ScopeCache.Derived<Set<String>> PERMISSIONS =
+            ScopeCache.derive("permissions", USER, JEP429_ScopeCache::resolvePermissions);
+    private static final ScopeCache.Derived<List<String>> TENANT_CONFIG =
+            ScopeCache.derive("tenantConfig", TENANT, JEP429_ScopeCache::parseTenantConfig);
+
+    public static void main(String[] args) throws Exception {
+        System.out.println("--- 1. Tính một lần cho mỗi lần gắn, dùng chung cho tác vụ con ---");
+        demoNested();
+
+        System.out.println("\n--- 2. Khung đệm bị thu gom khi ra khỏi phạm vi ---");
+        demoNoLeak();
+
+        System.out.println("\n--- 3. Độ trễ yêu cầu và tỷ lệ trúng đệm ---");
+        benchmark(args.length > 0 ? Integer.parseInt(args[0]) : 2_000);
+    }
+
+    static Set<String> resolvePermissions(String user) {
+        Set<String> permissions = new HashSet<>();
+        for (int i = 0; i < 200; i++) {
+            int h = (user + ":" + i).hashCode();
+            if ((h & 3) == 0) permissions.add("perm-" + (h & 63));
+        }
+        return Set.copyOf(permissions);
+    }
+
+    static List<String> parseTenantConfig(String tenant) {
+        String raw = "region=ap-southeast-1;tier=gold;limit=500;features=a,b,c,d;tenant=" + tenant;
+        List<String> entries = new ArrayList<>();
+        for (int i = 0; i < 20; i++) entries.addAll(Arrays.asList(raw.split("[;=,]")));
+        return List.copyOf(entries);
+    }
+
+    // ===================== 1. Ví dụ =====================
+    static void demoNested() throws Exception {
+        ScopeCache.where(USER, "Alice").where(TENANT, "acme").call(() -> {
+            System.out.println("Alice: " + PERMISSIONS.get().size() + " quyền, cấu hình " + TENANT_CONFIG.get().size() + " mục");
+            try (var scope = new StructuredTaskScope.ShutdownOnFailure()) {
+                for (int i = 0; i < 4; i++) scope.fork(() -> PERMISSIONS.get().size() + TENANT_CONFIG.get().size());
+                scope.join().throwIfFailed();
+            }
+            // Gắn lại USER như "Bob" trong demoPostJEP429: quyền tính lại, cấu hình tenant dùng lại
+            ScopeCache.where(USER, "Bob").run(() ->
+                    System.out.println("Bob (lồng trong Alice): " + PERMISSIONS.get().size() + " quyền, cấu hình "
+                            + TENANT_CONFIG.get().size() + " mục"));
+            System.out.println("Quay lại Alice: " + PERMISSIONS.get().size() + " quyền");
+            // Gắn lại USER bằng ScopedValue.where trực tiếp: khung của Alice không biết, nhưng get() vẫn đúng cho Dave
+            ScopedValue.where(USER, "Dave").run(() ->
+                    System.out.println("Dave (gắn thẳng, không qua ScopeCache): quyền đúng của Dave? "
+                            + PERMISSIONS.get().equals(resolvePermissions("Dave"))));
+            return null;
+        });
+        System.out.println(PERMISSIONS.stats());
+        System.out.println(TENANT_CONFIG.stats());
+        System.out.println("* Nhận xét: 8 lần hỏi quyền nhưng chỉ tính 2 lần (Alice, Bob) và 1 lần tính không đệm (Dave);");
+        System.out.println("  cấu hình tenant chỉ tính 1 lần.");
+    }
+
+    // ===================== 2. Không rò rỉ =====================
+    static void demoNoLeak() throws Exception {
+        List<WeakReference<Set<String>>> computed = new ArrayList<>();
+        ScopeCache.where(USER, "Carol").run(() -> computed.add(new WeakReference<>(PERMISSIONS.get())));
+        for (int i = 0; i < 3; i++) System.gc();
+        System.out.println("Sau khi ra khỏi phạm vi: còn khung? " + ScopeCache.isBound()
+                + ", giá trị đã tính còn trong bộ nhớ? " + (computed.get(0).get() != null));
+        try {
+            PERMISSIONS.get();
+        } catch (IllegalStateException e) {
+            System.out.println("Bắt lỗi: " + e.getMessage());
+        }
+    }
+
+    // ===================== 3. Bộ đo =====================
+    static volatile int sink;
+
+    /** Một yêu cầu: 20 lần hỏi ở Alice, 20 lần ở Bob lồng bên trong, 4 tác vụ con mỗi tác vụ 10 lần. */
+    static int request(boolean cached, int id) throws Exception {
+        Supplier<Set<String>> permissions = cached ? PERMISSIONS::get : () -> resolvePermissions(USER.get());
+        Supplier<List<String>> config = cached ? TENANT_CONFIG::get : () -> parseTenantConfig(TENANT.get());
+        Callable<Integer> body = () -> {
+            int h = 0;
+            for (int i = 0; i < 20; i++) h += permissions.get().size() + config.get().size();
+            try (var scope = new StructuredTaskScope.ShutdownOnFailure()) {
+                List<StructuredTaskScope.Subtask<Integer>> subtasks = new ArrayList<>();
+                for (int t = 0; t < 4; t++) {
+                    subtasks.add(scope.fork(() -> {
+                        int s = 0;
+                        for (int i = 0; i < 10; i++) s += permissions.get().size() + config.get().size();
+                        return s;
+                    }));
+                }
+                scope.join().throwIfFailed();
+                for (var s : subtasks) h += s.get();
+            }
+            Callable<Integer> inner = () -> {
+                int s = 0;
+                for (int i = 0; i < 20; i++) s += permissions.get().size() + config.get().size();
+                return s;
+            };
+            h += cached ? ScopeCache.where(USER, "Bob").call(inner) : ScopedValue.where(USER, "Bob").call(inner);
+            return h;
+        };
+        String user = "user" + (id % 100), tenant = "tenant" + (id % 10);
+        return cached
+                ? ScopeCache.where(USER, user).where(TENANT, tenant).call(body)
+                : ScopedValue.where(USER, user).where(TENANT, tenant).call(body);
+    }
+
+    static void benchmark(int requests) throws Exception {
+        for (boolean cached : new boolean[] {false, true}) {
+            PERMISSIONS.resetStats();
+            TENANT_CONFIG.resetStats();
+            double[] samples = new double[3];
+            long[] latency = new long[requests];
+            for (int round = -2; round < samples.length; round++) { // 2 vòng đầu để khởi động JIT
+                long start = System.nanoTime();
+                for (int r = 0; r < requests; r++) {
+                    long t0 = System.nanoTime();
+                    sink = request(cached, r);
+                    latency[r] = System.nanoTime() - t0;
+                }
+                if (round >= 0) samples[round] = (double) (System.nanoTime() - start) / requests;
+            }
+            Arrays.sort(samples);
+            Arrays.sort(latency);
+            System.out.printf("%-22s trung bình %8.2f µs/yêu cầu | p50 %7.2f µs | p99 %7.2f µs%n",
+                    cached ? "ScopeCache" : "tính lại mỗi lần", samples[samples.length / 2] / 1e3,
+                    latency[requests / 2] / 1e3, latency[(int) (requests * 0.99)] / 1e3);
+            if (cached) {
+                System.out.println("  " + PERMISSIONS.stats());
+                System.out.println("  " + TENANT_CONFIG.stats());
+            }
+        }
+        System.out.println("* Nhận xét: Mỗi yêu cầu hỏi 100 lần; có đệm thì quyền chỉ tính 2 lần (ngoài và Bob), cấu hình 1 lần.");
+
+        // Độ trễ một lần trúng đệm trong phạm vi lồng: quyền nằm ở khung Bob, cấu hình ở khung Alice (phải đi lên một khung)
+        ScopeCache.where(USER, "Alice").where(TENANT, "acme").run(() -> ScopeCache.where(USER, "Bob").run(() -> {
+            System.out.printf("Trúng đệm trong Bob: quyền (khung hiện tại) %.1f ns | cấu hình (khung cha) %.1f ns%n",
+                    nanosPerHit(PERMISSIONS), nanosPerHit(TENANT_CONFIG));
+        }));
+    }
+
+    private static double nanosPerHit(ScopeCache.Derived<?> derived) {
+        int ops = 1_000_000;
+        double[] samples = new double[5];
+        for (int round = -3; round < samples.length; round++) {
+            long start = System.nanoTime();
+            int h = 0;
+            for (int i = 0; i < ops; i++) h += System.identityHashCode(derived.get());
+            sink = h;
+            if (round >= 0) samples[round] = (double) (System.nanoTime() - start) / ops;
+        }
+        Arrays.sort(samples);
+        return samples[samples.length / 2];
+    }
+}
+
+/**
+ Đệm giá trị suy ra từ ScopedValue, gắn với phạm vi. Xem chú thích của JEP429_ScopeCache.
+ Mỗi lần ScopeCache.where(...).run/call tạo một Frame mới trỏ tới frame cha; frame ghi lại các ScopedValue
+ nó gắn lại và giữ các giá trị đã tính cho những Derived có nguồn nằm trong số đó.
+ */
+final class ScopeCache {
+
+    private static final ScopedValue<Frame> FRAME = ScopedValue.newInstance();
+
+    /** rebound: các ScopedValue khung này gắn lại cùng giá trị đã gắn, để kiểm tra nguồn không bị gắn lại ngoài ScopeCache. */
+    private record Frame(Frame parent, Map<ScopedValue<?>, Object> rebound,
+                         ConcurrentHashMap<Derived<?>, FutureTask<?>> values) {
+    }
+
+    private ScopeCache() {
+    }
+
+    static boolean isBound() {
+        return FRAME.isBound();
+    }
+
+    static <T> Binding where(ScopedValue<T> key, T value) {
+        return new Binding().where(key, value);
+    }
+
+    static <K, V> Derived<V> derive(String name, ScopedValue<K> source, Function<? super K, ? extends V> compute) {
+        return new Derived<>(name, Set.of(source), () -> compute.apply(source.get()));
+    }
+
+    /** Giá trị suy ra từ nhiều nguồn; compute chỉ được đọc các ScopedValue trong sources. */
+    static <V> Derived<V> derive(String name, Set<ScopedValue<?>> sources, Supplier<? extends V> compute) {
+        return new Derived<>(name, Set.copyOf(sources), compute);
+    }
+
+    /** Tập các ScopedValue cần gắn; run/call gắn chúng cùng một frame đệm mới. */
+    static final class Binding {
+        private ScopedValue.Carrier carrier;
+        private final Map<ScopedValue<?>, Object> keys = new HashMap<>();
+
+        private Binding() {
+        }
+
+        <T> Binding where(ScopedValue<T> key, T value) {
+            carrier = carrier == null ? ScopedValue.where(key, value) : carrier.where(key, value);
+            keys.put(key, value);
+            return this;
+        }
+
+        private ScopedValue.Carrier withFrame() {
+            if (carrier == null) throw new IllegalStateException("no scoped value to bind");
+            Frame frame = new Frame(FRAME.isBound() ? FRAME.get() : null, Collections.unmodifiableMap(new HashMap<>(keys)),
+                    new ConcurrentHashMap<>());
+            return carrier.where(FRAME, frame);
+        }
+
+        void run(Runnable op) {
+            withFrame().run(op);
+        }
+
+        <R> R call(Callable<? extends R> op) throws Exception {
+            return withFrame().call(op);
+        }
+    }
+
+    /**
+     Thống kê của một Derived: số lần trúng đệm, số lần phải tính, số lần chờ tác vụ khác tính xong,
+     và số lần tính không đệm vì nguồn bị gắn lại ngoài ScopeCache.
+     */
+    record Stats(String name, long hits, long computed, long waited, long bypassed) {
+
+        double hitRate() {
+            long total = hits + computed + waited;
+            return total == 0 ? 0 : (double) (hits + waited) / total;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s: trúng %,d, tính %,d, chờ %,d, không đệm %,d, tỷ lệ trúng %.1f%%",
+                    name, hits, computed, waited, bypassed, hitRate() * 100);
+        }
+    }
+
+    /** Một giá trị suy ra từ các ScopedValue nguồn. */
+    static final class Derived<V> {
+        private final String name;
+        private final Set<ScopedValue<?>> sources;
+        private final Supplier<? extends V> compute;
+        private final LongAdder hits = new LongAdder();
+        private final LongAdder computed = new LongAdder();
+        private final LongAdder waited = new LongAdder();
+        private final LongAdder bypassed = new LongAdder();
+
+        private Derived(String name, Set<ScopedValue<?>> sources, Supplier<? extends V> compute) {
+            this.name = name;
+            this.sources = sources;
+            this.compute = compute;
+        }
+
+        /**
+         Giá trị cho lần gắn nguồn hiện tại, tính nếu chưa có.
+         @throws IllegalStateException nếu không ở trong ScopeCache.where(...) nào gắn nguồn của giá trị này
+         */
+        @SuppressWarnings("unchecked")
+        V get() {
+            Frame owner = owner();
+            if (!sourcesMatchFrames()) {
+                bypassed.increment();
+                return compute.get();
+            }
+            FutureTask<?> task = owner.values.get(this);
+            if (task != null && task.isDone()) {
+                hits.increment();
+                return (V) join(owner, task);
+            }
+            if (task == null) {
+                FutureTask<V> created = new FutureTask<>(compute::get);
+                task = owner.values.putIfAbsent(this, created);
+                if (task == null) {
+                    computed.increment();
+                    created.run(); // tính trên luồng hiện tại, giữ nguyên các ScopedValue đang gắn
+                    return join(owner, created);
+                }
+            }
+            waited.increment();
+            return (V) join(owner, task);
+        }
+
+        /** Frame gần nhất gắn lại một trong các nguồn: giá trị đúng cho mọi frame con không gắn lại nguồn. */
+        private Frame owner() {
+            if (!FRAME.isBound()) throw new IllegalStateException(name + ": not inside ScopeCache.where(...)");
+            for (Frame f = FRAME.get(); f != null; f = f.parent) {
+                for (ScopedValue<?> source : sources) {
+                    if (f.rebound.containsKey(source)) return f;
+                }
+            }
+            throw new IllegalStateException(name + ": sources are not bound through ScopeCache.where(...)");
+        }
+
+        /**
+         Mỗi nguồn đang mang đúng giá trị (so theo identity) mà khung gần nhất gắn nó đã ghi. Sai khi nguồn bị gắn lại
+         bằng ScopedValue.where(...) trực tiếp bên trong khung: giá trị đệm ở khung đó thuộc về lần gắn khác.
+         */
+        private boolean sourcesMatchFrames() {
+            Frame frame = FRAME.get();
+            for (ScopedValue<?> source : sources) {
+                if (!source.isBound()) return false;
+                Frame f = frame;
+                while (f != null && !f.rebound.containsKey(source)) f = f.parent;
+                if (f == null || f.rebound.get(source) != source.get()) return false;
+            }
+            return true;
+        }
+
+        private <R> R join(Frame owner, FutureTask<R> task) {
+            try {
+                return task.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(name + ": interrupted while waiting", e);
+            } catch (ExecutionException e) {
+                owner.values.remove(this, task); // lỗi không được đệm: lần hỏi sau tính lại
+                if (e.getCause() instanceof RuntimeException re) throw re;
+                if (e.getCause() instanceof Error err) throw err;
+                throw new IllegalStateException(e.getCause());
+            }
+        }
+
+        Stats stats() {
+            return new Stats(name, hits.sum(), computed.sum(), waited.sum(), bypassed.sum());
+        }
+
+        void resetStats() {
+            hits.reset();
+            computed.reset();
+            waited.reset();
+            bypassed.reset();
+        }
+    }
+}
+
@@ -0,0 +1,463 @@
+import java.lang.ref.Reference;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+
+/**
+ Kiểm tra rò rỉ ThreadLocal trong các pool luồng chạy lâu.
+ ScopedValueComparison.demoPreJEP429() (JEP429_NguyenThuy.java) gọi OLD_USER.set(...) trên luồng của pool
+ mà không bao giờ remove(): giá trị sống tiếp sau khi tác vụ kết thúc, có thể giữ cả class loader và đối tượng lớn.
+
+ - ThreadLocalAuditor: đọc ThreadLocalMap của các luồng đang sống (luồng thường, và Virtual Thread đã chạy qua
+   ThreadLocalHygiene vì JDK không liệt kê được Virtual Thread), ước lượng dung lượng giữ lại của mỗi giá trị
+   và gắn cờ giá trị sống lâu hơn tác vụ đã tạo ra nó.
+ - ThreadLocalHygiene: bọc một ExecutorService, xóa các ThreadLocal được đánh dấu sau mỗi tác vụ,
+   tùy chọn đếm tác vụ để lại entry mới; bộ đo in chi phí thêm cho mỗi tác vụ (ns/tác vụ).
+
+ Đọc trường private của Thread cần mở module java.base:
+ Chạy: java --add-opens java.base/java.lang=ALL-UNNAMED --add-opens java.base/java.util=ALL-UNNAMED JEP429_ThreadLocalAudit.java
+ Phiên bản áp dụng: Java 21.
+ */
+public class JEP429_ThreadLocalAudit {
+
+    // Giống OLD_USER trong ScopedValueComparison, nhưng giữ cả một phiên làm việc lớn
+    private static final ThreadLocal<Session> OLD_SESSION = new ThreadLocal<>();
+    private static final ThreadLocal<StringBuilder> BUFFER = new ThreadLocal<>();
+
+    record Session(String user, byte[] payload, Object owner) {
+    }
+
+    public static void main(String[] args) throws Exception {
+        System.out.println("--- 1. Pool không dọn ThreadLocal (như demoPreJEP429) ---");
+        demoLeak();
+
+        System.out.println("\n--- 2. Cùng pool, bọc bằng ThreadLocalHygiene ---");
+        demoHygiene();
+
+        System.out.println("\n--- 3. Chi phí thêm cho mỗi tác vụ ---");
+        benchmark(args.length > 0 ? Integer.parseInt(args[0]) : 200_000);
+    }
+
+    static Session newSession(int i) {
+        return new Session("user" + i, new byte[256 * 1024], null);
+    }
+
+    // ===================== 1. Rò rỉ =====================
+    static void demoLeak() throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(2, Thread.ofPlatform().name("leaky-", 0).factory());
+        try (URLClassLoader plugin = new URLClassLoader(new URL[0])) {
+            for (int i = 0; i < 4; i++) {
+                int id = i;
+                pool.submit(() -> {
+                    // Tác vụ cuối gắn thêm một class loader của plugin vào phiên, kiểu rò rỉ làm không gỡ được plugin
+                    OLD_SESSION.set(id == 3 ? new Session("user" + id, new byte[1024], plugin) : newSession(id));
+                }).get();
+            }
+            // Pool trực tiếp không qua ThreadLocalHygiene: chưa biết luồng rảnh hay bận
+            print(ThreadLocalAuditor.scan(ThreadLocalAuditor.liveThreads(), JEP429_ThreadLocalAudit::isLeakyThread));
+        } finally {
+            pool.shutdown();
+        }
+        System.out.println("* Nhận xét: Các phiên vẫn nằm trên luồng của pool sau khi tác vụ xong; chỉ mất khi luồng chết.");
+    }
+
+    private static boolean isLeakyThread(Thread t) {
+        return t.getName().startsWith("leaky-");
+    }
+
+    // ===================== 2. Dọn sau mỗi tác vụ =====================
+    static void demoHygiene() throws Exception {
+        var pool = new ThreadLocalHygiene(Executors.newFixedThreadPool(2), List.of(OLD_SESSION), true);
+        var virtual = new ThreadLocalHygiene(Executors.newVirtualThreadPerTaskExecutor(), List.of(), true);
+        CountDownLatch parked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            for (int i = 0; i < 4; i++) {
+                int id = i;
+                pool.submit(() -> {
+                    OLD_SESSION.set(newSession(id)); // được xóa sau tác vụ
+                    if (id == 0) BUFFER.set(new StringBuilder(4_096)); // không được đánh dấu: vẫn rò rỉ
+                }).get();
+            }
+            // Virtual Thread còn đang chạy: giá trị thuộc tác vụ hiện tại, không bị gắn cờ
+            virtual.submit(() -> {
+                OLD_SESSION.set(newSession(99));
+                parked.countDown();
+                release.await();
+                return null;
+            });
+            parked.await();
+            print(ThreadLocalAuditor.scan(ThreadLocalAuditor.liveThreads(), ThreadLocalHygiene::isTracked));
+            System.out.printf("Tác vụ để lại entry ThreadLocal mới: %d / %d%n", pool.leakingTasks(), pool.completedTasks());
+        } finally {
+            release.countDown();
+            pool.shutdown();
+            virtual.shutdown();
+            pool.awaitTermination(1, TimeUnit.MINUTES);
+            virtual.awaitTermination(1, TimeUnit.MINUTES);
+        }
+        System.out.println("* Nhận xét: OLD_SESSION đã được dọn; BUFFER không được đánh dấu nên vẫn bị gắn cờ OUTLIVED_TASK.");
+    }
+
+    private static void print(List<ThreadLocalAuditor.Finding> findings) {
+        if (findings.isEmpty()) System.out.println("(không có entry ThreadLocal nào)");
+        for (ThreadLocalAuditor.Finding f : findings) System.out.println(f);
+    }
+
+    // ===================== 3. Bộ đo =====================
+    static volatile int sink;
+
+    /**
+     Đo phần thêm vào mỗi tác vụ bằng cách gọi trực tiếp tác vụ đã bọc trên luồng hiện tại, tách khỏi chi phí
+     giao tác vụ cho pool (hàng đợi, đánh thức worker) vốn lớn và nhiễu hơn nhiều.
+     */
+    static void benchmark(int tasks) {
+        Runnable task = () -> {
+            OLD_SESSION.set(null);
+            BUFFER.set(null);
+            sink++;
+        };
+        List<ThreadLocal<?>> marked = List.of(OLD_SESSION, BUFFER);
+        ExecutorService unused = Executors.newSingleThreadExecutor();
+        Runnable[] variants = {
+                task,
+                new ThreadLocalHygiene(unused, marked, false).decorate(task),
+                new ThreadLocalHygiene(unused, marked, true).decorate(task)
+        };
+        String[] labels = {"tác vụ gốc", "xóa 2 ThreadLocal", "xóa + đếm entry mới"};
+        double base = 0;
+        for (int v = 0; v < variants.length; v++) {
+            double[] samples = new double[7];
+            for (int round = -5; round < samples.length; round++) { // 5 vòng đầu để khởi động JIT
+                long start = System.nanoTime();
+                for (int i = 0; i < tasks; i++) variants[v].run();
+                if (round >= 0) samples[round] = (double) (System.nanoTime() - start) / tasks;
+            }
+            Arrays.sort(samples);
+            double nanos = samples[samples.length / 2];
+            if (v == 0) base = nanos;
+            System.out.printf("%-22s %7.1f ns/tác vụ (%+.1f ns)%n", labels[v], nanos, nanos - base);
+        }
+        unused.shutdown();
+        System.out.println("* Nhận xét: Phần thêm chủ yếu do tác vụ sau phải tạo lại entry mà remove() đã xóa, vẫn nhỏ so với");
+        System.out.println("  chi phí giao tác vụ cho pool; đếm entry bằng reflection tốn thêm một ít, chỉ nên bật khi tìm rò rỉ.");
+    }
+}
+
+/**
+ Đọc ThreadLocalMap của luồng bằng reflection (cần --add-opens java.base/java.lang=ALL-UNNAMED).
+ Bảng được đọc khi luồng chủ có thể đang ghi, nên kết quả là ảnh chụp gần đúng, chỉ dùng để chẩn đoán.
+ */
+final class ThreadLocalAuditor {
+
+    enum Flag {
+        /** ThreadLocal đã bị thu gom nhưng giá trị vẫn còn trong bảng cho tới khi bảng được dọn. */
+        STALE_KEY,
+        /** Luồng đang rảnh (giữa hai tác vụ) mà giá trị vẫn còn: sống lâu hơn tác vụ đã set nó. */
+        OUTLIVED_TASK,
+        /** Giá trị tham chiếu tới một ClassLoader: class loader đó không thể được thu gom. */
+        REACHES_CLASSLOADER
+    }
+
+    /** Một entry: luồng, ThreadLocal, kiểu giá trị, dung lượng giữ lại ước lượng (byte). */
+    record Finding(String thread, String threadLocal, boolean inheritable, String valueType,
+                   long retainedBytes, boolean approximate, Set<Flag> flags) {
+
+        @Override
+        public String toString() {
+            return String.format("%-22s %-40s %-28s %,10d byte%s %s", thread,
+                    threadLocal + (inheritable ? " (inheritable)" : ""), valueType,
+                    retainedBytes, approximate ? "+" : " ", flags.isEmpty() ? "" : flags);
+        }
+    }
+
+    private static final int MAX_OBJECTS = 100_000;
+
+    private static final Field THREAD_LOCALS;
+    private static final Field INHERITABLE_THREAD_LOCALS;
+    private static final Field TABLE;
+    private static final Field SIZE;
+    private static final Field VALUE;
+
+    static {
+        try {
+            THREAD_LOCALS = accessible(Thread.class.getDeclaredField("threadLocals"));
+            INHERITABLE_THREAD_LOCALS = accessible(Thread.class.getDeclaredField("inheritableThreadLocals"));
+            Class<?> map = Class.forName("java.lang.ThreadLocal$ThreadLocalMap");
+            TABLE = accessible(map.getDeclaredField("table"));
+            SIZE = accessible(map.getDeclaredField("size"));
+            VALUE = accessible(Class.forName("java.lang.ThreadLocal$ThreadLocalMap$Entry").getDeclaredField("value"));
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            throw new ExceptionInInitializerError(new IllegalStateException(
+                    "cannot read ThreadLocalMap, run with --add-opens java.base/java.lang=ALL-UNNAMED", e));
+        }
+    }
+
+    private ThreadLocalAuditor() {
+    }
+
+    private static Field accessible(Field f) {
+        f.setAccessible(true);
+        return f;
+    }
+
+    /** Luồng thường đang sống cộng các luồng (kể cả Virtual Thread) đã chạy tác vụ qua ThreadLocalHygiene. */
+    static Collection<Thread> liveThreads() {
+        Set<Thread> threads = new LinkedHashSet<>(Thread.getAllStackTraces().keySet());
+        threads.addAll(ThreadLocalHygiene.trackedThreads());
+        threads.removeIf(t -> !t.isAlive());
+        return threads;
+    }
+
+    static List<Finding> scan(Collection<Thread> threads, Predicate<Thread> filter) {
+        List<Finding> findings = new ArrayList<>();
+        for (Thread t : threads) {
+            if (!filter.test(t)) continue;
+            Boolean busy = ThreadLocalHygiene.isBusy(t); // null: luồng không qua ThreadLocalHygiene
+            scanMap(t, THREAD_LOCALS, false, busy, findings);
+            scanMap(t, INHERITABLE_THREAD_LOCALS, true, busy, findings);
+        }
+        return findings;
+    }
+
+    /** Số entry trong ThreadLocalMap của luồng (kể cả entry có khóa đã bị thu gom), 0 nếu chưa có bảng. */
+    static int size(Thread t) {
+        try {
+            Object map = THREAD_LOCALS.get(t);
+            return map == null ? 0 : SIZE.getInt(map);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void scanMap(Thread t, Field field, boolean inheritable, Boolean busy, List<Finding> out) {
+        try {
+            Object map = field.get(t);
+            if (map == null) return;
+            for (Object entry : (Object[]) TABLE.get(map)) {
+                if (entry == null) continue;
+                ThreadLocal<?> key = (ThreadLocal<?>) ((Reference<?>) entry).get();
+                if (ThreadLocalHygiene.isInternal(key)) continue;
+                Object value = VALUE.get(entry);
+                EnumSet<Flag> flags = EnumSet.noneOf(Flag.class);
+                if (key == null) flags.add(Flag.STALE_KEY);
+                if (Boolean.FALSE.equals(busy) && value != null) flags.add(Flag.OUTLIVED_TASK);
+                Retained retained = retainedSize(value);
+                if (retained.classLoader) flags.add(Flag.REACHES_CLASSLOADER);
+                out.add(new Finding(t.getName().isEmpty() ? t.toString() : t.getName(), describe(key), inheritable,
+                        value == null ? "null" : value.getClass().getSimpleName(),
+                        retained.bytes, retained.approximate, flags));
+            }
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String describe(ThreadLocal<?> key) {
+        if (key == null) return "(đã thu gom)";
+        return key.getClass().getName() + "@" + Integer.toHexString(System.identityHashCode(key));
+    }
+
+    private record Retained(long bytes, boolean approximate, boolean classLoader) {
+    }
+
+    /**
+     Ước lượng dung lượng giữ lại: tổng kích thước nông của mọi đối tượng đạt tới từ value (theo layout HotSpot
+     64-bit với compressed oops: header 12 byte, tham chiếu 4 byte, căn 8 byte). Không đi vào Class, ClassLoader
+     và Thread vì chúng được giữ ở nơi khác; đối tượng dùng chung với luồng khác vẫn bị tính.
+     approximate = true khi gặp trường không đọc được (module chưa mở) hoặc vượt MAX_OBJECTS.
+     */
+    private static Retained retainedSize(Object root) {
+        if (root == null) return new Retained(0, false, false);
+        Map<Object, Boolean> seen = new IdentityHashMap<>();
+        ArrayDeque<Object> stack = new ArrayDeque<>();
+        stack.push(root);
+        long bytes = 0;
+        boolean approximate = false, classLoader = false;
+        while (!stack.isEmpty()) {
+            Object o = stack.pop();
+            if (seen.put(o, Boolean.TRUE) != null) continue;
+            if (seen.size() > MAX_OBJECTS) {
+                approximate = true;
+                break;
+            }
+            if (o instanceof ClassLoader) classLoader = true;
+            if (o instanceof Class<?> || o instanceof ClassLoader || o instanceof Thread) continue;
+            Class<?> type = o.getClass();
+            if (type.isArray()) {
+                int length = Array.getLength(o);
+                Class<?> component = type.getComponentType();
+                bytes += align(16 + (long) length * slot(component));
+                if (!component.isPrimitive()) {
+                    for (Object element : (Object[]) o) if (element != null) stack.push(element);
+                }
+                continue;
+            }
+            long shallow = 12;
+            for (Class<?> c = type; c != null; c = c.getSuperclass()) {
+                for (Field f : c.getDeclaredFields()) {
+                    if (Modifier.isStatic(f.getModifiers())) continue;
+                    shallow += slot(f.getType());
+                    if (f.getType().isPrimitive()) continue;
+                    if (!f.trySetAccessible()) {
+                        approximate = true;
+                        continue;
+                    }
+                    try {
+                        Object child = f.get(o);
+                        if (child != null) stack.push(child);
+                    } catch (IllegalAccessException e) {
+                        approximate = true;
+                    }
+                }
+            }
+            bytes += align(shallow);
+        }
+        return new Retained(bytes, approximate, classLoader);
+    }
+
+    private static int slot(Class<?> type) {
+        if (type == long.class || type == double.class) return 8;
+        if (type == int.class || type == float.class) return 4;
+        if (type == short.class || type == char.class) return 2;
+        if (type == byte.class || type == boolean.class) return 1;
+        return 4;
+    }
+
+    private static long align(long bytes) {
+        return (bytes + 7) & ~7L;
+    }
+}
+
+/**
+ ExecutorService bọc một executor khác: sau mỗi tác vụ xóa các ThreadLocal được đánh dấu (remove() trên chính
+ luồng đã chạy tác vụ) và ghi nhận luồng đó đang bận hay rảnh để ThreadLocalAuditor gắn cờ OUTLIVED_TASK.
+ Với countNewEntries = true, so số entry ThreadLocalMap trước và sau tác vụ (đọc bằng reflection) để đếm
+ tác vụ để lại entry mới mà không được đánh dấu.
+ */
+final class ThreadLocalHygiene extends AbstractExecutorService {
+
+    /** Trạng thái của một luồng worker, giữ trong chính ThreadLocalMap của luồng đó. */
+    private static final class WorkerState {
+        volatile boolean busy;
+    }
+
+    private static final ThreadLocal<WorkerState> STATE = new ThreadLocal<>();
+    // Luồng đã từng chạy tác vụ qua lớp này; khóa yếu để luồng đã chết được thu gom
+    private static final Map<Thread, WorkerState> TRACKED = Collections.synchronizedMap(new WeakHashMap<>());
+
+    private final ExecutorService delegate;
+    private final ThreadLocal<?>[] marked;
+    private final boolean countNewEntries;
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder leaking = new LongAdder();
+
+    ThreadLocalHygiene(ExecutorService delegate, List<ThreadLocal<?>> marked, boolean countNewEntries) {
+        this.delegate = delegate;
+        this.marked = marked.toArray(new ThreadLocal<?>[0]);
+        this.countNewEntries = countNewEntries;
+    }
+
+    static boolean isInternal(ThreadLocal<?> key) {
+        return key == STATE;
+    }
+
+    static boolean isTracked(Thread t) {
+        return TRACKED.containsKey(t);
+    }
+
+    /** true/false nếu luồng đã qua ThreadLocalHygiene, null nếu không. */
+    static Boolean isBusy(Thread t) {
+        WorkerState state = TRACKED.get(t);
+        return state == null ? null : state.busy;
+    }
+
+    static List<Thread> trackedThreads() {
+        synchronized (TRACKED) {
+            return new ArrayList<>(TRACKED.keySet());
+        }
+    }
+
+    long completedTasks() {
+        return completed.sum();
+    }
+
+    long leakingTasks() {
+        return leaking.sum();
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        delegate.execute(decorate(command));
+    }
+
+    /** Tác vụ đã bọc: chạy command rồi dọn ThreadLocal trên luồng chạy nó. */
+    Runnable decorate(Runnable command) {
+        return () -> runClean(command);
+    }
+
+    private void runClean(Runnable command) {
+        WorkerState state = STATE.get();
+        if (state == null) {
+            state = new WorkerState();
+            STATE.set(state);
+            TRACKED.put(Thread.currentThread(), state);
+        }
+        int before = countNewEntries ? ThreadLocalAuditor.size(Thread.currentThread()) : 0;
+        state.busy = true;
+        try {
+            command.run();
+        } finally {
+            for (ThreadLocal<?> tl : marked) tl.remove();
+            state.busy = false;
+            completed.increment();
+            if (countNewEntries && ThreadLocalAuditor.size(Thread.currentThread()) > before) leaking.increment();
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        delegate.shutdown();
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        return delegate.shutdownNow();
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return delegate.isShutdown();
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return delegate.isTerminated();
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return delegate.awaitTermination(timeout, unit);
+    }
+}
@@ -0,0 +1,608 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.SequencedMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Hàng đợi đơn hàng dùng chung cho nhiều luồng (JEP 431 - Sequenced Collections)
+ *
+ * Bối cảnh: Main.sauJEP431() (JEP431_Tung.java) dùng LinkedHashMap donHang với putFirst/pollFirstEntry/pollLastEntry.
+ * LinkedHashMap không an toàn luồng, nên khi chạy thật phải bọc một khóa chung và mọi đầu bếp tranh nhau khóa đó.
+ *
+ * ConcurrentSequencedMap là một SequencedMap an toàn luồng, không dùng khóa:
+ *  - ConcurrentHashMap tra theo khóa (get, containsKey) không khóa
+ *  - ConcurrentLinkedDeque giữ thứ tự: putFirst/putLast/pollFirstEntry/pollLastEntry là O(1)
+ *  - mỗi nút có một ô giá trị; lấy nút ra là đổi ô sang DEAD bằng một phép nguyên tử,
+ *    nên mỗi đơn chỉ được đúng một đầu bếp lấy
+ *  - remove(key) hoặc putFirst/putLast với khóa đã có chỉ đánh dấu nút cũ là DEAD; nút chết được bỏ qua khi
+ *    tới đầu hàng đợi, và được dọn một lượt khi số nút chết vượt số nút sống
+ *
+ * Bộ đo so sánh với Collections.synchronizedMap(LinkedHashMap) (khóa chung) và ConcurrentSkipListMap
+ * (sắp theo số thứ tự, kèm ConcurrentHashMap để tra theo khóa) ở 1 tới 64 luồng.
+ *
+ * Chạy: java JEP431_ConcurrentOrderQueue.java [ms đo mỗi điểm]
+ */
+public class JEP431_ConcurrentOrderQueue {
+
+    public static void main(String[] args) throws Exception {
+        System.out.println("=== 1. Hàng đợi đơn hàng như sauJEP431(), dùng ConcurrentSequencedMap ===");
+        demo();
+
+        System.out.println("\n=== 2. Kiểm tra: nhiều luồng đặt đơn, nhiều đầu bếp lấy đơn ===");
+        stressCheck(4, 4, 200_000);
+
+        long millis = args.length > 0 ? Long.parseLong(args[0]) : 300;
+        System.out.printf("%n=== 3. Thông lượng (triệu thao tác/s), %d CPU ===%n", Runtime.getRuntime().availableProcessors());
+        benchmark(millis);
+    }
+
+    // ------------------- VÍ DỤ -------------------
+    static void demo() {
+        ConcurrentSequencedMap<String, String> donHang = new ConcurrentSequencedMap<>();
+        donHang.putLast("DH01", "Trà sữa trân châu");
+        donHang.putLast("DH02", "Cơm gà xối mỡ");
+        donHang.putFirst("DH-UU-TIEN", "Phở bò giao gấp");
+        System.out.println("Hàng đợi: " + donHang);
+
+        System.out.println("Xử lý ngay: " + donHang.pollFirstEntry());
+        System.out.println("Xử lý sau: " + donHang.pollLastEntry());
+        System.out.println("Còn lại trong bếp: " + donHang);
+
+        SequencedMap<String, String> daoDon = donHang.reversed();
+        daoDon.putFirst("DH03", "Bún chả mang về");
+        System.out.println("Thêm đơn qua view đảo: " + donHang);
+        System.out.println("Tra theo mã DH03: " + donHang.get("DH03"));
+    }
+
+    static void stressCheck(int producers, int cooks, int ordersPerProducer) throws InterruptedException {
+        ConcurrentSequencedMap<Long, Long> queue = new ConcurrentSequencedMap<>();
+        Set<Long> served = ConcurrentHashMap.newKeySet();
+        LongAdder duplicates = new LongAdder();
+        AtomicLong remaining = new AtomicLong((long) producers * ordersPerProducer);
+        Thread[] threads = new Thread[producers + cooks];
+        for (int p = 0; p < producers; p++) {
+            long base = (long) p * ordersPerProducer;
+            threads[p] = Thread.ofPlatform().start(() -> {
+                for (long i = 0; i < ordersPerProducer; i++) {
+                    long id = base + i;
+                    if (id % 10 == 0) queue.putFirst(id, id); else queue.putLast(id, id); // 10% đơn gấp
+                }
+            });
+        }
+        for (int c = 0; c < cooks; c++) {
+            boolean fromBack = c % 2 == 1;
+            threads[producers + c] = Thread.ofPlatform().start(() -> {
+                while (remaining.get() > 0) {
+                    Map.Entry<Long, Long> e = fromBack ? queue.pollLastEntry() : queue.pollFirstEntry();
+                    if (e == null) {
+                        Thread.onSpinWait();
+                        continue;
+                    }
+                    if (!served.add(e.getKey())) duplicates.increment();
+                    remaining.decrementAndGet();
+                }
+            });
+        }
+        for (Thread t : threads) t.join();
+        boolean ok = served.size() == producers * ordersPerProducer && duplicates.sum() == 0 && queue.isEmpty();
+        System.out.printf("%,d đơn, %,d đơn được phục vụ, %d đơn bị lấy hai lần, hàng đợi rỗng: %b -> %s%n",
+                producers * ordersPerProducer, served.size(), duplicates.sum(), queue.isEmpty(), ok ? "đúng" : "SAI");
+    }
+
+    // ------------------- BỘ ĐO -------------------
+    /** Các thao tác bếp cần; mỗi cài đặt được bọc theo cách nó được dùng thật. */
+    interface Queue {
+        void putFirst(Long key, Long value);
+
+        void putLast(Long key, Long value);
+
+        Object pollFirst();
+
+        Object pollLast();
+
+        Object get(Long key);
+    }
+
+    static Queue concurrentSequenced() {
+        ConcurrentSequencedMap<Long, Long> m = new ConcurrentSequencedMap<>();
+        return new Queue() {
+            public void putFirst(Long k, Long v) { m.putFirst(k, v); }
+            public void putLast(Long k, Long v) { m.putLast(k, v); }
+            public Object pollFirst() { return m.pollFirstEntry(); }
+            public Object pollLast() { return m.pollLastEntry(); }
+            public Object get(Long k) { return m.get(k); }
+        };
+    }
+
+    /** Cách làm hiện tại: LinkedHashMap sau một khóa chung (khóa của synchronizedMap). */
+    static Queue synchronizedLinked() {
+        LinkedHashMap<Long, Long> m = new LinkedHashMap<>();
+        Map<Long, Long> sync = Collections.synchronizedMap(m);
+        return new Queue() {
+            public void putFirst(Long k, Long v) { synchronized (sync) { m.putFirst(k, v); } }
+            public void putLast(Long k, Long v) { synchronized (sync) { m.putLast(k, v); } }
+            public Object pollFirst() { synchronized (sync) { return m.pollFirstEntry(); } }
+            public Object pollLast() { synchronized (sync) { return m.pollLastEntry(); } }
+            public Object get(Long k) { return sync.get(k); }
+        };
+    }
+
+    /** ConcurrentSkipListMap sắp theo số thứ tự (âm dần cho đầu, dương dần cho cuối) cộng chỉ mục theo khóa. */
+    static Queue skipList() {
+        ConcurrentSkipListMap<Long, Map.Entry<Long, Long>> bySeq = new ConcurrentSkipListMap<>();
+        ConcurrentHashMap<Long, Long> seqOf = new ConcurrentHashMap<>();
+        AtomicLong head = new AtomicLong(0), tail = new AtomicLong(1);
+        return new Queue() {
+            void put(long seq, Long k, Long v) {
+                Long old = seqOf.put(k, seq);
+                if (old != null) bySeq.remove(old);
+                bySeq.put(seq, Map.entry(k, v));
+            }
+
+            Object taken(Map.Entry<Long, Map.Entry<Long, Long>> e) {
+                if (e == null) return null;
+                seqOf.remove(e.getValue().getKey(), e.getKey());
+                return e.getValue();
+            }
+
+            public void putFirst(Long k, Long v) { put(head.getAndDecrement(), k, v); }
+            public void putLast(Long k, Long v) { put(tail.getAndIncrement(), k, v); }
+            public Object pollFirst() { return taken(bySeq.pollFirstEntry()); }
+            public Object pollLast() { return taken(bySeq.pollLastEntry()); }
+            public Object get(Long k) {
+                Long seq = seqOf.get(k);
+                Map.Entry<Long, Long> e = seq == null ? null : bySeq.get(seq);
+                return e == null ? null : e.getValue();
+            }
+        };
+    }
+
+    static final int KEY_MASK = (1 << 20) - 1;
+    static final Long[] KEYS = new Long[KEY_MASK + 1];
+
+    static {
+        for (int i = 0; i < KEYS.length; i++) KEYS[i] = (long) i;
+    }
+
+    static volatile Object sink;
+
+    static void benchmark(long millis) throws InterruptedException {
+        String[] names = {"ConcurrentSequencedMap", "synchronizedMap(LHM)", "ConcurrentSkipListMap"};
+        int[] threadCounts = {1, 2, 4, 8, 16, 32, 64};
+        System.out.printf("%-8s", "luồng");
+        for (String n : names) System.out.printf("%24s", n);
+        System.out.println();
+        for (int threads : threadCounts) {
+            System.out.printf("%-8d", threads);
+            for (int impl = 0; impl < names.length; impl++) {
+                Queue q = impl == 0 ? concurrentSequenced() : impl == 1 ? synchronizedLinked() : skipList();
+                for (int i = 0; i < 10_000; i++) q.putLast(KEYS[i], KEYS[i]); // hàng đợi đã có sẵn đơn
+                run(q, threads, millis / 3); // khởi động JIT
+                System.out.printf("%24.2f", run(q, threads, millis) / 1e6);
+            }
+            System.out.println();
+        }
+        System.out.println("Tỷ lệ thao tác: 30% putLast, 5% putFirst, 30% pollFirst, 5% pollLast, 30% get.");
+        System.out.println("* Nhận xét: Với khóa chung, luồng thêm vào chỉ chờ khóa; hai cài đặt không khóa cho các lõi chạy song song.");
+        if (Runtime.getRuntime().availableProcessors() < 8) {
+            System.out.println("  Máy này ít lõi nên các luồng chạy xen kẽ, không chạy song song: số đo chủ yếu phản ánh chi phí mỗi");
+            System.out.println("  thao tác, muốn thấy khác biệt về tranh chấp cần chạy lại trên máy nhiều lõi.");
+        }
+    }
+
+    /** @return số thao tác mỗi giây */
+    private static double run(Queue q, int threads, long millis) throws InterruptedException {
+        AtomicBoolean stop = new AtomicBoolean();
+        LongAdder ops = new LongAdder();
+        CountDownLatch started = new CountDownLatch(threads);
+        CountDownLatch go = new CountDownLatch(1);
+        Thread[] all = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            int seed = t * 7919;
+            all[t] = Thread.ofPlatform().start(() -> {
+                ThreadLocalRandom rnd = ThreadLocalRandom.current();
+                int next = seed, count = 0;
+                started.countDown();
+                try {
+                    go.await(); // mọi luồng bắt đầu cùng lúc, sau khi đã bấm giờ
+                } catch (InterruptedException e) {
+                    return;
+                }
+                while (!stop.get()) {
+                    for (int i = 0; i < 64; i++) {
+                        int r = rnd.nextInt(100);
+                        if (r < 30) {
+                            Long k = KEYS[next++ & KEY_MASK];
+                            q.putLast(k, k);
+                        } else if (r < 35) {
+                            Long k = KEYS[next++ & KEY_MASK];
+                            q.putFirst(k, k);
+                        } else if (r < 65) {
+                            sink = q.pollFirst();
+                        } else if (r < 70) {
+                            sink = q.pollLast();
+                        } else {
+                            sink = q.get(KEYS[rnd.nextInt(KEY_MASK + 1)]);
+                        }
+                    }
+                    count += 64;
+                }
+                ops.add(count);
+            });
+        }
+        started.await();
+        long start = System.nanoTime();
+        go.countDown();
+        Thread.sleep(millis);
+        stop.set(true);
+        long elapsed = System.nanoTime() - start;
+        for (Thread t : all) t.join();
+        return ops.sum() * 1e9 / elapsed;
+    }
+}
+
+/**
+ * SequencedMap an toàn luồng, không khóa. Khóa và giá trị không được null.
+ * size(), iterator và toString() nhất quán yếu như ConcurrentHashMap: phản ánh trạng thái tại một lúc nào đó
+ * trong khi chạy, không phải một ảnh chụp. Entry trả về là bản sao bất biến (setValue không hỗ trợ).
+ */
+final class ConcurrentSequencedMap<K, V> extends AbstractMap<K, V> implements SequencedMap<K, V> {
+
+    private static final Object DEAD = new Object();
+    private static final int PURGE_MIN = 64;
+    private static final VarHandle ITEM;
+    private static final VarHandle CLAIMED;
+
+    static {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            ITEM = lookup.findVarHandle(Node.class, "item", Object.class);
+            CLAIMED = lookup.findVarHandle(Node.class, "claimed", boolean.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    /** Một đơn trong hàng đợi: item là giá trị hiện tại, hoặc DEAD khi đã bị lấy, xóa hoặc thay bằng nút khác. */
+    private static final class Node<K> {
+        final K key;
+        volatile Object item;
+        // Nút DEAD còn trong deque chỉ được trừ khỏi bộ đếm nút chết một lần: ai lấy được cờ này thì trừ
+        volatile boolean claimed;
+
+        Node(K key, Object item) {
+            this.key = key;
+            this.item = item;
+        }
+
+        Object take() {
+            return ITEM.getAndSet(this, DEAD);
+        }
+
+        boolean claim() {
+            return CLAIMED.compareAndSet(this, false, true);
+        }
+    }
+
+    private final ConcurrentHashMap<K, Node<K>> index = new ConcurrentHashMap<>();
+    private final ConcurrentLinkedDeque<Node<K>> order = new ConcurrentLinkedDeque<>();
+    private final LongAdder deadInOrder = new LongAdder();
+    private final AtomicBoolean purging = new AtomicBoolean();
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V get(Object key) {
+        Node<K> n = index.get(key);
+        if (n == null) return null;
+        Object v = n.item;
+        return v == DEAD ? null : (V) v;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return get(key) != null;
+    }
+
+    @Override
+    public int size() {
+        return index.size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return index.isEmpty();
+    }
+
+    /** Như LinkedHashMap.put: khóa đã có thì giữ nguyên vị trí và thay giá trị, chưa có thì thêm vào cuối. */
+    @Override
+    @SuppressWarnings("unchecked")
+    public V put(K key, V value) {
+        if (key == null || value == null) throw new NullPointerException();
+        while (true) {
+            Node<K> n = index.get(key);
+            if (n == null) {
+                Node<K> created = new Node<>(key, value);
+                if (index.putIfAbsent(key, created) == null) {
+                    order.offerLast(created);
+                    return null;
+                }
+                continue;
+            }
+            Object current = n.item;
+            if (current == DEAD) {
+                index.remove(key, n); // giúp luồng đang lấy nút này hoàn tất
+                continue;
+            }
+            if (ITEM.compareAndSet(n, current, value)) return (V) current;
+        }
+    }
+
+    @Override
+    public V putFirst(K key, V value) {
+        return insert(key, value, true);
+    }
+
+    @Override
+    public V putLast(K key, V value) {
+        return insert(key, value, false);
+    }
+
+    @SuppressWarnings("unchecked")
+    private V insert(K key, V value, boolean first) {
+        if (key == null || value == null) throw new NullPointerException();
+        Node<K> created = new Node<>(key, value);
+        Node<K> old = index.put(key, created);
+        Object previous = old == null ? DEAD : old.take();
+        if (previous != DEAD) markDead();
+        if (first) order.offerFirst(created); else order.offerLast(created);
+        return previous == DEAD ? null : (V) previous;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V remove(Object key) {
+        while (true) {
+            Node<K> n = index.get(key);
+            if (n == null) return null;
+            Object previous = n.take();
+            index.remove(key, n);
+            if (previous != DEAD) {
+                markDead();
+                return (V) previous;
+            }
+            // Nút đã chết: hoặc luồng khác lấy trước, hoặc putFirst/putLast vừa thay nút mới cho khóa.
+            // Trường hợp sau khóa vẫn còn, nên đọc lại index như put() thay vì trả null.
+        }
+    }
+
+    @Override
+    public Entry<K, V> pollFirstEntry() {
+        return poll(true);
+    }
+
+    @Override
+    public Entry<K, V> pollLastEntry() {
+        return poll(false);
+    }
+
+    @SuppressWarnings("unchecked")
+    private Entry<K, V> poll(boolean first) {
+        while (true) {
+            Node<K> n = first ? order.pollFirst() : order.pollLast();
+            if (n == null) return null;
+            boolean mine = n.claim();
+            Object v = n.take();
+            if (v != DEAD) {
+                index.remove(n.key, n);
+                return new SimpleImmutableEntry<>(n.key, (V) v);
+            }
+            if (mine) deadInOrder.decrement();
+        }
+    }
+
+    @Override
+    public Entry<K, V> firstEntry() {
+        return peek(order.iterator());
+    }
+
+    @Override
+    public Entry<K, V> lastEntry() {
+        return peek(order.descendingIterator());
+    }
+
+    @SuppressWarnings("unchecked")
+    private Entry<K, V> peek(Iterator<Node<K>> it) {
+        while (it.hasNext()) {
+            Node<K> n = it.next();
+            Object v = n.item;
+            if (v != DEAD) return new SimpleImmutableEntry<>(n.key, (V) v);
+        }
+        return null;
+    }
+
+    @Override
+    public void clear() {
+        while (pollFirstEntry() != null) {
+            // lấy hết
+        }
+    }
+
+    /** Một nút còn trong deque vừa chết; dọn một lượt nếu nút chết nhiều hơn nút sống. */
+    private void markDead() {
+        deadInOrder.increment();
+        // Đọc tổng LongAdder tốn hơn tăng, nên chỉ kiểm tra khoảng 1/32 số lần
+        if ((ThreadLocalRandom.current().nextInt() & 31) != 0) return;
+        long dead = deadInOrder.sum();
+        if (dead > PURGE_MIN && dead > index.size()) purge();
+    }
+
+    private void purge() {
+        if (!purging.compareAndSet(false, true)) return;
+        try {
+            for (Iterator<Node<K>> it = order.iterator(); it.hasNext(); ) {
+                Node<K> n = it.next();
+                if (n.item == DEAD && n.claim()) {
+                    it.remove();
+                    deadInOrder.decrement();
+                }
+            }
+        } finally {
+            purging.set(false);
+        }
+    }
+
+    @Override
+    public Set<Entry<K, V>> entrySet() {
+        return new EntryView(false);
+    }
+
+    @Override
+    public SequencedMap<K, V> reversed() {
+        return new Reversed();
+    }
+
+    private final class EntryView extends AbstractSet<Entry<K, V>> {
+        private final boolean descending;
+
+        EntryView(boolean descending) {
+            this.descending = descending;
+        }
+
+        @Override
+        public int size() {
+            return ConcurrentSequencedMap.this.size();
+        }
+
+        @Override
+        public Iterator<Entry<K, V>> iterator() {
+            Iterator<Node<K>> nodes = descending ? order.descendingIterator() : order.iterator();
+            return new Iterator<>() {
+                private Node<K> next, last;
+                private Object nextValue, lastValue;
+
+                @Override
+                public boolean hasNext() {
+                    while (next == null && nodes.hasNext()) {
+                        Node<K> n = nodes.next();
+                        Object v = n.item;
+                        if (v != DEAD) {
+                            next = n;
+                            nextValue = v;
+                        }
+                    }
+                    return next != null;
+                }
+
+                @Override
+                @SuppressWarnings("unchecked")
+                public Entry<K, V> next() {
+                    if (!hasNext()) throw new NoSuchElementException();
+                    last = next;
+                    lastValue = nextValue;
+                    next = null;
+                    return new SimpleImmutableEntry<>(last.key, (V) lastValue);
+                }
+
+                /** Chỉ xóa nếu đơn vẫn còn giá trị đã trả về (không xóa nhầm giá trị luồng khác vừa đặt). */
+                @Override
+                public void remove() {
+                    if (last == null) throw new IllegalStateException();
+                    if (ITEM.compareAndSet(last, lastValue, DEAD)) {
+                        index.remove(last.key, last);
+                        markDead();
+                    }
+                    last = null;
+                }
+            };
+        }
+    }
+
+    /** View đảo chiều sống: đầu của view là cuối của map. */
+    private final class Reversed extends AbstractMap<K, V> implements SequencedMap<K, V> {
+
+        @Override
+        public V get(Object key) {
+            return ConcurrentSequencedMap.this.get(key);
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return ConcurrentSequencedMap.this.containsKey(key);
+        }
+
+        @Override
+        public int size() {
+            return ConcurrentSequencedMap.this.size();
+        }
+
+        @Override
+        public V put(K key, V value) {
+            return ConcurrentSequencedMap.this.put(key, value);
+        }
+
+        @Override
+        public V remove(Object key) {
+            return ConcurrentSequencedMap.this.remove(key);
+        }
+
+        @Override
+        public void clear() {
+            ConcurrentSequencedMap.this.clear();
+        }
+
+        @Override
+        public V putFirst(K key, V value) {
+            return ConcurrentSequencedMap.this.putLast(key, value);
+        }
+
+        @Override
+        public V putLast(K key, V value) {
+            return ConcurrentSequencedMap.this.putFirst(key, value);
+        }
+
+        @Override
+        public Entry<K, V> firstEntry() {
+            return ConcurrentSequencedMap.this.lastEntry();
+        }
+
+        @Override
+        public Entry<K, V> lastEntry() {
+            return ConcurrentSequencedMap.this.firstEntry();
+        }
+
+        @Override
+        public Entry<K, V> pollFirstEntry() {
+            return ConcurrentSequencedMap.this.pollLastEntry();
+        }
+
+        @Override
+        public Entry<K, V> pollLastEntry() {
+            return ConcurrentSequencedMap.this.pollFirstEntry();
+        }
+
+        @Override
+        public Set<Entry<K, V>> entrySet() {
+            return new EntryView(true);
+        }
+
+        @Override
+        public SequencedMap<K, V> reversed() {
+            return ConcurrentSequencedMap.this;
+        }
+    }
+}
@@ -0,0 +1,1029 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SequencedMap;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Hàng đợi đơn hàng bền vững qua sự cố (JEP 431 - Sequenced Collections)
+ *
+ * Bối cảnh: donHang trong Main (JEP431_Tung.java) chỉ nằm trong bộ nhớ, máy sập là mất các đơn đang chờ.
+ * Ghi file ở mỗi putFirst/pollFirstEntry thì thông lượng giảm mạnh.
+ *
+ * DurableSequencedMap bọc một LinkedHashMap và ghi mọi thao tác thay đổi vào nhật ký (write-ahead journal):
+ *  - nhật ký là các đoạn (segment) file được map vào bộ nhớ (MappedByteBuffer), mỗi bản ghi có CRC32C
+ *  - gom nhóm fsync (group commit): một luồng nền force() định kỳ hoặc khi đủ một nhóm bản ghi;
+ *    chế độ GROUP cho luồng ghi chờ tới khi bản ghi của nó đã xuống đĩa, nhiều luồng dùng chung một lần force()
+ *  - nén (compaction): sau một số đoạn, ảnh chụp (snapshot) các đơn hiện có được ghi ở nền, rồi các đoạn cũ bị xóa
+ *  - khôi phục: đọc snapshot mới nhất còn hợp lệ, phát lại các đoạn sau nó theo thứ tự, dừng ở bản ghi hỏng
+ *    (ghi dở khi sập), nên thứ tự đầu -> cuối được dựng lại đúng như trước khi sập
+ *
+ * Bộ đo: thông lượng (thao tác/s) khi đưa 1.000.000 đơn vào hàng đợi với từng chế độ bền vững,
+ * và thời gian khôi phục 1.000.000 đơn từ nhật ký và từ snapshot.
+ *
+ * Chạy: java JEP431_DurableOrderQueue.java [số đơn] [thư mục]
+ * (dữ liệu nằm trong một thư mục con don-hang-* mới của [thư mục], chỉ thư mục con đó bị xóa khi xong)
+ */
+public class JEP431_DurableOrderQueue {
+
+    public static void main(String[] args) throws Exception {
+        int orders = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        // Luôn tạo thư mục con mới, kể cả trong thư mục người dùng chỉ định: chỉ xóa thứ chương trình tự tạo
+        Path root = args.length > 1
+                ? Files.createTempDirectory(Files.createDirectories(Path.of(args[1])), "don-hang-")
+                : Files.createTempDirectory("don-hang-");
+        try {
+            System.out.println("=== 1. Hàng đợi như sauJEP431(), mở lại sau khi tắt ===");
+            demo(root.resolve("demo"));
+
+            System.out.println("\n=== 2. Bản ghi cuối bị ghi dở khi sập ===");
+            demoTornWrite(root.resolve("torn"));
+
+            System.out.println("\n=== 3. Lấy đơn đúng lúc sang đoạn mới và chụp snapshot, rồi mở lại ===");
+            demoRollAlignedOps(root.resolve("roll"));
+
+            System.out.printf("%n=== 4. Thông lượng đưa %,d đơn vào hàng đợi ===%n", orders);
+            benchmarkThroughput(root, orders);
+
+            System.out.printf("%n=== 5. Thời gian khôi phục %,d đơn ===%n", orders);
+            benchmarkRecovery(root.resolve("recovery"), orders);
+        } finally {
+            deleteRecursively(root);
+        }
+    }
+
+    // ------------------- VÍ DỤ -------------------
+    static void demo(Path dir) throws IOException {
+        try (DurableSequencedMap donHang = DurableSequencedMap.open(DurableSequencedMap.Config.defaults(dir))) {
+            donHang.putLast("DH01", "Trà sữa trân châu");
+            donHang.putLast("DH02", "Cơm gà xối mỡ");
+            donHang.putFirst("DH-UU-TIEN", "Phở bò giao gấp");
+            donHang.putLast("DH03", "Bún chả mang về");
+            System.out.println("Hàng đợi: " + donHang);
+            System.out.println("Xử lý ngay: " + donHang.pollFirstEntry());
+        }
+        try (DurableSequencedMap donHang = DurableSequencedMap.open(DurableSequencedMap.Config.defaults(dir))) {
+            System.out.println("Mở lại: " + donHang + " (" + donHang.recovery() + ")");
+            System.out.println("Xử lý sau: " + donHang.pollLastEntry());
+        }
+    }
+
+    static void demoTornWrite(Path dir) throws IOException {
+        try (DurableSequencedMap donHang = DurableSequencedMap.open(DurableSequencedMap.Config.defaults(dir))) {
+            donHang.putLast("DH01", "Trà sữa trân châu");
+            donHang.putLast("DH02", "Cơm gà xối mỡ");
+        }
+        // Giả lập sập giữa lúc ghi bản ghi DH02: làm hỏng vài byte trong phần thân của nó
+        Path segment;
+        try (Stream<Path> files = Files.list(dir)) {
+            segment = files.filter(p -> p.toString().endsWith(".log")).findFirst().orElseThrow();
+        }
+        try (FileChannel ch = FileChannel.open(segment, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_WRITE, 0, 256);
+            int first = buf.getInt(0);
+            buf.put(8 + first + 8 + 3, (byte) 0x7F);
+            buf.force();
+        }
+        try (DurableSequencedMap donHang = DurableSequencedMap.open(DurableSequencedMap.Config.defaults(dir))) {
+            System.out.println("Mở lại: " + donHang + " (" + donHang.recovery() + ")");
+            donHang.putLast("DH03", "Bún chả mang về"); // ghi tiếp đè lên phần hỏng
+        }
+        try (DurableSequencedMap donHang = DurableSequencedMap.open(DurableSequencedMap.Config.defaults(dir))) {
+            System.out.println("Ghi tiếp rồi mở lại: " + donHang);
+        }
+    }
+
+    /**
+     * Đoạn 256 byte và snapshot sau mỗi đoạn: cứ vài thao tác lại sang đoạn mới đúng lúc một putFirst/poll/remove,
+     * nên snapshot và bản ghi của thao tác đó phải khớp nhau (không mất, không áp dụng hai lần).
+     * Thao tác ngẫu nhiên được làm song song trên một LinkedHashMap đối chứng, rồi so sau khi mở lại.
+     */
+    static void demoRollAlignedOps(Path root) throws IOException {
+        int trials = 40, matched = 0;
+        java.util.Random rnd = new java.util.Random(7);
+        for (int t = 0; t < trials; t++) {
+            Path dir = root.resolve("t" + t);
+            var config = new DurableSequencedMap.Config(dir, 256, DurableSequencedMap.Durability.ASYNC,
+                    Duration.ofMillis(2), 256, 1);
+            LinkedHashMap<String, String> expected = new LinkedHashMap<>();
+            try (DurableSequencedMap donHang = DurableSequencedMap.open(config)) {
+                for (int i = 0; i < 200; i++) {
+                    String key = "K" + t + String.format("%02d", rnd.nextInt(40));
+                    switch (rnd.nextInt(5)) {
+                        case 0 -> { donHang.putFirst(key, "gấp"); expected.putFirst(key, "gấp"); }
+                        case 1 -> { donHang.putLast(key, "thường"); expected.putLast(key, "thường"); }
+                        case 2 -> { donHang.pollFirstEntry(); expected.pollFirstEntry(); }
+                        case 3 -> { donHang.pollLastEntry(); expected.pollLastEntry(); }
+                        default -> { donHang.remove(key); expected.remove(key); }
+                    }
+                }
+            }
+            try (DurableSequencedMap donHang = DurableSequencedMap.open(config)) {
+                if (new ArrayList<>(donHang.entrySet()).equals(new ArrayList<>(expected.entrySet()))) matched++;
+                else System.out.println("  Lệch ở lần " + t + ": " + donHang.keySet() + " thay vì " + expected.keySet());
+            }
+        }
+        System.out.printf("Mở lại khớp với hàng đợi trước khi tắt: %d/%d lần%n", matched, trials);
+    }
+
+    // ------------------- BỘ ĐO -------------------
+    static void benchmarkThroughput(Path root, int orders) throws Exception {
+        String[] keys = new String[orders];
+        String[] values = new String[orders];
+        for (int i = 0; i < orders; i++) {
+            keys[i] = "DH" + i;
+            values[i] = "Món số " + (i % 50);
+        }
+        // Đối chứng: LinkedHashMap trong bộ nhớ sau một khóa chung
+        LinkedHashMap<String, String> memory = new LinkedHashMap<>();
+        ReentrantLock lock = new ReentrantLock();
+        long start = System.nanoTime();
+        for (int i = 0; i < orders; i++) {
+            lock.lock();
+            try {
+                if (i % 10 == 0) memory.putFirst(keys[i], values[i]); else memory.putLast(keys[i], values[i]);
+            } finally {
+                lock.unlock();
+            }
+        }
+        report("LinkedHashMap trong bộ nhớ (1 luồng)", orders, System.nanoTime() - start);
+
+        int n = 0;
+        for (DurableSequencedMap.Durability durability : DurableSequencedMap.Durability.values()) {
+            for (int writers : new int[] {1, 64}) {
+                // EACH force() mỗi thao tác: chỉ đo một phần nhỏ rồi quy ra thao tác/s
+                int count = durability == DurableSequencedMap.Durability.EACH ? Math.min(orders, 2_000) : orders;
+                if (durability == DurableSequencedMap.Durability.GROUP && writers == 1) count = Math.min(orders, 2_000);
+                Path dir = root.resolve("tp-" + n++);
+                var config = DurableSequencedMap.Config.defaults(dir).withDurability(durability);
+                try (DurableSequencedMap queue = DurableSequencedMap.open(config)) {
+                    long elapsed = fill(queue, keys, values, count, writers);
+                    report(durability + ", " + writers + " luồng ghi (Virtual Thread)", count, elapsed);
+                    System.out.println("    " + queue.stats());
+                }
+                deleteRecursively(dir);
+            }
+        }
+        System.out.println("* Nhận xét: EACH force() sau mỗi thao tác; GROUP cho nhiều luồng chờ chung một lần force() nên càng");
+        System.out.println("  nhiều luồng ghi càng gần ASYNC; ASYNC không chờ, có thể mất tối đa groupCommitDelay dữ liệu khi mất điện.");
+    }
+
+    /** Đưa count đơn vào queue bằng writers Virtual Thread, 10% đơn gấp (putFirst). @return ns đã chạy */
+    private static long fill(DurableSequencedMap queue, String[] keys, String[] values, int count, int writers)
+            throws InterruptedException {
+        Thread[] threads = new Thread[writers];
+        long start = System.nanoTime();
+        for (int w = 0; w < writers; w++) {
+            int from = (int) ((long) count * w / writers), to = (int) ((long) count * (w + 1) / writers);
+            threads[w] = Thread.ofVirtual().start(() -> {
+                for (int i = from; i < to; i++) {
+                    if (i % 10 == 0) queue.putFirst(keys[i], values[i]); else queue.putLast(keys[i], values[i]);
+                }
+            });
+        }
+        for (Thread t : threads) t.join();
+        return System.nanoTime() - start;
+    }
+
+    private static void report(String name, int ops, long nanos) {
+        System.out.printf("  %-48s %,12.0f thao tác/s%n", name, ops * 1e9 / nanos);
+    }
+
+    static void benchmarkRecovery(Path dir, int orders) throws Exception {
+        var config = DurableSequencedMap.Config.defaults(dir).withDurability(DurableSequencedMap.Durability.ASYNC)
+                .withSnapshotEverySegments(Integer.MAX_VALUE); // không tự nén: đo phát lại toàn bộ nhật ký
+        try (DurableSequencedMap queue = DurableSequencedMap.open(config)) {
+            for (int i = 0; i < orders; i++) {
+                if (i % 10 == 0) queue.putFirst("DH" + i, "Món số " + (i % 50)); else queue.putLast("DH" + i, "Món số " + (i % 50));
+            }
+        }
+        String first;
+        int size;
+        try (DurableSequencedMap queue = DurableSequencedMap.open(config)) {
+            System.out.println("  Phát lại nhật ký: " + queue.recovery());
+            long start = System.nanoTime();
+            queue.snapshotNow().get();
+            System.out.printf("  Ghi snapshot ở nền: %,d ms%n", (System.nanoTime() - start) / 1_000_000);
+            for (int i = 0; i < 10_000; i++) queue.putLast("SAU" + i, "Món sau snapshot"); // phần đuôi sau snapshot
+            first = queue.firstEntry().getKey();
+            size = queue.size();
+        }
+        try (DurableSequencedMap queue = DurableSequencedMap.open(config)) {
+            System.out.println("  Snapshot + đuôi nhật ký: " + queue.recovery());
+            System.out.printf("  Trước khi tắt: đầu %s, %,d đơn | sau khôi phục: đầu %s, %,d đơn, cuối %s%n",
+                    first, size, queue.firstEntry().getKey(), queue.size(), queue.lastEntry().getKey());
+        }
+        System.out.println("* Nhận xét: phát lại phải giải mã và kiểm CRC từng thao tác; snapshot chỉ đọc tuần tự các đơn còn lại,");
+        System.out.println("  nên nén định kỳ giữ thời gian khởi động tỉ lệ với số đơn đang chờ, không với lịch sử thao tác.");
+    }
+
+    static void deleteRecursively(Path root) throws IOException {
+        if (!Files.exists(root)) return;
+        try (Stream<Path> walk = Files.walk(root)) {
+            for (Path p : walk.sorted(Comparator.reverseOrder()).toList()) Files.deleteIfExists(p);
+        }
+    }
+}
+
+/**
+ * SequencedMap<String, String> bền vững: LinkedHashMap trong bộ nhớ cộng nhật ký ghi trước trên đĩa.
+ * An toàn luồng (một ReentrantLock cho map và phần ghi nhật ký, để thứ tự trong nhật ký đúng thứ tự áp dụng).
+ * Khóa và giá trị không được null. entrySet() và toString() trả về bản sao tại thời điểm gọi.
+ *
+ * Cấu trúc thư mục:
+ *  - 0000000000000005.log: đoạn nhật ký số 5, kích thước cố định, phần chưa ghi toàn số 0
+ *    bản ghi = [int độ dài thân][int CRC32C của thân][thân: byte loại, khóa, giá trị]; độ dài 0 là hết nhật ký.
+ *    POLL_FIRST/POLL_LAST cũng mang khóa của đơn bị lấy, nên phát lại lần nữa không lấy thêm đơn nào.
+ *    Độ dài được ghi sau cùng, nên bản ghi chưa ghi xong có độ dài 0 hoặc CRC sai.
+ *  - 0000000000000005.snap: ảnh chụp mọi đơn trước đoạn 5, theo thứ tự; cuối file là CRC32C của toàn bộ.
+ */
+final class DurableSequencedMap extends AbstractMap<String, String> implements SequencedMap<String, String>, AutoCloseable {
+
+    /** Khi nào thao tác được coi là đã bền vững. */
+    enum Durability {
+        /** Không chờ: luồng nền force() mỗi groupCommitDelay; mất điện có thể mất phần chưa force. */
+        ASYNC,
+        /** Chờ lần force() chung kế tiếp (group commit): trả về khi bản ghi đã xuống đĩa. */
+        GROUP,
+        /** force() ngay sau mỗi thao tác, trong khóa. */
+        EACH
+    }
+
+    record Config(Path dir, int segmentBytes, Durability durability, Duration groupCommitDelay,
+                  int groupCommitBatch, int snapshotEverySegments) {
+
+        static Config defaults(Path dir) {
+            return new Config(dir, 64 << 20, Durability.GROUP, Duration.ofMillis(2), 256, 4);
+        }
+
+        Config withDurability(Durability durability) {
+            return new Config(dir, segmentBytes, durability, groupCommitDelay, groupCommitBatch, snapshotEverySegments);
+        }
+
+        Config withSnapshotEverySegments(int segments) {
+            return new Config(dir, segmentBytes, durability, groupCommitDelay, groupCommitBatch, segments);
+        }
+    }
+
+    /** Kết quả khôi phục: số đơn từ snapshot, số thao tác phát lại, số byte bỏ đi vì hỏng, thời gian. */
+    record Recovery(long snapshotEntries, long replayedOps, long discardedBytes, long millis) {
+
+        @Override
+        public String toString() {
+            return String.format("%,d đơn từ snapshot, %,d thao tác phát lại, bỏ %,d byte hỏng, %,d ms",
+                    snapshotEntries, replayedOps, discardedBytes, millis);
+        }
+    }
+
+    /** Thống kê ghi: số bản ghi, số lần force(), số snapshot đã ghi. */
+    record Stats(long records, long forces, long snapshots) {
+
+        @Override
+        public String toString() {
+            return String.format("%,d bản ghi, %,d lần force (%.1f bản ghi/lần), %d snapshot",
+                    records, forces, forces == 0 ? 0.0 : (double) records / forces, snapshots);
+        }
+    }
+
+    private static final byte PUT = 1, PUT_FIRST = 2, PUT_LAST = 3, REMOVE = 4, POLL_FIRST = 5, POLL_LAST = 6, CLEAR = 7;
+    private static final int HEADER = 8;
+    private static final int SNAPSHOT_MAGIC = 0x4A333431; // "J341"
+
+    private final Config config;
+    private final LinkedHashMap<String, String> map = new LinkedHashMap<>();
+    private final ReentrantLock lock = new ReentrantLock();
+
+    // Nhật ký, chỉ đọc/ghi khi giữ lock
+    private MappedByteBuffer segment;
+    private long segmentSeq;
+    private int position;
+    private int forcedPosition; // phần đầu đoạn hiện tại đã force() xong
+    private long appended; // số bản ghi đã ghi
+    private int segmentsSinceSnapshot;
+    private long records, forces, snapshots;
+
+    // Group commit
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private final Condition flushed = flushLock.newCondition();
+    private final Condition work = flushLock.newCondition();
+    private volatile long durable; // số bản ghi đã force
+    private volatile boolean closed;
+    private final Thread flusher;
+    private final ExecutorService snapshotter;
+    private CompletableFuture<Void> snapshotInFlight = CompletableFuture.completedFuture(null);
+
+    private final Recovery recovery;
+
+    private DurableSequencedMap(Config config) throws IOException {
+        this.config = config;
+        Files.createDirectories(config.dir());
+        this.recovery = recover();
+        this.snapshotter = Executors.newSingleThreadExecutor(Thread.ofPlatform().name("journal-snapshot").daemon().factory());
+        this.flusher = Thread.ofPlatform().name("journal-flusher").daemon().start(this::flushLoop);
+    }
+
+    static DurableSequencedMap open(Config config) throws IOException {
+        return new DurableSequencedMap(config);
+    }
+
+    Recovery recovery() {
+        return recovery;
+    }
+
+    Stats stats() {
+        lock.lock();
+        try {
+            return new Stats(records, forces, snapshots);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // ------------------- Đọc -------------------
+    @Override
+    public String get(Object key) {
+        lock.lock();
+        try {
+            return map.get(key);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        lock.lock();
+        try {
+            return map.containsKey(key);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int size() {
+        lock.lock();
+        try {
+            return map.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Entry<String, String> firstEntry() {
+        lock.lock();
+        try {
+            return map.firstEntry();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Entry<String, String> lastEntry() {
+        lock.lock();
+        try {
+            return map.lastEntry();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Set<Entry<String, String>> entrySet() {
+        lock.lock();
+        try {
+            return Collections.unmodifiableMap(new LinkedHashMap<>(map)).entrySet();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // ------------------- Ghi -------------------
+    @Override
+    public String put(String key, String value) {
+        return mutate(PUT, key, value);
+    }
+
+    @Override
+    public String putFirst(String key, String value) {
+        return mutate(PUT_FIRST, key, value);
+    }
+
+    @Override
+    public String putLast(String key, String value) {
+        return mutate(PUT_LAST, key, value);
+    }
+
+    @Override
+    public String remove(Object key) {
+        if (!(key instanceof String k)) return null;
+        return mutate(REMOVE, k, null);
+    }
+
+    @Override
+    public Entry<String, String> pollFirstEntry() {
+        return poll(POLL_FIRST);
+    }
+
+    @Override
+    public Entry<String, String> pollLastEntry() {
+        return poll(POLL_LAST);
+    }
+
+    @Override
+    public void clear() {
+        long lsn;
+        lock.lock();
+        try {
+            ensureOpen();
+            reserve(null, null);
+            map.clear();
+            lsn = append(CLEAR, null, null);
+        } finally {
+            lock.unlock();
+        }
+        awaitDurable(lsn);
+    }
+
+    private String mutate(byte op, String key, String value) {
+        if (key == null || (op != REMOVE && value == null)) throw new NullPointerException();
+        byte[] k = utf8(key), v = utf8(value);
+        String previous;
+        long lsn;
+        lock.lock();
+        try {
+            ensureOpen();
+            if (op == REMOVE && !map.containsKey(key)) return null; // không có gì để ghi
+            reserve(k, v);
+            previous = apply(map, op, key, value);
+            lsn = append(op, k, v);
+        } finally {
+            lock.unlock();
+        }
+        awaitDurable(lsn);
+        return previous;
+    }
+
+    private Entry<String, String> poll(byte op) {
+        Entry<String, String> e;
+        long lsn;
+        lock.lock();
+        try {
+            ensureOpen();
+            Entry<String, String> head = op == POLL_FIRST ? map.firstEntry() : map.lastEntry();
+            if (head == null) return null;
+            // Bản ghi mang khóa của đơn bị lấy: phát lại là remove(khóa), không phụ thuộc đơn nào đang ở đầu/cuối
+            byte[] k = utf8(head.getKey());
+            reserve(k, null);
+            e = op == POLL_FIRST ? map.pollFirstEntry() : map.pollLastEntry();
+            lsn = append(op, k, null);
+        } finally {
+            lock.unlock();
+        }
+        awaitDurable(lsn);
+        return e;
+    }
+
+    /**
+     * Gọi khi đang giữ lock. Sau close() nhật ký không còn được force(), nên ghi thêm là mất dữ liệu
+     * mà GROUP vẫn báo đã bền vững (awaitDurable trả về ngay khi closed).
+     */
+    private void ensureOpen() {
+        if (closed) throw new IllegalStateException("queue is closed");
+    }
+
+    /**
+     * Áp dụng một thao tác lên map; dùng chung cho ghi mới và phát lại.
+     * POLL_* có khóa thì xóa đúng khóa đó; không có khóa (nhật ký ghi trước khi POLL mang khóa) thì lấy đầu/cuối.
+     */
+    private static String apply(LinkedHashMap<String, String> map, byte op, String key, String value) {
+        return switch (op) {
+            case PUT -> map.put(key, value);
+            case PUT_FIRST -> map.putFirst(key, value);
+            case PUT_LAST -> map.putLast(key, value);
+            case REMOVE -> map.remove(key);
+            case POLL_FIRST -> {
+                if (key != null) map.remove(key); else map.pollFirstEntry();
+                yield null;
+            }
+            case POLL_LAST -> {
+                if (key != null) map.remove(key); else map.pollLastEntry();
+                yield null;
+            }
+            case CLEAR -> {
+                map.clear();
+                yield null;
+            }
+            default -> throw new IllegalStateException("unknown journal op " + op);
+        };
+    }
+
+    // ------------------- Nhật ký -------------------
+    private static byte[] utf8(String s) {
+        return s == null ? null : s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static int bodySize(byte[] k, byte[] v) {
+        return 1 + (k == null ? 0 : 4 + k.length) + (v == null ? 0 : 4 + v.length);
+    }
+
+    /**
+     * Bảo đảm đoạn hiện tại còn chỗ cho bản ghi (giữ lock), sang đoạn mới nếu cần. Phải gọi trước khi áp dụng thao tác
+     * lên map: snapshot chụp lúc sang đoạn khi đó chưa chứa thao tác, còn bản ghi của nó nằm trong đoạn mới,
+     * nên khi khôi phục thao tác được áp dụng đúng một lần.
+     */
+    private void reserve(byte[] k, byte[] v) {
+        int body = bodySize(k, v);
+        if (HEADER + body + HEADER > config.segmentBytes()) throw new IllegalArgumentException("record too large: " + body);
+        // Luôn chừa chỗ cho một header trống (độ dài 0) đánh dấu hết đoạn
+        if (position + HEADER + body + HEADER > config.segmentBytes()) roll();
+    }
+
+    /** Ghi một bản ghi vào chỗ đã reserve() (giữ lock). @return số thứ tự bản ghi, dùng để chờ bền vững */
+    private long append(byte op, byte[] k, byte[] v) {
+        int body = bodySize(k, v);
+        int start = position + HEADER;
+        MappedByteBuffer buf = segment;
+        buf.put(start, op);
+        int p = start + 1;
+        if (k != null) {
+            buf.putInt(p, k.length).put(p + 4, k);
+            p += 4 + k.length;
+        }
+        if (v != null) {
+            buf.putInt(p, v.length).put(p + 4, v);
+        }
+        CRC32C crc = new CRC32C();
+        crc.update(buf.slice(start, body));
+        buf.putInt(position + 4, (int) crc.getValue());
+        buf.putInt(position, body); // độ dài ghi sau cùng: bản ghi chỉ "tồn tại" khi đã đủ
+        position += HEADER + body;
+        records++;
+        long lsn = ++appended;
+        if (config.durability() == Durability.EACH) {
+            forceLocked();
+        } else if (lsn - durable >= config.groupCommitBatch()) {
+            signalFlusher();
+        }
+        return lsn;
+    }
+
+    /** Đóng đoạn hiện tại (force toàn bộ) và mở đoạn mới; lên lịch snapshot nếu đã đủ số đoạn. */
+    private void roll() {
+        if (segment != null) forceLocked();
+        segmentSeq++;
+        segment = mapSegment(segmentSeq);
+        position = 0;
+        forcedPosition = 0;
+        if (++segmentsSinceSnapshot >= config.snapshotEverySegments()) scheduleSnapshot();
+    }
+
+    private MappedByteBuffer mapSegment(long seq) {
+        try (FileChannel ch = FileChannel.open(file(seq, ".log"),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            // Vùng map vẫn dùng được sau khi đóng channel; file thưa nên phần chưa ghi không tốn đĩa
+            return ch.map(FileChannel.MapMode.READ_WRITE, 0, config.segmentBytes());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private Path file(long seq, String suffix) {
+        return config.dir().resolve(String.format("%016d%s", seq, suffix));
+    }
+
+    /**
+     * force() phần chưa chắc đã xuống đĩa của đoạn hiện tại (giữ lock). Phần luồng group commit đang force dở
+     * cũng nằm trong [forcedPosition, position) nên được force lại ở đây, trước khi đánh dấu mọi bản ghi đã bền vững.
+     */
+    private void forceLocked() {
+        if (position > forcedPosition) {
+            segment.force(forcedPosition, position - forcedPosition);
+            forcedPosition = position;
+            forces++;
+        }
+        markDurable(appended);
+    }
+
+    private void awaitDurable(long lsn) {
+        if (config.durability() != Durability.GROUP || durable >= lsn) return;
+        flushLock.lock();
+        try {
+            work.signal();
+            while (durable < lsn && !closed) flushed.awaitUninterruptibly();
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    private void signalFlusher() {
+        flushLock.lock();
+        try {
+            work.signal();
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    private void markDurable(long lsn) {
+        flushLock.lock();
+        try {
+            if (lsn > durable) durable = lsn;
+            flushed.signalAll();
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * Luồng group commit: chờ tới groupCommitDelay (hoặc tới khi có người chờ / đủ groupCommitBatch bản ghi),
+     * rồi force() một lần cho mọi bản ghi đã ghi. Trong lúc force(), các luồng ghi khác tiếp tục ghi vào nhóm sau.
+     * forcedPosition chỉ tăng sau khi force() xong, nên roll()/close() chạy xen vào không coi phần đang force dở là đã bền vững.
+     */
+    private void flushLoop() {
+        long delay = config.groupCommitDelay().toNanos();
+        while (!closed) {
+            flushLock.lock();
+            try {
+                if (durable == appended) work.awaitNanos(delay);
+            } catch (InterruptedException e) {
+                return;
+            } finally {
+                flushLock.unlock();
+            }
+            MappedByteBuffer seg;
+            int from, to;
+            long target;
+            lock.lock();
+            try {
+                seg = segment;
+                from = forcedPosition;
+                to = position;
+                target = appended;
+                if (to > from) forces++;
+            } finally {
+                lock.unlock();
+            }
+            if (to > from) {
+                seg.force(from, to - from); // ngoài khóa: luồng ghi không phải chờ đĩa
+                lock.lock();
+                try {
+                    // Đoạn đã đổi thì roll() đã force toàn bộ đoạn cũ rồi
+                    if (segment == seg && to > forcedPosition) forcedPosition = to;
+                } finally {
+                    lock.unlock();
+                }
+            }
+            markDurable(target);
+        }
+    }
+
+    // ------------------- Snapshot -------------------
+    /** Chụp các đơn hiện có và ghi snapshot ở nền; future hoàn tất khi snapshot đã bền vững và đoạn cũ đã xóa. */
+    Future<Void> snapshotNow() {
+        lock.lock();
+        try {
+            roll(); // snapshot bao mọi đoạn trước đoạn mới
+            if (segmentsSinceSnapshot != 0) scheduleSnapshot();
+            return snapshotInFlight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void scheduleSnapshot() {
+        if (!snapshotInFlight.isDone()) return; // đang có snapshot, lần sau sẽ bao cả phần này
+        segmentsSinceSnapshot = 0;
+        long covers = segmentSeq;
+        // Sao chép tham chiếu (nhanh, O(n)) trong khóa; phần ghi file chạy ở nền
+        String[] kv = new String[map.size() * 2];
+        int i = 0;
+        for (Entry<String, String> e : map.entrySet()) {
+            kv[i++] = e.getKey();
+            kv[i++] = e.getValue();
+        }
+        snapshotInFlight = CompletableFuture.runAsync(() -> writeSnapshot(covers, kv), snapshotter);
+    }
+
+    private void writeSnapshot(long covers, String[] kv) {
+        Path tmp = file(covers, ".snap.tmp");
+        try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE)) {
+            CRC32C crc = new CRC32C();
+            OutputStream raw = Channels.newOutputStream(ch);
+            DataOutputStream out = new DataOutputStream(new CheckedOutputStream(new BufferedOutputStream(raw, 1 << 16), crc));
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeLong(kv.length / 2);
+            for (String s : kv) {
+                byte[] b = s.getBytes(StandardCharsets.UTF_8);
+                out.writeInt(b.length);
+                out.write(b);
+            }
+            out.flush();
+            new DataOutputStream(new BufferedOutputStream(raw, 8)).writeLong(crc.getValue()); // CRC không tự tính chính nó
+            raw.flush();
+            ch.force(true);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        try {
+            Files.move(tmp, file(covers, ".snap"), StandardCopyOption.ATOMIC_MOVE);
+            syncDirectory();
+            try (Stream<Path> files = Files.list(config.dir())) {
+                for (Path p : files.toList()) {
+                    long seq = seqOf(p);
+                    boolean oldLog = p.toString().endsWith(".log") && seq < covers;
+                    boolean oldSnap = p.toString().endsWith(".snap") && seq < covers;
+                    if (oldLog || oldSnap) Files.deleteIfExists(p); // vùng map của đoạn cũ được giải phóng khi GC
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        lock.lock();
+        try {
+            snapshots++;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void syncDirectory() throws IOException {
+        try (FileChannel dir = FileChannel.open(config.dir(), StandardOpenOption.READ)) {
+            dir.force(true);
+        }
+    }
+
+    private static long seqOf(Path p) {
+        String name = p.getFileName().toString();
+        int dot = name.indexOf('.');
+        try {
+            return dot == 16 ? Long.parseLong(name.substring(0, 16)) : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    // ------------------- Khôi phục -------------------
+    private Recovery recover() throws IOException {
+        long start = System.nanoTime();
+        List<Long> snaps = new ArrayList<>(), logs = new ArrayList<>();
+        try (Stream<Path> files = Files.list(config.dir())) {
+            for (Path p : files.toList()) {
+                String name = p.getFileName().toString();
+                if (name.endsWith(".snap.tmp")) Files.delete(p); // snapshot chưa xong lúc sập
+                else if (name.endsWith(".snap") && seqOf(p) >= 0) snaps.add(seqOf(p));
+                else if (name.endsWith(".log") && seqOf(p) >= 0) logs.add(seqOf(p));
+            }
+        }
+        snaps.sort(Comparator.reverseOrder());
+        Collections.sort(logs);
+
+        long base = 0, fromSnapshot = 0;
+        for (long s : snaps) {
+            if (loadSnapshot(file(s, ".snap"))) {
+                base = s;
+                fromSnapshot = map.size();
+                break;
+            }
+            map.clear();
+        }
+
+        long replayed = 0, discarded = 0;
+        boolean broken = false;
+        for (long seq : logs) {
+            if (seq < base) continue;
+            if (broken) { // nhật ký đã đứt ở đoạn trước: đoạn sau không còn nối tiếp được
+                discarded += Files.size(file(seq, ".log"));
+                Files.delete(file(seq, ".log"));
+                continue;
+            }
+            segment = mapSegment(seq);
+            segmentSeq = seq;
+            int[] end = new int[1];
+            replayed += replay(segment, end);
+            position = end[0];
+            int garbage = garbageAfter(segment, position);
+            if (garbage > 0) {
+                discarded += garbage;
+                broken = true;
+                for (int i = position; i < position + garbage; i++) segment.put(i, (byte) 0);
+                segment.force();
+            }
+            forcedPosition = position;
+        }
+        if (segment == null) {
+            segmentSeq = base;
+            segment = mapSegment(base);
+        }
+        segmentsSinceSnapshot = (int) Math.min(Integer.MAX_VALUE - 1, segmentSeq - base);
+        return new Recovery(fromSnapshot, replayed, discarded, (System.nanoTime() - start) / 1_000_000);
+    }
+
+    /** Phát lại các bản ghi hợp lệ từ đầu đoạn; end[0] = vị trí ngay sau bản ghi hợp lệ cuối. @return số bản ghi */
+    private int replay(MappedByteBuffer buf, int[] end) {
+        int p = 0, count = 0, limit = config.segmentBytes();
+        CRC32C crc = new CRC32C();
+        while (p + HEADER <= limit) {
+            int body = buf.getInt(p);
+            if (body <= 0 || p + HEADER + body > limit) break;
+            crc.reset();
+            crc.update(buf.slice(p + HEADER, body));
+            if ((int) crc.getValue() != buf.getInt(p + 4)) break;
+            int q = p + HEADER;
+            byte op = buf.get(q++);
+            String key = null, value = null;
+            if (op == PUT || op == PUT_FIRST || op == PUT_LAST || op == REMOVE
+                    || ((op == POLL_FIRST || op == POLL_LAST) && body > 1)) {
+                int len = buf.getInt(q);
+                key = readString(buf, q + 4, len);
+                q += 4 + len;
+            }
+            if (op == PUT || op == PUT_FIRST || op == PUT_LAST) {
+                value = readString(buf, q + 4, buf.getInt(q));
+            }
+            apply(map, op, key, value);
+            p += HEADER + body;
+            count++;
+        }
+        end[0] = p;
+        return count;
+    }
+
+    private static String readString(MappedByteBuffer buf, int at, int len) {
+        byte[] b = new byte[len];
+        buf.get(at, b);
+        return new String(b, StandardCharsets.UTF_8);
+    }
+
+    /** Số byte khác 0 (phần ghi dở) sau vị trí p, tới hết đoạn hoặc tới 4 KiB toàn số 0. */
+    private int garbageAfter(MappedByteBuffer buf, int p) {
+        int limit = config.segmentBytes(), lastNonZero = -1, zeros = 0;
+        for (int i = p; i < limit && zeros < 4096; i++) {
+            if (buf.get(i) != 0) {
+                lastNonZero = i;
+                zeros = 0;
+            } else {
+                zeros++;
+            }
+        }
+        return lastNonZero < 0 ? 0 : lastNonZero - p + 1;
+    }
+
+    private boolean loadSnapshot(Path path) throws IOException {
+        CRC32C crc = new CRC32C();
+        try (InputStream raw = new BufferedInputStream(Files.newInputStream(path), 1 << 16)) {
+            DataInputStream in = new DataInputStream(new CheckedInputStream(raw, crc));
+            if (in.readInt() != SNAPSHOT_MAGIC) return false;
+            long count = in.readLong();
+            for (long i = 0; i < count; i++) {
+                byte[] k = new byte[in.readInt()];
+                in.readFully(k);
+                byte[] v = new byte[in.readInt()];
+                in.readFully(v);
+                map.putLast(new String(k, StandardCharsets.UTF_8), new String(v, StandardCharsets.UTF_8));
+            }
+            long expected = crc.getValue();
+            return new DataInputStream(raw).readLong() == expected;
+        } catch (IOException | RuntimeException e) {
+            return false; // snapshot hỏng: thử snapshot cũ hơn
+        }
+    }
+
+    // ------------------- Đóng -------------------
+    /** force() phần còn lại, chờ snapshot đang ghi, dừng các luồng nền. */
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            forceLocked();
+            closed = true; // trong lock: không thao tác nào chen vào giữa lần force() cuối và lúc đóng
+        } finally {
+            lock.unlock();
+        }
+        flusher.interrupt();
+        try {
+            flusher.join();
+            snapshotInFlight.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        snapshotter.shutdown();
+        try {
+            snapshotter.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        markDurable(appended); // đánh thức luồng còn chờ
+    }
+
+    @Override
+    public SequencedMap<String, String> reversed() {
+        return new ReversedView(this);
+    }
+
+    /** View đảo chiều: đầu của view là cuối của hàng đợi; mọi thay đổi đi qua nhật ký của map gốc. */
+    private static final class ReversedView extends AbstractMap<String, String> implements SequencedMap<String, String> {
+        private final DurableSequencedMap outer;
+
+        ReversedView(DurableSequencedMap outer) {
+            this.outer = outer;
+        }
+
+        @Override
+        public Set<Entry<String, String>> entrySet() {
+            outer.lock.lock();
+            try {
+                LinkedHashMap<String, String> copy = new LinkedHashMap<>();
+                for (Entry<String, String> e : outer.map.reversed().entrySet()) copy.put(e.getKey(), e.getValue());
+                return Collections.unmodifiableMap(copy).entrySet();
+            } finally {
+                outer.lock.unlock();
+            }
+        }
+
+        @Override
+        public String get(Object key) {
+            return outer.get(key);
+        }
+
+        @Override
+        public String put(String key, String value) {
+            return outer.put(key, value);
+        }
+
+        @Override
+        public String remove(Object key) {
+            return outer.remove(key);
+        }
+
+        @Override
+        public String putFirst(String key, String value) {
+            return outer.putLast(key, value);
+        }
+
+        @Override
+        public String putLast(String key, String value) {
+            return outer.putFirst(key, value);
+        }
+
+        @Override
+        public Entry<String, String> firstEntry() {
+            return outer.lastEntry();
+        }
+
+        @Override
+        public Entry<String, String> lastEntry() {
+            return outer.firstEntry();
+        }
+
+        @Override
+        public Entry<String, String> pollFirstEntry() {
+            return outer.pollLastEntry();
+        }
+
+        @Override
+        public Entry<String, String> pollLastEntry() {
+            return outer.pollFirstEntry();
+        }
+
+        @Override
+        public SequencedMap<String, String> reversed() {
+            return outer;
+        }
+    }
+}
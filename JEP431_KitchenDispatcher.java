@@ -0,0 +1,530 @@
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * Điều phối bếp theo SLA (JEP 431 - Sequenced Collections)
+ *
+ * Bối cảnh: trong sauJEP431() (JEP431_Tung.java) ưu tiên chỉ có hai mức: đơn gấp putFirst, đơn thường putLast,
+ * đầu bếp tự pollFirstEntry/pollLastEntry. Khi quán đông, đơn thường bị bỏ đói (đơn gấp luôn chen lên đầu),
+ * còn đơn gấp đến sau lại được nấu trước đơn gấp đến trước.
+ *
+ * KitchenDispatcher:
+ *  - nhiều làn ưu tiên (VIP, NHANH, THUONG), mỗi làn là một hàng FIFO có SLA (thời gian chờ tối đa)
+ *  - lão hóa theo hạn chót: đơn đã chờ quá nửa SLA của làn mình được so hạn chót với đầu các làn cao hơn
+ *    và được nấu trước nếu sắp trễ hơn (earliest deadline first giữa các đơn lão hóa)
+ *  - mỗi đầu bếp (một Virtual Thread) lấy một nhóm nhỏ đơn vào hàng đợi hai đầu (deque) riêng,
+ *    nấu từ đầu deque; đầu bếp rảnh đi lấy trộm ở deque người khác:
+ *    từ đầu nếu đơn ở đầu đang thuộc làn VIP (không để đơn gấp chờ sau món đang nấu), còn lại từ cuối
+ *  - thống kê thời gian chờ (từ lúc nhận đơn tới lúc bắt đầu nấu) theo từng làn: p50/p90/p99/max và số đơn trễ SLA
+ *
+ * Bộ đo: cùng một dòng đơn (có đợt cao điểm vượt công suất bếp) chạy qua
+ *  1) một LinkedHashMap như sauJEP431(): VIP putFirst, còn lại putLast, đầu bếp pollFirstEntry
+ *  2) KitchenDispatcher
+ * và một tình huống ép lấy trộm: một đầu bếp kẹt món lâu trong khi deque riêng còn cả nhóm đơn.
+ *
+ * Chạy: java JEP431_KitchenDispatcher.java [số đơn] [số đầu bếp]
+ */
+public class JEP431_KitchenDispatcher {
+
+    public static void main(String[] args) throws Exception {
+        int orders = args.length > 0 ? Integer.parseInt(args[0]) : 6_000;
+        int cooks = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+
+        System.out.println("=== 1. Một ca nhỏ: 3 đầu bếp, 9 đơn ===");
+        demo();
+
+        System.out.printf("%n=== 2. %,d đơn, %d đầu bếp, cao điểm 120%% công suất ===%n", orders, cooks);
+        List<Arrival> schedule = schedule(orders, cooks, 42);
+        System.out.println("--- LinkedHashMap (VIP putFirst, còn lại putLast, pollFirstEntry)");
+        System.out.print(runLinkedHashMap(schedule, cooks));
+        System.out.println("--- KitchenDispatcher (làn + lão hóa + deque riêng, lấy trộm hai đầu)");
+        KitchenDispatcher.WaitStats stats;
+        KitchenDispatcher.Counters counters;
+        try (KitchenDispatcher dispatcher = new KitchenDispatcher(cooks, 4, JEP431_KitchenDispatcher::cook)) {
+            replay(schedule, dispatcher::submit);
+            dispatcher.awaitIdle();
+            stats = dispatcher.waitStats();
+            counters = dispatcher.counters();
+        }
+        System.out.print(stats);
+        System.out.println("    " + counters);
+        System.out.println("* Nhận xét: với LinkedHashMap, NHANH và THUONG chung một hàng nên NHANH trễ SLA như đơn thường");
+        System.out.println("  trong đợt cao điểm, còn đơn VIP đến sau lại chen trước đơn VIP đến trước (putFirst là LIFO).");
+        System.out.println("  Dispatcher giữ FIFO trong từng làn nên NHANH gần như không trễ; THUONG nhường chỗ nên chờ lâu hơn,");
+        System.out.println("  nhưng lão hóa theo hạn chót chặn đuôi của nó quanh SLA thay vì để bị bỏ đói.");
+        System.out.println("  Lấy nhóm nhỏ theo độ dài hàng chung nên deque riêng hiếm khi còn đơn khi người khác rảnh:");
+        System.out.println("  ở đây lấy trộm gần như không xảy ra (thường 0); mục 3 tạo đúng tình huống cần lấy trộm.");
+        System.out.println("* Lưu ý: nấu món được mô phỏng bằng Thread.sleep nên số liệu đo đúng cả trên máy 1 CPU;");
+        System.out.println("  độ phân giải của sleep (~1 ms) làm nhiễu các phân vị nhỏ.");
+
+        System.out.println("\n=== 3. Một đầu bếp kẹt món lâu với cả nhóm đơn trong deque riêng ===");
+        demoSteal();
+    }
+
+    // ------------------- VÍ DỤ -------------------
+    static void demo() throws InterruptedException {
+        try (KitchenDispatcher dispatcher = new KitchenDispatcher(3, 2, order -> {
+            System.out.println("  " + Thread.currentThread().getName() + " nấu " + order.id() + " (" + order.dish() + ", "
+                    + order.lane() + ")");
+            sleep(order.cookMillis());
+        })) {
+            dispatcher.submit(new KitchenDispatcher.KitchenOrder("DH01", "Trà sữa trân châu", KitchenDispatcher.Lane.THUONG, 20));
+            dispatcher.submit(new KitchenDispatcher.KitchenOrder("DH02", "Cơm gà xối mỡ", KitchenDispatcher.Lane.THUONG, 40));
+            dispatcher.submit(new KitchenDispatcher.KitchenOrder("DH03", "Bún chả", KitchenDispatcher.Lane.NHANH, 30));
+            dispatcher.submit(new KitchenDispatcher.KitchenOrder("DH04", "Bánh mì", KitchenDispatcher.Lane.THUONG, 10));
+            dispatcher.submit(new KitchenDispatcher.KitchenOrder("DH-UU-TIEN", "Phở bò giao gấp", KitchenDispatcher.Lane.VIP, 30));
+            dispatcher.submit(new KitchenDispatcher.KitchenOrder("DH05", "Cơm tấm", KitchenDispatcher.Lane.THUONG, 20));
+            dispatcher.submit(new KitchenDispatcher.KitchenOrder("DH06", "Mì Quảng", KitchenDispatcher.Lane.NHANH, 20));
+            dispatcher.submit(new KitchenDispatcher.KitchenOrder("DH07", "Gỏi cuốn", KitchenDispatcher.Lane.THUONG, 10));
+            dispatcher.submit(new KitchenDispatcher.KitchenOrder("DH-VIP-2", "Lẩu thái", KitchenDispatcher.Lane.VIP, 30));
+            dispatcher.awaitIdle();
+            System.out.println("  " + dispatcher.counters());
+        }
+    }
+
+    /**
+     * 2 đầu bếp, nhóm tối đa 6. Cả hai đang bận món khởi động 20 ms thì một đợt 12 đơn đến cùng lúc:
+     * Lẩu (NHANH, 400 ms), N1-N2 (NHANH), T1-T3 (THUONG), rồi F1-F6 (THUONG). Ai rảnh trước lấy nhóm 6 đơn đầu
+     * (Lẩu + N1, N2, T1, T2, T3) rồi kẹt 400 ms với Lẩu; người kia nấu hết F1-F6 (khoảng 30 ms, tức khoảng 50 ms sau khi đợt đơn tới) rồi lấy trộm.
+     * Lúc đó N1, N2 đã chờ quá nửa SLA của NHANH (40 ms) nên bị lấy từ đầu; T1-T3 chưa tới nửa SLA của THUONG
+     * (75 ms) nên bị lấy từ cuối: T3, T2 rồi T1. Không lấy trộm thì cả năm đơn chờ sau món Lẩu 400 ms.
+     */
+    static void demoSteal() throws InterruptedException {
+        CountDownLatch warmedUp = new CountDownLatch(2);
+        long[] burstAt = new long[1];
+        try (KitchenDispatcher dispatcher = new KitchenDispatcher(2, 6, order -> {
+            if (order.id().startsWith("KHOI-DONG")) {
+                warmedUp.countDown();
+            } else {
+                System.out.printf("  %s nấu %s (%s, %s) sau %d ms%n", Thread.currentThread().getName(), order.id(),
+                        order.dish(), order.lane(), (System.nanoTime() - burstAt[0]) / 1_000_000);
+            }
+            sleep(order.cookMillis());
+        })) {
+            // Hai món khởi động giữ cả hai đầu bếp bận, để đợt sau được lấy theo nhóm chứ không lẻ từng đơn
+            dispatcher.submit(new KitchenDispatcher.KitchenOrder("KHOI-DONG-1", "Trà đá", KitchenDispatcher.Lane.THUONG, 20));
+            dispatcher.submit(new KitchenDispatcher.KitchenOrder("KHOI-DONG-2", "Trà đá", KitchenDispatcher.Lane.THUONG, 20));
+            warmedUp.await();
+            burstAt[0] = System.nanoTime();
+            dispatcher.submit(new KitchenDispatcher.KitchenOrder("LAU", "Lẩu thái", KitchenDispatcher.Lane.NHANH, 400));
+            for (int i = 1; i <= 2; i++)
+                dispatcher.submit(new KitchenDispatcher.KitchenOrder("N" + i, "Bánh mì", KitchenDispatcher.Lane.NHANH, 3));
+            for (int i = 1; i <= 3; i++)
+                dispatcher.submit(new KitchenDispatcher.KitchenOrder("T" + i, "Trà sữa", KitchenDispatcher.Lane.THUONG, 3));
+            for (int i = 1; i <= 6; i++)
+                dispatcher.submit(new KitchenDispatcher.KitchenOrder("F" + i, "Cơm gà", KitchenDispatcher.Lane.THUONG, 4));
+            dispatcher.awaitIdle();
+            System.out.println("  " + dispatcher.counters());
+        }
+        System.out.println("* Nhận xét: đơn đã lão hóa ở đầu deque (N1, N2) bị lấy từ đầu, vì chờ thêm là trễ SLA;");
+        System.out.println("  đơn chưa gấp bị lấy từ cuối (T3, T2, T1), để chủ deque khi rảnh vẫn nấu theo thứ tự của mình.");
+        System.out.println("  Đơn VIP ở đầu deque cũng bị lấy từ đầu như vậy (ít gặp: đầu bếp thấy VIP ở hàng chung");
+        System.out.println("  thì chỉ lấy đúng một đơn, nên VIP hiếm khi nằm trong deque riêng).");
+    }
+
+    // ------------------- BỘ ĐO -------------------
+    record Arrival(long atNanos, KitchenDispatcher.KitchenOrder order) {}
+
+    private static final String[] DISHES = {"Trà sữa", "Bánh mì", "Cơm gà", "Bún chả", "Phở bò", "Lẩu thái"};
+    private static final int[] COOK_MILLIS = {2, 3, 4, 5, 8, 20};
+
+    /**
+     * Lịch đến của đơn: 10% VIP, 30% NHANH, 60% THUONG; khoảng cách theo phân phối mũ,
+     * xen kẽ đợt cao điểm 120% và thấp điểm 60% công suất bếp (trung bình ~90%).
+     */
+    static List<Arrival> schedule(int orders, int cooks, long seed) {
+        Random random = new Random(seed);
+        double meanCook = Arrays.stream(COOK_MILLIS).average().orElseThrow() * 1e6;
+        double capacityGap = meanCook / cooks; // ns giữa hai đơn khi bếp chạy đúng 100%
+        Arrival[] arrivals = new Arrival[orders];
+        double t = 0;
+        for (int i = 0; i < orders; i++) {
+            double load = (i / 500) % 2 == 0 ? 1.2 : 0.6;
+            t += -Math.log(1 - random.nextDouble()) * capacityGap / load;
+            double r = random.nextDouble();
+            KitchenDispatcher.Lane lane = r < 0.1 ? KitchenDispatcher.Lane.VIP
+                    : r < 0.4 ? KitchenDispatcher.Lane.NHANH : KitchenDispatcher.Lane.THUONG;
+            int dish = random.nextInt(DISHES.length);
+            arrivals[i] = new Arrival((long) t, new KitchenDispatcher.KitchenOrder("DH" + i, DISHES[dish], lane, COOK_MILLIS[dish]));
+        }
+        return List.of(arrivals);
+    }
+
+    /** Phát lại lịch đến theo thời gian thực trên luồng gọi. */
+    static void replay(List<Arrival> schedule, Consumer<KitchenDispatcher.KitchenOrder> submit) {
+        long start = System.nanoTime();
+        for (Arrival a : schedule) {
+            long wait = start + a.atNanos() - System.nanoTime();
+            if (wait > 0) LockSupport.parkNanos(wait);
+            submit.accept(a.order());
+        }
+    }
+
+    static void cook(KitchenDispatcher.KitchenOrder order) {
+        sleep(order.cookMillis());
+    }
+
+    static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /** Cách của sauJEP431(): một LinkedHashMap, VIP putFirst, còn lại putLast, đầu bếp Virtual Thread pollFirstEntry. */
+    static KitchenDispatcher.WaitStats runLinkedHashMap(List<Arrival> schedule, int cooks) throws InterruptedException {
+        record Queued(KitchenDispatcher.KitchenOrder order, long submitted) {}
+        LinkedHashMap<String, Queued> donHang = new LinkedHashMap<>();
+        ReentrantLock lock = new ReentrantLock();
+        Condition available = lock.newCondition();
+        CountDownLatch done = new CountDownLatch(schedule.size());
+        KitchenDispatcher.WaitStats stats = new KitchenDispatcher.WaitStats();
+        Thread[] threads = new Thread[cooks];
+        for (int i = 0; i < cooks; i++) {
+            threads[i] = Thread.ofVirtual().name("bep-lhm-" + i).start(() -> {
+                while (done.getCount() > 0) {
+                    Queued q;
+                    lock.lock();
+                    try {
+                        Map.Entry<String, Queued> e = donHang.pollFirstEntry();
+                        if (e == null) {
+                            available.awaitNanos(1_000_000);
+                            continue;
+                        }
+                        q = e.getValue();
+                    } catch (InterruptedException ex) {
+                        return;
+                    } finally {
+                        lock.unlock();
+                    }
+                    long now = System.nanoTime();
+                    stats.record(q.order().lane(), now - q.submitted(), now - q.submitted() > q.order().lane().slaNanos);
+                    cook(q.order());
+                    done.countDown();
+                }
+            });
+        }
+        replay(schedule, order -> {
+            lock.lock();
+            try {
+                Queued q = new Queued(order, System.nanoTime());
+                if (order.lane() == KitchenDispatcher.Lane.VIP) donHang.putFirst(order.id(), q);
+                else donHang.putLast(order.id(), q);
+                available.signal();
+            } finally {
+                lock.unlock();
+            }
+        });
+        done.await();
+        for (Thread t : threads) t.join();
+        return stats;
+    }
+}
+
+/**
+ * Bộ điều phối bếp: làn ưu tiên có SLA + lão hóa theo hạn chót + deque riêng cho từng đầu bếp, lấy trộm hai đầu.
+ * Đầu bếp là Virtual Thread chạy hàm cook cho từng đơn; close() chờ nấu hết các đơn đã nhận rồi dừng.
+ */
+final class KitchenDispatcher implements AutoCloseable {
+
+    /** Làn ưu tiên, từ cao xuống thấp; SLA là thời gian chờ tối đa từ lúc nhận đơn tới lúc bắt đầu nấu. */
+    enum Lane {
+        VIP(Duration.ofMillis(20)),
+        NHANH(Duration.ofMillis(80)),
+        THUONG(Duration.ofMillis(150));
+
+        final long slaNanos;
+
+        Lane(Duration sla) {
+            this.slaNanos = sla.toNanos();
+        }
+    }
+
+    record KitchenOrder(String id, String dish, Lane lane, long cookMillis) {}
+
+    /** Đơn đang chờ, kèm lúc nhận và hạn chót (lúc nhận + SLA của làn). */
+    private record Ticket(KitchenOrder order, long submitted, long deadline) {
+
+        Ticket(KitchenOrder order, long now) {
+            this(order, now, now + order.lane().slaNanos);
+        }
+
+        /** Đã chờ quá nửa SLA: được xét theo hạn chót cùng các làn cao hơn. */
+        boolean aged(long now) {
+            return now - submitted > order.lane().slaNanos / 2;
+        }
+    }
+
+    /** Số lần đơn lão hóa được nấu trước làn cao hơn, lấy nhóm từ hàng chung, lấy trộm từ đầu/cuối deque người khác. */
+    record Counters(long promotions, long refills, long headSteals, long tailSteals) {
+
+        @Override
+        public String toString() {
+            return String.format("lão hóa vượt làn %,d | lấy nhóm %,d | trộm từ đầu %,d | trộm từ cuối %,d",
+                    promotions, refills, headSteals, tailSteals);
+        }
+    }
+
+    private static final Lane[] LANES = Lane.values();
+
+    // Hàng chung theo làn, chỉ truy cập khi giữ lock
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition available = lock.newCondition();
+    private final ArrayDeque<Ticket>[] lanes;
+    private int queued;
+    private volatile int vipQueued; // đọc không khóa trong vòng lặp đầu bếp
+    private int pending; // đã nhận nhưng chưa nấu xong (kể cả trong deque riêng)
+    private final Condition idle = lock.newCondition();
+
+    private final ConcurrentLinkedDeque<Ticket>[] local;
+    private final Thread[] cooks;
+    private final Consumer<KitchenOrder> cook;
+    private final int batch;
+    private final WaitStats waitStats = new WaitStats();
+    private final LongAdder promotions = new LongAdder(), refills = new LongAdder();
+    private final LongAdder headSteals = new LongAdder(), tailSteals = new LongAdder();
+    private volatile boolean closed;
+
+    /**
+     * @param cooks số đầu bếp (Virtual Thread)
+     * @param batch số đơn tối đa một đầu bếp lấy về deque riêng mỗi lần
+     * @param cook  việc nấu một đơn, chạy trên luồng của đầu bếp
+     */
+    @SuppressWarnings("unchecked")
+    KitchenDispatcher(int cooks, int batch, Consumer<KitchenOrder> cook) {
+        if (cooks < 1 || batch < 1) throw new IllegalArgumentException("cooks and batch must be positive");
+        this.cook = cook;
+        this.batch = batch;
+        this.lanes = (ArrayDeque<Ticket>[]) new ArrayDeque<?>[LANES.length];
+        for (int i = 0; i < lanes.length; i++) lanes[i] = new ArrayDeque<>();
+        this.local = (ConcurrentLinkedDeque<Ticket>[]) new ConcurrentLinkedDeque<?>[cooks];
+        for (int i = 0; i < cooks; i++) local[i] = new ConcurrentLinkedDeque<>();
+        this.cooks = new Thread[cooks];
+        for (int i = 0; i < cooks; i++) { // khởi động sau khi mọi deque đã có: đầu bếp lấy trộm ngay từ đầu
+            int self = i;
+            this.cooks[i] = Thread.ofVirtual().name("dau-bep-" + (i + 1)).start(() -> cookLoop(self));
+        }
+    }
+
+    void submit(KitchenOrder order) {
+        lock.lock();
+        try {
+            if (closed) throw new IllegalStateException("dispatcher closed");
+            lanes[order.lane().ordinal()].addLast(new Ticket(order, System.nanoTime()));
+            queued++;
+            pending++;
+            vipQueued = lanes[0].size();
+            available.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Chờ tới khi mọi đơn đã nhận đều nấu xong. */
+    void awaitIdle() throws InterruptedException {
+        lock.lock();
+        try {
+            while (pending > 0) idle.await();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    WaitStats waitStats() {
+        return waitStats;
+    }
+
+    Counters counters() {
+        return new Counters(promotions.sum(), refills.sum(), headSteals.sum(), tailSteals.sum());
+    }
+
+    private void cookLoop(int self) {
+        while (true) {
+            // Có đơn VIP ở hàng chung thì lấy nó trước các đơn đã ôm trong deque riêng
+            Ticket t = vipQueued > 0 ? refill(self, 1) : null;
+            if (t == null) t = local[self].pollFirst();
+            if (t == null) t = refill(self, batch);
+            if (t == null) t = steal(self);
+            if (t == null) {
+                if (!awaitWork()) return;
+                continue;
+            }
+            long now = System.nanoTime();
+            waitStats.record(t.order().lane(), now - t.submitted(), now > t.deadline());
+            try {
+                cook.accept(t.order());
+            } finally {
+                lock.lock();
+                try {
+                    if (--pending == 0) idle.signalAll();
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }
+    }
+
+    /** Lấy một nhóm từ hàng chung (làn cao trước) vào deque riêng; trả về đơn đầu tiên để nấu ngay. */
+    private Ticket refill(int self, int max) {
+        lock.lock();
+        try {
+            if (queued == 0) return null;
+            long now = System.nanoTime();
+            // Không ôm quá phần của mình: nhóm nhỏ lại khi hàng chung ngắn
+            int take = Math.min(max, Math.max(1, queued / cooks.length));
+            Ticket first = next(now);
+            for (int i = 1; i < take; i++) local[self].addLast(next(now));
+            refills.increment();
+            return first;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Chọn đơn kế tiếp (giữ lock, queued > 0): mặc định là đầu làn cao nhất còn đơn; đầu một làn thấp hơn đã lão hóa
+     * thì được so hạn chót với ứng viên hiện tại và thắng nếu sắp trễ hơn. Mỗi làn là FIFO với cùng SLA, nên đầu làn
+     * luôn là đơn có hạn chót sớm nhất của làn: chỉ cần xét các đầu làn.
+     */
+    private Ticket next(long now) {
+        int top = -1, best = -1;
+        for (int lane = 0; lane < lanes.length; lane++) {
+            Ticket head = lanes[lane].peekFirst();
+            if (head == null) continue;
+            if (best < 0) {
+                top = best = lane;
+            } else if (head.aged(now) && head.deadline() < lanes[best].peekFirst().deadline()) {
+                best = lane;
+            }
+        }
+        if (best != top) promotions.increment();
+        queued--;
+        Ticket t = lanes[best].pollFirst();
+        vipQueued = lanes[0].size();
+        return t;
+    }
+
+    /** Lấy trộm từ deque của đầu bếp khác, bắt đầu từ một người ngẫu nhiên. */
+    private Ticket steal(int self) {
+        int n = local.length;
+        int start = ThreadLocalRandom.current().nextInt(n);
+        for (int i = 0; i < n; i++) {
+            int victim = (start + i) % n;
+            if (victim == self) continue;
+            ConcurrentLinkedDeque<Ticket> deque = local[victim];
+            Ticket head = deque.peekFirst();
+            if (head == null) continue;
+            // Đơn gấp ở đầu (VIP hoặc đã lão hóa) không phải chờ món đang nấu của chủ deque;
+            // còn lại lấy đơn kém gấp nhất ở cuối, để chủ deque giữ thứ tự của mình
+            boolean urgent = head.order().lane() == Lane.VIP || head.aged(System.nanoTime());
+            Ticket t = urgent ? deque.pollFirst() : deque.pollLast();
+            if (t != null) {
+                (urgent ? headSteals : tailSteals).increment();
+                return t;
+            }
+        }
+        return null;
+    }
+
+    /** Đợi việc mới (tối đa 1 ms để còn thử lấy trộm). @return false khi đã đóng và không còn việc */
+    private boolean awaitWork() {
+        lock.lock();
+        try {
+            if (queued > 0) return true;
+            if (closed && pending == 0) return false;
+            available.awaitNanos(1_000_000);
+            return true;
+        } catch (InterruptedException e) {
+            return false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Ngừng nhận đơn, chờ nấu hết rồi dừng các đầu bếp. */
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            closed = true;
+            available.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            for (Thread t : cooks) t.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Thời gian chờ và số đơn trễ SLA theo làn của đơn.
+     * record() được gọi từ đầu bếp (Virtual Thread), nên dùng ReentrantLock: trong JDK 21 synchronized ghim luồng mang.
+     */
+    static final class WaitStats {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Map<Lane, long[]> samples = new EnumMap<>(Lane.class);
+        private final Map<Lane, int[]> counts = new EnumMap<>(Lane.class); // {số mẫu, số trễ SLA}
+
+        WaitStats() {
+            for (Lane lane : LANES) {
+                samples.put(lane, new long[1024]);
+                counts.put(lane, new int[2]);
+            }
+        }
+
+        void record(Lane lane, long waitNanos, boolean missed) {
+            lock.lock();
+            try {
+                int[] c = counts.get(lane);
+                long[] s = samples.get(lane);
+                if (c[0] == s.length) samples.put(lane, s = Arrays.copyOf(s, s.length * 2));
+                s[c[0]++] = waitNanos;
+                if (missed) c[1]++;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder(String.format("  %-7s %7s %9s %9s %9s %9s %12s%n",
+                    "Làn", "Số đơn", "p50 ms", "p90 ms", "p99 ms", "max ms", "trễ SLA"));
+            for (Lane lane : LANES) {
+                int n;
+                long[] s;
+                int missed;
+                lock.lock();
+                try {
+                    n = counts.get(lane)[0];
+                    s = Arrays.copyOf(samples.get(lane), n);
+                    missed = counts.get(lane)[1];
+                } finally {
+                    lock.unlock();
+                }
+                if (n == 0) continue;
+                Arrays.sort(s); // sắp xếp ngoài khóa: không chặn đầu bếp đang ghi
+                sb.append(String.format("  %-7s %7d %9.1f %9.1f %9.1f %9.1f %6d (%3.0f%%)%n", lane, n,
+                        s[(int) (n * 0.50)] / 1e6, s[(int) (n * 0.90)] / 1e6, s[Math.min(n - 1, (int) (n * 0.99))] / 1e6,
+                        s[n - 1] / 1e6, missed, 100.0 * missed / n));
+            }
+            return sb.toString();
+        }
+    }
+}
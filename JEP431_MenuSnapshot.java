@@ -0,0 +1,497 @@
+import java.lang.management.ManagementFactory;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+/**
+ * Menu đọc nhiều ghi ít, công bố theo ảnh chụp (JEP 431 - Sequenced Collections)
+ *
+ * Bối cảnh: menu trong JEP431_Tung.java được đọc nhiều hơn ghi rất nhiều: mỗi lần xem trang
+ * đều hiển thị cả menu lẫn menu.reversed(). Hiện tại người đọc hoặc phải khóa, hoặc phải chép.
+ *
+ * SnapshotMenu giống copy-on-write nhưng:
+ *  - gom nhóm ghi: các thay đổi gửi đồng thời được xếp hàng, người giữ khóa ghi áp dụng cả nhóm rồi công bố
+ *    một lần (flat combining), nên N thay đổi đồng thời chỉ tạo một Snapshot và một lần ghi volatile
+ *  - công bố theo epoch: mỗi nhóm tạo một Snapshot bất biến mang số epoch tăng dần, gán vào một trường volatile
+ *  - người đọc không chờ (wait-free): snapshot() chỉ là một lần đọc volatile; một thay đổi gồm nhiều bước
+ *    (bỏ món cũ, thêm món mới) được thấy trọn vẹn hoặc không thấy gì
+ *  - reversed() của Snapshot là view dựng sẵn lúc công bố, gọi bao nhiêu lần cũng không cấp phát
+ *
+ * Bộ đo: 1-64 luồng đọc (mỗi lần đọc duyệt cả menu và menu.reversed()) cùng 2 luồng ghi đổi giá món,
+ * so với CopyOnWriteArrayList và ArrayList có ReentrantReadWriteLock.
+ *
+ * Chạy: java JEP431_MenuSnapshot.java [ms mỗi lần đo]
+ */
+public class JEP431_MenuSnapshot {
+
+    public static void main(String[] args) throws InterruptedException {
+        long millis = args.length > 0 ? Long.parseLong(args[0]) : 300;
+
+        System.out.println("=== 1. Menu như sauJEP431(), mỗi thay đổi là một epoch mới ===");
+        demo();
+
+        System.out.println("\n=== 2. Byte cấp phát mỗi lần hiển thị (menu + menu.reversed()) ===");
+        allocationPerRender();
+
+        System.out.println("\n=== 3. Đọc/ghi đồng thời: 2 luồng ghi, 1-64 luồng đọc ===");
+        benchmark(millis);
+    }
+
+    // ------------------- VÍ DỤ -------------------
+    static void demo() {
+        SnapshotMenu<String> menu = new SnapshotMenu<>(List.of("Cơm gà", "Bún chả"));
+        SnapshotMenu.Snapshot<String> before = menu.snapshot();
+        menu.edit(m -> m.addFirst("Phở bò đặc biệt"));
+        SnapshotMenu.Snapshot<String> now = menu.snapshot();
+        System.out.println("Epoch " + before.epoch() + ": " + before + " | epoch " + now.epoch() + ": " + now);
+        System.out.println("Món đầu tiên: " + now.getFirst() + ", món cuối cùng: " + now.getLast());
+        System.out.println("Menu (mới nhất trước): " + now.reversed()
+                + ", reversed() trả về cùng một view: " + (now.reversed() == now.reversed()));
+
+        // Nhiều bước trong một edit được công bố cùng lúc
+        menu.edit(m -> {
+            m.remove("Bún chả");
+            m.add("Bún chả (giá mới)");
+        });
+        System.out.println("Sau đổi giá: " + menu.snapshot() + " (ảnh chụp cũ vẫn là " + now + ")");
+
+        // Snapshot bất biến như List.of()
+        try {
+            menu.snapshot().add("Chè");
+        } catch (UnsupportedOperationException e) {
+            System.out.println("Bắt lỗi: Snapshot là bất biến, thay đổi phải đi qua edit().");
+        }
+        // edit ném lỗi thì không có gì được công bố
+        try {
+            menu.edit(m -> {
+                m.clear();
+                throw new IllegalStateException("hết nguyên liệu");
+            });
+        } catch (IllegalStateException e) {
+            System.out.println("Bắt lỗi: " + e.getMessage() + ", menu vẫn là " + menu.snapshot());
+        }
+    }
+
+    // ------------------- BỘ ĐO -------------------
+    static volatile int sink;
+
+    private static final int MENU_SIZE = 50;
+
+    /** Một cách giữ menu dùng chung: hiển thị (đọc) và đổi giá một món (ghi gồm hai bước: bỏ món cũ, thêm món mới). */
+    interface Variant {
+        /** @return số món đã thấy khi duyệt cả hai chiều; khác 2 * MENU_SIZE nghĩa là đọc phải trạng thái dở dang */
+        int render();
+
+        void reprice(int index, String item);
+
+        /** Số thay đổi trung bình mỗi lần công bố trạng thái mới cho người đọc. */
+        default double editsPerPublish() {
+            return 1;
+        }
+    }
+
+    static List<String> initialMenu() {
+        List<String> items = new ArrayList<>();
+        for (int i = 0; i < MENU_SIZE; i++) items.add("Món " + i + " - " + (30 + i) + "k");
+        return items;
+    }
+
+    /** Duyệt như trang web: menu rồi menu.reversed(). */
+    static int render(List<String> menu) {
+        int seen = 0, h = 0;
+        for (String item : menu) {
+            h += item.length();
+            seen++;
+        }
+        for (String item : menu.reversed()) {
+            h += item.length();
+            seen++;
+        }
+        sink = h;
+        return seen;
+    }
+
+    static Variant snapshotMenu() {
+        SnapshotMenu<String> menu = new SnapshotMenu<>(initialMenu());
+        return new Variant() {
+            @Override
+            public int render() {
+                return JEP431_MenuSnapshot.render(menu.snapshot());
+            }
+
+            @Override
+            public void reprice(int index, String item) {
+                menu.edit(m -> {
+                    m.remove(index);
+                    m.add(index, item);
+                });
+            }
+
+            @Override
+            public double editsPerPublish() {
+                return menu.editsPerCommit();
+            }
+        };
+    }
+
+    static Variant copyOnWrite() {
+        CopyOnWriteArrayList<String> menu = new CopyOnWriteArrayList<>(initialMenu());
+        return new Variant() {
+            @Override
+            public int render() {
+                return JEP431_MenuSnapshot.render(menu);
+            }
+
+            @Override
+            public void reprice(int index, String item) {
+                // Hai thao tác riêng lẻ: mỗi thao tác chép cả mảng, người đọc có thể thấy menu thiếu một món
+                menu.remove(index);
+                menu.add(index, item);
+            }
+
+            @Override
+            public double editsPerPublish() {
+                return 0.5;
+            }
+        };
+    }
+
+    static Variant readWriteLocked() {
+        List<String> menu = new ArrayList<>(initialMenu());
+        ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+        return new Variant() {
+            @Override
+            public int render() {
+                lock.readLock().lock();
+                try {
+                    return JEP431_MenuSnapshot.render(menu);
+                } finally {
+                    lock.readLock().unlock();
+                }
+            }
+
+            @Override
+            public void reprice(int index, String item) {
+                lock.writeLock().lock();
+                try {
+                    menu.remove(index);
+                    menu.add(index, item);
+                } finally {
+                    lock.writeLock().unlock();
+                }
+            }
+        };
+    }
+
+    static void allocationPerRender() {
+        var mx = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        String[] names = {"SnapshotMenu", "CopyOnWriteArrayList", "ReadWriteLock + ArrayList"};
+        Variant[] variants = {snapshotMenu(), copyOnWrite(), readWriteLocked()};
+        int n = 1_000_000;
+        for (int v = 0; v < variants.length; v++) {
+            for (int i = 0; i < n; i++) variants[v].render(); // khởi động JIT
+            long before = mx.getCurrentThreadAllocatedBytes();
+            for (int i = 0; i < n; i++) variants[v].render();
+            long after = mx.getCurrentThreadAllocatedBytes();
+            System.out.printf("  %-28s %6.1f byte/lần%n", names[v], (double) (after - before) / n);
+        }
+        System.out.println("* Nhận xét: CopyOnWriteArrayList và ArrayList tạo view đảo mới ở mỗi lần reversed(), kèm iterator của nó;");
+        System.out.println("  Snapshot trả về view dựng sẵn, iterator tối giản của nó được JIT loại bỏ (escape analysis).");
+    }
+
+    static void benchmark(long millis) throws InterruptedException {
+        String[] names = {"SnapshotMenu", "CopyOnWriteArrayList", "ReadWriteLock+ArrayList"};
+        int[] readerCounts = {1, 2, 4, 8, 16, 32, 64};
+        double batching = 0;
+        System.out.printf("%-7s", "đọc");
+        for (String n : names) System.out.printf("%38s", n);
+        System.out.println();
+        System.out.printf("%-7s", "");
+        for (int i = 0; i < names.length; i++) System.out.printf("%14s %12s %10s", "đọc/s", "ghi/s", "dở dang");
+        System.out.println();
+        for (int readers : readerCounts) {
+            System.out.printf("%-7d", readers);
+            for (int impl = 0; impl < names.length; impl++) {
+                Variant variant = impl == 0 ? snapshotMenu() : impl == 1 ? copyOnWrite() : readWriteLocked();
+                run(variant, readers, millis / 3); // khởi động JIT
+                long[] r = run(variant, readers, millis);
+                System.out.printf("%,14d %,12d %,10d", r[0], r[1], r[2]);
+                if (impl == 0) batching = variant.editsPerPublish();
+            }
+            System.out.println();
+        }
+        System.out.println("2 luồng ghi, mỗi luồng đổi giá một món rồi nghỉ 20 µs; \"dở dang\" = số lần đọc thấy menu thiếu món.");
+        System.out.printf("SnapshotMenu gom trung bình %.2f thay đổi mỗi lần công bố (CopyOnWriteArrayList: 0.5, hai lần công bố mỗi thay đổi);%n", batching);
+        System.out.println("gom nhóm chỉ có tác dụng khi nhiều luồng ghi trùng lúc, điều hiếm gặp với 2 luồng ghi thưa trên máy ít lõi.");
+        System.out.println("* Nhận xét: SnapshotMenu và CopyOnWriteArrayList cho người đọc không chờ, nhưng CopyOnWriteArrayList chép");
+        System.out.println("  mảng ở mỗi thao tác và có thể để lộ trạng thái giữa hai thao tác (trên máy ít lõi hiếm khi bắt gặp);");
+        System.out.println("  khóa đọc-ghi nhất quán nhưng người đọc phải chờ người ghi và tranh nhau cập nhật bộ đếm của khóa đọc,");
+        System.out.println("  còn người ghi bị nhiều người đọc chặn nên số lần ghi tụt mạnh.");
+        if (Runtime.getRuntime().availableProcessors() < 8) {
+            System.out.println("  Máy này ít lõi nên các luồng chạy xen kẽ, không chạy song song: số đo chủ yếu phản ánh chi phí mỗi");
+            System.out.println("  thao tác, muốn thấy khác biệt về tranh chấp cần chạy lại trên máy nhiều lõi.");
+        }
+    }
+
+    /** @return {số lần đọc/s, số lần ghi/s, số lần đọc thấy trạng thái dở dang} */
+    private static long[] run(Variant variant, int readers, long millis) throws InterruptedException {
+        int writers = 2;
+        AtomicBoolean stop = new AtomicBoolean();
+        LongAdder reads = new LongAdder(), writes = new LongAdder(), torn = new LongAdder();
+        CountDownLatch started = new CountDownLatch(readers + writers);
+        CountDownLatch go = new CountDownLatch(1);
+        Thread[] all = new Thread[readers + writers];
+        for (int t = 0; t < all.length; t++) {
+            boolean writer = t < writers;
+            int seed = t;
+            all[t] = Thread.ofPlatform().start(() -> {
+                started.countDown();
+                try {
+                    go.await(); // mọi luồng bắt đầu cùng lúc, sau khi đã bấm giờ
+                } catch (InterruptedException e) {
+                    return;
+                }
+                long count = 0, bad = 0;
+                int next = seed;
+                while (!stop.get()) {
+                    if (writer) {
+                        int index = next++ % MENU_SIZE;
+                        variant.reprice(index, "Món " + index + " - " + (30 + next % 20) + "k");
+                        count++;
+                        LockSupport.parkNanos(20_000);
+                    } else {
+                        for (int i = 0; i < 16; i++) {
+                            if (variant.render() != 2 * MENU_SIZE) bad++;
+                        }
+                        count += 16;
+                    }
+                }
+                (writer ? writes : reads).add(count);
+                torn.add(bad);
+            });
+        }
+        started.await();
+        long start = System.nanoTime();
+        go.countDown();
+        Thread.sleep(millis);
+        stop.set(true);
+        long elapsed = System.nanoTime() - start;
+        for (Thread t : all) t.join();
+        return new long[] {Math.round(reads.sum() * 1e9 / elapsed), Math.round(writes.sum() * 1e9 / elapsed), torn.sum()};
+    }
+}
+
+/**
+ * List dùng chung đọc nhiều ghi ít, công bố theo ảnh chụp bất biến.
+ * Người đọc: snapshot() không khóa, không chờ, trả về Snapshot nhất quán (không bao giờ thay đổi).
+ * Người ghi: edit() xếp thay đổi vào hàng; người giữ khóa ghi áp dụng mọi thay đổi đang chờ, mỗi thay đổi trên
+ * bản chép riêng của kết quả tốt gần nhất, rồi công bố một Snapshot với epoch mới. edit() chỉ trả về khi thay đổi
+ * đã được công bố. Một edit ném lỗi (kể cả Error) thì bị bỏ qua trọn vẹn mà không phải chạy lại các edit khác
+ * cùng nhóm; các edit đó vẫn được công bố và lỗi được ném lại cho người gọi.
+ */
+final class SnapshotMenu<E> {
+
+    /** Ảnh chụp bất biến của danh sách tại một epoch; các phương thức thay đổi ném UnsupportedOperationException. */
+    static final class Snapshot<E> extends AbstractList<E> implements RandomAccess {
+        private final Object[] items;
+        private final long epoch;
+        private final Reversed reversed = new Reversed(); // dựng sẵn: reversed() không cấp phát
+
+        private Snapshot(Object[] items, long epoch) {
+            this.items = items;
+            this.epoch = epoch;
+        }
+
+        long epoch() {
+            return epoch;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public E get(int index) {
+            return (E) items[index];
+        }
+
+        @Override
+        public int size() {
+            return items.length;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public void forEach(Consumer<? super E> action) {
+            for (Object item : items) action.accept((E) item);
+        }
+
+        @Override
+        public Iterator<E> iterator() {
+            return new Cursor(0, 1);
+        }
+
+        @Override
+        public List<E> reversed() {
+            return reversed;
+        }
+
+        /** Iterator tối giản (không kiểm tra modCount vì không có gì thay đổi), để JIT dễ loại bỏ phép cấp phát. */
+        private final class Cursor implements Iterator<E> {
+            private int index;
+            private final int step;
+
+            Cursor(int start, int step) {
+                this.index = start;
+                this.step = step;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return index >= 0 && index < items.length;
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public E next() {
+                if (!hasNext()) throw new NoSuchElementException();
+                E e = (E) items[index];
+                index += step;
+                return e;
+            }
+        }
+
+        private final class Reversed extends AbstractList<E> implements RandomAccess {
+            @Override
+            @SuppressWarnings("unchecked")
+            public E get(int index) {
+                return (E) items[items.length - 1 - index];
+            }
+
+            @Override
+            public int size() {
+                return items.length;
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public void forEach(Consumer<? super E> action) {
+                for (int i = items.length - 1; i >= 0; i--) action.accept((E) items[i]);
+            }
+
+            @Override
+            public Iterator<E> iterator() {
+                return new Cursor(items.length - 1, -1);
+            }
+
+            @Override
+            public List<E> reversed() {
+                return Snapshot.this;
+            }
+        }
+    }
+
+    /** Một thay đổi đang chờ; epoch và failure chỉ đọc/ghi khi giữ commitLock, commit() luôn đặt một trong hai. */
+    private static final class Pending<E> {
+        final Consumer<? super List<E>> change;
+        long epoch;
+        Throwable failure;
+
+        Pending(Consumer<? super List<E>> change) {
+            this.change = change;
+        }
+    }
+
+    private volatile Snapshot<E> current;
+    private final ConcurrentLinkedQueue<Pending<E>> queue = new ConcurrentLinkedQueue<>();
+    private final ReentrantLock commitLock = new ReentrantLock();
+    private final LongAdder edits = new LongAdder();
+    private long commits; // chỉ ghi khi giữ commitLock
+
+    SnapshotMenu(List<? extends E> initial) {
+        this.current = new Snapshot<>(initial.toArray(), 0);
+    }
+
+    /** Ảnh chụp hiện tại: một lần đọc volatile, không khóa, không cấp phát. */
+    Snapshot<E> snapshot() {
+        return current;
+    }
+
+    /**
+     * Áp dụng change lên một bản chép có thể thay đổi của danh sách và công bố kết quả.
+     * @return epoch của Snapshot đầu tiên có thay đổi này
+     */
+    long edit(Consumer<? super List<E>> change) {
+        Pending<E> pending = new Pending<>(change);
+        queue.add(pending);
+        edits.increment();
+        commitLock.lock();
+        try {
+            // Người giữ khóa trước có thể đã áp dụng luôn thay đổi của mình trong nhóm của họ
+            if (pending.epoch == 0 && pending.failure == null) commit();
+            Throwable failure = pending.failure;
+            if (failure instanceof RuntimeException re) throw re;
+            if (failure instanceof Error err) throw err;
+            if (failure != null) throw new IllegalStateException(failure); // ngoại lệ checked bị ném lén từ change
+            if (pending.epoch == 0) throw new IllegalStateException("edit was not published");
+            return pending.epoch;
+        } finally {
+            commitLock.unlock();
+        }
+    }
+
+    /** Số thay đổi đã gửi / số lần công bố: càng lớn hơn 1 thì gom nhóm càng hiệu quả. */
+    double editsPerCommit() {
+        commitLock.lock();
+        try {
+            return commits == 0 ? 0 : (double) edits.sum() / commits;
+        } finally {
+            commitLock.unlock();
+        }
+    }
+
+    /**
+     * Giữ commitLock: lấy hết hàng chờ, áp dụng từng thay đổi, công bố một Snapshot.
+     * Mỗi thay đổi chạy trên bản chép của kết quả tốt gần nhất, nên thay đổi lỗi chỉ cần bỏ bản chép của nó;
+     * các thay đổi khác không bị chạy lại (tác dụng phụ của chúng không lặp lại).
+     * Mọi Pending đã lấy ra đều nhận epoch hoặc failure, kể cả khi chính commit() bị lỗi giữa chừng.
+     */
+    private void commit() {
+        Snapshot<E> base = current;
+        List<Pending<E>> drained = new ArrayList<>();
+        List<E> good = base;
+        try {
+            Pending<E> p;
+            while ((p = queue.poll()) != null) {
+                drained.add(p);
+                try {
+                    ArrayList<E> attempt = new ArrayList<>(good);
+                    p.change.accept(attempt);
+                    good = attempt;
+                } catch (Throwable t) {
+                    p.failure = t;
+                }
+            }
+            if (good != base) {
+                current = new Snapshot<>(good.toArray(), base.epoch + 1);
+                commits++;
+            }
+        } finally {
+            Snapshot<E> published = current;
+            for (Pending<E> d : drained) {
+                if (d.failure != null) continue;
+                if (published != base) d.epoch = published.epoch;
+                else d.failure = new IllegalStateException("commit aborted before publishing");
+            }
+        }
+    }
+}
@@ -0,0 +1,622 @@
+import java.lang.management.ManagementFactory;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.NoSuchElementException;
+import java.util.SequencedSet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.IntConsumer;
+
+/**
+ * Danh sách khách hàng gần nhất có giới hạn (JEP 431 - Sequenced Collections)
+ *
+ * Bối cảnh: capNhatKhachHang_Moi trong Main (JEP431_Tung.java) gọi remove + addFirst trên LinkedHashSet,
+ * rồi bên gọi cắt bớt bằng while (size > 3) removeLast(). Bản thật giữ hàng triệu khách và chạy ở mọi yêu cầu:
+ * mỗi lần chạm (touch) tạo một nút mới và để lại một nút rác.
+ *
+ * RecentSet là một SequencedSet có giới hạn, thứ tự mới -> cũ:
+ *  - bảng băm địa chỉ mở (dò tuyến tính) trỏ tới các ô cố định; danh sách liên kết đôi nằm ngay trong
+ *    mảng prev/next của các ô (danh sách "intrusive"), không có đối tượng nút
+ *  - touch/addFirst: O(1), đưa lên đầu hoặc thêm mới; đầy thì đẩy khách cũ nhất ra và dùng lại ô của họ,
+ *    nên không cấp phát gì sau khi tạo
+ *  - đếm số lần trúng, trượt và đẩy ra
+ * StripedRecentSet là biến thể dùng chung cho nhiều luồng: chia theo băm thành nhiều RecentSet con, mỗi con
+ * một khóa; thứ tự gần đây chỉ đúng trong từng phần (xấp xỉ LRU toàn cục).
+ *
+ * Chạy: java JEP431_RecentCustomers.java [số khách tối đa]
+ */
+public class JEP431_RecentCustomers {
+
+    public static void main(String[] args) throws Exception {
+        System.out.println("=== 1. capNhatKhachHang_Moi với RecentSet(3) ===");
+        demo();
+
+        int capacity = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        System.out.printf("%n=== 2. Thông lượng và cấp phát: %,d khách tối đa, %,d mã khách ===%n", capacity, capacity * 2);
+        benchmark(capacity);
+
+        System.out.println("\n=== 3. Nhiều luồng: một khóa chung và StripedRecentSet ===");
+        concurrentBenchmark(capacity);
+    }
+
+    // ------------------- VÍ DỤ -------------------
+    static void demo() {
+        RecentSet<String> khachHang = new RecentSet<>(3);
+        khachHang.addFirst("Chị Lan");
+        khachHang.addFirst("Anh Nam");
+        khachHang.addFirst("Chị Hương");
+        khachHang.addFirst("Anh Nam");
+        System.out.println("Khách hàng (mới -> cũ): " + khachHang);
+
+        String bi = khachHang.touch("Cô Mai"); // đầy: khách cũ nhất bị đẩy ra, không cần while (size > 3)
+        System.out.println("Cô Mai ghé, đẩy ra: " + bi);
+        System.out.println("Khách hàng (mới -> cũ): " + khachHang);
+        System.out.println("Khách hàng (cũ -> mới): " + khachHang.reversed());
+        System.out.println(khachHang.stats());
+    }
+
+    // ------------------- BỘ ĐO -------------------
+    static volatile Object sink;
+
+    /** Cách hiện tại: remove + addFirst rồi cắt đuôi. */
+    static void touchLinked(LinkedHashSet<Integer> set, Integer key, int capacity) {
+        set.remove(key);
+        set.addFirst(key);
+        while (set.size() > capacity) set.removeLast();
+    }
+
+    /** Luồng khóa khách: 80% lần ghé rơi vào 20% khách quen. */
+    static int[] workload(int keys, int n) {
+        ThreadLocalRandom rnd = ThreadLocalRandom.current();
+        int[] picks = new int[n];
+        int hot = keys / 5;
+        for (int i = 0; i < n; i++) picks[i] = rnd.nextInt(100) < 80 ? rnd.nextInt(hot) : hot + rnd.nextInt(keys - hot);
+        return picks;
+    }
+
+    static void benchmark(int capacity) {
+        int keys = capacity * 2;
+        Integer[] boxed = new Integer[keys]; // khóa tạo sẵn để không tính cấp phát của Integer
+        for (int i = 0; i < keys; i++) boxed[i] = i;
+        int[] picks = workload(keys, 4_000_000);
+
+        for (int impl = 0; impl < 2; impl++) {
+            LinkedHashSet<Integer> linked = new LinkedHashSet<>();
+            RecentSet<Integer> recent = new RecentSet<>(capacity);
+            double[] nanos = new double[5];
+            double[] bytes = new double[5];
+            for (int round = -2; round < nanos.length; round++) { // 2 vòng đầu để khởi động JIT và làm đầy
+                long alloc = allocatedBytes();
+                long start = System.nanoTime();
+                if (impl == 0) {
+                    for (int p : picks) touchLinked(linked, boxed[p], capacity);
+                } else {
+                    for (int p : picks) sink = recent.touch(boxed[p]);
+                }
+                if (round >= 0) {
+                    nanos[round] = (double) (System.nanoTime() - start) / picks.length;
+                    bytes[round] = (double) (allocatedBytes() - alloc) / picks.length;
+                }
+            }
+            Arrays.sort(nanos);
+            Arrays.sort(bytes);
+            System.out.printf("%-34s %7.1f ns/lần chạm | %6.1f byte cấp phát/lần chạm%n",
+                    impl == 0 ? "LinkedHashSet remove+addFirst" : "RecentSet.touch",
+                    nanos[nanos.length / 2], bytes[bytes.length / 2]);
+            if (impl == 1) System.out.println("  " + recent.stats());
+        }
+        System.out.println("* Nhận xét: LinkedHashSet tạo một nút mới ở mỗi lần chạm; RecentSet chỉ đổi chỉ số trong mảng.");
+    }
+
+    private static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean()).getCurrentThreadAllocatedBytes();
+    }
+
+    static void concurrentBenchmark(int capacity) throws InterruptedException {
+        int keys = capacity * 2;
+        Integer[] boxed = new Integer[keys];
+        for (int i = 0; i < keys; i++) boxed[i] = i;
+        int[] picks = workload(keys, 1 << 22);
+        System.out.printf("%-8s%28s%28s%n", "luồng", "RecentSet + 1 khóa", "StripedRecentSet(16)");
+        for (int threads : new int[] {1, 4, 16, 64}) {
+            RecentSet<Integer> single = new RecentSet<>(capacity);
+            ReentrantLock lock = new ReentrantLock();
+            StripedRecentSet<Integer> striped = new StripedRecentSet<>(capacity, 16);
+            double a = throughput(threads, picks, k -> {
+                lock.lock();
+                try {
+                    sink = single.touch(boxed[k]);
+                } finally {
+                    lock.unlock();
+                }
+            });
+            double b = throughput(threads, picks, k -> sink = striped.touch(boxed[k]));
+            System.out.printf("%-8d%28.2f%28.2f%n", threads, a / 1e6, b / 1e6);
+        }
+        System.out.println("(triệu lần chạm/s; trên máy ít lõi chủ yếu thấy chi phí khóa, không thấy tranh chấp)");
+    }
+
+    /** @return số lần chạm mỗi giây trong 300 ms đo, sau 100 ms khởi động */
+    private static double throughput(int threads, int[] picks, IntConsumer touch) throws InterruptedException {
+        AtomicBoolean measuring = new AtomicBoolean(), stop = new AtomicBoolean();
+        LongAdder ops = new LongAdder();
+        CountDownLatch started = new CountDownLatch(threads);
+        Thread[] all = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            int offset = t * 7919;
+            all[t] = Thread.ofPlatform().start(() -> {
+                int i = offset;
+                long count = 0;
+                started.countDown();
+                while (!stop.get()) {
+                    for (int j = 0; j < 256; j++) touch.accept(picks[i++ & (picks.length - 1)]);
+                    if (measuring.get()) count += 256;
+                }
+                ops.add(count);
+            });
+        }
+        started.await();
+        Thread.sleep(100);
+        measuring.set(true);
+        long start = System.nanoTime();
+        Thread.sleep(300);
+        stop.set(true);
+        long elapsed = System.nanoTime() - start;
+        for (Thread t : all) t.join();
+        return ops.sum() * 1e9 / elapsed;
+    }
+}
+
+/**
+ * SequencedSet có giới hạn, thứ tự mới -> cũ: phần tử đầu là phần tử vừa chạm, phần tử cuối sẽ bị đẩy ra trước.
+ * Không an toàn luồng; phần tử không được null.
+ *
+ * add(e) và addFirst(e) đều là touch: đưa e lên đầu (kể cả khi đã có), khác LinkedHashSet.add vốn giữ nguyên vị trí.
+ * contains(o) chỉ tra, không đổi thứ tự.
+ */
+final class RecentSet<E> extends AbstractSet<E> implements SequencedSet<E> {
+
+    private static final int NIL = -1;
+
+    /** Số lần trúng (đã có), trượt (thêm mới) và đẩy ra vì đầy. */
+    record Stats(long hits, long misses, long evictions) {
+
+        double hitRate() {
+            long total = hits + misses;
+            return total == 0 ? 0 : (double) hits / total;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("trúng %,d, trượt %,d, đẩy ra %,d, tỷ lệ trúng %.1f%%", hits, misses, evictions, hitRate() * 100);
+        }
+    }
+
+    private final int capacity;
+    // Ô: phần tử, băm đã trộn, liên kết trước/sau (trước = mới hơn). Ô rảnh nối với nhau qua next.
+    private final Object[] elements;
+    private final int[] hashes;
+    private final int[] prev;
+    private final int[] next;
+    // Bảng băm địa chỉ mở: lưu chỉ số ô + 1, 0 là trống. Hệ số tải <= 0.5.
+    private final int[] table;
+    private final int mask;
+    private int head = NIL, tail = NIL, free = NIL, used, size;
+    private int modCount;
+    private long hits, misses, evictions;
+
+    RecentSet(int capacity) {
+        if (capacity <= 0) throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        this.capacity = capacity;
+        this.elements = new Object[capacity];
+        this.hashes = new int[capacity];
+        this.prev = new int[capacity];
+        this.next = new int[capacity];
+        int tableSize = Integer.highestOneBit(Math.max(2, capacity) * 2 - 1) << 1;
+        this.table = new int[tableSize];
+        this.mask = tableSize - 1;
+    }
+
+    int capacity() {
+        return capacity;
+    }
+
+    Stats stats() {
+        return new Stats(hits, misses, evictions);
+    }
+
+    private static int spread(Object o) {
+        int h = o.hashCode() * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    /** Vị trí trong table của o, hoặc -(vị trí trống để chèn) - 1. */
+    private int find(Object o, int h) {
+        for (int i = h & mask; ; i = (i + 1) & mask) {
+            int s = table[i] - 1;
+            if (s < 0) return -i - 1;
+            if (hashes[s] == h && o.equals(elements[s])) return i;
+        }
+    }
+
+    /**
+     * Đưa e lên đầu; thêm mới nếu chưa có, và nếu đầy thì đẩy phần tử cuối ra.
+     * @return phần tử bị đẩy ra, hoặc null
+     */
+    @SuppressWarnings("unchecked")
+    E touch(E e) {
+        int h = spread(e);
+        int pos = find(e, h);
+        modCount++;
+        if (pos >= 0) {
+            hits++;
+            moveToFront(table[pos] - 1);
+            return null;
+        }
+        misses++;
+        E evicted = null;
+        if (size == capacity) {
+            evicted = (E) elements[tail];
+            evictions++;
+            removeSlot(tail);
+            pos = find(e, h); // xóa dịch lùi có thể đổi vị trí trống
+        }
+        int s = allocateSlot();
+        elements[s] = e;
+        hashes[s] = h;
+        table[-pos - 1] = s + 1;
+        linkFirst(s);
+        size++;
+        return evicted;
+    }
+
+    /** @return true nếu e là phần tử mới (kể cả khi phải đẩy một phần tử khác ra) */
+    @Override
+    public boolean add(E e) {
+        long before = misses;
+        touch(e);
+        return misses != before;
+    }
+
+    @Override
+    public void addFirst(E e) {
+        touch(e);
+    }
+
+    /** Đưa e xuống cuối (sẽ bị đẩy ra đầu tiên); nếu e mới mà đầy thì phần tử cuối cũ bị đẩy ra trước. */
+    @Override
+    public void addLast(E e) {
+        touch(e);
+        int s = head;
+        unlink(s);
+        linkLast(s);
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return o != null && find(o, spread(o)) >= 0;
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        if (o == null) return false;
+        int pos = find(o, spread(o));
+        if (pos < 0) return false;
+        modCount++;
+        removeSlot(table[pos] - 1);
+        return true;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E getFirst() {
+        if (size == 0) throw new NoSuchElementException();
+        return (E) elements[head];
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E getLast() {
+        if (size == 0) throw new NoSuchElementException();
+        return (E) elements[tail];
+    }
+
+    @Override
+    public E removeFirst() {
+        E e = getFirst();
+        modCount++;
+        removeSlot(head);
+        return e;
+    }
+
+    @Override
+    public E removeLast() {
+        E e = getLast();
+        modCount++;
+        removeSlot(tail);
+        return e;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public void clear() {
+        modCount++;
+        Arrays.fill(table, 0);
+        Arrays.fill(elements, null);
+        head = tail = free = NIL;
+        used = size = 0;
+    }
+
+    @Override
+    public Iterator<E> iterator() {
+        return new Itr(false);
+    }
+
+    @Override
+    public SequencedSet<E> reversed() {
+        return new Reversed();
+    }
+
+    // ----- ô và danh sách -----
+    private int allocateSlot() {
+        if (free != NIL) {
+            int s = free;
+            free = next[s];
+            return s;
+        }
+        return used++;
+    }
+
+    private void removeSlot(int s) {
+        deleteFromTable(s);
+        unlink(s);
+        elements[s] = null;
+        next[s] = free;
+        free = s;
+        size--;
+    }
+
+    /** Xóa ô s khỏi bảng băm bằng dịch lùi, giữ chuỗi dò tuyến tính liền mạch mà không cần bia mộ. */
+    private void deleteFromTable(int s) {
+        int i = hashes[s] & mask;
+        while (table[i] != s + 1) i = (i + 1) & mask;
+        for (int j = (i + 1) & mask; table[j] != 0; j = (j + 1) & mask) {
+            int ideal = hashes[table[j] - 1] & mask;
+            // Phần tử ở j được dời về i nếu vị trí lý tưởng của nó không nằm trong đoạn vòng (i, j]
+            boolean between = i <= j ? (i < ideal && ideal <= j) : (i < ideal || ideal <= j);
+            if (!between) {
+                table[i] = table[j];
+                i = j;
+            }
+        }
+        table[i] = 0;
+    }
+
+    private void moveToFront(int s) {
+        if (s == head) return;
+        unlink(s);
+        linkFirst(s);
+    }
+
+    private void linkFirst(int s) {
+        prev[s] = NIL;
+        next[s] = head;
+        if (head != NIL) prev[head] = s; else tail = s;
+        head = s;
+    }
+
+    private void linkLast(int s) {
+        next[s] = NIL;
+        prev[s] = tail;
+        if (tail != NIL) next[tail] = s; else head = s;
+        tail = s;
+    }
+
+    private void unlink(int s) {
+        int p = prev[s], n = next[s];
+        if (p != NIL) next[p] = n; else head = n;
+        if (n != NIL) prev[n] = p; else tail = p;
+    }
+
+    private final class Itr implements Iterator<E> {
+        private final boolean descending;
+        private int cursor;
+        private int last = NIL;
+        private int expectedModCount = modCount;
+
+        Itr(boolean descending) {
+            this.descending = descending;
+            this.cursor = descending ? tail : head;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return cursor != NIL;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public E next() {
+            if (modCount != expectedModCount) throw new ConcurrentModificationException();
+            if (cursor == NIL) throw new NoSuchElementException();
+            last = cursor;
+            cursor = descending ? prev[cursor] : next[cursor];
+            return (E) elements[last];
+        }
+
+        @Override
+        public void remove() {
+            if (last == NIL) throw new IllegalStateException();
+            if (modCount != expectedModCount) throw new ConcurrentModificationException();
+            removeSlot(last);
+            last = NIL;
+            expectedModCount = ++modCount;
+        }
+    }
+
+    /** View đảo chiều sống (cũ -> mới); chỉ giữ tham chiếu tới set gốc. */
+    private final class Reversed extends AbstractSet<E> implements SequencedSet<E> {
+
+        @Override
+        public Iterator<E> iterator() {
+            return new Itr(true);
+        }
+
+        @Override
+        public int size() {
+            return RecentSet.this.size();
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return RecentSet.this.contains(o);
+        }
+
+        @Override
+        public boolean remove(Object o) {
+            return RecentSet.this.remove(o);
+        }
+
+        @Override
+        public void clear() {
+            RecentSet.this.clear();
+        }
+
+        @Override
+        public boolean add(E e) {
+            return RecentSet.this.add(e);
+        }
+
+        @Override
+        public void addFirst(E e) {
+            RecentSet.this.addLast(e);
+        }
+
+        @Override
+        public void addLast(E e) {
+            RecentSet.this.addFirst(e);
+        }
+
+        @Override
+        public E getFirst() {
+            return RecentSet.this.getLast();
+        }
+
+        @Override
+        public E getLast() {
+            return RecentSet.this.getFirst();
+        }
+
+        @Override
+        public E removeFirst() {
+            return RecentSet.this.removeLast();
+        }
+
+        @Override
+        public E removeLast() {
+            return RecentSet.this.removeFirst();
+        }
+
+        @Override
+        public SequencedSet<E> reversed() {
+            return RecentSet.this;
+        }
+    }
+}
+
+/**
+ * RecentSet dùng chung cho nhiều luồng: stripes phần theo băm, mỗi phần có sức chứa capacity / stripes và một
+ * ReentrantLock riêng (không dùng synchronized để Virtual Thread không bị ghim vào carrier khi chờ khóa).
+ * Phần tử bị đẩy ra là phần tử cũ nhất trong phần của nó, không nhất thiết cũ nhất toàn cục.
+ */
+final class StripedRecentSet<E> {
+
+    private final RecentSet<E>[] stripes;
+    private final ReentrantLock[] locks;
+
+    @SuppressWarnings("unchecked")
+    StripedRecentSet(int capacity, int stripes) {
+        if (Integer.bitCount(stripes) != 1) throw new IllegalArgumentException("stripes must be a power of two: " + stripes);
+        this.stripes = (RecentSet<E>[]) new RecentSet<?>[stripes];
+        this.locks = new ReentrantLock[stripes];
+        for (int i = 0; i < stripes; i++) {
+            this.stripes[i] = new RecentSet<>(Math.max(1, capacity / stripes));
+            this.locks[i] = new ReentrantLock();
+        }
+    }
+
+    private int stripeOf(Object o) {
+        int h = o.hashCode() * 0x85EBCA6B;
+        return (h >>> 16) & (stripes.length - 1);
+    }
+
+    /** @return phần tử bị đẩy ra, hoặc null */
+    E touch(E e) {
+        int i = stripeOf(e);
+        locks[i].lock();
+        try {
+            return stripes[i].touch(e);
+        } finally {
+            locks[i].unlock();
+        }
+    }
+
+    boolean contains(Object o) {
+        int i = stripeOf(o);
+        locks[i].lock();
+        try {
+            return stripes[i].contains(o);
+        } finally {
+            locks[i].unlock();
+        }
+    }
+
+    boolean remove(Object o) {
+        int i = stripeOf(o);
+        locks[i].lock();
+        try {
+            return stripes[i].remove(o);
+        } finally {
+            locks[i].unlock();
+        }
+    }
+
+    int size() {
+        int total = 0;
+        for (int i = 0; i < stripes.length; i++) {
+            locks[i].lock();
+            try {
+                total += stripes[i].size();
+            } finally {
+                locks[i].unlock();
+            }
+        }
+        return total;
+    }
+
+    RecentSet.Stats stats() {
+        long hits = 0, misses = 0, evictions = 0;
+        for (int i = 0; i < stripes.length; i++) {
+            locks[i].lock();
+            try {
+                RecentSet.Stats s = stripes[i].stats();
+                hits += s.hits();
+                misses += s.misses();
+                evictions += s.evictions();
+            } finally {
+                locks[i].unlock();
+            }
+        }
+        return new RecentSet.Stats(hits, misses, evictions);
+    }
+}
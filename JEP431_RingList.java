@@ -0,0 +1,477 @@
+import java.lang.management.ManagementFactory;
+import java.util.AbstractList;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.RandomAccess;
+import java.util.SplittableRandom;
+import java.util.function.Supplier;
+
+/**
+ * Menu dạng List với addFirst O(1) (JEP 431 - Sequenced Collections)
+ *
+ * Bối cảnh: Main.sauJEP431() và truocJEP431() (JEP431_Tung.java) đưa món đặc biệt lên đầu bằng
+ * menu.addFirst(...)/menu.add(0, ...) trên ArrayList, rồi thêm qua reversed() bằng dao.addFirst(...).
+ * Mỗi lần chèn đầu ArrayList phải dời cả mảng: O(n). Menu và bảng tin thật bị chèn đầu liên tục.
+ *
+ * RingList là List truy cập ngẫu nhiên trên mảng vòng (circular buffer) tự nở:
+ *  - addFirst/addLast/removeFirst/removeLast: O(1) khấu hao (chỉ dời đầu/cuối của vòng)
+ *  - get(i)/set(i): O(1), vị trí thật = (head + i) & (capacity - 1)
+ *  - add(i)/remove(i) ở giữa: dời phía ngắn hơn, tối đa n/2 phần tử
+ *  - reversed(): view đảo chiều sống, tạo một lần rồi dùng lại, nên gọi reversed() không cấp phát
+ *
+ * Bộ đo so sánh với ArrayList và ArrayDeque (ArrayDeque không có get(i)) cho các tải trộn đầu/cuối.
+ *
+ * Chạy: java JEP431_RingList.java
+ */
+public class JEP431_RingList {
+
+    public static void main(String[] args) {
+        System.out.println("=== 1. Menu như sauJEP431(), dùng RingList ===");
+        demo();
+
+        System.out.println("\n=== 2. Bộ đo (ns/thao tác) ===");
+        benchmark();
+    }
+
+    // ------------------- VÍ DỤ -------------------
+    static void demo() {
+        RingList<String> menu = new RingList<>();
+        menu.addFirst("Phở bò đặc biệt");
+        menu.addLast("Cơm gà");
+        menu.addLast("Bún chả");
+
+        System.out.println("Menu: " + menu);
+        System.out.println("Món đầu tiên: " + menu.getFirst());
+        System.out.println("Món cuối cùng: " + menu.getLast());
+
+        List<String> dao = menu.reversed();
+        System.out.println("Menu (mới nhất trước): " + dao);
+
+        dao.addFirst("Bánh cuốn nóng");
+        System.out.println("Sau khi thêm qua view đảo: " + menu);
+        System.out.println("reversed() trả về cùng một view: " + (menu.reversed() == dao)
+                + ", reversed().reversed() là menu: " + (dao.reversed() == menu));
+
+        menu.add(2, "Chả giò");
+        System.out.println("Chèn vào giữa: " + menu + ", món thứ 2: " + menu.get(2));
+    }
+
+    // ------------------- BỘ ĐO -------------------
+    static volatile Object sink;
+
+    interface Workload {
+        /** Chạy ops thao tác trên list (hoặc deque) đã có sẵn base phần tử; trả về giá trị để chống loại bỏ code chết. */
+        long run(Object target, int ops, SplittableRandom rnd);
+    }
+
+    static void benchmark() {
+        Integer[] values = new Integer[1024];
+        for (int i = 0; i < values.length; i++) values[i] = i;
+        int base = 10_000, ops = 200_000;
+
+        // Tải 1: menu nhận món mới ở đầu, bỏ món cũ ở cuối, đôi khi thêm cuối và lấy đầu
+        Workload frontBack = (target, n, rnd) -> {
+            long h = 0;
+            for (int i = 0; i < n; i++) {
+                int r = rnd.nextInt(100);
+                Integer v = values[i & 1023];
+                if (target instanceof ArrayDeque<?> d0) {
+                    @SuppressWarnings("unchecked")
+                    ArrayDeque<Integer> d = (ArrayDeque<Integer>) d0;
+                    if (r < 40) d.addFirst(v); else if (r < 80) h += d.removeLast(); else if (r < 90) d.addLast(v); else h += d.removeFirst();
+                } else {
+                    @SuppressWarnings("unchecked")
+                    List<Integer> l = (List<Integer>) target;
+                    if (r < 40) l.addFirst(v); else if (r < 80) h += l.removeLast(); else if (r < 90) l.addLast(v); else h += l.removeFirst();
+                }
+            }
+            return h;
+        };
+        // Tải 2: như tải 1 nhưng 30% thao tác đọc món theo vị trí (ArrayDeque không có get(i))
+        Workload withGet = (target, n, rnd) -> {
+            @SuppressWarnings("unchecked")
+            List<Integer> l = (List<Integer>) target;
+            long h = 0;
+            for (int i = 0; i < n; i++) {
+                int r = rnd.nextInt(100);
+                Integer v = values[i & 1023];
+                if (r < 30) h += l.get(rnd.nextInt(l.size()));
+                else if (r < 58) l.addFirst(v); else if (r < 86) h += l.removeLast(); else if (r < 93) l.addLast(v); else h += l.removeFirst();
+            }
+            return h;
+        };
+        System.out.printf("%-44s%14s%14s%14s%n", "tải (" + base + " món sẵn)", "ArrayList", "ArrayDeque", "RingList");
+        report("addFirst/removeLast/addLast/removeFirst", frontBack, base, ops, true);
+        report("như trên + 30% get(i)", withGet, base, ops, false);
+        System.out.println("Cấp phát mỗi lần gọi reversed(): ArrayList " + bytesPerReversed(new ArrayList<>(List.of(1, 2, 3)))
+                + " byte, RingList " + bytesPerReversed(new RingList<>(List.of(1, 2, 3))) + " byte");
+        System.out.println("* Nhận xét: Chèn đầu ArrayList dời cả mảng nên chậm dần theo kích thước; RingList giữ O(1) như ArrayDeque");
+        System.out.println("  mà vẫn có get(i) O(1) và reversed() không cấp phát.");
+    }
+
+    private static void report(String name, Workload w, int base, int ops, boolean deque) {
+        System.out.printf("%-44s%14s%14s%14s%n", name,
+                String.format("%.1f", measure(() -> fill(new ArrayList<>(), base), w, ops)),
+                deque ? String.format("%.1f", measure(() -> fill(new ArrayDeque<>(), base), w, ops)) : "không có",
+                String.format("%.1f", measure(() -> fill(new RingList<>(), base), w, ops)));
+    }
+
+    private static <C extends Collection<Integer>> C fill(C c, int n) {
+        for (int i = 0; i < n; i++) c.add(i);
+        return c;
+    }
+
+    /** Trung vị ns/thao tác của 5 vòng đo sau 3 vòng khởi động, mỗi vòng trên một bản mới. */
+    private static double measure(Supplier<Object> fresh, Workload w, int ops) {
+        double[] samples = new double[5];
+        for (int round = -3; round < samples.length; round++) {
+            Object target = fresh.get();
+            SplittableRandom rnd = new SplittableRandom(42);
+            long start = System.nanoTime();
+            sink = w.run(target, ops, rnd);
+            if (round >= 0) samples[round] = (double) (System.nanoTime() - start) / ops;
+        }
+        Arrays.sort(samples);
+        return samples[samples.length / 2];
+    }
+
+    private static long bytesPerReversed(List<Integer> list) {
+        var mx = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        int n = 1_000_000;
+        long h = 0;
+        for (int i = 0; i < n; i++) h += list.reversed().size(); // khởi động JIT
+        long before = mx.getCurrentThreadAllocatedBytes();
+        for (int i = 0; i < n; i++) {
+            List<Integer> view = list.reversed();
+            sink = view; // giữ view lại để JIT không loại bỏ được phép cấp phát
+            h += view.size();
+        }
+        long after = mx.getCurrentThreadAllocatedBytes();
+        sink = h;
+        return Math.round((double) (after - before) / n);
+    }
+}
+
+/**
+ * List truy cập ngẫu nhiên trên mảng vòng. Không an toàn luồng; cho phép phần tử null.
+ * Iterator kiểm tra sửa đổi đồng thời (fail-fast) như ArrayList, qua modCount của AbstractList.
+ */
+final class RingList<E> extends AbstractList<E> implements RandomAccess {
+
+    private static final int MIN_CAPACITY = 8;
+
+    private Object[] elements;
+    private int head;
+    private int size;
+    private Reversed reversed;
+
+    RingList() {
+        elements = new Object[MIN_CAPACITY];
+    }
+
+    RingList(int initialCapacity) {
+        if (initialCapacity < 0) throw new IllegalArgumentException("Illegal capacity: " + initialCapacity);
+        elements = new Object[Math.max(MIN_CAPACITY, Integer.highestOneBit(Math.max(1, initialCapacity) - 1) << 1)];
+    }
+
+    RingList(Collection<? extends E> c) {
+        this(c.size());
+        for (E e : c) elements[size++] = e;
+    }
+
+    private int slot(int index) {
+        return (head + index) & (elements.length - 1);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E get(int index) {
+        Objects.checkIndex(index, size);
+        return (E) elements[slot(index)];
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E set(int index, E element) {
+        Objects.checkIndex(index, size);
+        int s = slot(index);
+        E old = (E) elements[s];
+        elements[s] = element;
+        return old;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean add(E e) {
+        addLast(e);
+        return true;
+    }
+
+    @Override
+    public void addFirst(E e) {
+        if (size == elements.length) grow();
+        head = (head - 1) & (elements.length - 1);
+        elements[head] = e;
+        size++;
+        modified();
+    }
+
+    @Override
+    public void addLast(E e) {
+        if (size == elements.length) grow();
+        elements[slot(size)] = e;
+        size++;
+        modified();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E removeFirst() {
+        if (size == 0) throw new NoSuchElementException();
+        E e = (E) elements[head];
+        elements[head] = null;
+        head = (head + 1) & (elements.length - 1);
+        size--;
+        modified();
+        return e;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E removeLast() {
+        if (size == 0) throw new NoSuchElementException();
+        int s = slot(size - 1);
+        E e = (E) elements[s];
+        elements[s] = null;
+        size--;
+        modified();
+        return e;
+    }
+
+    @Override
+    public E getFirst() {
+        if (size == 0) throw new NoSuchElementException();
+        return get(0);
+    }
+
+    @Override
+    public E getLast() {
+        if (size == 0) throw new NoSuchElementException();
+        return get(size - 1);
+    }
+
+    /** Chèn vào giữa: dời nửa ngắn hơn (đầu sang trái hoặc đuôi sang phải) một ô. */
+    @Override
+    public void add(int index, E element) {
+        Objects.checkIndex(index, size + 1);
+        if (index == 0) {
+            addFirst(element);
+            return;
+        }
+        if (index == size) {
+            addLast(element);
+            return;
+        }
+        if (size == elements.length) grow();
+        int mask = elements.length - 1;
+        if (index < size / 2) {
+            head = (head - 1) & mask;
+            for (int i = 0; i < index; i++) elements[(head + i) & mask] = elements[(head + i + 1) & mask];
+        } else {
+            for (int i = size; i > index; i--) elements[(head + i) & mask] = elements[(head + i - 1) & mask];
+        }
+        elements[slot(index)] = element;
+        size++;
+        modified();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E remove(int index) {
+        Objects.checkIndex(index, size);
+        int mask = elements.length - 1;
+        E old = (E) elements[slot(index)];
+        if (index < size / 2) {
+            for (int i = index; i > 0; i--) elements[(head + i) & mask] = elements[(head + i - 1) & mask];
+            elements[head] = null;
+            head = (head + 1) & mask;
+        } else {
+            for (int i = index; i < size - 1; i++) elements[(head + i) & mask] = elements[(head + i + 1) & mask];
+            elements[slot(size - 1)] = null;
+        }
+        size--;
+        modified();
+        return old;
+    }
+
+    @Override
+    public void clear() {
+        for (int i = 0; i < size; i++) elements[slot(i)] = null;
+        head = size = 0;
+        modified();
+    }
+
+    /** Tăng modCount, và đồng bộ sang view đảo chiều để iterator/listIterator/subList của view cũng fail-fast. */
+    private void modified() {
+        modCount++;
+        Reversed r = reversed;
+        if (r != null) r.syncModCount();
+    }
+
+    /** Nhân đôi sức chứa, chép các phần tử về đầu mảng mới theo thứ tự. */
+    private void grow() {
+        int capacity = elements.length;
+        if (capacity >= 1 << 30) throw new OutOfMemoryError("RingList too large");
+        Object[] bigger = new Object[capacity << 1];
+        int firstPart = Math.min(size, capacity - head);
+        System.arraycopy(elements, head, bigger, 0, firstPart);
+        System.arraycopy(elements, 0, bigger, firstPart, size - firstPart);
+        elements = bigger;
+        head = 0;
+    }
+
+    /** View đảo chiều sống; tạo ở lần gọi đầu rồi dùng lại. */
+    @Override
+    public List<E> reversed() {
+        Reversed r = reversed;
+        if (r == null) reversed = r = new Reversed();
+        return r;
+    }
+
+    /**
+     * modCount của view luôn bằng modCount của list gốc (xem modified()), nên listIterator() và subList()
+     * thừa kế từ AbstractList cũng phát hiện sửa đổi trên list gốc.
+     */
+    private final class Reversed extends AbstractList<E> implements RandomAccess {
+
+        Reversed() {
+            syncModCount();
+        }
+
+        void syncModCount() {
+            modCount = RingList.this.modCount;
+        }
+
+        private int flip(int index) {
+            return size - 1 - index;
+        }
+
+        @Override
+        public E get(int index) {
+            Objects.checkIndex(index, size);
+            return RingList.this.get(flip(index));
+        }
+
+        @Override
+        public E set(int index, E element) {
+            Objects.checkIndex(index, size);
+            return RingList.this.set(flip(index), element);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public boolean add(E e) {
+            RingList.this.addFirst(e);
+            return true;
+        }
+
+        @Override
+        public void add(int index, E element) {
+            Objects.checkIndex(index, size + 1);
+            RingList.this.add(size - index, element);
+        }
+
+        @Override
+        public E remove(int index) {
+            Objects.checkIndex(index, size);
+            return RingList.this.remove(flip(index));
+        }
+
+        @Override
+        public void clear() {
+            RingList.this.clear();
+        }
+
+        @Override
+        public void addFirst(E e) {
+            RingList.this.addLast(e);
+        }
+
+        @Override
+        public void addLast(E e) {
+            RingList.this.addFirst(e);
+        }
+
+        @Override
+        public E getFirst() {
+            return RingList.this.getLast();
+        }
+
+        @Override
+        public E getLast() {
+            return RingList.this.getFirst();
+        }
+
+        @Override
+        public E removeFirst() {
+            return RingList.this.removeLast();
+        }
+
+        @Override
+        public E removeLast() {
+            return RingList.this.removeFirst();
+        }
+
+        @Override
+        public List<E> reversed() {
+            return RingList.this;
+        }
+
+        /** Duyệt từ cuối list gốc; kiểm tra modCount của list gốc vì mọi sửa đổi, qua view hay không, đều đi vào đó. */
+        @Override
+        public Iterator<E> iterator() {
+            return new Iterator<>() {
+                private int cursor = size - 1;
+                private int last = -1;
+                private int expectedModCount = RingList.this.modCount;
+
+                @Override
+                public boolean hasNext() {
+                    return cursor >= 0;
+                }
+
+                @Override
+                public E next() {
+                    if (RingList.this.modCount != expectedModCount) throw new ConcurrentModificationException();
+                    if (cursor < 0) throw new NoSuchElementException();
+                    last = cursor--;
+                    return RingList.this.get(last);
+                }
+
+                @Override
+                public void remove() {
+                    if (last < 0) throw new IllegalStateException();
+                    if (RingList.this.modCount != expectedModCount) throw new ConcurrentModificationException();
+                    RingList.this.remove(last);
+                    last = -1;
+                    expectedModCount = RingList.this.modCount;
+                }
+            };
+        }
+    }
+}